@@ -0,0 +1,132 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Inputs shared by the benchmarks.<br>
+ *     Rules files are generated by {@link ee.helmes.RulesGenerator} once per rule count and duplicate ratio and kept in
+ *     {@code ${java.io.tmpdir}/filteringRules-jmh}, so large files are reused by the next forks and runs.
+ */
+final class BenchmarkInputs {
+
+    /**
+     * Values of {@code "type"} attribute.
+     */
+    private static final String[] TYPES = {"root", "sub", "child"};
+
+    /**
+     * Maximum value of {@code "weight"} attribute.
+     */
+    private static final int MAX_WEIGHT = 1000;
+
+    /**
+     * Seed of the random generator, so all runs use the same inputs.
+     */
+    private static final long SEED = 15L;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.BenchmarkInputs} object.<br>
+     * Note that use of this constructor is
+     * unnecessary because all methods in this class are {@code static}.
+     */
+    private BenchmarkInputs(){}
+
+    /**
+     * Returns the input XML file with the given number of rules, generating it if necessary.
+     *
+     * @param ruleCount number of rules in the file.
+     * @param duplicateRatio share of rules which repeat names of other rules, in range {@code [0, 1)}.
+     * @return {@link java.io.File} object associated with the input XML file.
+     * @throws IOException if the file can not be written.
+     */
+    static File rulesFile(long ruleCount, double duplicateRatio) throws IOException {
+        File directory = new File(System.getProperty("java.io.tmpdir"), "filteringRules-jmh");
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Failed to create directory " + directory.getAbsolutePath() + ".");
+        }
+        File rulesFile = new File(directory, "rules-" + ruleCount + "-" + duplicateRatio + ".xml");
+        if(rulesFile.isFile()){
+            return rulesFile;
+        }
+
+        File partFile = new File(directory, rulesFile.getName() + ".part");
+        RulesGenerator generator = new RulesGenerator(ruleCount);
+        generator.setNameCount(BenchmarkInputs.getDistinctNames(ruleCount, duplicateRatio));
+        generator.setDuplicateRatio(duplicateRatio);
+        generator.setWeightRange(1, MAX_WEIGHT);
+        generator.setSeed(SEED);
+        generator.generate(partFile);
+        if(!partFile.renameTo(rulesFile)){
+            throw new IOException("Failed to create file " + rulesFile.getAbsolutePath() + ".");
+        }
+        return rulesFile;
+    }
+
+    /**
+     * Returns valid rules with the given number of rules.
+     *
+     * @param ruleCount number of rules.
+     * @param duplicateRatio share of rules which repeat names of other rules, in range {@code [0, 1)}.
+     * @return array of {@link ee.helmes.RuleRecord} objects.
+     */
+    static RuleRecord[] rules(int ruleCount, double duplicateRatio) {
+        long distinctNames = BenchmarkInputs.getDistinctNames(ruleCount, duplicateRatio);
+        Random random = new Random(SEED);
+        RuleRecord[] rules = new RuleRecord[ruleCount];
+        for(int i = 0; i < ruleCount; i++){
+            rules[i] = new RuleRecord("n" + BenchmarkInputs.nextName(random, distinctNames),
+                                      1 + random.nextInt(TYPES.length),
+                                      1 + random.nextInt(MAX_WEIGHT));
+        }
+        return rules;
+    }
+
+    /**
+     * Returns the temporary file for the result of the benchmark.
+     *
+     * @return {@link java.io.File} object associated with the result XML file.
+     * @throws IOException if the file can not be created.
+     */
+    static File resultFile() throws IOException {
+        File resultFile = File.createTempFile("result", ".xml");
+        resultFile.deleteOnExit();
+        return resultFile;
+    }
+
+    /**
+     * Hides messages of the application below {@link java.util.logging.Level#WARNING} level,
+     * so console output does not affect the measurements.
+     */
+    static void quietLogging() {
+        Logger.getLogger("").setLevel(Level.WARNING);
+    }
+
+    /**
+     * Returns the number of distinct names for the given number of rules and duplicate ratio.
+     *
+     * @param ruleCount number of rules.
+     * @param duplicateRatio share of rules which repeat names of other rules.
+     * @return the number of distinct names.
+     */
+    private static long getDistinctNames(long ruleCount, double duplicateRatio) {
+        if(duplicateRatio < 0 || duplicateRatio >= 1){
+            throw new IllegalArgumentException("Invalid duplicate ratio " + duplicateRatio);
+        }
+        return Math.max(1, Math.round(ruleCount * (1 - duplicateRatio)));
+    }
+
+    /**
+     * Returns the random name index in range {@code [0, distinctNames)}.
+     *
+     * @param random random generator.
+     * @param distinctNames the number of distinct names.
+     * @return the random name index.
+     */
+    private static long nextName(Random random, long distinctNames) {
+        return (random.nextLong() >>> 1) % distinctNames;
+    }
+}
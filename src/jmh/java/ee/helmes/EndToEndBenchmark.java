@@ -0,0 +1,97 @@
+package ee.helmes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole runs of the application for each engine chosen by {@link ee.helmes.Main}:
+ * parsing, filtering, writing the result XML file and rendering it to HTML.<br>
+ *     Run a subset of inputs with {@code -p ruleCount=10000,1000000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class EndToEndBenchmark {
+
+    /**
+     * Number of rules in the input XML file.
+     */
+    @Param({"10000", "1000000", "100000000"})
+    public long ruleCount;
+
+    /**
+     * Share of rules which repeat names of other rules.
+     */
+    @Param({"0.5"})
+    public double duplicateRatio;
+
+    /**
+     * Engine which parses and filters rules: {@code "stax"} - one thread,
+     * {@code "pipeline"} - parsing and filtering threads, {@code "chunks"} - chunks parsed in parallel.
+     */
+    @Param({"stax", "pipeline", "chunks"})
+    public String engine;
+
+    /**
+     * Input XML file.
+     */
+    private File sourceFile;
+
+    /**
+     * Result XML file.
+     */
+    private File resultFile;
+
+    /**
+     * Generates the input XML file if necessary.
+     *
+     * @throws IOException if the file can not be written.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkInputs.quietLogging();
+        sourceFile = BenchmarkInputs.rulesFile(ruleCount, duplicateRatio);
+        resultFile = BenchmarkInputs.resultFile();
+    }
+
+    /**
+     * Runs the application with the chosen engine.
+     *
+     * @return the size of the result XML file.
+     * @throws IOException if the winner index can not be read.
+     * @throws InterruptedException if the benchmark thread was interrupted.
+     */
+    @Benchmark
+    public long run() throws IOException, InterruptedException {
+        switch (engine){
+            case "stax":
+                Main.filterInCurrentThread(sourceFile, resultFile, null, null);
+                break;
+            case "pipeline":
+                Main.filterInPipeline(sourceFile, resultFile, null, null);
+                break;
+            case "chunks":
+                Main.filterInChunks(sourceFile, resultFile, Runtime.getRuntime().availableProcessors(), null, null);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown engine " + engine);
+        }
+        return resultFile.length();
+    }
+}
@@ -0,0 +1,82 @@
+package ee.helmes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link XMLNodeFilter#applyFilter(RuleRecord)} for different name cardinalities.<br>
+ *     Rules are generated in memory before the measurement, so only the filter is measured.
+ *     The largest input is 10M rules, as all rules are held in the heap;
+ *     use {@link ee.helmes.EndToEndBenchmark} for larger inputs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilterBenchmark {
+
+    /**
+     * Number of rules applied to the filter.
+     */
+    @Param({"10000", "1000000", "10000000"})
+    public int ruleCount;
+
+    /**
+     * Share of rules which repeat names of other rules.<br>
+     * {@code 0.0} - almost every rule is added, {@code 0.99} - almost every rule replaces or is rejected.
+     */
+    @Param({"0.0", "0.5", "0.99"})
+    public double duplicateRatio;
+
+    /**
+     * Rules applied to the filter.
+     */
+    private RuleRecord[] rules;
+
+    /**
+     * Result XML file of the filter, it is never written.
+     */
+    private File resultFile;
+
+    /**
+     * Generates the rules.
+     *
+     * @throws IOException if the result file can not be created.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkInputs.quietLogging();
+        rules = BenchmarkInputs.rules(ruleCount, duplicateRatio);
+        resultFile = BenchmarkInputs.resultFile();
+    }
+
+    /**
+     * Applies all rules to the new filter.
+     *
+     * @return the result of filtering.
+     */
+    @Benchmark
+    public Map<String, RuleRecord> applyFilter() {
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        for(RuleRecord rule : rules){
+            xmlNodeFilter.applyFilter(rule);
+        }
+        return xmlNodeFilter.getFilteredNodeMap();
+    }
+}
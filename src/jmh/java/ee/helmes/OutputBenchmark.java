@@ -0,0 +1,91 @@
+package ee.helmes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the output stages: writing the result XML file by {@link ee.helmes.ResultXmlWriter}
+ * and rendering it to HTML by {@link ee.helmes.ResTransformer}.<br>
+ *     The winners are unique rules, so every rule is written.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-Djava.awt.headless=true"})
+public class OutputBenchmark {
+
+    /**
+     * Number of winners in the result.
+     */
+    @Param({"10000", "1000000", "10000000"})
+    public int winnerCount;
+
+    /**
+     * Winners written to the result XML file.
+     */
+    private RuleRecord[] winners;
+
+    /**
+     * Result XML file.
+     */
+    private File resultFile;
+
+    /**
+     * Generates the winners and the result XML file for {@link OutputBenchmark#transformToHtml()}.
+     *
+     * @throws IOException if the result file can not be written.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkInputs.quietLogging();
+        winners = BenchmarkInputs.rules(winnerCount, 0.0);
+        resultFile = BenchmarkInputs.resultFile();
+        this.writeResultXml();
+    }
+
+    /**
+     * Writes the winners to the result XML file.
+     *
+     * @return the size of the result XML file.
+     * @throws IOException if the result file can not be written.
+     */
+    @Benchmark
+    public long writeResultXml() throws IOException {
+        try (ResultXmlWriter resultWriter = new ResultXmlWriter(resultFile)) {
+            for(RuleRecord winner : winners){
+                resultWriter.writeRule(winner);
+            }
+        }
+        return resultFile.length();
+    }
+
+    /**
+     * Renders the result XML file to HTML file with XSLT template.
+     *
+     * @return the size of the HTML file.
+     */
+    @Benchmark
+    public long transformToHtml() {
+        File resultHtml = new ResTransformer(resultFile).produceHTML(new StreamSource(resultFile), TransformerFactory.newInstance());
+        long length = resultHtml.length();
+        resultHtml.delete();
+        return length;
+    }
+}
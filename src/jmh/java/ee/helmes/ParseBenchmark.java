@@ -0,0 +1,128 @@
+package ee.helmes;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the parsers of the input XML file.<br>
+ *     {@link ParseBenchmark#saxReader()} and {@link ParseBenchmark#mappedScanner()} measure parsing only:
+ *     rules are counted and dropped. {@link ParseBenchmark#staxReader()} includes filtering,
+ *     as {@link ee.helmes.StAXReader} applies the filter in the same thread.<br>
+ *     Run a subset of inputs with {@code -p ruleCount=10000,1000000}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class ParseBenchmark {
+
+    /**
+     * Number of rules in the input XML file.
+     */
+    @Param({"10000", "1000000", "100000000"})
+    public long ruleCount;
+
+    /**
+     * Share of rules which repeat names of other rules.
+     */
+    @Param({"0.5"})
+    public double duplicateRatio;
+
+    /**
+     * Input XML file.
+     */
+    private File sourceFile;
+
+    /**
+     * Result XML file of {@link ParseBenchmark#staxReader()}.
+     */
+    private File resultFile;
+
+    /**
+     * Generates the input XML file if necessary.
+     *
+     * @throws IOException if the file can not be written.
+     */
+    @Setup
+    public void setUp() throws IOException {
+        BenchmarkInputs.quietLogging();
+        sourceFile = BenchmarkInputs.rulesFile(ruleCount, duplicateRatio);
+        resultFile = BenchmarkInputs.resultFile();
+    }
+
+    /**
+     * Parses the input file by {@link ee.helmes.SAXReader} while the other thread drains the ring buffer.
+     *
+     * @return the number of parsed rules.
+     * @throws InterruptedException if the benchmark thread was interrupted.
+     */
+    @Benchmark
+    public long saxReader() throws InterruptedException {
+        final RuleRingBuffer ruleBuffer = new RuleRingBuffer(Main.DEFAULT_QUEUE_CAPACITY, Main.DEFAULT_BATCH_SIZE);
+        final long[] ruleCounter = new long[1];
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    RuleRecord[] batch;
+                    while ((batch = ruleBuffer.takeBatch()) != null) {
+                        ruleCounter[0] += batch.length;
+                    }
+                }
+                catch (InterruptedException ex){
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        consumer.start();
+        new SAXReader(sourceFile, ruleBuffer).startParsing();
+        consumer.join();
+        return ruleCounter[0];
+    }
+
+    /**
+     * Scans the input file by {@link ee.helmes.MappedRuleScanner}.
+     *
+     * @return the number of parsed rules.
+     * @throws IOException if the file can not be read.
+     * @throws InterruptedException if the benchmark thread was interrupted.
+     */
+    @Benchmark
+    public long mappedScanner() throws IOException, InterruptedException {
+        final long[] ruleCounter = new long[1];
+        new MappedRuleScanner(sourceFile).scan(new MappedRuleScanner.RuleHandler() {
+            @Override
+            public void handleRule(RuleRecord rule) {
+                ruleCounter[0]++;
+            }
+        });
+        return ruleCounter[0];
+    }
+
+    /**
+     * Parses and filters the input file by {@link ee.helmes.StAXReader} in the benchmark thread.
+     *
+     * @return the number of winners.
+     */
+    @Benchmark
+    public int staxReader() {
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        new StAXReader(sourceFile, xmlNodeFilter).startParsing();
+        return xmlNodeFilter.getFilteredNodeMap().size();
+    }
+}
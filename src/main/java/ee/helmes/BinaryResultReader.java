@@ -0,0 +1,246 @@
+package ee.helmes;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * Reads the binary result file written by {@link ee.helmes.BinaryResultWriter} without XML parsing.<br>
+ *     Rules are streamed one by one by {@link BinaryResultReader#readRule()}, or loaded at once
+ *     by {@link BinaryResultReader#readAll(File)}. The string table and the records are read side by side
+ *     by two streams of the file, so only the current rule is held in memory.<br>
+ *     When the last rule is read, the checksums of the string table and the records are verified;
+ *     a file which was not closed by the writer, truncated or damaged is rejected with {@link java.io.IOException}.
+ */
+public class BinaryResultReader implements Closeable {
+
+    /**
+     * Size of the buffers of the streams.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Size of the checksums at the end of the file.
+     */
+    private static final int CHECKSUM_SIZE = 8;
+
+    /**
+     * The binary result file.
+     */
+    private final File resultFile;
+
+    /**
+     * Number of rules in the file.
+     */
+    private final long ruleCount;
+
+    /**
+     * Checksum of the string table.
+     */
+    private final CRC32 namesChecksum = new CRC32();
+
+    /**
+     * Checksum of the records.
+     */
+    private final CRC32 recordsChecksum = new CRC32();
+
+    /**
+     * Stream of the string table.
+     */
+    private final DataInputStream names;
+
+    /**
+     * Buffered stream of the records and the checksum.
+     */
+    private final InputStream recordsInput;
+
+    /**
+     * Stream of the records.
+     */
+    private final DataInputStream records;
+
+    /**
+     * Length of the string table of the names in bytes, the upper bound of the length of one name.
+     */
+    private final long namesLength;
+
+    /**
+     * Auxiliary array for the UTF-8 bytes of the names.
+     */
+    private byte[] nameBytes = new byte[64];
+
+    /**
+     * Number of rules read from the file.
+     */
+    private long readCount;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.BinaryResultReader} object and reads the header of the file.<br>
+     * The header is rejected if the file is too short to hold the records of all rules (at least one byte each),
+     * so the number of rules is never larger than the file allows. In the same way the length of each name
+     * is bounded by the length of the string table before the bytes of the name are allocated.
+     *
+     * @param resultFile {@link java.io.File} object associated with the binary result file.
+     * @throws IOException if the file can not be read or has invalid header.
+     */
+    public BinaryResultReader(File resultFile) throws IOException {
+        this.resultFile = resultFile;
+        long recordsOffset;
+        try (DataInputStream header = new DataInputStream(new FileInputStream(resultFile))) {
+            if(header.readInt() != BinaryResultWriter.MAGIC){
+                throw new IOException("File " + resultFile.getAbsolutePath() + " is not a binary result file");
+            }
+            this.ruleCount = header.readLong();
+            recordsOffset = header.readLong();
+        }
+        catch (EOFException ex){
+            throw new IOException("File " + resultFile.getAbsolutePath() + " is not a binary result file", ex);
+        }
+        if(ruleCount < 0 || recordsOffset < BinaryResultWriter.HEADER_SIZE || recordsOffset > resultFile.length()
+           || ruleCount > resultFile.length() - recordsOffset - CHECKSUM_SIZE){
+            throw new IOException("Binary result file " + resultFile.getAbsolutePath() + " has invalid header");
+        }
+        this.namesLength = recordsOffset - BinaryResultWriter.HEADER_SIZE;
+        this.names = new DataInputStream(new CheckedInputStream(this.open(BinaryResultWriter.HEADER_SIZE), namesChecksum));
+        try {
+            this.recordsInput = this.open(recordsOffset);
+        }
+        catch (IOException | RuntimeException ex){
+            names.close();
+            throw ex;
+        }
+        this.records = new DataInputStream(new CheckedInputStream(recordsInput, recordsChecksum));
+    }
+
+    /**
+     * Returns all rules of the binary result file in order of the file.<br>
+     * The list is presized by the number of rules of the header, which is bounded by the length of the file.
+     *
+     * @param resultFile {@link java.io.File} object associated with the binary result file.
+     * @return {@link java.util.List} object which holds all rules of the file.
+     * @throws IOException if the file can not be read or is damaged.
+     */
+    public static List<RuleRecord> readAll(File resultFile) throws IOException {
+        try (BinaryResultReader reader = new BinaryResultReader(resultFile)) {
+            List<RuleRecord> rules = new ArrayList<>((int) Math.min(reader.getRuleCount(), Integer.MAX_VALUE - 8));
+            for(RuleRecord rule = reader.readRule(); rule != null; rule = reader.readRule()){
+                rules.add(rule);
+            }
+            return rules;
+        }
+    }
+
+    /**
+     * Returns number of rules in the file.
+     *
+     * @return number of rules in the file.
+     */
+    public long getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Returns the next rule of the file or {@code null} if all rules were read.<br>
+     * The checksums are verified before {@code null} is returned for the first time.
+     *
+     * @return the next {@link ee.helmes.RuleRecord} object or {@code null} if all rules were read.
+     * @throws IOException if the file can not be read or is damaged.
+     */
+    public RuleRecord readRule() throws IOException {
+        if(readCount >= ruleCount){
+            if(readCount == ruleCount){
+                readCount++;
+                this.verifyChecksums();
+            }
+            return null;
+        }
+        long nameLength = readVarint(names);
+        if(nameLength > namesLength){
+            throw new IOException("Binary result file " + resultFile.getAbsolutePath() + " has invalid name length " + nameLength);
+        }
+        if(nameBytes.length < nameLength){
+            nameBytes = new byte[Math.max((int) nameLength, nameBytes.length * 2)];
+        }
+        names.readFully(nameBytes, 0, (int) nameLength);
+        long record = readVarint(records);
+        long zigzagWeight = record >>> 2;
+        int weight = (int) (zigzagWeight >>> 1) ^ -(int) (zigzagWeight & 1);
+        readCount++;
+        return new RuleRecord(new String(nameBytes, 0, (int) nameLength, StandardCharsets.UTF_8), (int) (record & 3), weight);
+    }
+
+    /**
+     * Closes the streams of the file.
+     *
+     * @throws IOException if the streams can not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            names.close();
+        }
+        finally {
+            records.close();
+        }
+    }
+
+    /**
+     * Compares the checksums of the read string table and records with the checksums stored after the records.
+     *
+     * @throws IOException if the checksums can not be read or do not match.
+     */
+    private void verifyChecksums() throws IOException {
+        DataInputStream checksum = new DataInputStream(recordsInput);
+        if(checksum.readInt() != (int) namesChecksum.getValue() || checksum.readInt() != (int) recordsChecksum.getValue()){
+            throw new IOException("Binary result file " + resultFile.getAbsolutePath() + " is damaged: checksum mismatch");
+        }
+    }
+
+    /**
+     * Returns buffered stream of the file which starts at the given position.
+     *
+     * @param position position of the first byte of the stream.
+     * @return buffered stream of the file.
+     * @throws IOException if the file can not be read.
+     */
+    private InputStream open(long position) throws IOException {
+        FileInputStream input = new FileInputStream(resultFile);
+        try {
+            input.getChannel().position(position);
+        }
+        catch (IOException ex){
+            input.close();
+            throw ex;
+        }
+        return new BufferedInputStream(input, BUFFER_SIZE);
+    }
+
+    /**
+     * Returns the non-negative value read as varint.
+     *
+     * @param input stream to read.
+     * @return the read value.
+     * @throws IOException if the stream can not be read or the varint is too long.
+     */
+    private static long readVarint(DataInputStream input) throws IOException {
+        long value = 0;
+        for(int shift = 0; shift < 64; shift += 7){
+            int b = input.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+        throw new IOException("Invalid varint in the binary result file");
+    }
+}
@@ -0,0 +1,220 @@
+package ee.helmes;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Writes the result of filtering to the compact binary file which is read by {@link ee.helmes.BinaryResultReader}
+ * without XML parsing.<br>
+ *     The file consists of:<br>
+ *          - header: {@link BinaryResultWriter#MAGIC}, {@code long} number of rules and {@code long} offset of the records;<br>
+ *          - string table: the name of each rule as varint length and UTF-8 bytes;<br>
+ *          - records: type and weight of each rule in the same order, as one varint
+ *            {@code zigzag(weight) << 2 | type};<br>
+ *          - checksum: {@code int} CRC32 of the string table and {@code int} CRC32 of the records.<br>
+ *     Varints are written by 7 bits, the low bits first, with the high bit set in all bytes but the last one.
+ *     The string table and the records are written in one pass: the records go to the temporary file next to
+ *     the result and are appended to it by {@link BinaryResultWriter#close()}, which writes the header last,
+ *     so the file which was not closed is rejected by the reader.
+ */
+class BinaryResultWriter implements ResultSink {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * The first {@code int} of the binary result file ({@code "FRB1"}).
+     */
+    static final int MAGIC = 0x46524231;
+
+    /**
+     * Size of the header in bytes.
+     */
+    static final int HEADER_SIZE = 20;
+
+    /**
+     * Size of the buffers of the streams.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The binary result file.
+     */
+    private final File resultFile;
+
+    /**
+     * Temporary file of the records.
+     */
+    private final File recordsFile;
+
+    /**
+     * Buffered stream of the binary result file.
+     */
+    private final OutputStream resultOutput;
+
+    /**
+     * Checksum of the string table.
+     */
+    private final CRC32 namesChecksum = new CRC32();
+
+    /**
+     * Checksum of the records.
+     */
+    private final CRC32 recordsChecksum = new CRC32();
+
+    /**
+     * Stream of the string table.
+     */
+    private final DataOutputStream names;
+
+    /**
+     * Stream of the records.
+     */
+    private final DataOutputStream records;
+
+    /**
+     * Number of bytes of the string table.
+     */
+    private long namesLength;
+
+    /**
+     * Number of rules written to the file.
+     */
+    private long ruleCount;
+
+    /**
+     * Flag that reflects whether the file was closed.
+     */
+    private boolean closed;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.BinaryResultWriter} object.<br>
+     * Opens (truncates) the binary result file and the temporary file of the records.
+     *
+     * @param resultFile {@link java.io.File} object for saving results in it.
+     * @throws IOException if the files can not be opened.
+     */
+    BinaryResultWriter(File resultFile) throws IOException {
+        this.resultFile = resultFile;
+        this.recordsFile = File.createTempFile("result-records-", ".bin", resultFile.getAbsoluteFile().getParentFile());
+        recordsFile.deleteOnExit();
+        this.resultOutput = new BufferedOutputStream(new FileOutputStream(resultFile), BUFFER_SIZE);
+        resultOutput.write(new byte[HEADER_SIZE]);
+        this.names = new DataOutputStream(new CheckedOutputStream(resultOutput, namesChecksum));
+        this.records = new DataOutputStream(new CheckedOutputStream(
+                new BufferedOutputStream(new FileOutputStream(recordsFile), BUFFER_SIZE), recordsChecksum));
+    }
+
+    /**
+     * Writes the rule to the binary result file.
+     *
+     * @param rule {@link ee.helmes.RuleRecord} object to write.
+     * @throws IOException if the rule can not be written.
+     */
+    @Override
+    public void writeRule(RuleRecord rule) throws IOException {
+        byte[] name = rule.getName().getBytes(StandardCharsets.UTF_8);
+        this.writeRule(name, 0, name.length, rule.getType(), rule.getWeight());
+    }
+
+    /**
+     * Writes the rule with the given UTF-8 encoded name to the binary result file.
+     *
+     * @param name array which holds the UTF-8 bytes of the {@code "name"} attribute value.
+     * @param nameOffset index of the first byte of the name.
+     * @param nameLength number of bytes of the name.
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the rule can not be written.
+     */
+    @Override
+    public void writeRule(byte[] name, int nameOffset, int nameLength, int type, int weight) throws IOException {
+        namesLength += writeVarint(names, nameLength);
+        names.write(name, nameOffset, nameLength);
+        namesLength += nameLength;
+        long zigzagWeight = ((weight << 1) ^ (weight >> 31)) & 0xFFFFFFFFL;
+        writeVarint(records, zigzagWeight << 2 | (type & 3));
+        ruleCount++;
+    }
+
+    /**
+     * Returns number of rules written to the file.
+     *
+     * @return number of rules written to the file.
+     */
+    public long getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Appends the records and the checksum to the string table, writes the header and deletes the temporary file.<br>
+     * Closing the closed file has no effect.
+     *
+     * @throws IOException if the file can not be written.
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed){
+            return;
+        }
+        closed = true;
+        try {
+            records.close();
+            names.flush();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            try (InputStream recordsInput = new FileInputStream(recordsFile)) {
+                for(int read = recordsInput.read(buffer); read > 0; read = recordsInput.read(buffer)){
+                    resultOutput.write(buffer, 0, read);
+                }
+            }
+            DataOutputStream checksum = new DataOutputStream(resultOutput);
+            checksum.writeInt((int) namesChecksum.getValue());
+            checksum.writeInt((int) recordsChecksum.getValue());
+            resultOutput.close();
+
+            try (RandomAccessFile header = new RandomAccessFile(resultFile, "rw")) {
+                header.writeInt(MAGIC);
+                header.writeLong(ruleCount);
+                header.writeLong(HEADER_SIZE + namesLength);
+            }
+        }
+        finally {
+            resultOutput.close();
+            if(!recordsFile.delete() && recordsFile.exists()){
+                logger.warning(Thread.currentThread().getName() + ": temporary file " + recordsFile.getAbsolutePath() + " wasn't deleted.");
+            }
+        }
+    }
+
+    /**
+     * Writes the non-negative value as varint and returns the number of written bytes.
+     *
+     * @param output stream to write.
+     * @param value non-negative value.
+     * @return the number of written bytes.
+     * @throws IOException if the stream can not be written.
+     */
+    private static int writeVarint(DataOutputStream output, long value) throws IOException {
+        int bytes = 1;
+        while ((value & ~0x7FL) != 0){
+            output.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+            bytes++;
+        }
+        output.write((int) value);
+        return bytes;
+    }
+}
@@ -0,0 +1,439 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Parses one large input XML file by chunks in parallel.<br>
+ *     The file is split into byte ranges which start at {@code <rule} elements, and the ranges are scanned
+ *     concurrently by {@link ee.helmes.MappedRuleScanner} on {@link java.util.concurrent.ForkJoinPool}.
+ *     Each chunk applies filter to its rules in its own map, then the maps are reduced pairwise
+ *     with the same precedence rules (see {@link XMLNodeFilter#mergeFilteredNodes(Map, Map, DecisionJournal.Recorder)}).<br>
+ *     Maps of the chunks keep names in order of their first occurrence and the maps are always merged
+ *     in order of the file, so the result is identical to the result of the sequential run.<br>
+ *     If the file can not be scanned by {@link ee.helmes.MappedRuleScanner}, nothing is applied to the filter
+ *     and the file should be parsed by the other engine. Decisions of the chunks are removed from the
+ *     {@link ee.helmes.DecisionJournal} in this case (see {@link DecisionJournal#rollback()}), so the decisions
+ *     of the other engine are not journaled twice.<br>
+ *     Rules and bytes read by the chunks are counted in {@link ee.helmes.PipelineStats} only if all chunks were parsed,
+ *     and decisions of the chunks are taken back otherwise, so the file parsed again by the other engine
+ *     is not counted twice.<br>
+ *     If a chunk is interrupted, the result of the chunks is discarded in the same way, but the cancellation is thrown
+ *     to the caller as {@link java.lang.InterruptedException} instead of asking for the other engine.
+ */
+public class ChunkedRuleParser {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * Minimum size of the chunk in bytes.
+     */
+    static final long MIN_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * Number of chunks per parser thread, so the threads which finish early take the remaining chunks.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /**
+     * Size of the buffer for searching chunk boundaries.
+     */
+    private static final int SEARCH_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Input XML file for parsing.
+     */
+    private final File xmlFile;
+
+    /**
+     * {@code XMLNodeFilter} object which receives the result of filtering of all chunks.
+     */
+    private final XMLNodeFilter xmlNodeFilter;
+
+    /**
+     * Number of threads which parse chunks.
+     */
+    private final int parserThreads;
+
+    /**
+     * Approximate size of the chunk in bytes.
+     */
+    private final long chunkSize;
+
+    /**
+     * Counters of the rule elements and bytes read by the chunks, published when all chunks were parsed.
+     */
+    private final AtomicLong scannedRules = new AtomicLong(),
+                             invalidRules = new AtomicLong(),
+                             mappedBytes = new AtomicLong();
+
+    /**
+     * Counters of the decisions of the chunks and of the merges of their results,
+     * taken back when the chunks can not be parsed.
+     */
+    private final AtomicLong acceptedRules = new AtomicLong(),
+                             replacedRules = new AtomicLong(),
+                             rejectedRules = new AtomicLong();
+
+    /**
+     * Interruption which stopped parsing of a chunk or {@code null} if no chunk was interrupted.
+     */
+    private volatile InterruptedException cancellation;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.ChunkedRuleParser} object.<br>
+     * The file is split into {@value #CHUNKS_PER_THREAD} chunks per thread,
+     * but chunks are not smaller than {@link ee.helmes.ChunkedRuleParser#MIN_CHUNK_SIZE}.
+     *
+     * @param xmlFile {@link java.io.File} object associated with the input source XML file.
+     * @param xmlNodeFilter {@link ee.helmes.XMLNodeFilter} object which receives the result of filtering.
+     * @param parserThreads number of threads which parse chunks.
+     */
+    public ChunkedRuleParser(File xmlFile, XMLNodeFilter xmlNodeFilter, int parserThreads){
+        this(xmlFile, xmlNodeFilter, parserThreads,
+             Math.max(MIN_CHUNK_SIZE, xmlFile.length() / ((long) Math.max(parserThreads, 1) * CHUNKS_PER_THREAD)));
+    }
+
+    /**
+     * Initializes a newly created {@link ee.helmes.ChunkedRuleParser} object.
+     *
+     * @param xmlFile {@link java.io.File} object associated with the input source XML file.
+     * @param xmlNodeFilter {@link ee.helmes.XMLNodeFilter} object which receives the result of filtering.
+     * @param parserThreads number of threads which parse chunks.
+     * @param chunkSize approximate size of the chunk in bytes.
+     *
+     * @throws IllegalArgumentException if {@code parserThreads} or {@code chunkSize} is less than 1.
+     */
+    ChunkedRuleParser(File xmlFile, XMLNodeFilter xmlNodeFilter, int parserThreads, long chunkSize){
+        if(xmlFile == null || xmlNodeFilter == null){
+            throw new NullPointerException();
+        }
+        if(parserThreads < 1 || chunkSize < 1){
+            throw new IllegalArgumentException("Invalid number of parser threads " + parserThreads + " or chunk size " + chunkSize);
+        }
+        this.xmlFile = xmlFile;
+        this.xmlNodeFilter = xmlNodeFilter;
+        this.parserThreads = parserThreads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Returns {@code true} if all chunks of the input XML file were parsed and their result was merged
+     * into the filter, {@code false} otherwise.<br>
+     *     If this method returns {@code false} or throws {@link java.lang.InterruptedException},
+     *     the filter and the decision journal are not changed.
+     *
+     * @return {@code true} if the input XML file was parsed, {@code false} otherwise.
+     * @throws InterruptedException if the current thread or a chunk parsing thread was interrupted.
+     */
+    public boolean startParsing() throws InterruptedException {
+        String threadName = Thread.currentThread().getName();
+        DecisionJournal decisionJournal = xmlNodeFilter.getDecisionJournal();
+        long[] boundaries;
+        try {
+            boundaries = this.findChunkBoundaries();
+            if(decisionJournal != null){
+                decisionJournal.mark();
+            }
+        }
+        catch (ClosedByInterruptException ex){
+            Thread.interrupted();
+            InterruptedException interruption = new InterruptedException("Search of the chunks was interrupted");
+            interruption.initCause(ex);
+            throw interruption;
+        }
+        catch (IOException ex){
+            logger.log(Level.SEVERE, threadName + ": chunks were not found because of " + ex.toString(), ex);
+            return false;
+        }
+
+        logger.info(threadName + ": XML file is being parsed by " + (boundaries.length - 1) + " chunks in "
+                    + parserThreads + " threads...");
+        long startNanos = System.nanoTime();
+        ForkJoinPool pool = new ForkJoinPool(parserThreads);
+        Map<String, RuleRecord> resultMap;
+        try {
+            resultMap = pool.invoke(new ChunkTask(boundaries, 0, boundaries.length - 1));
+        }
+        finally {
+            pool.shutdown();
+            PipelineStats.get().addParseTime(startNanos);
+        }
+        if(resultMap == null){
+            PipelineStats.get().addDecisions(-acceptedRules.get(), -replacedRules.get(), -rejectedRules.get());
+            if(decisionJournal != null){
+                decisionJournal.rollback();
+            }
+            if(cancellation != null){
+                InterruptedException interruption = new InterruptedException("Parsing of the chunks was interrupted");
+                interruption.initCause(cancellation);
+                throw interruption;
+            }
+            logger.info(threadName + ": XML file can not be parsed by chunks.");
+            return false;
+        }
+        PipelineStats.get().addParsedRules(scannedRules.get(), invalidRules.get());
+        PipelineStats.get().countBytesRead(mappedBytes.get());
+
+        xmlNodeFilter.mergeFilteredNodes(resultMap);
+        logger.info(threadName + ": XML file was parsed.");
+        return true;
+    }
+
+    /**
+     * Returns positions of the chunk boundaries in the input XML file.<br>
+     * The first position is {@code 0} and the last one is {@link Long#MAX_VALUE}; each position in between is
+     * the position of {@code <rule} found after the approximate boundary.
+     *
+     * @return positions of the chunk boundaries in the input XML file.
+     * @throws IOException if the file can not be read.
+     */
+    long[] findChunkBoundaries() throws IOException {
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+
+        try (FileChannel channel = FileChannel.open(xmlFile.toPath(), StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            ByteBuffer buffer = ByteBuffer.allocate(SEARCH_BUFFER_SIZE);
+            long position = chunkSize;
+            while (position < fileSize){
+                long boundary = ChunkedRuleParser.findRuleStart(channel, buffer, position);
+                if(boundary < 0){
+                    break;
+                }
+                boundaries.add(boundary);
+                position = Math.max(boundary + 1, position + chunkSize);
+            }
+        }
+
+        boundaries.add(Long.MAX_VALUE);
+        long[] result = new long[boundaries.size()];
+        for(int i = 0; i < result.length; i++){
+            result[i] = boundaries.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * Returns position of the first {@code <rule} followed by whitespace, {@code '/'} or {@code '>'}
+     * at or after the given position.
+     *
+     * @param channel channel of the input XML file.
+     * @param buffer auxiliary buffer for reading the file.
+     * @param from position to start searching from.
+     * @return position of {@code '<'} of the found element or {@code -1} if there is no such element.
+     * @throws IOException if the file can not be read.
+     */
+    private static long findRuleStart(FileChannel channel, ByteBuffer buffer, long from) throws IOException {
+        final int patternLength = 6;
+        long position = from;
+        while (true){
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            if(read < patternLength){
+                return -1;
+            }
+            for(int i = 0; i + patternLength <= read; i++){
+                if(buffer.get(i) == '<' && buffer.get(i + 1) == 'r' && buffer.get(i + 2) == 'u'
+                   && buffer.get(i + 3) == 'l' && buffer.get(i + 4) == 'e'){
+                    byte next = buffer.get(i + 5);
+                    if(next == ' ' || next == '\t' || next == '\n' || next == '\r' || next == '/' || next == '>'){
+                        return position + i;
+                    }
+                }
+            }
+            position += read - patternLength + 1;
+        }
+    }
+
+    /**
+     * Task which parses the range of chunks and returns their filtered rules.<br>
+     * The range is split in halves till one chunk is left; results of the halves are merged in order of the file.
+     */
+    private class ChunkTask extends RecursiveTask<Map<String, RuleRecord>> {
+
+        /**
+         * Version of the serialized form inherited from {@link java.util.concurrent.ForkJoinTask}.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Positions of the chunk boundaries in the input XML file.
+         */
+        private final long[] boundaries;
+
+        /**
+         * Index of the first chunk of the range.
+         */
+        private final int fromChunk;
+
+        /**
+         * Index after the last chunk of the range.
+         */
+        private final int toChunk;
+
+        /**
+         * Initializes a newly created {@link ee.helmes.ChunkedRuleParser.ChunkTask} object.
+         *
+         * @param boundaries positions of the chunk boundaries in the input XML file.
+         * @param fromChunk index of the first chunk of the range.
+         * @param toChunk index after the last chunk of the range.
+         */
+        ChunkTask(long[] boundaries, int fromChunk, int toChunk){
+            this.boundaries = boundaries;
+            this.fromChunk = fromChunk;
+            this.toChunk = toChunk;
+        }
+
+        /**
+         * Returns filtered rules of the range of chunks.
+         *
+         * @return {@link java.util.Map} of filtered rules in order of their first occurrence
+         * or {@code null} if any chunk of the range can not be parsed or was interrupted.
+         */
+        @Override
+        protected Map<String, RuleRecord> compute() {
+            if(cancellation != null){
+                return null;
+            }
+            if(toChunk - fromChunk == 1){
+                return this.parseChunk();
+            }
+            int middle = (fromChunk + toChunk) >>> 1;
+            ChunkTask head = new ChunkTask(boundaries, fromChunk, middle);
+            ChunkTask tail = new ChunkTask(boundaries, middle, toChunk);
+            head.fork();
+            Map<String, RuleRecord> tailMap = tail.compute();
+            Map<String, RuleRecord> headMap = head.join();
+            if(headMap == null || tailMap == null){
+                return null;
+            }
+            DecisionJournal.Recorder journalRecorder = this.newRecorder();
+            long[] decisions = new long[3];
+            for(RuleRecord rule : tailMap.values()){
+                DecisionJournal.Outcome outcome = XMLNodeFilter.mergeRule(headMap, rule, journalRecorder);
+                if(outcome != DecisionJournal.Outcome.ADDED){
+                    decisions[0]--;
+                    decisions[outcome == DecisionJournal.Outcome.REPLACED ? 1 : 2]++;
+                }
+            }
+            acceptedRules.addAndGet(decisions[0]);
+            replacedRules.addAndGet(decisions[1]);
+            rejectedRules.addAndGet(decisions[2]);
+            if(journalRecorder != null){
+                journalRecorder.flush();
+            }
+            return headMap;
+        }
+
+        /**
+         * Returns filtered rules of one chunk.<br>
+         * Parsing of the chunk is recorded as {@link ee.helmes.PipelineEvents.ParseEvent} event of JDK Flight Recorder;
+         * its rules, bytes and decisions are added to the counters of the {@link ee.helmes.ChunkedRuleParser}.
+         *
+         * If the chunk is interrupted, the interruption is kept as {@link ee.helmes.ChunkedRuleParser#cancellation}
+         * and the interrupt status of the thread is restored.
+         *
+         * @return {@link java.util.Map} of filtered rules in order of their first occurrence
+         * or {@code null} if the chunk can not be parsed or was interrupted.
+         */
+        private Map<String, RuleRecord> parseChunk() {
+            final String workerName = Thread.currentThread().getName();
+            final Map<String, RuleRecord> chunkMap = new LinkedHashMap<>();
+            final DecisionJournal.Recorder journalRecorder = this.newRecorder();
+            final long[] decisions = new long[3];
+            MappedRuleScanner scanner = new MappedRuleScanner(xmlFile);
+            PipelineEvents.ParseEvent event = new PipelineEvents.ParseEvent();
+            event.begin();
+            try {
+                boolean scanned = scanner.scanRange(boundaries[fromChunk], boundaries[toChunk], new MappedRuleScanner.RuleHandler() {
+                    @Override
+                    public void handleRule(RuleRecord rule) {
+                        int mapSize = chunkMap.size();
+                        if(!XMLNodeFilter.applyFilter(chunkMap, rule, workerName, journalRecorder)){
+                            decisions[2]++;
+                        }
+                        else if(chunkMap.size() > mapSize){
+                            decisions[0]++;
+                        }
+                        else {
+                            decisions[1]++;
+                        }
+                    }
+                });
+                if(!scanned){
+                    this.discard(journalRecorder);
+                    return null;
+                }
+                if(journalRecorder != null){
+                    journalRecorder.flush();
+                }
+                return chunkMap;
+            }
+            catch (ClosedByInterruptException ex){
+                logger.log(Level.WARNING, workerName + ": chunk parsing was stopped because of the interrupt", ex);
+                cancellation = (InterruptedException) new InterruptedException(ex.toString()).initCause(ex);
+                this.discard(journalRecorder);
+                return null;
+            }
+            catch (IOException ex){
+                logger.log(Level.SEVERE, workerName + ": chunk parsing was stopped because of " + ex.toString(), ex);
+                this.discard(journalRecorder);
+                return null;
+            }
+            catch (InterruptedException ex){
+                logger.log(Level.WARNING, workerName + ": chunk parsing was stopped because of the InterruptedException", ex);
+                Thread.currentThread().interrupt();
+                cancellation = ex;
+                this.discard(journalRecorder);
+                return null;
+            }
+            finally {
+                scannedRules.addAndGet(scanner.getScannedRules());
+                invalidRules.addAndGet(scanner.getInvalidRules());
+                mappedBytes.addAndGet(scanner.getMappedBytes());
+                acceptedRules.addAndGet(decisions[0]);
+                replacedRules.addAndGet(decisions[1]);
+                rejectedRules.addAndGet(decisions[2]);
+                event.finish(xmlFile, "chunk", boundaries[fromChunk], Math.min(boundaries[toChunk], xmlFile.length()));
+            }
+        }
+
+        /**
+         * Drops the decisions of the chunk which were not passed to the journal yet.
+         *
+         * @param journalRecorder recorder of the decisions or {@code null} if decisions are not journaled.
+         */
+        private void discard(DecisionJournal.Recorder journalRecorder) {
+            if(journalRecorder != null){
+                journalRecorder.discard();
+            }
+        }
+
+        /**
+         * Returns new recorder of the decisions made by this task.
+         *
+         * @return new {@link ee.helmes.DecisionJournal.Recorder} or {@code null} if decisions are not journaled.
+         */
+        private DecisionJournal.Recorder newRecorder() {
+            DecisionJournal decisionJournal = xmlNodeFilter.getDecisionJournal();
+            return decisionJournal == null ? null : decisionJournal.newRecorder();
+        }
+    }
+}
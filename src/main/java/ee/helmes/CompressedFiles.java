@@ -0,0 +1,147 @@
+package ee.helmes;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Opens input and output files which may be compressed with gzip.<br>
+ *     Compressed input files are recognized by the gzip magic bytes, so the feeds may have any name;
+ *     they are decompressed by {@link ee.helmes.PipedGzipInputStream} in its own thread while the file is parsed.
+ *     Output files are compressed if their names end with {@link CompressedFiles#GZIP_SUFFIX}; they are compressed
+ *     by {@link ee.helmes.PipedGzipOutputStream} in its own thread while the result is written.<br>
+ *     Bytes read from the input files are counted by {@link ee.helmes.PipelineStats}.
+ */
+final class CompressedFiles {
+
+    /**
+     * Suffix of the names of the compressed files.
+     */
+    static final String GZIP_SUFFIX = ".gz";
+
+    /**
+     * The first two bytes of the gzip stream.
+     */
+    private static final int GZIP_MAGIC_1 = 0x1F, GZIP_MAGIC_2 = 0x8B;
+
+    /**
+     * Size of the buffer of the uncompressed input stream.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Use of this constructor is unnecessary because all methods in this class are {@code static}.
+     */
+    private CompressedFiles(){}
+
+    /**
+     * Returns {@code true} if the file starts with the gzip magic bytes, {@code false} otherwise.
+     *
+     * @param file {@link java.io.File} object to check.
+     * @return {@code true} if the file is compressed with gzip, {@code false} otherwise.
+     * @throws IOException if the file can not be read.
+     */
+    static boolean isCompressed(File file) throws IOException {
+        try (InputStream input = new FileInputStream(file)) {
+            return input.read() == GZIP_MAGIC_1 && input.read() == GZIP_MAGIC_2;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the name of the file ends with {@link CompressedFiles#GZIP_SUFFIX}, {@code false} otherwise.
+     *
+     * @param fileName name or pathname of the file.
+     * @return {@code true} if the name ends with {@link CompressedFiles#GZIP_SUFFIX}, {@code false} otherwise.
+     */
+    static boolean hasGzipSuffix(String fileName) {
+        return fileName != null && fileName.toLowerCase(Locale.ROOT).endsWith(GZIP_SUFFIX);
+    }
+
+    /**
+     * Returns the name of the file without {@link CompressedFiles#GZIP_SUFFIX}.
+     *
+     * @param fileName name or pathname of the file.
+     * @return the name without {@link CompressedFiles#GZIP_SUFFIX} or the same name if it has no suffix.
+     */
+    static String removeGzipSuffix(String fileName) {
+        return hasGzipSuffix(fileName) ? fileName.substring(0, fileName.length() - GZIP_SUFFIX.length()) : fileName;
+    }
+
+    /**
+     * Returns new stream of the uncompressed content of the input file.
+     *
+     * @param file {@link java.io.File} object associated with the input file, compressed or not.
+     * @return new {@link ee.helmes.PipedGzipInputStream} if the file is compressed, otherwise new buffered stream of the file.
+     * @throws IOException if the file can not be opened.
+     */
+    static InputStream newInputStream(File file) throws IOException {
+        if(CompressedFiles.isCompressed(file)){
+            return new PipedGzipInputStream(file);
+        }
+        return new BufferedInputStream(new CountedFileInputStream(file), BUFFER_SIZE);
+    }
+
+    /**
+     * Returns new channel which writes the output file, truncating it.
+     *
+     * @param file {@link java.io.File} object associated with the output file.
+     * @return channel of {@link ee.helmes.PipedGzipOutputStream} if the name of the file has
+     *         {@link CompressedFiles#GZIP_SUFFIX}, otherwise {@link java.nio.channels.FileChannel} of the file.
+     * @throws IOException if the file can not be opened.
+     */
+    static WritableByteChannel newOutputChannel(File file) throws IOException {
+        if(CompressedFiles.hasGzipSuffix(file.getName())){
+            return Channels.newChannel(new PipedGzipOutputStream(file));
+        }
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                               StandardOpenOption.WRITE,
+                                               StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    /**
+     * Stream of the input file which counts the bytes read by {@link PipelineStats#countBytesRead(long)}.<br>
+     * The stream is read by large blocks, so the counter is updated once per block.
+     */
+    static final class CountedFileInputStream extends FileInputStream {
+
+        /**
+         * Initializes a newly created {@link ee.helmes.CompressedFiles.CountedFileInputStream} object.
+         *
+         * @param file {@link java.io.File} object associated with the input file.
+         * @throws IOException if the file can not be opened.
+         */
+        CountedFileInputStream(File file) throws IOException {
+            super(file);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int read = super.read();
+            if(read >= 0){
+                PipelineStats.get().countBytesRead(1);
+            }
+            return read;
+        }
+
+        @Override
+        public int read(byte[] bytes) throws IOException {
+            return this.read(bytes, 0, bytes.length);
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            int read = super.read(bytes, offset, length);
+            if(read > 0){
+                PipelineStats.get().countBytesRead(read);
+            }
+            return read;
+        }
+    }
+}
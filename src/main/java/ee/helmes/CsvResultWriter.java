@@ -0,0 +1,100 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes the result of filtering to CSV file (RFC 4180) straight from the winners.<br>
+ *     The file starts with the header {@code name,type,weight}; each rule is written as one line.
+ *     The name is always quoted and its quotes are doubled, so names with commas, quotes
+ *     and line breaks are read back as they are. Rules are encoded to UTF-8 straight into the buffer
+ *     (see {@link ee.helmes.Utf8FileWriter}).
+ */
+class CsvResultWriter extends Utf8FileWriter implements ResultSink {
+
+    /**
+     * Escaped representations of ASCII chars which are not allowed in the quoted CSV field.
+     */
+    private static final byte[][] CSV_ESCAPES = escapes(new char[]{'"'}, new String[]{"\"\""});
+
+    /**
+     * Header line of the CSV file.
+     */
+    private static final byte[] HEADER = bytes("name,type,weight\n");
+
+    /**
+     * Parts of the line of the rule.
+     */
+    private static final byte[] LINE_START = bytes("\""),
+                                NAME_END = bytes("\","),
+                                TYPE_END = bytes(","),
+                                LINE_END = bytes("\n");
+
+    /**
+     * Initializes a newly created {@link ee.helmes.CsvResultWriter} object.<br>
+     * Opens (truncates) the CSV file and writes the header.
+     *
+     * @param resultCsv {@link java.io.File} object for saving results in it.
+     * @throws IOException if the file can not be opened or written.
+     */
+    CsvResultWriter(File resultCsv) throws IOException {
+        super(CSV_ESCAPES);
+        this.open(resultCsv);
+        this.put(HEADER);
+    }
+
+    /**
+     * Writes the line of the rule to the CSV file.
+     *
+     * @param rule {@link ee.helmes.RuleRecord} object to write.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    @Override
+    public void writeRule(RuleRecord rule) throws IOException {
+        this.put(LINE_START);
+        this.putEscaped(rule.getName());
+        this.endLine(rule.getType(), rule.getWeight());
+    }
+
+    /**
+     * Writes the line of the rule with the given UTF-8 encoded name to the CSV file.
+     *
+     * @param name array which holds the UTF-8 bytes of the {@code "name"} attribute value.
+     * @param nameOffset index of the first byte of the name.
+     * @param nameLength number of bytes of the name.
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    @Override
+    public void writeRule(byte[] name, int nameOffset, int nameLength, int type, int weight) throws IOException {
+        this.put(LINE_START);
+        this.putEscaped(name, nameOffset, nameLength);
+        this.endLine(type, weight);
+    }
+
+    /**
+     * Closes the CSV file.
+     *
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closeFile();
+    }
+
+    /**
+     * Writes the type and the weight of the rule and the end of the line.
+     *
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    private void endLine(int type, int weight) throws IOException {
+        this.put(NAME_END);
+        this.putType(type);
+        this.put(TYPE_END);
+        this.putInt(weight);
+        this.put(LINE_END);
+    }
+}
@@ -0,0 +1,505 @@
+package ee.helmes;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Compact binary journal of the filter decisions.<br>
+ *     Each thread which applies filter records its decisions with its own {@link ee.helmes.DecisionJournal.Recorder}.
+ *     The recorder only stores references to the rules in a batch, and full batches are encoded
+ *     and written to the file by the separate journal thread, so the filtering threads do not format
+ *     or write anything.<br>
+ *     The journal starts with {@link DecisionJournal#MAGIC} and contains two kinds of records:<br>
+ *          - name record: {@link DecisionJournal#NAME_RECORD}, {@code int} name id, length of the UTF-8 name in bytes
+ *            as varint (7 bits per byte, the low bits first, the high bit set in all bytes but the last one)
+ *            and the UTF-8 bytes of the name; it precedes the first decision about the name;<br>
+ *          - decision record: {@link DecisionJournal#DECISION_RECORD}, id of the rule as varint, {@code int} name id,
+ *            {@code byte} type, {@code int} weight, {@code byte} {@link ee.helmes.DecisionJournal.Outcome outcome},
+ *            {@code byte} type and {@code int} weight of the opponent rule ({@code 0} if there was no opponent).<br>
+ *     The id of the rule ({@link RuleRecord#getRuleId()}) is given by the parser, so it does not depend on the thread
+ *     which made the decision or on the order in which the threads pass their decisions to the journal: it is
+ *     the ordinal number of the rule element in the input file; in a file parsed by chunks it is the ordinal number
+ *     in the chunk added to the byte offset of the chunk. When several files are filtered together, the number of
+ *     the file is kept in the bits of the id from {@link DecisionJournal#SOURCE_SHIFT}. A rule which was merged from
+ *     the result of another thread keeps its id, so all decisions about the rule have the same id.
+ *     The journal is read by {@link ee.helmes.JournalExplainer}.<br>
+ *     Decisions of a pass whose result is discarded are removed from the journal by {@link DecisionJournal#mark()}
+ *     and {@link DecisionJournal#rollback()}.<br>
+ *     If the journal thread fails or is stopped, it records the failure and the threads which pass decisions
+ *     to it get {@link java.lang.IllegalStateException} instead of waiting for the place in the queue forever.
+ */
+public class DecisionJournal implements Closeable {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * The first {@code int} of the journal file ({@code "FRJ3"}).
+     */
+    static final int MAGIC = 0x46524A33;
+
+    /**
+     * Position of the lowest bit of the number of the file in the id of the rule,
+     * when several files are filtered together.
+     */
+    static final int SOURCE_SHIFT = 40;
+
+    /**
+     * Tag of the name record.
+     */
+    static final byte NAME_RECORD = 1;
+
+    /**
+     * Tag of the decision record.
+     */
+    static final byte DECISION_RECORD = 2;
+
+    /**
+     * Maximum number of decisions in one batch of the {@link ee.helmes.DecisionJournal.Recorder}.
+     */
+    private static final int BATCH_SIZE = 4096;
+
+    /**
+     * Maximum number of batches waiting for the journal thread.
+     */
+    private static final int QUEUE_CAPACITY = 64;
+
+    /**
+     * Time in milliseconds to wait for the place in the queue before checking that the journal thread still works.
+     */
+    private static final long SUBMIT_TIMEOUT_MILLIS = 100;
+
+    /**
+     * Outcome of applying filter to the rule.
+     */
+    public enum Outcome {
+
+        /**
+         * The rule is the first rule with its name.
+         */
+        ADDED,
+
+        /**
+         * The rule outranks the opponent rule with the same name and replaces it.
+         */
+        REPLACED,
+
+        /**
+         * The rule does not outrank the opponent rule with the same name and is rejected.
+         */
+        REJECTED
+    }
+
+    /**
+     * Batches of decisions waiting for the journal thread.
+     */
+    private final BlockingQueue<Batch> batchQueue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    /**
+     * Empty batch which signals the end of the journal to the journal thread.
+     */
+    private final Batch endOfJournal = new Batch(0);
+
+    /**
+     * Empty batch which asks the journal thread to remember the current end of the journal.
+     */
+    private final Batch markRequest = new Batch(0);
+
+    /**
+     * Empty batch which asks the journal thread to remove the records written after the mark.
+     */
+    private final Batch rollbackRequest = new Batch(0);
+
+    /**
+     * Stream of the journal file.
+     */
+    private final FileOutputStream fileOutput;
+
+    /**
+     * Buffered stream of the journal file. Written by the journal thread only.
+     */
+    private final DataOutputStream output;
+
+    /**
+     * Position of the mark in the journal file or {@code -1} if there is no mark. Used by the journal thread only.
+     */
+    private long markPosition = -1;
+
+    /**
+     * Number of the names written to the journal before the mark. Used by the journal thread only.
+     */
+    private int markNames;
+
+    /**
+     * Ids of the names written to the journal. Used by the journal thread only.
+     */
+    private final Map<String, Integer> nameIds = new HashMap<>();
+
+    /**
+     * Thread which encodes batches and writes them to the journal file.
+     */
+    private final Thread journalThread;
+
+    /**
+     * Error which stopped the journal thread or {@code null} if there was no error.
+     * Set before the journal thread stops taking batches.
+     */
+    private volatile IOException failure;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.DecisionJournal} object and starts the journal thread.
+     *
+     * @param journalFile {@link java.io.File} object associated with the journal file.
+     * @throws IOException if the journal file can not be created.
+     */
+    public DecisionJournal(File journalFile) throws IOException {
+        fileOutput = new FileOutputStream(journalFile);
+        output = new DataOutputStream(new BufferedOutputStream(fileOutput, 64 * 1024));
+        try {
+            output.writeInt(MAGIC);
+        }
+        catch (IOException ex){
+            fileOutput.close();
+            throw ex;
+        }
+
+        journalThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                DecisionJournal.this.writeBatches();
+            }
+        }, "JOURNAL_THREAD");
+        journalThread.start();
+    }
+
+    /**
+     * Returns new {@link ee.helmes.DecisionJournal.Recorder} for the current thread.
+     *
+     * @return new {@link ee.helmes.DecisionJournal.Recorder} object.
+     */
+    public Recorder newRecorder() {
+        return new Recorder();
+    }
+
+    /**
+     * Marks the current end of the journal, so the decisions submitted after the mark may be removed
+     * by {@link DecisionJournal#rollback()}.<br>
+     * Should be called before the pass whose result may be discarded, when no recorder has unflushed decisions.
+     *
+     * @throws InterruptedException if the current thread was interrupted.
+     * @throws IllegalStateException if the journal thread was stopped by an error.
+     */
+    public void mark() throws InterruptedException {
+        this.submit(markRequest);
+    }
+
+    /**
+     * Removes the decisions submitted after the {@link DecisionJournal#mark() mark} from the journal,
+     * together with the names which first appeared in them.<br>
+     * Should be called when the result of the pass is discarded and all its recorders were
+     * flushed or {@link Recorder#discard() discarded}; other threads should not record decisions in the meantime.
+     *
+     * @throws InterruptedException if the current thread was interrupted.
+     * @throws IllegalStateException if the journal thread was stopped by an error.
+     */
+    public void rollback() throws InterruptedException {
+        this.submit(rollbackRequest);
+    }
+
+    /**
+     * Waits till the journal thread writes all submitted batches and closes the journal file.<br>
+     * All recorders should be flushed before.
+     *
+     * @throws IOException if the journal was not written completely.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if(failure == null){
+                this.submit(endOfJournal);
+            }
+            journalThread.join();
+        }
+        catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            journalThread.interrupt();
+        }
+        catch (IllegalStateException ex){
+            logger.log(Level.FINE, Thread.currentThread().getName() + ": the journal thread was stopped before the end of the journal", ex);
+        }
+        finally {
+            output.close();
+        }
+        if(failure != null){
+            throw failure;
+        }
+    }
+
+    /**
+     * Passes the batch to the journal thread, waiting for the free place in the queue if necessary.<br>
+     * While waiting, checks every {@value #SUBMIT_TIMEOUT_MILLIS} milliseconds that the journal thread
+     * still takes batches.
+     *
+     * @param batch batch of decisions.
+     * @throws InterruptedException if the current thread was interrupted.
+     * @throws IllegalStateException if the journal thread was stopped by an error.
+     */
+    private void submit(Batch batch) throws InterruptedException {
+        this.checkJournalThread();
+        while (!batchQueue.offer(batch, SUBMIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+            this.checkJournalThread();
+        }
+    }
+
+    /**
+     * Checks that the journal thread was not stopped by an error.
+     *
+     * @throws IllegalStateException if the journal thread was stopped by an error.
+     */
+    private void checkJournalThread() {
+        if(failure != null){
+            throw new IllegalStateException("The decision journal was not written", failure);
+        }
+    }
+
+    /**
+     * Takes batches from the queue and writes them to the journal file till the end of the journal.<br>
+     * If the journal file can not be written or the thread is interrupted or stopped by any other error,
+     * the error is recorded as {@link DecisionJournal#failure} before the thread stops taking batches,
+     * so the threads which wait for the place in the queue do not wait forever.
+     */
+    private void writeBatches() {
+        String threadName = Thread.currentThread().getName();
+        boolean finished = false;
+        try {
+            Batch batch;
+            while ((batch = batchQueue.take()) != endOfJournal) {
+                if(batch == markRequest){
+                    this.setMark();
+                }
+                else if(batch == rollbackRequest){
+                    this.rollbackToMark();
+                }
+                else {
+                    this.writeBatch(batch);
+                }
+            }
+            output.flush();
+            finished = true;
+        }
+        catch (IOException ex){
+            logger.log(Level.SEVERE, threadName + ": the decision journal was not written because of " + ex.toString(), ex);
+            failure = ex;
+        }
+        catch (InterruptedException ex){
+            logger.log(Level.SEVERE, threadName + ": the decision journal was not written because of the InterruptedException", ex);
+            failure = new IOException(ex);
+        }
+        finally {
+            if(!finished && failure == null){
+                failure = new IOException("The journal thread was stopped by an unexpected error");
+            }
+        }
+    }
+
+    /**
+     * Remembers the current end of the journal file and the number of written names.
+     *
+     * @throws IOException if the journal file can not be written.
+     */
+    private void setMark() throws IOException {
+        output.flush();
+        markPosition = fileOutput.getChannel().position();
+        markNames = nameIds.size();
+    }
+
+    /**
+     * Truncates the journal file to the mark and forgets the names written after it.<br>
+     * Does nothing if there is no mark.
+     *
+     * @throws IOException if the journal file can not be truncated.
+     */
+    private void rollbackToMark() throws IOException {
+        if(markPosition < 0){
+            return;
+        }
+        output.flush();
+        fileOutput.getChannel().truncate(markPosition);
+        Iterator<Integer> ids = nameIds.values().iterator();
+        while (ids.hasNext()){
+            if(ids.next() >= markNames){
+                ids.remove();
+            }
+        }
+        markPosition = -1;
+    }
+
+    /**
+     * Encodes the batch of decisions and writes it to the journal file.
+     *
+     * @param batch batch of decisions.
+     * @throws IOException if the journal file can not be written.
+     */
+    private void writeBatch(Batch batch) throws IOException {
+        for(int i = 0; i < batch.length; i++){
+            RuleRecord rule = batch.rules[i];
+            Integer nameId = nameIds.get(rule.getName());
+            if(nameId == null){
+                nameId = nameIds.size();
+                nameIds.put(rule.getName(), nameId);
+                byte[] name = rule.getName().getBytes(StandardCharsets.UTF_8);
+                output.writeByte(NAME_RECORD);
+                output.writeInt(nameId);
+                DecisionJournal.writeVarint(output, name.length);
+                output.write(name);
+            }
+            RuleRecord opponent = batch.opponents[i];
+            output.writeByte(DECISION_RECORD);
+            DecisionJournal.writeVarint(output, rule.getRuleId());
+            output.writeInt(nameId);
+            output.writeByte(rule.getType());
+            output.writeInt(rule.getWeight());
+            output.writeByte(batch.outcomes[i]);
+            output.writeByte(opponent == null ? 0 : opponent.getType());
+            output.writeInt(opponent == null ? 0 : opponent.getWeight());
+        }
+    }
+
+    /**
+     * Writes the non-negative value as varint.
+     *
+     * @param output stream to write.
+     * @param value non-negative value.
+     * @throws IOException if the stream can not be written.
+     */
+    private static void writeVarint(DataOutputStream output, long value) throws IOException {
+        while ((value & ~0x7FL) != 0){
+            output.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+
+    /**
+     * Batch of decisions.
+     */
+    private static final class Batch {
+
+        /**
+         * Rules the filter was applied to.
+         */
+        private final RuleRecord[] rules;
+
+        /**
+         * Opponent rules with the same name or {@code null} if there was no opponent.
+         */
+        private final RuleRecord[] opponents;
+
+        /**
+         * Ordinals of the {@link ee.helmes.DecisionJournal.Outcome outcomes}.
+         */
+        private final byte[] outcomes;
+
+        /**
+         * Number of decisions in the batch.
+         */
+        private int length;
+
+        /**
+         * Initializes a newly created {@link ee.helmes.DecisionJournal.Batch} object.
+         *
+         * @param capacity maximum number of decisions in the batch.
+         */
+        private Batch(int capacity){
+            rules = new RuleRecord[capacity];
+            opponents = new RuleRecord[capacity];
+            outcomes = new byte[capacity];
+        }
+    }
+
+    /**
+     * Collects decisions of one thread into batches and passes full batches to the journal thread.<br>
+     * Recorder is not thread-safe, each thread which applies filter should use its own recorder
+     * and flush it when it finishes filtering.
+     */
+    public final class Recorder {
+
+        /**
+         * Batch which is being filled.
+         */
+        private Batch batch;
+
+        /**
+         * Initializes a newly created {@link ee.helmes.DecisionJournal.Recorder} object.
+         */
+        private Recorder(){
+        }
+
+        /**
+         * Records the decision of the filter.
+         *
+         * @param rule {@link ee.helmes.RuleRecord} object the filter was applied to.
+         * @param outcome outcome of applying filter.
+         * @param opponent {@link ee.helmes.RuleRecord} object with the same name which was replaced by the rule
+         *                 or rejected it, {@code null} if there was no such rule.
+         * @throws IllegalStateException if the journal thread was stopped by an error.
+         */
+        public void record(RuleRecord rule, Outcome outcome, RuleRecord opponent) {
+            if(batch == null){
+                batch = new Batch(BATCH_SIZE);
+            }
+            int index = batch.length++;
+            batch.rules[index] = rule;
+            batch.opponents[index] = opponent;
+            batch.outcomes[index] = (byte) outcome.ordinal();
+            if(batch.length == BATCH_SIZE){
+                this.flush();
+            }
+        }
+
+        /**
+         * Passes the current batch to the journal thread if it is not empty.
+         *
+         * @throws IllegalStateException if the journal thread was stopped by an error.
+         */
+        public void flush() {
+            if(batch == null || batch.length == 0){
+                return;
+            }
+            Batch fullBatch = batch;
+            batch = null;
+            try {
+                DecisionJournal.this.submit(fullBatch);
+            }
+            catch (InterruptedException ex){
+                logger.log(Level.WARNING, Thread.currentThread().getName()
+                                          + ": decisions were not journaled because of the InterruptedException", ex);
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * Drops the decisions of the current batch which were not passed to the journal thread yet.<br>
+         * Is used when the result of filtering is discarded; the batches passed before are removed
+         * by {@link DecisionJournal#rollback()}.
+         */
+        public void discard() {
+            batch = null;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package ee.helmes;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Table of the winners of filtering indexed by the ids of the {@link ee.helmes.NameDictionary}.<br>
+ *     Each name gets the id in the dictionary, which stores the common prefixes of hierarchical names once,
+ *     and the type and the weight of the winner are packed by {@link WinnerTable#pack(int, int)} into
+ *     the {@code long} array indexed by this id. So the table holds no {@link java.lang.String} and no
+ *     {@link ee.helmes.RuleRecord} objects, only primitive arrays, and names are rebuilt from the dictionary
+ *     only when the winners are written (see {@link DictionaryWinnerTable#forEach(WinnerVisitor)}).<br>
+ *     Winners are visited in order of the first occurrence of their names. The table is not thread-safe.
+ */
+public class DictionaryWinnerTable implements WinnerTable {
+
+    /**
+     * Dictionary of the names.
+     */
+    private final NameDictionary dictionary = new NameDictionary();
+
+    /**
+     * Packed winners indexed by the id of the name; {@link WinnerTable#NO_WINNER} for the ids of prefixes
+     * which are not names of rules.
+     */
+    private long[] winners = new long[0];
+
+    /**
+     * Number of winners in the table.
+     */
+    private long size;
+
+    /**
+     * Returns the dictionary of the names.
+     *
+     * @return the dictionary of the names.
+     */
+    public NameDictionary getDictionary() {
+        return dictionary;
+    }
+
+    /**
+     * Returns the number of winners in the table.
+     *
+     * @return the number of winners.
+     */
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of the heap used by the table.
+     *
+     * @return the number of bytes used by the dictionary and the winners.
+     */
+    @Override
+    public long getAllocatedBytes() {
+        return dictionary.getAllocatedBytes() + 8L * winners.length;
+    }
+
+    /**
+     * Returns the winner with the given name packed by {@link WinnerTable#pack(int, int)}.
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param nameLength number of bytes of the name.
+     * @return the packed winner or {@link WinnerTable#NO_WINNER} if there is no winner with this name.
+     */
+    @Override
+    public long get(byte[] name, int nameLength) {
+        int id = dictionary.get(name, nameLength);
+        return id == NameDictionary.NO_ID || id >= winners.length ? NO_WINNER : winners[id];
+    }
+
+    /**
+     * Puts the rule to the table if there is no winner with its name or the rule outranks the winner
+     * (see {@link RuleRecord#outranks(RuleRecord)}), and returns the previous winner.
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param nameLength number of bytes of the name.
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @return the previous winner packed by {@link WinnerTable#pack(int, int)}
+     * or {@link WinnerTable#NO_WINNER} if the rule is the first rule with this name.
+     */
+    @Override
+    public long putIfOutranks(byte[] name, int nameLength, int type, int weight) {
+        int id = dictionary.add(name, nameLength);
+        if(id >= winners.length){
+            int oldLength = winners.length;
+            winners = Arrays.copyOf(winners, Math.max(dictionary.size(), oldLength * 2));
+            Arrays.fill(winners, oldLength, winners.length, NO_WINNER);
+        }
+        long winner = winners[id];
+        if(winner == NO_WINNER){
+            winners[id] = WinnerTable.pack(type, weight);
+            size++;
+            return NO_WINNER;
+        }
+        int winnerType = WinnerTable.unpackType(winner);
+        if(type > winnerType || (type == winnerType && weight > WinnerTable.unpackWeight(winner))){
+            winners[id] = WinnerTable.pack(type, weight);
+        }
+        return winner;
+    }
+
+    /**
+     * Passes all winners to the visitor in order of the ids of their names.<br>
+     * The same array is passed for all names, the visitor should copy it if it needs the name later.
+     *
+     * @param visitor visitor of the winners.
+     * @throws IOException if the visitor throws it.
+     */
+    @Override
+    public void forEach(WinnerVisitor visitor) throws IOException {
+        byte[] name = new byte[256];
+        for(int id = 0; id < winners.length; id++){
+            long winner = winners[id];
+            if(winner == NO_WINNER){
+                continue;
+            }
+            int nameLength = dictionary.getNameLength(id);
+            if(name.length < nameLength){
+                name = new byte[Math.max(nameLength, name.length * 2)];
+            }
+            dictionary.getName(id, name);
+            visitor.visit(name, nameLength, WinnerTable.unpackType(winner), WinnerTable.unpackWeight(winner));
+        }
+    }
+}
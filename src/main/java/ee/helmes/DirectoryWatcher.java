@@ -0,0 +1,451 @@
+package ee.helmes;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Watches the landing directory with {@link java.nio.file.WatchService} and filters XML files as they land.<br>
+ *     Files created or modified in the directory which names pass {@link Main#isXMLFile(String)} are filtered
+ *     by the pool of workers (see {@link Main#filterJob(List, File)}). Results are written to the output
+ *     directory under the same names, or next to the source files with the {@link DirectoryWatcher#RESULT_SUFFIX}
+ *     if the output directory is not set; files with this suffix in the landing directory are not filtered.<br>
+ *     A file is filtered only when its size and modification time did not change during the quiet period,
+ *     so a file which is still being written is filtered once, after the last write. All events of the file
+ *     in the meantime are merged into one. The file which is modified after it was filtered is filtered again;
+ *     the deleted file is forgotten.<br>
+ *     Files which were in the directory before the watcher was started are not filtered.<br>
+ *     Usage: {@code java -cp FilteringRules.jar ee.helmes.DirectoryWatcher landing_directory [output_directory]}
+ */
+public class DirectoryWatcher implements Runnable, Closeable {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * Name of the system property which specifies the number of workers filtering files.<br>
+     * If the property is not set, the number of processors available to the JVM is used.
+     */
+    static final String WATCH_WORKERS_PROPERTY = "filteringRules.watchWorkers";
+
+    /**
+     * Name of the system property which specifies the quiet period in milliseconds.
+     */
+    static final String QUIET_PERIOD_PROPERTY = "filteringRules.watchQuietPeriod";
+
+    /**
+     * Default quiet period in milliseconds.
+     */
+    static final long DEFAULT_QUIET_PERIOD = 1000;
+
+    /**
+     * Suffix of the result files written next to the source files.
+     */
+    static final String RESULT_SUFFIX = "-result.xml";
+
+    /**
+     * Landing directory.
+     */
+    private final Path landingDirectory;
+
+    /**
+     * Directory of the result files or {@code null} if results are written next to the source files.
+     */
+    private final File outputDirectory;
+
+    /**
+     * Time in milliseconds during which the file should not change before it is filtered.
+     */
+    private final long quietPeriod;
+
+    /**
+     * Service which watches the landing directory.
+     */
+    private final WatchService watchService;
+
+    /**
+     * Workers which filter files.
+     */
+    private final ExecutorService workers;
+
+    /**
+     * Files which changed and wait for the end of the quiet period, with their last seen state.
+     * Used by the watching thread only.
+     */
+    private final Map<Path, FileState> pendingFiles = new HashMap<>();
+
+    /**
+     * Files which are being filtered by the workers.
+     */
+    private final Set<Path> filteringFiles = Collections.newSetFromMap(new ConcurrentHashMap<Path, Boolean>());
+
+    /**
+     * Modification times of the filtered files which were not deleted.
+     */
+    private final Map<Path, Long> filteredFiles = new ConcurrentHashMap<>();
+
+    /**
+     * Number of filtered files.
+     */
+    private final AtomicLong filteredCount = new AtomicLong();
+
+    /**
+     * Flag that reflects whether the watcher was closed.
+     */
+    private volatile boolean closed;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.DirectoryWatcher} object and starts watching the landing directory.<br>
+     * Events are handled when {@link DirectoryWatcher#run()} is called.
+     *
+     * @param landingDirectory directory which is watched for XML files.
+     * @param outputDirectory directory of the result files or {@code null} to write results next to the source files.
+     * @param workerCount number of workers which filter files.
+     * @param quietPeriod time in milliseconds during which the file should not change before it is filtered.
+     *
+     * @throws IllegalArgumentException if {@code workerCount} is less than 1, {@code quietPeriod} is negative
+     *                                  or the output directory is the landing directory, so the results
+     *                                  would overwrite the source files.
+     * @throws IOException if the landing directory can not be watched or the output directory can not be created.
+     */
+    public DirectoryWatcher(File landingDirectory, File outputDirectory, int workerCount, long quietPeriod) throws IOException {
+        if(workerCount < 1 || quietPeriod < 0){
+            throw new IllegalArgumentException("Invalid number of workers " + workerCount + " or quiet period " + quietPeriod);
+        }
+        if(!landingDirectory.isDirectory()){
+            throw new IOException("Landing directory " + landingDirectory.getAbsolutePath() + " doesn't exist.");
+        }
+        if(outputDirectory != null && outputDirectory.getCanonicalFile().equals(landingDirectory.getCanonicalFile())){
+            throw new IllegalArgumentException("Output directory " + outputDirectory.getAbsolutePath()
+                                               + " should differ from the landing directory.");
+        }
+        if(outputDirectory != null && !outputDirectory.isDirectory() && !outputDirectory.mkdirs()){
+            throw new IOException("Failed to create output directory " + outputDirectory.getAbsolutePath() + ".");
+        }
+        this.landingDirectory = landingDirectory.toPath().toAbsolutePath();
+        this.outputDirectory = outputDirectory;
+        this.quietPeriod = quietPeriod;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.landingDirectory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY,
+                                       StandardWatchEventKinds.ENTRY_DELETE);
+        this.workers = Executors.newFixedThreadPool(workerCount, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                return new Thread(task, "WATCH_WORKER-" + threadNumber.incrementAndGet());
+            }
+        });
+    }
+
+    /**
+     * The entry point of the watcher.<br>
+     * Watches the landing directory until the JVM is shut down.
+     *
+     * @param args {@link java.lang.String}[] object with pathnames of the landing directory and the optional output directory.
+     *
+     * @throws IllegalArgumentException if input arguments are not valid.
+     * @throws IOException if the landing directory can not be watched.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args == null || args.length < 1 || args.length > 2){
+            throw new IllegalArgumentException("Usage: DirectoryWatcher landing_directory [output_directory]");
+        }
+        Main.configLogger("/logging.properties");
+        PipelineStats.register();
+        final DirectoryWatcher watcher = new DirectoryWatcher(new File(args[0].trim()),
+                args.length == 2 ? new File(args[1].trim()) : null,
+                Main.getIntProperty(WATCH_WORKERS_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                Main.getLongProperty(QUIET_PERIOD_PROPERTY, DEFAULT_QUIET_PERIOD));
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                watcher.close();
+            }
+        }, "SHUTDOWN_THREAD"));
+        Thread watchingThread = new Thread(watcher, "WATCHING_THREAD");
+        watchingThread.start();
+    }
+
+    /**
+     * Handles events of the landing directory and passes files which did not change during the quiet period
+     * to the workers until the watcher is closed.
+     */
+    @Override
+    public void run() {
+        String threadName = Thread.currentThread().getName();
+        logger.info(threadName + ": Watching directory " + landingDirectory + "...");
+        long pollPeriod = Math.max(quietPeriod / 4, 10);
+        try {
+            while (!closed){
+                WatchKey key = watchService.poll(pollPeriod, TimeUnit.MILLISECONDS);
+                if(key != null){
+                    this.handleEvents(key);
+                }
+                this.dispatchQuietFiles();
+            }
+        }
+        catch (ClosedWatchServiceException ex){
+            logger.log(Level.FINE, ex.getMessage(), ex);
+        }
+        catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+        logger.info(threadName + ": Watching directory " + landingDirectory + " was stopped.");
+    }
+
+    /**
+     * Stops watching the landing directory and waits for the workers to finish the files being filtered.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            watchService.close();
+        }
+        catch (IOException ex){
+            logger.log(Level.WARNING, ex.getMessage(), ex);
+        }
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the number of filtered files.
+     *
+     * @return the number of filtered files.
+     */
+    public long getFilteredCount() {
+        return filteredCount.get();
+    }
+
+    /**
+     * Returns the number of filtered files which modification times are remembered.
+     *
+     * @return the number of filtered files which were not deleted.
+     */
+    int getRememberedCount() {
+        return filteredFiles.size();
+    }
+
+    /**
+     * Returns the result file of the source file.
+     *
+     * @param sourceFile source XML file.
+     * @return the result file of the source file.
+     */
+    File getResultFile(File sourceFile) {
+        if(outputDirectory != null){
+            return new File(outputDirectory, sourceFile.getName());
+        }
+        String name = CompressedFiles.removeGzipSuffix(sourceFile.getName());
+        return new File(sourceFile.getParentFile(), name.substring(0, name.length() - 4) + RESULT_SUFFIX);
+    }
+
+    /**
+     * Adds XML files of the events to the pending files and forgets the deleted files.<br>
+     * If events were lost, all XML files of the landing directory are checked.
+     *
+     * @param key key of the landing directory with events.
+     */
+    private void handleEvents(WatchKey key) {
+        for(WatchEvent<?> event : key.pollEvents()){
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW){
+                this.rescan();
+            }
+            else if(event.kind() == StandardWatchEventKinds.ENTRY_DELETE){
+                Path path = landingDirectory.resolve((Path) event.context());
+                pendingFiles.remove(path);
+                filteredFiles.remove(path);
+            }
+            else {
+                this.addPendingFile(landingDirectory.resolve((Path) event.context()));
+            }
+        }
+        key.reset();
+    }
+
+    /**
+     * Forgets the filtered files which were deleted and adds all XML files of the landing directory to the pending files.
+     */
+    private void rescan() {
+        Iterator<Path> iterator = filteredFiles.keySet().iterator();
+        while (iterator.hasNext()){
+            if(!Files.exists(iterator.next())){
+                iterator.remove();
+            }
+        }
+        try (DirectoryStream<Path> directory = Files.newDirectoryStream(landingDirectory)) {
+            for(Path path : directory){
+                this.addPendingFile(path);
+            }
+        }
+        catch (IOException ex){
+            logger.log(Level.WARNING, Thread.currentThread().getName() + ": directory " + landingDirectory
+                                      + " wasn't scanned because of " + ex.toString(), ex);
+        }
+    }
+
+    /**
+     * Adds the file to the pending files if it is a source XML file, which was not filtered
+     * with the same modification time.
+     *
+     * @param path path of the file.
+     */
+    private void addPendingFile(Path path) {
+        String name = path.getFileName().toString();
+        if(!Main.isXMLFile(name) || (outputDirectory == null && name.endsWith(RESULT_SUFFIX))){
+            return;
+        }
+        File file = path.toFile();
+        Long filteredTime = filteredFiles.get(path);
+        if(filteredTime != null && filteredTime == file.lastModified()){
+            return;
+        }
+        if(!pendingFiles.containsKey(path)){
+            pendingFiles.put(path, new FileState(file.length(), file.lastModified(), System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Passes pending files which did not change during the quiet period to the workers.<br>
+     * A file which is being filtered stays pending until the worker finishes it.
+     */
+    private void dispatchQuietFiles() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<Path, FileState>> iterator = pendingFiles.entrySet().iterator();
+        while (iterator.hasNext()){
+            Map.Entry<Path, FileState> entry = iterator.next();
+            final Path path = entry.getKey();
+            File file = path.toFile();
+            if(!file.isFile()){
+                iterator.remove();
+                continue;
+            }
+            FileState state = entry.getValue();
+            long length = file.length();
+            long lastModified = file.lastModified();
+            if(length != state.length || lastModified != state.lastModified){
+                entry.setValue(new FileState(length, lastModified, now));
+                continue;
+            }
+            if(now - state.changeTime < quietPeriod || filteringFiles.contains(path)){
+                continue;
+            }
+            iterator.remove();
+            Long filteredTime = filteredFiles.get(path);
+            if(filteredTime != null && filteredTime == lastModified){
+                continue;
+            }
+            filteringFiles.add(path);
+            final long sourceTime = lastModified;
+            workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    DirectoryWatcher.this.filter(path, sourceTime);
+                }
+            });
+        }
+    }
+
+    /**
+     * Filters the source file and writes its result file.<br>
+     * The modification time of the source file is remembered unless the file was deleted in the meantime,
+     * because the delete event may have been handled before.
+     *
+     * @param path path of the source file.
+     * @param sourceTime modification time of the source file when it was passed to the worker.
+     */
+    private void filter(Path path, long sourceTime) {
+        String threadName = Thread.currentThread().getName();
+        try {
+            File sourceFile = path.toFile();
+            File resultFile = this.getResultFile(sourceFile);
+            List<File> sourceFiles = new ArrayList<>(1);
+            sourceFiles.add(sourceFile);
+            if(Main.filterJob(sourceFiles, resultFile)){
+                logger.info(threadName + ": file " + sourceFile + " was filtered to " + resultFile + ".");
+            }
+            else {
+                logger.warning(threadName + ": file " + sourceFile + " wasn't filtered completely, see the result " + resultFile + ".");
+            }
+            filteredFiles.put(path, sourceTime);
+            if(!Files.exists(path)){
+                filteredFiles.remove(path);
+            }
+            filteredCount.incrementAndGet();
+        }
+        catch (RuntimeException ex){
+            logger.log(Level.SEVERE, threadName + ": file " + path + " wasn't filtered because of " + ex.toString(), ex);
+        }
+        finally {
+            filteringFiles.remove(path);
+        }
+    }
+
+    /**
+     * Size and modification time of the pending file.
+     */
+    private static final class FileState {
+
+        /**
+         * Size of the file in bytes.
+         */
+        private final long length;
+
+        /**
+         * Modification time of the file.
+         */
+        private final long lastModified;
+
+        /**
+         * Time when the change of the file was noticed.
+         */
+        private final long changeTime;
+
+        /**
+         * Initializes a newly created {@link ee.helmes.DirectoryWatcher.FileState} object.
+         *
+         * @param length size of the file in bytes.
+         * @param lastModified modification time of the file.
+         * @param changeTime time when the change of the file was noticed.
+         */
+        FileState(long length, long lastModified, long changeTime){
+            this.length = length;
+            this.lastModified = lastModified;
+            this.changeTime = changeTime;
+        }
+    }
+}
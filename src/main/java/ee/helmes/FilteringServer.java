@@ -0,0 +1,597 @@
+package ee.helmes;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Long-running server which filters rules of many jobs in one warm JVM.<br>
+ *     The server listens on the loopback interface only and accepts jobs by HTTP:<br>
+ *     - {@code POST /filter?source=path[&source=path...][&result=path]} filters the source files
+ *     (each of them may be a directory or a glob pattern as in {@link Main#getSourceFiles(List)});<br>
+ *     - {@code POST /filter[?result=path]} filters the XML document streamed in the request body;<br>
+ *     - {@code GET /status} returns the counters of jobs.<br>
+ *     The response of the job is the result XML document; if the {@code result} parameter is given,
+ *     the result is saved to this file as well. The result file is resolved against the output root directory
+ *     and the jobs whose result file is outside of it are refused with status 400. The result is not transformed to HTML.<br>
+ *     The request body larger than the limit is refused with status 413.<br>
+ *     Each job is parsed by {@link ee.helmes.StAXReader} and filtered in one thread of the fixed pool,
+ *     and threads keep their parser factories between jobs. The number of accepted jobs (running and waiting)
+ *     is limited; when the limit is reached, new jobs are refused with status 503 instead of being queued.<br>
+ *     Usage: {@code java -cp FilteringRules.jar ee.helmes.FilteringServer [port]}
+ */
+public class FilteringServer {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * Name of the system property which specifies the number of threads filtering jobs.<br>
+     * If the property is not set, the number of processors available to the JVM is used.
+     */
+    static final String SERVER_THREADS_PROPERTY = "filteringRules.serverThreads";
+
+    /**
+     * Name of the system property which specifies maximum number of jobs waiting for a free thread.
+     */
+    static final String SERVER_QUEUE_PROPERTY = "filteringRules.serverQueue";
+
+    /**
+     * Name of the system property which specifies the output root directory of the result files.<br>
+     * If the property is not set, the working directory of the server is used.
+     */
+    static final String SERVER_OUTPUT_ROOT_PROPERTY = "filteringRules.serverOutputRoot";
+
+    /**
+     * Name of the system property which specifies maximum size of the request body in bytes.
+     */
+    static final String SERVER_MAX_BODY_PROPERTY = "filteringRules.serverMaxBody";
+
+    /**
+     * Default maximum size of the request body in bytes.
+     */
+    static final long DEFAULT_MAX_BODY = 1L << 30;
+
+    /**
+     * Default port of the server.
+     */
+    static final int DEFAULT_PORT = 8215;
+
+    /**
+     * Default maximum number of jobs waiting for a free thread.
+     */
+    static final int DEFAULT_QUEUE = 64;
+
+    /**
+     * Path of the endpoint which accepts jobs.
+     */
+    static final String FILTER_PATH = "/filter";
+
+    /**
+     * Path of the endpoint which returns the counters of jobs.
+     */
+    static final String STATUS_PATH = "/status";
+
+    /**
+     * Status code of the job which source was not parsed completely.
+     */
+    static final int UNPROCESSABLE_ENTITY = 422;
+
+    /**
+     * Status code of the job which request body is larger than {@link FilteringServer#maxBodySize}.
+     */
+    static final int PAYLOAD_TOO_LARGE = 413;
+
+    /**
+     * Real path of the directory which contains the result files of the jobs.
+     */
+    private final Path outputRoot;
+
+    /**
+     * Maximum size of the request body in bytes.
+     */
+    private final long maxBodySize;
+
+    /**
+     * HTTP server which accepts jobs.
+     */
+    private final HttpServer httpServer;
+
+    /**
+     * Threads which run jobs.
+     */
+    private final ExecutorService jobExecutor;
+
+    /**
+     * Threads which read requests and write responses; their number is limited by {@code jobPermits}.
+     */
+    private final ExecutorService exchangeExecutor;
+
+    /**
+     * Permits of the jobs which are running or waiting for a free thread.
+     */
+    private final Semaphore jobPermits;
+
+    /**
+     * Number of jobs which are running or waiting for a free thread.
+     */
+    private final AtomicInteger runningJobs = new AtomicInteger();
+
+    /**
+     * Counters of finished jobs.
+     */
+    private final AtomicLong completedJobs = new AtomicLong(),
+                             failedJobs = new AtomicLong(),
+                             rejectedJobs = new AtomicLong();
+
+    /**
+     * Initializes a newly created {@link ee.helmes.FilteringServer} object bound to the loopback interface,
+     * which writes the result files under the working directory and accepts request bodies of at most
+     * {@link FilteringServer#DEFAULT_MAX_BODY} bytes.<br>
+     * The server does not accept jobs until {@link FilteringServer#start()} is called.
+     *
+     * @param port port of the server or {@code 0} for any free port.
+     * @param jobThreads number of threads which run jobs.
+     * @param queueCapacity maximum number of jobs waiting for a free thread.
+     *
+     * @throws IllegalArgumentException if {@code jobThreads} is less than 1 or {@code queueCapacity} is negative.
+     * @throws IOException if the port can not be bound.
+     */
+    public FilteringServer(int port, int jobThreads, int queueCapacity) throws IOException {
+        this(port, jobThreads, queueCapacity, new File("."), DEFAULT_MAX_BODY);
+    }
+
+    /**
+     * Initializes a newly created {@link ee.helmes.FilteringServer} object bound to the loopback interface.<br>
+     * The server does not accept jobs until {@link FilteringServer#start()} is called.
+     *
+     * @param port port of the server or {@code 0} for any free port.
+     * @param jobThreads number of threads which run jobs.
+     * @param queueCapacity maximum number of jobs waiting for a free thread.
+     * @param outputRoot directory which contains the result files of the jobs.
+     * @param maxBodySize maximum size of the request body in bytes.
+     *
+     * @throws IllegalArgumentException if {@code jobThreads} is less than 1, {@code queueCapacity} is negative
+     *                                  or {@code maxBodySize} is not positive.
+     * @throws IOException if the output root directory doesn't exist or the port can not be bound.
+     */
+    public FilteringServer(int port, int jobThreads, int queueCapacity, File outputRoot, long maxBodySize) throws IOException {
+        if(jobThreads < 1 || queueCapacity < 0){
+            throw new IllegalArgumentException("Invalid number of threads " + jobThreads + " or queue capacity " + queueCapacity);
+        }
+        if(maxBodySize < 1){
+            throw new IllegalArgumentException("Invalid maximum size of the request body " + maxBodySize);
+        }
+        if(!outputRoot.isDirectory()){
+            throw new IOException("Output root directory " + outputRoot.getAbsolutePath() + " doesn't exist.");
+        }
+        this.outputRoot = outputRoot.toPath().toRealPath();
+        this.maxBodySize = maxBodySize;
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.jobPermits = new Semaphore(jobThreads + queueCapacity);
+        this.jobExecutor = Executors.newFixedThreadPool(jobThreads, new NamedThreadFactory("JOB_THREAD-"));
+        this.exchangeExecutor = Executors.newCachedThreadPool(new NamedThreadFactory("EXCHANGE_THREAD-"));
+
+        httpServer.setExecutor(exchangeExecutor);
+        httpServer.createContext(FILTER_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                FilteringServer.this.handleJob(exchange);
+            }
+        });
+        httpServer.createContext(STATUS_PATH, new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                FilteringServer.this.handleStatus(exchange);
+            }
+        });
+    }
+
+    /**
+     * The entry point of the server.<br>
+     * Starts the server on the given port (or {@link FilteringServer#DEFAULT_PORT}) and stops it
+     * when the JVM is shut down.
+     *
+     * @param args {@link java.lang.String}[] object with the optional port of the server.
+     *
+     * @throws IllegalArgumentException if input arguments are not valid.
+     * @throws IOException if the port can not be bound.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args == null || args.length > 1){
+            throw new IllegalArgumentException("Usage: FilteringServer [port]");
+        }
+        Main.configLogger("/logging.properties");
+        PipelineStats.register();
+        int port = args.length == 1 ? Integer.parseInt(args[0].trim()) : DEFAULT_PORT;
+        final FilteringServer server = new FilteringServer(port,
+                Main.getIntProperty(SERVER_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()),
+                Main.getIntProperty(SERVER_QUEUE_PROPERTY, DEFAULT_QUEUE),
+                new File(System.getProperty(SERVER_OUTPUT_ROOT_PROPERTY, ".")),
+                Main.getLongProperty(SERVER_MAX_BODY_PROPERTY, DEFAULT_MAX_BODY));
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+            @Override
+            public void run() {
+                server.stop(1);
+            }
+        }, "SHUTDOWN_THREAD"));
+        server.start();
+    }
+
+    /**
+     * Starts accepting jobs.
+     */
+    public void start() {
+        httpServer.start();
+        logger.info(Thread.currentThread().getName() + ": Filtering server is listening on " + this.getAddress() + ".");
+    }
+
+    /**
+     * Stops accepting jobs, waits for the running jobs at most {@code delaySeconds} seconds and stops the threads.
+     *
+     * @param delaySeconds maximum time in seconds to wait for the running jobs.
+     */
+    public void stop(int delaySeconds) {
+        String threadName = Thread.currentThread().getName();
+        httpServer.stop(delaySeconds);
+        jobExecutor.shutdown();
+        try {
+            if(!jobExecutor.awaitTermination(delaySeconds, TimeUnit.SECONDS)){
+                jobExecutor.shutdownNow();
+            }
+        }
+        catch (InterruptedException ex){
+            jobExecutor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        exchangeExecutor.shutdownNow();
+        logger.info(threadName + ": Filtering server was stopped.");
+    }
+
+    /**
+     * Returns the address which the server listens on.
+     *
+     * @return the address which the server listens on.
+     */
+    public InetSocketAddress getAddress() {
+        return httpServer.getAddress();
+    }
+
+    /**
+     * Returns the number of jobs which are running or waiting for a free thread.
+     *
+     * @return the number of running jobs.
+     */
+    public int getRunningJobs() {
+        return runningJobs.get();
+    }
+
+    /**
+     * Returns the number of jobs which results were filtered and saved.
+     *
+     * @return the number of completed jobs.
+     */
+    public long getCompletedJobs() {
+        return completedJobs.get();
+    }
+
+    /**
+     * Returns the number of jobs which failed because of invalid requests, sources or errors.
+     *
+     * @return the number of failed jobs.
+     */
+    public long getFailedJobs() {
+        return failedJobs.get();
+    }
+
+    /**
+     * Returns the number of jobs which were refused because the limit of jobs was reached.
+     *
+     * @return the number of rejected jobs.
+     */
+    public long getRejectedJobs() {
+        return rejectedJobs.get();
+    }
+
+    /**
+     * Handles the request to the {@link FilteringServer#FILTER_PATH} endpoint.
+     *
+     * @param exchange HTTP request and response.
+     * @throws IOException if the response can not be sent.
+     */
+    private void handleJob(HttpExchange exchange) throws IOException {
+        String threadName = Thread.currentThread().getName();
+        try {
+            if(!"POST".equalsIgnoreCase(exchange.getRequestMethod())){
+                exchange.getResponseHeaders().set("Allow", "POST");
+                failedJobs.incrementAndGet();
+                FilteringServer.sendText(exchange, 405, "Jobs are accepted by POST only.");
+                return;
+            }
+            if(!jobPermits.tryAcquire()){
+                rejectedJobs.incrementAndGet();
+                FilteringServer.sendText(exchange, 503, "The server is busy, try again later.");
+                return;
+            }
+            runningJobs.incrementAndGet();
+            try {
+                this.runJob(exchange);
+            }
+            finally {
+                runningJobs.decrementAndGet();
+                jobPermits.release();
+            }
+        }
+        catch (IOException | RuntimeException ex){
+            logger.log(Level.WARNING, threadName + ": the job wasn't completed because of " + ex.toString(), ex);
+            failedJobs.incrementAndGet();
+            throw ex;
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Resolves the sources of the job, runs it in the job thread and sends the result.
+     *
+     * @param exchange HTTP request and response.
+     * @throws IOException if the request can not be read or the response can not be sent.
+     */
+    private void runJob(HttpExchange exchange) throws IOException {
+        List<String> sources = new ArrayList<>();
+        String resultName = null;
+        String query = exchange.getRequestURI().getRawQuery();
+        if(query != null){
+            for(String parameter : query.split("&")){
+                int separator = parameter.indexOf('=');
+                String name = separator < 0 ? parameter : parameter.substring(0, separator);
+                String value = separator < 0 ? "" : URLDecoder.decode(parameter.substring(separator + 1), "UTF-8");
+                if("source".equals(name)){
+                    sources.add(value);
+                }
+                else if("result".equals(name)){
+                    resultName = value;
+                }
+            }
+        }
+
+        List<File> temporaryFiles = new ArrayList<>(2);
+        try {
+            final List<File> sourceFiles;
+            if(sources.isEmpty()){
+                File bodyFile = File.createTempFile("job-source", ".xml");
+                temporaryFiles.add(bodyFile);
+                if(!this.copyBody(exchange, bodyFile)){
+                    failedJobs.incrementAndGet();
+                    FilteringServer.sendText(exchange, PAYLOAD_TOO_LARGE, "The request body is larger than " + maxBodySize + " bytes.");
+                    return;
+                }
+                sourceFiles = new ArrayList<>(1);
+                sourceFiles.add(bodyFile);
+            }
+            else {
+                try {
+                    sourceFiles = Main.getSourceFiles(sources);
+                }
+                catch (FileNotFoundException ex){
+                    failedJobs.incrementAndGet();
+                    FilteringServer.sendText(exchange, 400, ex.getMessage());
+                    return;
+                }
+            }
+
+            final File resultFile;
+            if(resultName == null || resultName.isEmpty()){
+                resultFile = File.createTempFile("job-result", ".xml");
+                temporaryFiles.add(resultFile);
+            }
+            else {
+                Path resultPath = this.resolveResultPath(resultName);
+                if(resultPath == null){
+                    failedJobs.incrementAndGet();
+                    FilteringServer.sendText(exchange, 400, "The result file should be in the directory " + outputRoot + ".");
+                    return;
+                }
+                resultFile = Main.getResultFile(resultPath.toString());
+            }
+
+            boolean parsed;
+            try {
+                parsed = jobExecutor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return Main.filterJob(sourceFiles, resultFile);
+                    }
+                }).get();
+            }
+            catch (InterruptedException ex){
+                Thread.currentThread().interrupt();
+                throw new IOException("The job was interrupted.", ex);
+            }
+            catch (ExecutionException ex){
+                throw new IOException("The job failed.", ex.getCause());
+            }
+
+            if(!parsed){
+                failedJobs.incrementAndGet();
+                FilteringServer.sendText(exchange, UNPROCESSABLE_ENTITY, "The source was not parsed or the result was not saved.");
+                return;
+            }
+            completedJobs.incrementAndGet();
+            exchange.getResponseHeaders().set("Content-Type", "application/xml; charset=UTF-8");
+            exchange.sendResponseHeaders(200, resultFile.length());
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                Files.copy(resultFile.toPath(), responseBody);
+            }
+        }
+        finally {
+            for(File temporaryFile : temporaryFiles){
+                if(!temporaryFile.delete() && temporaryFile.exists()){
+                    temporaryFile.deleteOnExit();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns {@code true} if the request body was copied to the file, {@code false} if it is larger
+     * than {@link FilteringServer#maxBodySize}.<br>
+     *     The declared length of the body is checked before reading, and the body sent without the length
+     *     is read till the limit only.
+     *
+     * @param exchange HTTP request and response.
+     * @param bodyFile file which receives the request body.
+     * @return {@code true} if the request body was copied, {@code false} if it is too large.
+     * @throws IOException if the request body can not be read or the file can not be written.
+     */
+    private boolean copyBody(HttpExchange exchange, File bodyFile) throws IOException {
+        String contentLength = exchange.getRequestHeaders().getFirst("Content-Length");
+        if(contentLength != null){
+            try {
+                if(Long.parseLong(contentLength.trim()) > maxBodySize){
+                    return false;
+                }
+            }
+            catch (NumberFormatException ex){
+                throw new IOException("Invalid Content-Length " + contentLength, ex);
+            }
+        }
+        long copied = 0;
+        try (InputStream body = exchange.getRequestBody(); OutputStream output = Files.newOutputStream(bodyFile.toPath())) {
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = body.read(buffer)) > 0){
+                copied += read;
+                if(copied > maxBodySize){
+                    return false;
+                }
+                output.write(buffer, 0, read);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the path of the result file resolved against the {@link FilteringServer#outputRoot}.<br>
+     *     Relative names are resolved against the output root, absolute names should point into it.
+     *     The name is normalized and the real path of its nearest existing ancestor is checked as well,
+     *     so neither {@code ".."} nor symbolic links lead out of the output root.
+     *
+     * @param resultName value of the {@code result} parameter.
+     * @return the path of the result file or {@code null} if it is outside of the output root.
+     */
+    private Path resolveResultPath(String resultName) {
+        try {
+            Path resultPath = outputRoot.resolve(resultName).normalize();
+            if(!resultPath.startsWith(outputRoot) || resultPath.equals(outputRoot)){
+                return null;
+            }
+            Path existingPath = resultPath;
+            while (!Files.exists(existingPath, LinkOption.NOFOLLOW_LINKS)){
+                existingPath = existingPath.getParent();
+            }
+            return existingPath.toRealPath().startsWith(outputRoot) ? resultPath : null;
+        }
+        catch (InvalidPathException | IOException ex){
+            logger.log(Level.FINE, ex.getMessage(), ex);
+            return null;
+        }
+    }
+
+    /**
+     * Handles the request to the {@link FilteringServer#STATUS_PATH} endpoint.
+     *
+     * @param exchange HTTP request and response.
+     * @throws IOException if the response can not be sent.
+     */
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        try {
+            FilteringServer.sendText(exchange, 200, "running=" + runningJobs.get()
+                                                    + " completed=" + completedJobs.get()
+                                                    + " failed=" + failedJobs.get()
+                                                    + " rejected=" + rejectedJobs.get());
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Sends the response with the plain text body.
+     *
+     * @param exchange HTTP request and response.
+     * @param status status code of the response.
+     * @param text body of the response.
+     * @throws IOException if the response can not be sent.
+     */
+    private static void sendText(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] body = (text + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+
+    /**
+     * Factory of the threads named by the prefix and the number of the thread.
+     */
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        /**
+         * Prefix of the thread names.
+         */
+        private final String prefix;
+
+        /**
+         * Number of the last created thread.
+         */
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        /**
+         * Initializes a newly created {@link ee.helmes.FilteringServer.NamedThreadFactory} object.
+         *
+         * @param prefix prefix of the thread names.
+         */
+        NamedThreadFactory(String prefix){
+            this.prefix = prefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, prefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the HTML report of the result of filtering straight from the winners, without XSLT.<br>
+ *     The report has the same table layout as the one produced by {@code /stylesheet.xsl}: a header
+ *     and a row with name, type and weight of each rule. Rows are encoded to UTF-8 straight into
+ *     the buffer (see {@link ee.helmes.Utf8FileWriter}), so the report of millions of rules takes one pass
+ *     over the winners and constant memory.<br>
+ *     When the page has {@code pageRows} rows, the next row starts the next page file:
+ *     {@code result.html}, {@code result-2.html}, {@code result-3.html}... Pages are linked to each other,
+ *     so the browser never has to render one huge table.
+ */
+class HtmlReportWriter extends Utf8FileWriter implements ResultSink {
+
+    /**
+     * Default maximum number of rows in one page of the report.
+     */
+    static final int DEFAULT_PAGE_ROWS = 100000;
+
+    /**
+     * Start of the page up to the table rows.
+     */
+    private static final byte[] PAGE_START = bytes("<html><head><meta http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\">"
+                                                   + "</head><body><h2 align=\"center\">The result of filtering rules:</h2>");
+
+    /**
+     * Start of the table with its header row.
+     */
+    private static final byte[] TABLE_START = bytes("<table border=\"1\" align=\"center\"><tr bgcolor=\"#c0c0c0\">"
+                                                    + "<th>Name </th><th>Type</th><th>Weight </th></tr>");
+
+    /**
+     * End of the table.
+     */
+    private static final byte[] TABLE_END = bytes("</table>");
+
+    /**
+     * End of the page.
+     */
+    private static final byte[] PAGE_END = bytes("</body></html>");
+
+    /**
+     * Parts of the table row.
+     */
+    private static final byte[] ROW_NAME = bytes("<tr><td align=\"center\">"),
+                                ROW_TYPE = bytes("</td><td align=\"center\">"),
+                                ROW_WEIGHT = bytes("</td><td align=\"center\">"),
+                                ROW_END = bytes("</td></tr>");
+
+    /**
+     * Parts of the navigation between pages.
+     */
+    private static final byte[] NAVIGATION_START = bytes("<p align=\"center\">"),
+                                LINK_START = bytes(" <a href=\""),
+                                PREVIOUS_LINK_END = bytes("\">previous</a> "),
+                                NEXT_LINK_END = bytes("\">next</a> "),
+                                NAVIGATION_END = bytes("</p>");
+
+    /**
+     * The first page of the report.
+     */
+    private final File firstPage;
+
+    /**
+     * Maximum number of rows in one page.
+     */
+    private final long pageRows;
+
+    /**
+     * Pages of the report written so far.
+     */
+    private final List<File> pages = new ArrayList<>();
+
+    /**
+     * Number of rows in the current page.
+     */
+    private long rowsInPage;
+
+    /**
+     * Number of rows written to the report.
+     */
+    private long rowCount;
+
+    /**
+     * Flag that reflects whether the report was closed.
+     */
+    private boolean closed;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.HtmlReportWriter} object.<br>
+     * Opens (truncates) the first page of the report and writes its start.
+     *
+     * @param firstPage {@link java.io.File} object of the first page; the next pages are written next to it.
+     * @param pageRows maximum number of rows in one page.
+     *
+     * @throws IllegalArgumentException if {@code pageRows} is less than 1.
+     * @throws IOException if the file can not be opened or written.
+     */
+    HtmlReportWriter(File firstPage, long pageRows) throws IOException {
+        super(XML_ESCAPES);
+        if(pageRows < 1){
+            throw new IllegalArgumentException("Invalid number of rows in one page " + pageRows);
+        }
+        this.firstPage = firstPage;
+        this.pageRows = pageRows;
+        this.startPage();
+    }
+
+    /**
+     * Writes the table row of the rule.
+     *
+     * @param rule {@link ee.helmes.RuleRecord} object to write.
+     * @throws IOException if the report can not be written.
+     */
+    @Override
+    public void writeRule(RuleRecord rule) throws IOException {
+        this.startRow();
+        this.putEscaped(rule.getName());
+        this.endRow(rule.getType(), rule.getWeight());
+    }
+
+    /**
+     * Writes the table row of the rule with the given UTF-8 encoded name.
+     *
+     * @param name array which holds the UTF-8 bytes of the {@code "name"} attribute value.
+     * @param nameOffset index of the first byte of the name.
+     * @param nameLength number of bytes of the name.
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the report can not be written.
+     */
+    @Override
+    public void writeRule(byte[] name, int nameOffset, int nameLength, int type, int weight) throws IOException {
+        this.startRow();
+        this.putEscaped(name, nameOffset, nameLength);
+        this.endRow(type, weight);
+    }
+
+    /**
+     * Returns number of rows written to the report.
+     *
+     * @return number of rows written to the report.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the pages of the report written so far, starting with the first page.
+     *
+     * @return the pages of the report.
+     */
+    public List<File> getPages() {
+        return new ArrayList<>(pages);
+    }
+
+    /**
+     * Writes the end of the last page, closes it and deletes the next pages left by a previous,
+     * longer report of the same file, so the report never links to stale pages.<br>
+     * Closing the closed report has no effect.
+     *
+     * @throws IOException if the report can not be written or a stale page can not be deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed){
+            return;
+        }
+        closed = true;
+        try {
+            this.endPage(false);
+        }
+        finally {
+            this.closeFile();
+        }
+        this.deleteStalePages();
+    }
+
+    /**
+     * Deletes the pages which follow the last page of this report, left by a previous report of the same file.
+     *
+     * @throws IOException if a stale page can not be deleted.
+     */
+    private void deleteStalePages() throws IOException {
+        File page = this.getPage(pages.size() + 1);
+        for(int pageNumber = pages.size() + 2; page.exists(); pageNumber++){
+            if(!page.delete()){
+                throw new IOException("Stale page " + page.getAbsolutePath() + " can not be deleted");
+            }
+            page = this.getPage(pageNumber);
+        }
+    }
+
+    /**
+     * Starts the next page if the current one is full and writes the start of the row.
+     *
+     * @throws IOException if the report can not be written.
+     */
+    private void startRow() throws IOException {
+        if(rowsInPage == pageRows){
+            this.endPage(true);
+            this.startPage();
+        }
+        this.put(ROW_NAME);
+    }
+
+    /**
+     * Writes the type and the weight of the row and the end of the row.
+     *
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the report can not be written.
+     */
+    private void endRow(int type, int weight) throws IOException {
+        this.put(ROW_TYPE);
+        this.putType(type);
+        this.put(ROW_WEIGHT);
+        this.putInt(weight);
+        this.put(ROW_END);
+        rowsInPage++;
+        rowCount++;
+    }
+
+    /**
+     * Opens the next page and writes its start.
+     *
+     * @throws IOException if the page can not be opened or written.
+     */
+    private void startPage() throws IOException {
+        File page = pages.isEmpty() ? firstPage : this.getPage(pages.size() + 1);
+        this.open(page);
+        pages.add(page);
+        rowsInPage = 0;
+        this.put(PAGE_START);
+        this.putNavigation(false);
+        this.put(TABLE_START);
+    }
+
+    /**
+     * Writes the end of the current page.
+     *
+     * @param hasNext {@code true} if the page is followed by the next page.
+     * @throws IOException if the page can not be written.
+     */
+    private void endPage(boolean hasNext) throws IOException {
+        this.put(TABLE_END);
+        this.putNavigation(hasNext);
+        this.put(PAGE_END);
+    }
+
+    /**
+     * Writes links to the previous and the next pages, if there are any.
+     *
+     * @param hasNext {@code true} if the current page is followed by the next page.
+     * @throws IOException if the page can not be written.
+     */
+    private void putNavigation(boolean hasNext) throws IOException {
+        int pageNumber = pages.size();
+        if(pageNumber == 1 && !hasNext){
+            return;
+        }
+        this.put(NAVIGATION_START);
+        if(pageNumber > 1){
+            this.put(LINK_START);
+            this.putEscaped(pages.get(pageNumber - 2).getName());
+            this.put(PREVIOUS_LINK_END);
+        }
+        this.put(bytes("Page " + pageNumber));
+        if(hasNext){
+            this.put(LINK_START);
+            this.putEscaped(this.getPage(pageNumber + 1).getName());
+            this.put(NEXT_LINK_END);
+        }
+        this.put(NAVIGATION_END);
+    }
+
+    /**
+     * Returns the file of the page with the given number.
+     *
+     * @param pageNumber number of the page starting with {@code 1}.
+     * @return the file of the page.
+     */
+    private File getPage(int pageNumber) {
+        if(pageNumber == 1){
+            return firstPage;
+        }
+        String name = firstPage.getName();
+        int dotIndex = name.lastIndexOf('.');
+        String pageName = dotIndex < 0 ? name + "-" + pageNumber
+                                       : name.substring(0, dotIndex) + "-" + pageNumber + name.substring(dotIndex);
+        return new File(firstPage.getAbsoluteFile().getParentFile(), pageName);
+    }
+}
@@ -0,0 +1,260 @@
+package ee.helmes;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Command line tool which replays the {@link ee.helmes.DecisionJournal decision journal}
+ * and explains why the rules with the given name won or lost.<br>
+ *     Threads which filter parts of the input (shards, chunks or files) pass their decisions to the journal
+ *     in any order, and the decisions about the rules met in several parts are made once more when the parts
+ *     are merged. So the decisions are printed in order of the ids of the rules, that is in order of the input,
+ *     and the winner is the rule which outranks all rules which were not rejected and all opponents which
+ *     rejected a rule, whatever decision was written last.<br>
+ *     Usage: {@code java -cp FilteringRules.jar ee.helmes.JournalExplainer journal_file rule_name}
+ */
+public class JournalExplainer {
+
+    /**
+     * Order of the decisions by the ids of the rules.
+     */
+    private static final Comparator<Decision> BY_RULE_ID = new Comparator<Decision>() {
+        @Override
+        public int compare(Decision decision, Decision other) {
+            return Long.compare(decision.rule.getRuleId(), other.rule.getRuleId());
+        }
+    };
+
+    /**
+     * Initializes a newly created {@link ee.helmes.JournalExplainer} object.<br>
+     * Note that use of this constructor is
+     * unnecessary because all methods in this class are {@code static}.
+     */
+    public JournalExplainer(){}
+
+    /**
+     * The entry point of the tool.<br>
+     * Prints the explanation of the decisions about the rule name to the standard output.
+     *
+     * @param args {@link java.lang.String}[] object with pathname of the journal file and the rule name.
+     *
+     * @throws IllegalArgumentException if input arguments are not valid.
+     * @throws IOException if the journal file can not be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args == null || args.length != 2){
+            throw new IllegalArgumentException("Usage: JournalExplainer journal_file rule_name");
+        }
+        JournalExplainer.explain(new File(args[0]), args[1], System.out);
+    }
+
+    /**
+     * Returns the number of decisions about the rule name in the journal.<br>
+     *     Prints each decision with the id of the rule and the reason in order of the ids of the rules
+     *     (decisions about the same rule in order of the journal), and then the rule which won.
+     *
+     * @param journalFile {@link java.io.File} object associated with the journal file.
+     * @param ruleName {@code "name"} attribute value of the rules to explain.
+     * @param out stream for the explanation.
+     * @return the number of decisions about the rule name.
+     * @throws IOException if the journal file can not be read or has invalid format.
+     */
+    public static int explain(File journalFile, String ruleName, PrintStream out) throws IOException {
+        int targetId = -1;
+        long records = 0;
+        List<Decision> decisions = new ArrayList<>();
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile), 64 * 1024))) {
+            if(input.readInt() != DecisionJournal.MAGIC){
+                throw new IOException("File " + journalFile.getAbsolutePath() + " is not a decision journal.");
+            }
+            while (true){
+                int tag = input.read();
+                if(tag < 0){
+                    break;
+                }
+                if(tag == DecisionJournal.NAME_RECORD){
+                    int nameId = input.readInt();
+                    if(ruleName.equals(JournalExplainer.readName(input))){
+                        targetId = nameId;
+                    }
+                }
+                else if(tag == DecisionJournal.DECISION_RECORD){
+                    records++;
+                    long ruleId = JournalExplainer.readVarint(input);
+                    int nameId = input.readInt();
+                    int type = input.readByte();
+                    int weight = input.readInt();
+                    int outcome = input.readByte();
+                    int opponentType = input.readByte();
+                    int opponentWeight = input.readInt();
+                    if(nameId != targetId){
+                        continue;
+                    }
+                    if(outcome < 0 || outcome >= DecisionJournal.Outcome.values().length){
+                        throw new IOException("Invalid outcome " + outcome + " of rule " + JournalExplainer.formatRuleId(ruleId) + ".");
+                    }
+                    decisions.add(new Decision(new RuleRecord(ruleName, type, weight, ruleId),
+                                               DecisionJournal.Outcome.values()[outcome],
+                                               opponentType == 0 ? null : new RuleRecord(ruleName, opponentType, opponentWeight)));
+                }
+                else {
+                    throw new IOException("Invalid record tag " + tag + " after decision record " + records + ".");
+                }
+            }
+        }
+        catch (EOFException ex){
+            throw new IOException("Decision journal " + journalFile.getAbsolutePath() + " is truncated.", ex);
+        }
+
+        Collections.sort(decisions, BY_RULE_ID);
+        RuleRecord winner = null;
+        for(Decision decision : decisions){
+            out.println(JournalExplainer.formatRuleId(decision.rule.getRuleId()) + " "
+                        + JournalExplainer.describe(decision.rule, decision.outcome, decision.opponent));
+            RuleRecord candidate = decision.outcome == DecisionJournal.Outcome.REJECTED ? decision.opponent : decision.rule;
+            if(candidate != null && (winner == null || candidate.outranks(winner))){
+                winner = candidate;
+            }
+        }
+
+        if(winner == null){
+            out.println("There are no valid rules with name \"" + ruleName + "\".");
+        }
+        else {
+            out.println("Winner: " + winner);
+        }
+        return decisions.size();
+    }
+
+    /**
+     * Returns the printed form of the id of the rule: {@code "#"} and the ordinal number of the rule,
+     * or {@code "#"}, the number of the file, {@code ":"} and the ordinal number of the rule in the file
+     * when several files were filtered together (see {@link DecisionJournal#SOURCE_SHIFT}).
+     *
+     * @param ruleId id of the rule.
+     * @return the printed form of the id.
+     */
+    static String formatRuleId(long ruleId) {
+        long source = ruleId >>> DecisionJournal.SOURCE_SHIFT;
+        if(source == 0){
+            return "#" + ruleId;
+        }
+        return "#" + source + ":" + (ruleId & ((1L << DecisionJournal.SOURCE_SHIFT) - 1));
+    }
+
+    /**
+     * Returns the id of the rule written as varint.
+     *
+     * @param input stream of the journal positioned at the id.
+     * @return the id of the rule.
+     * @throws IOException if the stream can not be read or the id is invalid.
+     */
+    private static long readVarint(DataInputStream input) throws IOException {
+        long value = 0;
+        for(int shift = 0; ; shift += 7){
+            int b = input.readUnsignedByte();
+            if(shift > 63 || (shift == 63 && (b & 0x7E) != 0)){
+                throw new IOException("Invalid id of the rule in the decision journal");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                return value;
+            }
+        }
+    }
+
+    /**
+     * Returns the name of the name record: length of the UTF-8 name as varint and the UTF-8 bytes.
+     *
+     * @param input stream of the journal positioned after the name id.
+     * @return the name.
+     * @throws IOException if the stream can not be read or the length is invalid.
+     */
+    private static String readName(DataInputStream input) throws IOException {
+        int length = 0;
+        for(int shift = 0; ; shift += 7){
+            int b = input.readUnsignedByte();
+            if(shift > 28 || (shift == 28 && (b & 0x78) != 0)){
+                throw new IOException("Invalid length of the name in the decision journal");
+            }
+            length |= (b & 0x7F) << shift;
+            if((b & 0x80) == 0){
+                break;
+            }
+        }
+        byte[] name = new byte[length];
+        input.readFully(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the description of the decision about the rule.
+     *
+     * @param rule {@link ee.helmes.RuleRecord} object the filter was applied to.
+     * @param decision outcome of applying filter.
+     * @param opponent {@link ee.helmes.RuleRecord} object which was replaced by the rule or rejected it,
+     *                 {@code null} if there was no such rule.
+     * @return the description of the decision about the rule.
+     */
+    static String describe(RuleRecord rule, DecisionJournal.Outcome decision, RuleRecord opponent) {
+        switch (decision){
+            case ADDED:
+                return rule + " added - the first rule with this name.";
+            case REPLACED:
+                return rule + " replaced " + opponent + " - "
+                       + (rule.getType() > opponent.getType() ? "higher type." : "same type and greater weight.");
+            default:
+                String reason = opponent.getType() > rule.getType() ? "lower type."
+                                : opponent.getWeight() == rule.getWeight() ? "same type and weight, the first rule is kept."
+                                : "same type and smaller weight.";
+                return rule + " rejected in favour of " + opponent + " - " + reason;
+        }
+    }
+
+    /**
+     * Decision about the rule read from the journal.
+     */
+    private static final class Decision {
+
+        /**
+         * {@link ee.helmes.RuleRecord} object the filter was applied to.
+         */
+        private final RuleRecord rule;
+
+        /**
+         * Outcome of applying filter.
+         */
+        private final DecisionJournal.Outcome outcome;
+
+        /**
+         * {@link ee.helmes.RuleRecord} object which was replaced by the rule or rejected it,
+         * {@code null} if there was no such rule.
+         */
+        private final RuleRecord opponent;
+
+        /**
+         * Initializes a newly created {@link ee.helmes.JournalExplainer.Decision} object.
+         *
+         * @param rule {@link ee.helmes.RuleRecord} object the filter was applied to.
+         * @param outcome outcome of applying filter.
+         * @param opponent {@link ee.helmes.RuleRecord} object which was replaced by the rule or rejected it,
+         *                 {@code null} if there was no such rule.
+         */
+        Decision(RuleRecord rule, DecisionJournal.Outcome outcome, RuleRecord opponent){
+            this.rule = rule;
+            this.outcome = outcome;
+            this.opponent = opponent;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes the result of filtering to JSON Lines file straight from the winners.<br>
+ *     Each rule is written as one JSON object on its own line:<br>
+ *     {@code {"name":"..","type":"..","weight":..}}<br>
+ *     Quotes, backslashes and control chars of the name are escaped as JSON requires; other chars
+ *     are written in UTF-8 as they are (see {@link ee.helmes.Utf8FileWriter}).
+ */
+class JsonLinesResultWriter extends Utf8FileWriter implements ResultSink {
+
+    /**
+     * Escaped representations of ASCII chars which are not allowed in JSON strings.
+     */
+    private static final byte[][] JSON_ESCAPES = jsonEscapes();
+
+    /**
+     * Parts of the line of the rule.
+     */
+    private static final byte[] NAME_START = bytes("{\"name\":\""),
+                                TYPE_START = bytes("\",\"type\":\""),
+                                WEIGHT_START = bytes("\",\"weight\":"),
+                                LINE_END = bytes("}\n");
+
+    /**
+     * Initializes a newly created {@link ee.helmes.JsonLinesResultWriter} object.<br>
+     * Opens (truncates) the JSON Lines file.
+     *
+     * @param resultJson {@link java.io.File} object for saving results in it.
+     * @throws IOException if the file can not be opened.
+     */
+    JsonLinesResultWriter(File resultJson) throws IOException {
+        super(JSON_ESCAPES);
+        this.open(resultJson);
+    }
+
+    /**
+     * Writes the line of the rule to the JSON Lines file.
+     *
+     * @param rule {@link ee.helmes.RuleRecord} object to write.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    @Override
+    public void writeRule(RuleRecord rule) throws IOException {
+        this.put(NAME_START);
+        this.putEscaped(rule.getName());
+        this.endLine(rule.getType(), rule.getWeight());
+    }
+
+    /**
+     * Writes the line of the rule with the given UTF-8 encoded name to the JSON Lines file.
+     *
+     * @param name array which holds the UTF-8 bytes of the {@code "name"} attribute value.
+     * @param nameOffset index of the first byte of the name.
+     * @param nameLength number of bytes of the name.
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    @Override
+    public void writeRule(byte[] name, int nameOffset, int nameLength, int type, int weight) throws IOException {
+        this.put(NAME_START);
+        this.putEscaped(name, nameOffset, nameLength);
+        this.endLine(type, weight);
+    }
+
+    /**
+     * Closes the JSON Lines file.
+     *
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    @Override
+    public void close() throws IOException {
+        this.closeFile();
+    }
+
+    /**
+     * Writes the type and the weight of the rule and the end of the line.
+     *
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    private void endLine(int type, int weight) throws IOException {
+        this.put(TYPE_START);
+        this.putType(type);
+        this.put(WEIGHT_START);
+        this.putInt(weight);
+        this.put(LINE_END);
+    }
+
+    /**
+     * Returns the table of escaped representations of quote, backslash and control chars.
+     *
+     * @return the table of escaped representations indexed by char.
+     */
+    private static byte[][] jsonEscapes(){
+        char[] chars = new char[0x22];
+        String[] escapedChars = new String[chars.length];
+        for(char c = 0; c < 0x20; c++){
+            chars[c] = c;
+            escapedChars[c] = String.format("\\u%04x", (int) c);
+        }
+        chars[0x20] = '"';
+        escapedChars[0x20] = "\\\"";
+        chars[0x21] = '\\';
+        escapedChars[0x21] = "\\\\";
+        return escapes(chars, escapedChars);
+    }
+}
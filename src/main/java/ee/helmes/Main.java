@@ -1,10 +1,21 @@
 package ee.helmes;
 
-import org.xml.sax.Attributes;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.*;
 
 
@@ -19,6 +30,117 @@ public class Main {
      */
     private static final Logger logger = Logger.getLogger(Main.class.getName());
 
+    /**
+     * Name of the system property which specifies the number of workers filtering rules.<br>
+     * If the property is not set, the number of processors available to the JVM is used.
+     */
+    static final String FILTER_WORKERS_PROPERTY = "filteringRules.filterWorkers";
+
+    /**
+     * Name of the system property which specifies maximum number of batches
+     * in the {@link ee.helmes.RuleRingBuffer} between parsing and filtering threads.
+     */
+    static final String QUEUE_CAPACITY_PROPERTY = "filteringRules.queueCapacity";
+
+    /**
+     * Name of the system property which specifies maximum number of rules in one batch
+     * of the {@link ee.helmes.RuleRingBuffer}.
+     */
+    static final String BATCH_SIZE_PROPERTY = "filteringRules.batchSize";
+
+    /**
+     * Default maximum number of batches in the {@link ee.helmes.RuleRingBuffer}.
+     */
+    static final int DEFAULT_QUEUE_CAPACITY = 256;
+
+    /**
+     * Default maximum number of rules in one batch of the {@link ee.helmes.RuleRingBuffer}.
+     */
+    static final int DEFAULT_BATCH_SIZE = 1024;
+
+    /**
+     * Name of the system property which specifies size of the input XML file in bytes
+     * below which the file is parsed and filtered in one thread by {@link ee.helmes.StAXReader}.<br>
+     * Value {@code 0} disables single-threaded mode.
+     */
+    static final String SINGLE_THREAD_THRESHOLD_PROPERTY = "filteringRules.singleThreadThreshold";
+
+    /**
+     * Default size of the input XML file in bytes below which single-threaded mode is used.
+     */
+    static final long DEFAULT_SINGLE_THREAD_THRESHOLD = 16L * 1024 * 1024;
+
+    /**
+     * Name of the boolean system property which enables {@link ee.helmes.MappedRuleScanner}
+     * in the parsing thread.<br>
+     * If the scanner meets content it does not understand, the file is parsed by SAX parser.
+     */
+    static final String MAPPED_SCANNER_PROPERTY = "filteringRules.mappedScanner";
+
+    /**
+     * Name of the system property which specifies the number of threads parsing chunks of one input XML file
+     * (see {@link ee.helmes.ChunkedRuleParser}).<br>
+     * Value {@code 1} disables parsing by chunks.
+     */
+    static final String PARSER_THREADS_PROPERTY = "filteringRules.parserThreads";
+
+    /**
+     * Name of the system property which specifies pathname of the {@link ee.helmes.DecisionJournal decision journal}.<br>
+     * If the property is not set, decisions are not journaled.
+     */
+    static final String JOURNAL_PROPERTY = "filteringRules.journal";
+
+    /**
+     * Name of the system property which specifies pathname of the persistent {@link ee.helmes.WinnerIndex winner index}.<br>
+     * If the property is set, the source file is filtered against the winners stored by the previous runs
+     * and the winners are stored back; otherwise all rules come from the source file.
+     */
+    static final String INDEX_PROPERTY = "filteringRules.index";
+
+    /**
+     * Name of the system property which specifies estimated size in bytes of the filtering result in memory
+     * above which the result is spilled to the sorted runs in temporary files (see {@link ee.helmes.RuleRunMerger}).<br>
+     * Value {@code 0} disables spilling. Spilling filters rules in one thread and is not used with the winner index.
+     */
+    static final String SPILL_THRESHOLD_PROPERTY = "filteringRules.spillThreshold";
+
+    /**
+     * Name of the boolean system property which keeps the winners in the {@link ee.helmes.OffHeapWinnerTable}
+     * instead of the heap.<br>
+     * The table is filled in one thread and is not used with the winner index or spilling.
+     */
+    static final String OFF_HEAP_WINNERS_PROPERTY = "filteringRules.offHeapWinners";
+
+    /**
+     * Name of the boolean system property which keeps the winners in the {@link ee.helmes.DictionaryWinnerTable},
+     * which assigns each name an id in the {@link ee.helmes.NameDictionary} sharing common prefixes of the names.<br>
+     * The table is filled in one thread and is not used with the winner index, spilling or the off-heap winner table.
+     */
+    static final String NAME_DICTIONARY_PROPERTY = "filteringRules.nameDictionary";
+
+    /**
+     * Name of the system property which specifies pathname of the custom XSLT stylesheet of the HTML view.<br>
+     * If the property is not set, the HTML view is written straight from the winners by {@link ee.helmes.HtmlReportWriter}.
+     */
+    static final String STYLESHEET_PROPERTY = "filteringRules.stylesheet";
+
+    /**
+     * Name of the system property which specifies maximum number of rows in one page of the HTML view.
+     */
+    static final String HTML_PAGE_ROWS_PROPERTY = "filteringRules.htmlPageRows";
+
+    /**
+     * Name of the system property which specifies the comma-separated list of outputs of the result
+     * (see {@link ee.helmes.OutputFormat}), for example {@code "xml,csv,json"}; {@code "none"} turns off saving of the result.<br>
+     * All outputs are written from one pass over the winners.
+     */
+    static final String OUTPUTS_PROPERTY = "filteringRules.outputs";
+
+    /**
+     * Default outputs of the result.
+     */
+    static final String DEFAULT_OUTPUTS = "xml,html";
+
 
     /**
      * Initializes a newly created {@link ee.helmes.Main} object.<br>
@@ -31,11 +153,23 @@ public class Main {
      * The entry point of the program.<br>
      * Method does the following:<br>
      * -configures {@link java.util.logging.LogManager LogManager};<br>
-     * -initializes two {@link java.io.File Files} associated with input arguments;<br>
-     * -creates two threads: one for parsing input XML file and the second for filtering rules from this file;<br>
-     * -runs the threads and waits for their completion.
+     * -initializes {@link java.io.File Files} associated with input arguments: the last argument is the result file,
+     * the others are source files, directories with source files or glob patterns of source files;<br>
+     * -if there are several source files, parses them concurrently with {@link ee.helmes.MultiFileParser}
+     * into one result;<br>
+     * -if the {@link ee.helmes.Main#INDEX_PROPERTY winner index} is configured, filters the source file
+     * against the stored winners;<br>
+     * -if the source file is smaller than {@link ee.helmes.Main#SINGLE_THREAD_THRESHOLD_PROPERTY threshold},
+     * parses and filters it in the current thread;<br>
+     * -if more than one {@link ee.helmes.Main#PARSER_THREADS_PROPERTY parser thread} is configured
+     * and {@link ee.helmes.Main#SPILL_THRESHOLD_PROPERTY spilling} is off, parses chunks of the source file in parallel;<br>
+     * -otherwise runs two stages on the {@link ee.helmes.PipelineRuntime}: one for parsing input XML file and the second
+     * for filtering rules from this file (the filtering stage shares rules between
+     * {@link ee.helmes.Main#FILTER_WORKERS_PROPERTY filter workers});<br>
+     * -waits for the completion of the stages.
      *
-     * @param args  {@link java.lang.String}[] object with absolute pathname of source and result XML files.
+     * @param args  {@link java.lang.String}[] object with absolute pathnames of source files (directories, glob patterns)
+     *              and of the result XML file.
      *
      * @throws IllegalArgumentException if input arguments are not valid.
      * @throws IOException if {@link java.io.File} associated with result XML file does not exist and method failed to create a new one.
@@ -44,6 +178,7 @@ public class Main {
     public static void main(String[] args) throws IOException,IllegalArgumentException,InterruptedException{
 
         Main.configLogger("/logging.properties");
+        PipelineStats.register();
 
         logger.info(": Starting the application...");
         logger.info(": Checking input arguments:");
@@ -53,21 +188,24 @@ public class Main {
             throw new IllegalArgumentException("Invalid input arguments");
         }
         else {
-            if(!Main.isXMLFile(args[0]) & !Main.isXMLFile(args[1])){
+            if(!Main.isXMLFile(args[args.length - 1]) & (args.length > 2 || !Main.isXMLFile(args[0]))){
                 logger.severe(": Application execution is stopped because of the illegal file extension.");
                 throw new IllegalArgumentException("Illegal file extension.");
             }
         }
 
-        File sourceFile;
+        List<File> sourceFiles;
         File resultFile;
 
         try {
-            sourceFile = Main.getSourceFile(args[0]);
-            resultFile = Main.getResultFile(args[1]);
+            sourceFiles = Main.getSourceFiles(args);
+            resultFile = Main.getResultFile(args[args.length - 1]);
+            if(sourceFiles.size() > 1){
+                sourceFiles.remove(resultFile.getCanonicalFile());
+            }
         }
         catch (FileNotFoundException ex){
-            logger.log(Level.SEVERE,": Invalid input args[0] - file " + args[0] + " doesn't exist.",ex);
+            logger.log(Level.SEVERE,": Invalid input - " + ex.getMessage(),ex);
             throw ex;
         }
         catch (IOException ex){
@@ -75,31 +213,315 @@ public class Main {
             throw ex;
         }
 
-        final LinkedBlockingQueue<Attributes> attributesList = new LinkedBlockingQueue<>();
-        SAXReader saxReader = new SAXReader(sourceFile,attributesList);
-        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile,saxReader);
+        WinnerIndex winnerIndex = Main.getWinnerIndex();
+        if(winnerIndex != null && Main.getLongProperty(SPILL_THRESHOLD_PROPERTY, 0) > 0){
+            logger.warning(": Property " + SPILL_THRESHOLD_PROPERTY + " is ignored because the winner index keeps all winners in memory.");
+        }
+        if(Boolean.getBoolean(OFF_HEAP_WINNERS_PROPERTY) && !Main.isOffHeapWinners()){
+            logger.warning(": Property " + OFF_HEAP_WINNERS_PROPERTY + " is ignored because of the winner index or spilling.");
+        }
+        if(Boolean.getBoolean(NAME_DICTIONARY_PROPERTY) && !Main.isNameDictionary()){
+            logger.warning(": Property " + NAME_DICTIONARY_PROPERTY + " is ignored because of the winner index, spilling or the off-heap winner table.");
+        }
+        DecisionJournal decisionJournal = Main.openDecisionJournal();
+        try {
+            boolean singleFilter = Main.getSpillThreshold() > 0 || Main.isOffHeapWinners() || Main.isNameDictionary();
+            int parserThreads = singleFilter ? 1 : Main.getIntProperty(PARSER_THREADS_PROPERTY, 1);
+            File sourceFile = sourceFiles.get(0);
+            if(sourceFiles.size() > 1){
+                Main.filterFiles(sourceFiles, resultFile, decisionJournal, winnerIndex);
+            }
+            else if(sourceFile.length() < Main.getLongProperty(SINGLE_THREAD_THRESHOLD_PROPERTY, DEFAULT_SINGLE_THREAD_THRESHOLD)){
+                Main.filterInCurrentThread(sourceFile, resultFile, decisionJournal, winnerIndex);
+            }
+            else if(parserThreads > 1 && !CompressedFiles.isCompressed(sourceFile)){
+                Main.filterInChunks(sourceFile, resultFile, parserThreads, decisionJournal, winnerIndex);
+            }
+            else {
+                Main.filterInPipeline(sourceFile, resultFile, decisionJournal, winnerIndex);
+            }
+        }
+        finally {
+            if(decisionJournal != null){
+                decisionJournal.close();
+                logger.info(": Decision journal was saved to " + System.getProperty(JOURNAL_PROPERTY) + ".");
+            }
+        }
 
-        Thread parsingThread =  Main.createParsingThread(saxReader);
-        Thread filteringThread = Main.createFilteringThread(xmlNodeFilter);
+        logger.info(": Filtering of rules was completed.");
 
-        parsingThread.start();
-        filteringThread.start();
+    }
 
+    /**
+     * Parses the source file with {@link ee.helmes.StAXReader} and filters rules in the current thread.
+     *
+     * @param sourceFile {@link java.io.File} object associated with the source XML file.
+     * @param resultFile {@link java.io.File} object associated with the result XML file.
+     * @param decisionJournal journal of the filter decisions or {@code null} if decisions are not journaled.
+     * @param winnerIndex persistent index of the winners or {@code null} if winners are not kept between runs.
+     *
+     * @throws IOException if the winner index can not be read.
+     */
+    static void filterInCurrentThread(File sourceFile, File resultFile, DecisionJournal decisionJournal,
+                                      WinnerIndex winnerIndex) throws IOException{
+        logger.info(": Parsing and filtering rules in the current thread...");
+
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        xmlNodeFilter.setDecisionJournal(decisionJournal);
+        xmlNodeFilter.setWinnerIndex(winnerIndex);
+        xmlNodeFilter.setSpillThreshold(Main.getSpillThreshold());
+        xmlNodeFilter.setWinnerTable(Main.createWinnerTable());
+        Main.configureOutputs(xmlNodeFilter);
+        StAXReader staxReader = new StAXReader(sourceFile, xmlNodeFilter);
+        staxReader.startParsing();
+        xmlNodeFilter.saveResult();
+    }
 
+    /**
+     * Parses several source files concurrently with {@link ee.helmes.MultiFileParser} and saves one merged result.<br>
+     * Each file is parsed in its own thread; the number of threads is limited by {@link Main#PARSER_THREADS_PROPERTY}
+     * and defaults to the number of available processors.
+     *
+     * @param sourceFiles {@link java.io.File} objects associated with the source XML files.
+     * @param resultFile {@link java.io.File} object associated with the result XML file.
+     * @param decisionJournal journal of the filter decisions or {@code null} if decisions are not journaled.
+     * @param winnerIndex persistent index of the winners or {@code null} if winners are not kept between runs.
+     *
+     * @throws IOException if the winner index can not be read.
+     * @throws InterruptedException if the current thread was interrupted while waiting for the files.
+     */
+    static void filterFiles(List<File> sourceFiles, File resultFile, DecisionJournal decisionJournal,
+                            WinnerIndex winnerIndex) throws IOException, InterruptedException{
+        int parserThreads = Main.getIntProperty(PARSER_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors());
+        logger.info(": Parsing and filtering " + sourceFiles.size() + " source files in " + parserThreads + " threads...");
+
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        xmlNodeFilter.setDecisionJournal(decisionJournal);
+        xmlNodeFilter.setWinnerIndex(winnerIndex);
+        xmlNodeFilter.setSpillThreshold(Main.getSpillThreshold());
+        xmlNodeFilter.setWinnerTable(Main.createWinnerTable());
+        Main.configureOutputs(xmlNodeFilter);
+        MultiFileParser multiFileParser = new MultiFileParser(sourceFiles, xmlNodeFilter, parserThreads,
+                                                              Boolean.getBoolean(MAPPED_SCANNER_PROPERTY));
+        multiFileParser.startParsing();
+        xmlNodeFilter.saveResult();
+    }
 
-        try {
+    /**
+     * Returns {@code true} if all source files were parsed and the result was saved, {@code false} otherwise.<br>
+     * Parses the source files one after another with {@link ee.helmes.StAXReader} in the current thread
+     * and saves the result XML file only. This is the job of {@link ee.helmes.FilteringServer}
+     * and {@link ee.helmes.DirectoryWatcher} threads.
+     *
+     * @param sourceFiles {@link java.io.File} objects associated with the source XML files.
+     * @param resultFile {@link java.io.File} object associated with the result XML file.
+     * @return {@code true} if all source files were parsed and the result was saved.
+     */
+    static boolean filterJob(List<File> sourceFiles, File resultFile){
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        xmlNodeFilter.setOutputs(EnumSet.of(OutputFormat.XML));
+        boolean parsed = true;
+        for(File sourceFile : sourceFiles){
+            parsed &= new StAXReader(sourceFile, xmlNodeFilter).startParsing();
+        }
+        return xmlNodeFilter.saveResult() && parsed;
+    }
 
-            parsingThread.join();
-            filteringThread.join();
+    /**
+     * Parses the source file by chunks in parallel with {@link ee.helmes.ChunkedRuleParser}.<br>
+     * If the source file can not be parsed by chunks, parses it with {@link Main#filterInPipeline(File, File, DecisionJournal, WinnerIndex)}.
+     *
+     * @param sourceFile {@link java.io.File} object associated with the source XML file.
+     * @param resultFile {@link java.io.File} object associated with the result XML file.
+     * @param parserThreads number of threads which parse chunks.
+     * @param decisionJournal journal of the filter decisions or {@code null} if decisions are not journaled.
+     * @param winnerIndex persistent index of the winners or {@code null} if winners are not kept between runs.
+     *
+     * @throws IOException if the winner index can not be read.
+     * @throws InterruptedException if threads, that execute parsing XML file and filtering rules were interrupted.
+     */
+    static void filterInChunks(File sourceFile, File resultFile, int parserThreads, DecisionJournal decisionJournal,
+                               WinnerIndex winnerIndex) throws IOException, InterruptedException{
+        logger.info(": Parsing and filtering rules by chunks...");
+
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        xmlNodeFilter.setDecisionJournal(decisionJournal);
+        xmlNodeFilter.setWinnerIndex(winnerIndex);
+        Main.configureOutputs(xmlNodeFilter);
+        ChunkedRuleParser chunkedRuleParser = new ChunkedRuleParser(sourceFile, xmlNodeFilter, parserThreads);
+        if(chunkedRuleParser.startParsing()){
+            xmlNodeFilter.saveResult();
+        }
+        else {
+            Main.filterInPipeline(sourceFile, resultFile, decisionJournal, winnerIndex);
+        }
+    }
+
+    /**
+     * Parses the source file and filters rules in two stages of the {@link ee.helmes.PipelineRuntime}
+     * connected by {@link ee.helmes.RuleRingBuffer}.<br>
+     * The parsing stage runs on the I/O executor of the runtime, the filtering stage on the compute executor.
+     * If any stage fails, the other one is cancelled and the failure is thrown; if the source file can not be
+     * parsed completely, the rules read before the error are saved.
+     *
+     * @param sourceFile {@link java.io.File} object associated with the source XML file.
+     * @param resultFile {@link java.io.File} object associated with the result XML file.
+     * @param decisionJournal journal of the filter decisions or {@code null} if decisions are not journaled.
+     * @param winnerIndex persistent index of the winners or {@code null} if winners are not kept between runs.
+     *
+     * @throws IOException if the winner index can not be read or any stage failed.
+     * @throws InterruptedException if the current thread was interrupted while waiting for the stages.
+     */
+    static void filterInPipeline(File sourceFile, File resultFile, DecisionJournal decisionJournal,
+                                 WinnerIndex winnerIndex) throws IOException, InterruptedException{
+        final RuleRingBuffer ruleBuffer = new RuleRingBuffer(Main.getIntProperty(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY),
+                                                             Main.getIntProperty(BATCH_SIZE_PROPERTY, DEFAULT_BATCH_SIZE));
+        SAXReader saxReader = new SAXReader(sourceFile,ruleBuffer,Boolean.getBoolean(MAPPED_SCANNER_PROPERTY));
+        long spillThreshold = Main.getSpillThreshold();
+        WinnerTable winnerTable = Main.createWinnerTable();
+        int filterWorkers = spillThreshold > 0 || winnerTable != null ? 1
+                            : Main.getIntProperty(FILTER_WORKERS_PROPERTY, Runtime.getRuntime().availableProcessors());
+        logger.info(": Number of filter workers - " + filterWorkers + ".");
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile,saxReader,filterWorkers);
+        xmlNodeFilter.setDecisionJournal(decisionJournal);
+        xmlNodeFilter.setWinnerIndex(winnerIndex);
+        xmlNodeFilter.setSpillThreshold(spillThreshold);
+        xmlNodeFilter.setWinnerTable(winnerTable);
+        Main.configureOutputs(xmlNodeFilter);
+
+        try (PipelineRuntime.Job job = PipelineRuntime.getDefault().newJob()) {
+            logger.info(": Starting stages for parsing input XML file and filtering XML nodes...");
+            Future<Boolean> parsed = job.forkIo("PARSING_THREAD", saxReader);
+            job.fork("FILTER__THREAD", Executors.callable(xmlNodeFilter));
+            job.join();
+            if(!parsed.get()){
+                logger.warning(": The source file " + sourceFile + " was not parsed completely, rules read before the error were saved.");
+            }
         }
         catch (InterruptedException ex){
             logger.log(Level.SEVERE,": Application execution is stopped because of the InterruptedException", ex);
             throw ex;
         }
+        catch (ExecutionException ex){
+            Throwable cause = ex.getCause();
+            logger.log(Level.SEVERE,": Application execution is stopped because of " + cause, cause);
+            if(cause instanceof RuntimeException){
+                throw (RuntimeException) cause;
+            }
+            if(cause instanceof Error){
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Sets the outputs of the result and how the HTML view is produced (see {@link Main#OUTPUTS_PROPERTY},
+     * {@link Main#STYLESHEET_PROPERTY} and {@link Main#HTML_PAGE_ROWS_PROPERTY}).<br>
+     * If the list of outputs has unknown names, {@link Main#DEFAULT_OUTPUTS} are used.
+     *
+     * @param xmlNodeFilter {@link ee.helmes.XMLNodeFilter} object which saves the result.
+     */
+    static void configureOutputs(XMLNodeFilter xmlNodeFilter){
+        String outputs = System.getProperty(OUTPUTS_PROPERTY, DEFAULT_OUTPUTS);
+        try {
+            xmlNodeFilter.setOutputs(OutputFormat.parse(outputs));
+        }
+        catch (IllegalArgumentException ex){
+            logger.warning(": Invalid value \"" + outputs + "\" of property " + OUTPUTS_PROPERTY
+                           + " - default value " + DEFAULT_OUTPUTS + " is used.");
+            xmlNodeFilter.setOutputs(OutputFormat.parse(DEFAULT_OUTPUTS));
+        }
+        String stylesheetName = System.getProperty(STYLESHEET_PROPERTY);
+        File stylesheet = stylesheetName == null || stylesheetName.trim().isEmpty() ? null : new File(stylesheetName.trim());
+        xmlNodeFilter.setHtmlReport(stylesheet, Main.getIntProperty(HTML_PAGE_ROWS_PROPERTY, HtmlReportWriter.DEFAULT_PAGE_ROWS));
+    }
 
+    /**
+     * Returns new {@link ee.helmes.DecisionJournal} for the file specified by {@link Main#JOURNAL_PROPERTY}.
+     *
+     * @return new {@link ee.helmes.DecisionJournal} object or {@code null} if the property is not set.
+     * @throws IOException if the journal file can not be created.
+     */
+    static DecisionJournal openDecisionJournal() throws IOException{
+        String journalFileName = System.getProperty(JOURNAL_PROPERTY);
+        if(journalFileName == null || journalFileName.trim().isEmpty()){
+            return null;
+        }
+        logger.info(": Filter decisions are journaled to " + journalFileName + ".");
+        return new DecisionJournal(new File(journalFileName.trim()));
+    }
 
-        logger.info(": Filtering of rules was completed.");
+    /**
+     * Returns new {@link ee.helmes.WinnerIndex} for the file specified by {@link Main#INDEX_PROPERTY}.
+     *
+     * @return new {@link ee.helmes.WinnerIndex} object or {@code null} if the property is not set.
+     */
+    static WinnerIndex getWinnerIndex(){
+        String indexFileName = System.getProperty(INDEX_PROPERTY);
+        if(indexFileName == null || indexFileName.trim().isEmpty()){
+            return null;
+        }
+        logger.info(": Winners are kept in the index " + indexFileName + ".");
+        return new WinnerIndex(new File(indexFileName.trim()));
+    }
+
+    /**
+     * Returns the spill threshold specified by {@link Main#SPILL_THRESHOLD_PROPERTY}.
+     *
+     * @return estimated size of the filtering result in bytes above which it is spilled,
+     * {@code 0} if the property is not set or the {@link Main#INDEX_PROPERTY winner index} is used.
+     */
+    static long getSpillThreshold(){
+        String indexFileName = System.getProperty(INDEX_PROPERTY);
+        if(indexFileName != null && !indexFileName.trim().isEmpty()){
+            return 0;
+        }
+        return Main.getLongProperty(SPILL_THRESHOLD_PROPERTY, 0);
+    }
+
+    /**
+     * Returns {@code true} if the winners should be kept in the {@link ee.helmes.OffHeapWinnerTable}
+     * (see {@link Main#OFF_HEAP_WINNERS_PROPERTY}), {@code false} otherwise.
+     *
+     * @return {@code true} if the property is {@code "true"} and neither the winner index nor spilling is used.
+     */
+    static boolean isOffHeapWinners(){
+        String indexFileName = System.getProperty(INDEX_PROPERTY);
+        return Boolean.getBoolean(OFF_HEAP_WINNERS_PROPERTY) && Main.getSpillThreshold() == 0
+               && (indexFileName == null || indexFileName.trim().isEmpty());
+    }
+
+    /**
+     * Returns {@code true} if the winners should be kept in the {@link ee.helmes.DictionaryWinnerTable}
+     * (see {@link Main#NAME_DICTIONARY_PROPERTY}), {@code false} otherwise.
+     *
+     * @return {@code true} if the property is {@code "true"} and neither the winner index, spilling
+     * nor the off-heap winner table is used.
+     */
+    static boolean isNameDictionary(){
+        String indexFileName = System.getProperty(INDEX_PROPERTY);
+        return Boolean.getBoolean(NAME_DICTIONARY_PROPERTY) && !Main.isOffHeapWinners() && Main.getSpillThreshold() == 0
+               && (indexFileName == null || indexFileName.trim().isEmpty());
+    }
 
+    /**
+     * Returns new {@link ee.helmes.WinnerTable} if the winners should not be kept in the map of rules:
+     * {@link ee.helmes.OffHeapWinnerTable} if the winners should be kept outside of the heap or
+     * {@link ee.helmes.DictionaryWinnerTable} if the names should be kept in the {@link ee.helmes.NameDictionary}.
+     *
+     * @return new {@link ee.helmes.WinnerTable} object or {@code null} if the winners are kept in the map.
+     */
+    static WinnerTable createWinnerTable(){
+        if(Main.isOffHeapWinners()){
+            logger.info(": Winners are kept in the off-heap table.");
+            return new OffHeapWinnerTable(0);
+        }
+        if(Main.isNameDictionary()){
+            logger.info(": Winners are kept in the table indexed by the name dictionary.");
+            return new DictionaryWinnerTable();
+        }
+        return null;
     }
 
     /**
@@ -132,45 +554,64 @@ public class Main {
     }
 
     /**
-     * Creates {@link java.lang.Thread} object associated with {@link ee.helmes.SAXReader} object.
-     * This thread is responsible for the process of parsing the input XML file.
+     * Returns the positive integer value of the system property with the given name.<br>
+     * If the property is not set or its value is not a positive integer, returns {@code defaultValue}.
      *
-     * @param saxReader {@link ee.helmes.SAXReader} object.
-     *
-     * @return {@link java.lang.Thread} object that responsible for the process of parsing the input XML file.
+     * @param propertyName name of the system property.
+     * @param defaultValue value to return if the property is not set or invalid.
+     * @return the positive integer value of the system property or {@code defaultValue}.
      */
-    static Thread createParsingThread(SAXReader saxReader){
-        logger.info(": Creating thread for parsing input XML file...");
-        Thread parsing_thread = new Thread(saxReader,"PARSING_THREAD");
-
-        return parsing_thread;
+    static int getIntProperty(String propertyName, int defaultValue){
+        String propertyValue = System.getProperty(propertyName);
+        if(propertyValue == null){
+            return defaultValue;
+        }
+        try {
+            int value = Integer.parseInt(propertyValue.trim());
+            if(value > 0){
+                return value;
+            }
+        }
+        catch (NumberFormatException ex){
+            logger.log(Level.FINE, ex.getMessage(), ex);
+        }
+        logger.warning(": Invalid value \"" + propertyValue + "\" of property " + propertyName
+                       + " - default value " + defaultValue + " is used.");
+        return defaultValue;
     }
 
-
     /**
-     * Creates {@link java.lang.Thread} object associated with {@link ee.helmes.XMLNodeFilter} object.<br>
-     * This thread is responsible for the process of filtering {@link org.xml.sax.Attributes} from
-     * {@link java.util.concurrent.LinkedBlockingQueue}.
-     *
-     * @param xmlNodeFilter {@link ee.helmes.XMLNodeFilter} object.
+     * Returns the non-negative long value of the system property with the given name.<br>
+     * If the property is not set or its value is not a non-negative integer, returns {@code defaultValue}.
      *
-     * @return {@link java.lang.Thread} object that responsible for the process of filtering  {@link org.xml.sax.Attributes}.
+     * @param propertyName name of the system property.
+     * @param defaultValue value to return if the property is not set or invalid.
+     * @return the non-negative long value of the system property or {@code defaultValue}.
      */
-    static Thread createFilteringThread(XMLNodeFilter xmlNodeFilter){
-        logger.info(": Creating thread for filtering XML nodes...");
-
-        Thread filterThread = new Thread(xmlNodeFilter,"FILTER__THREAD");
-
-
-        return filterThread;
+    static long getLongProperty(String propertyName, long defaultValue){
+        String propertyValue = System.getProperty(propertyName);
+        if(propertyValue == null){
+            return defaultValue;
+        }
+        try {
+            long value = Long.parseLong(propertyValue.trim());
+            if(value >= 0){
+                return value;
+            }
+        }
+        catch (NumberFormatException ex){
+            logger.log(Level.FINE, ex.getMessage(), ex);
+        }
+        logger.warning(": Invalid value \"" + propertyValue + "\" of property " + propertyName
+                       + " - default value " + defaultValue + " is used.");
+        return defaultValue;
     }
 
-
     /**
      * Validates input arguments with which the program was started.
-     * Checks whether the {@code args} is {@code not null}
-     * or {@code args[0]} and {@code args[1]} are {@code not null}
-     * or {@code args[0].length} and {@code args[1].length} is not less then 5 (without leading and trailing whitespace )
+     * Checks whether the {@code args} is {@code not null} and has at least two elements,
+     * all elements are {@code not null}, source arguments are not empty
+     * and the length of the last (result) argument is not less then 5 (without leading and trailing whitespace )
      * (min 1 character fo file name + 1 character for dot + 3 characters for file extension).
      *
      * @param args {@link java.lang.String}[] object with input parameters.
@@ -181,12 +622,16 @@ public class Main {
 
         boolean valid = false;
 
-        if(args!=null && args.length>=2 && args[0]!=null && args[1]!=null){
-            args[0]=args[0].trim();
-            args[1]=args[1].trim();
-
-            if(args[0].length()>=5 && args[1].length()>=5){
-                valid = true;
+        if(args!=null && args.length>=2){
+            valid = true;
+            for(int i = 0; i < args.length; i++){
+                if(args[i]==null){
+                    return false;
+                }
+                args[i]=args[i].trim();
+                if(args[i].length() < (i == args.length - 1 ? 5 : 1)){
+                    valid = false;
+                }
             }
         }
 
@@ -212,6 +657,83 @@ public class Main {
         return sourceFile;
     }
 
+    /**
+     * Returns {@link java.io.File} objects associated with the source XML files given by input arguments.<br>
+     * All arguments except the last one are sources (see {@link Main#getSourceFiles(List)}).
+     *
+     * @param args {@link java.lang.String}[] object with input parameters.
+     *
+     * @return canonical {@link java.io.File} objects associated with the source XML files.
+     *
+     * @throws FileNotFoundException if a source does not exist or a directory or a pattern has no files.
+     * @throws IOException if a directory can not be read.
+     */
+    static List<File> getSourceFiles(String[] args) throws IOException{
+        return Main.getSourceFiles(Arrays.asList(args).subList(0, args.length - 1));
+    }
+
+    /**
+     * Returns {@link java.io.File} objects associated with the source XML files given by pathnames.<br>
+     * Each source may be a file, a directory (its files with the ".xml" extension are used) or a pathname
+     * which file name part is a glob pattern (see {@link java.nio.file.FileSystem#getPathMatcher(String)}),
+     * for example {@code "data/rules-*.xml"}. Files of a directory or a pattern are sorted by name;
+     * each file is returned once.
+     *
+     * @param sources pathnames of the sources.
+     *
+     * @return canonical {@link java.io.File} objects associated with the source XML files.
+     *
+     * @throws FileNotFoundException if a source does not exist or a directory or a pattern has no files.
+     * @throws IOException if a directory can not be read.
+     */
+    static List<File> getSourceFiles(List<String> sources) throws IOException{
+        Set<File> sourceFiles = new LinkedHashSet<>();
+        for(String sourceName : sources){
+            File source = new File(sourceName);
+            String glob = null;
+            if(!source.exists() && Main.isGlobPattern(source.getName())){
+                glob = source.getName();
+                source = source.getAbsoluteFile().getParentFile();
+            }
+            if(!source.isDirectory()){
+                sourceFiles.add(Main.getSourceFile(sourceName).getCanonicalFile());
+                continue;
+            }
+
+            List<File> directoryFiles = new ArrayList<>();
+            try (DirectoryStream<Path> directory = glob == null ? Files.newDirectoryStream(source.toPath())
+                                                                : Files.newDirectoryStream(source.toPath(), glob)) {
+                for(Path path : directory){
+                    File file = path.toFile();
+                    if(file.isFile() && (glob != null || Main.isXMLFile(file.getName()))){
+                        directoryFiles.add(file.getCanonicalFile());
+                    }
+                }
+            }
+            if(directoryFiles.isEmpty()){
+                throw new FileNotFoundException("Input source " + sourceName + " has no XML files.");
+            }
+            Collections.sort(directoryFiles);
+            sourceFiles.addAll(directoryFiles);
+        }
+        return new ArrayList<>(sourceFiles);
+    }
+
+    /**
+     * Returns {@code true} if the file name contains any of glob pattern characters '*', '?', '[' or '{', {@code false} otherwise.
+     *
+     * @param fileName file name part of the pathname.
+     * @return {@code true} if the file name is a glob pattern.
+     */
+    static boolean isGlobPattern(String fileName){
+        for(int i = 0; i < fileName.length(); i++){
+            if("*?[{".indexOf(fileName.charAt(i)) >= 0){
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Return new {@link java.io.File} object associated with the given pathname of the result file
      * for storing results of filtering rules. Checks whether the result file exists and tries to create
@@ -241,12 +763,13 @@ public class Main {
 
 
     /**
-     * Returns {@code true} if the last chars sequence of given string is ".xml", {@code false} otherwise.
+     * Returns {@code true} if the last chars sequence of given string is ".xml" or ".xml.gz", {@code false} otherwise.
      *
      * @param fileName {@link java.lang.String} object that represents path to file.
-     * @return {@code true} if the last chars sequence of given string is ".xml", {@code false} otherwise.
+     * @return {@code true} if the last chars sequence of given string is ".xml" or ".xml.gz", {@code false} otherwise.
      */
     static boolean  isXMLFile(String fileName){
+        fileName = CompressedFiles.removeGzipSuffix(fileName);
         boolean isXml = false;
         if(fileName == null || fileName.length()<5){
             return isXml;
@@ -0,0 +1,926 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.logging.Logger;
+
+/**
+ * Extracts rules from the input XML file of the fixed format straight from the bytes of the memory-mapped file.<br>
+ *     The scanner understands UTF-8 files of the form
+ *     {@code <rules><rule name=".." type=".." weight=".."/>...</rules>} with optional XML declaration,
+ *     comments and whitespace between elements.<br>
+ *     It does not decode the file to chars, does not build attribute lists and does not process namespaces,
+ *     so it is much faster than {@link javax.xml.parsers.SAXParser}. When the scanner meets anything
+ *     it does not understand (other encodings, DOCTYPE, entity references, CDATA, text, other elements,
+ *     malformed markup), {@link MappedRuleScanner#scan(RuleHandler)} returns {@code false}
+ *     and the caller should parse the file with {@link ee.helmes.SAXReader}.<br>
+ *     The file is mapped by windows of limited size, so files of any size can be scanned.<br>
+ *     The scanner counts the rule elements and the mapped bytes of the last scan on its own instead of counting
+ *     them in {@link ee.helmes.PipelineStats}, so the caller publishes them by {@link MappedRuleScanner#publishStats()}
+ *     only if they are not read again by the other parser.
+ */
+class MappedRuleScanner {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * Default size of the mapped window in bytes.
+     */
+    static final int DEFAULT_WINDOW_SIZE = 1 << 29;
+
+    /**
+     * Value of {@link MappedRuleScanner#current} at the end of the file.
+     */
+    private static final int EOF = -1;
+
+    /**
+     * Names of the elements and attributes encoded to UTF-8.
+     */
+    private static final byte[] RULES = bytes("rules"),
+                                RULE = bytes("rule"),
+                                NAME = bytes(RuleAttr.NAME.getValue()),
+                                TYPE = bytes(RuleAttr.TYPE.getValue()),
+                                WEIGHT = bytes(RuleAttr.WEIGHT.getValue()),
+                                XML = bytes("xml"),
+                                ENCODING = bytes("encoding");
+
+    /**
+     * Handler which receives valid rules from the scanner.
+     */
+    interface RuleHandler {
+
+        /**
+         * Receives the valid rule.
+         *
+         * @param rule {@link ee.helmes.RuleRecord} object.
+         * @throws InterruptedException if the handler was interrupted.
+         */
+        void handleRule(RuleRecord rule) throws InterruptedException;
+    }
+
+    /**
+     * Input XML file for scanning.
+     */
+    private final File xmlFile;
+
+    /**
+     * Maximum size of the mapped window in bytes.
+     */
+    private final int windowSize;
+
+    /**
+     * Channel of the input XML file.
+     */
+    private FileChannel channel;
+
+    /**
+     * Size of the input XML file in bytes.
+     */
+    private long fileSize;
+
+    /**
+     * Currently mapped window of the file.
+     */
+    private MappedByteBuffer window;
+
+    /**
+     * Position of the {@code window} in the file.
+     */
+    private long windowStart;
+
+    /**
+     * Index of the next byte in the {@code window}.
+     */
+    private int index;
+
+    /**
+     * Number of bytes in the {@code window}.
+     */
+    private int limit;
+
+    /**
+     * The current byte or {@link MappedRuleScanner#EOF} at the end of the file.
+     */
+    private int current;
+
+    /**
+     * Flag that reflects whether the end tag of the root element was scanned.
+     */
+    private boolean rootClosed;
+
+    /**
+     * Id of the rule which precedes the first rule element of the file.
+     */
+    private long ruleIdBase;
+
+    /**
+     * Id of the rule which precedes the first rule element of the range of the last scan.
+     */
+    private long rangeIdBase;
+
+    /**
+     * Number of rule elements handled by the last scan, including the invalid ones.
+     */
+    private long scannedRules;
+
+    /**
+     * Number of invalid rule elements handled by the last scan.
+     */
+    private long invalidRules;
+
+    /**
+     * Number of bytes mapped by the last scan.
+     */
+    private long mappedBytes;
+
+    /**
+     * Auxiliary arrays for names and values of the current element.
+     */
+    private final ByteArray markupName = new ByteArray(),
+                            nameValue = new ByteArray(),
+                            typeValue = new ByteArray(),
+                            weightValue = new ByteArray(),
+                            otherValue = new ByteArray();
+
+    /**
+     * Auxiliary variable which stores the name of the current {@link java.lang.Thread}.<br>
+     * Is used in creating messages for {@link java.util.logging.Logger} object
+     */
+    private String threadName;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.MappedRuleScanner} object.
+     *
+     * @param xmlFile {@link java.io.File} object associated with the input source XML file.
+     */
+    MappedRuleScanner(File xmlFile){
+        this(xmlFile, DEFAULT_WINDOW_SIZE);
+    }
+
+    /**
+     * Initializes a newly created {@link ee.helmes.MappedRuleScanner} object.
+     *
+     * @param xmlFile {@link java.io.File} object associated with the input source XML file.
+     * @param windowSize maximum size of the mapped window in bytes.
+     */
+    MappedRuleScanner(File xmlFile, int windowSize){
+        if(xmlFile == null){
+            throw new NullPointerException();
+        }
+        if(windowSize < 1){
+            throw new IllegalArgumentException("Invalid window size " + windowSize);
+        }
+        this.xmlFile = xmlFile;
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Sets the id of the rule which precedes the first rule element of the file.<br>
+     * Is used when several files are filtered together, so the rules of different files have different ids.
+     *
+     * @param ruleIdBase the id of the rule which precedes the first rule element, {@code 0} by default.
+     */
+    void setRuleIdBase(long ruleIdBase) {
+        this.ruleIdBase = ruleIdBase;
+    }
+
+    /**
+     * Returns {@code true} if the whole file was scanned, {@code false} if the scanner met content
+     * it does not understand.<br>
+     *     Valid rules are passed to the {@code handler} in order of the file; invalid ones are logged
+     *     by {@link SAXReader#checkRuleAttributes(String, String, String, String)} and skipped.
+     *     If this method returns {@code false}, some rules may have been passed to the {@code handler} already;
+     *     their number is returned by {@link MappedRuleScanner#getScannedRules()}, so the other parser may skip them.
+     *
+     * @param handler handler which receives valid rules.
+     * @return {@code true} if the whole file was scanned, {@code false} otherwise.
+     * @throws IOException if the file can not be read.
+     * @throws InterruptedException if the {@code handler} was interrupted.
+     */
+    boolean scan(RuleHandler handler) throws IOException, InterruptedException {
+        return this.scanRange(0, Long.MAX_VALUE, handler);
+    }
+
+    /**
+     * Returns {@code true} if the range of the file was scanned, {@code false} if the scanner met content
+     * it does not understand.<br>
+     *     The range which starts at position {@code 0} includes the prologue of the file; other ranges must start
+     *     at the {@code '<'} of the markup inside the root element. The range which ends at the end of the file
+     *     (or at {@link Long#MAX_VALUE}) includes the end tag of the root element and the epilogue of the file.<br>
+     *     The last markup of the range must end exactly at the {@code end} position, otherwise the range is not
+     *     supported. So if the ranges of the file are scanned one after another from position {@code 0},
+     *     each of them proves that the next range starts at the markup and not inside a comment.<br>
+     *     Valid rules are passed to the {@code handler} as {@link MappedRuleScanner#scan(RuleHandler)} does.
+     *     The id of each rule is the ordinal number of its element in the range added to the {@code start} position,
+     *     so the rules of different ranges have different ids (each rule element takes more than one byte) and
+     *     the rules of the range which starts at position {@code 0} are numbered as in the whole file.
+     *
+     * @param start position of the first byte of the range.
+     * @param end position after the last byte of the range.
+     * @param handler handler which receives valid rules.
+     * @return {@code true} if the range was scanned, {@code false} otherwise.
+     * @throws IOException if the file can not be read.
+     * @throws InterruptedException if the {@code handler} was interrupted.
+     */
+    boolean scanRange(long start, long end, RuleHandler handler) throws IOException, InterruptedException {
+        threadName = Thread.currentThread().getName();
+        try (FileChannel fileChannel = FileChannel.open(xmlFile.toPath(), StandardOpenOption.READ)) {
+            channel = fileChannel;
+            fileSize = fileChannel.size();
+            windowStart = start;
+            index = 0;
+            limit = 0;
+            window = null;
+            rootClosed = false;
+            rangeIdBase = ruleIdBase + start;
+            scannedRules = 0;
+            invalidRules = 0;
+            mappedBytes = 0;
+            this.advance();
+
+            boolean scanned = (start > 0 || this.scanPrologue())
+                              && this.scanRules(handler, end)
+                              && (rootClosed ? this.scanEpilogue() : this.position() == end);
+            if(!scanned){
+                logger.info(threadName + ": - unsupported content at byte " + this.position() + " of the file.");
+            }
+            return scanned;
+        }
+        finally {
+            channel = null;
+            window = null;
+        }
+    }
+
+    /**
+     * Returns the number of rule elements handled by the last scan, including the invalid ones.<br>
+     * The rule elements of the file or of the range are handled in order of the file, so if the scan returned
+     * {@code false}, the first rule elements of this number were handled before the unsupported content.
+     *
+     * @return the number of rule elements handled by the last scan.
+     */
+    long getScannedRules() {
+        return scannedRules;
+    }
+
+    /**
+     * Returns the number of invalid rule elements handled by the last scan.
+     *
+     * @return the number of invalid rule elements handled by the last scan.
+     */
+    long getInvalidRules() {
+        return invalidRules;
+    }
+
+    /**
+     * Returns the number of bytes mapped by the last scan.
+     *
+     * @return the number of bytes mapped by the last scan.
+     */
+    long getMappedBytes() {
+        return mappedBytes;
+    }
+
+    /**
+     * Counts the rule elements and the bytes of the last scan in {@link ee.helmes.PipelineStats}.<br>
+     * Should be called when the result of the scan is kept and the file is not read again.
+     */
+    void publishStats() {
+        PipelineStats.get().addParsedRules(scannedRules, invalidRules);
+        PipelineStats.get().countBytesRead(mappedBytes);
+    }
+
+    /**
+     * Scans the optional byte order mark, XML declaration and comments and the start tag of the root element.
+     *
+     * @return {@code true} if the prologue is supported, {@code false} otherwise.
+     * @throws IOException if the file can not be read.
+     */
+    private boolean scanPrologue() throws IOException {
+        if(current == 0xEF){
+            if(this.advance() != 0xBB || this.advance() != 0xBF){
+                return false;
+            }
+            this.advance();
+        }
+        this.skipWhitespace();
+        if(current != '<'){
+            return false;
+        }
+        this.advance();
+        if(current == '?'){
+            this.advance();
+            if(!this.readName(markupName) || !markupName.equalsTo(XML) || !this.scanDeclaration()){
+                return false;
+            }
+            this.skipWhitespace();
+            if(current != '<'){
+                return false;
+            }
+            this.advance();
+        }
+        while (current == '!'){
+            if(!this.skipComment()){
+                return false;
+            }
+            this.skipWhitespace();
+            if(current != '<'){
+                return false;
+            }
+            this.advance();
+        }
+        if(!this.readName(markupName) || !markupName.equalsTo(RULES)){
+            return false;
+        }
+        while (true){
+            boolean hadWhitespace = this.skipWhitespace();
+            if(current == '>'){
+                this.advance();
+                return true;
+            }
+            if(!hadWhitespace || !this.readName(markupName) || !this.readAttributeValue(otherValue)){
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Scans pseudo-attributes of the XML declaration after its target name till {@code "?>"}.<br>
+     * Only UTF-8 encoding (or no encoding declaration) is supported.
+     *
+     * @return {@code true} if the declaration is supported, {@code false} otherwise.
+     * @throws IOException if the file can not be read.
+     */
+    private boolean scanDeclaration() throws IOException {
+        while (true){
+            boolean hadWhitespace = this.skipWhitespace();
+            if(current == '?'){
+                return this.advance() == '>' && this.advance() != EOF;
+            }
+            if(!hadWhitespace || !this.readName(markupName)){
+                return false;
+            }
+            boolean isEncoding = markupName.equalsTo(ENCODING);
+            if(!this.readAttributeValue(otherValue)){
+                return false;
+            }
+            if(isEncoding && !"UTF-8".equalsIgnoreCase(otherValue.toAsciiString())){
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Scans the content of the root element till its end tag or till the {@code end} position,
+     * passing valid rules to the {@code handler}.<br>
+     * Sets {@link MappedRuleScanner#rootClosed} if the end tag of the root element was scanned.
+     *
+     * @param handler handler which receives valid rules.
+     * @param end position at which the scanning stops if the markup starts there.
+     * @return {@code true} if the content is supported, {@code false} otherwise.
+     * @throws IOException if the file can not be read.
+     * @throws InterruptedException if the {@code handler} was interrupted.
+     */
+    private boolean scanRules(RuleHandler handler, long end) throws IOException, InterruptedException {
+        while (true){
+            this.skipWhitespace();
+            if(this.position() >= end){
+                return current == '<';
+            }
+            if(current != '<'){
+                return false;
+            }
+            this.advance();
+            if(current == '!'){
+                if(!this.skipComment()){
+                    return false;
+                }
+            }
+            else if(current == '/'){
+                this.advance();
+                if(!this.readName(markupName) || !markupName.equalsTo(RULES)){
+                    return false;
+                }
+                this.skipWhitespace();
+                if(current != '>'){
+                    return false;
+                }
+                this.advance();
+                rootClosed = true;
+                return true;
+            }
+            else if(!this.scanRule(handler)){
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Scans the rule element after its {@code '<'} and passes the rule to the {@code handler} if it is valid.
+     *
+     * @param handler handler which receives valid rules.
+     * @return {@code true} if the element is supported, {@code false} otherwise.
+     * @throws IOException if the file can not be read.
+     * @throws InterruptedException if the {@code handler} was interrupted.
+     */
+    private boolean scanRule(RuleHandler handler) throws IOException, InterruptedException {
+        if(!this.readName(markupName) || !markupName.equalsTo(RULE)){
+            return false;
+        }
+        boolean hasName = false;
+        boolean hasType = false;
+        boolean hasWeight = false;
+
+        while (true){
+            boolean hadWhitespace = this.skipWhitespace();
+            if(current == '/' || current == '>'){
+                break;
+            }
+            if(!hadWhitespace || !this.readName(markupName)){
+                return false;
+            }
+            ByteArray value = otherValue;
+            if(markupName.equalsTo(NAME)){
+                if(hasName){
+                    return false;
+                }
+                hasName = true;
+                value = nameValue;
+            }
+            else if(markupName.equalsTo(TYPE)){
+                if(hasType){
+                    return false;
+                }
+                hasType = true;
+                value = typeValue;
+            }
+            else if(markupName.equalsTo(WEIGHT)){
+                if(hasWeight){
+                    return false;
+                }
+                hasWeight = true;
+                value = weightValue;
+            }
+            if(!this.readAttributeValue(value)){
+                return false;
+            }
+        }
+
+        if(current == '/'){
+            if(this.advance() != '>'){
+                return false;
+            }
+        }
+        else {
+            this.advance();
+            this.skipWhitespace();
+            if(current != '<' || this.advance() != '/'){
+                return false;
+            }
+            this.advance();
+            if(!this.readName(markupName) || !markupName.equalsTo(RULE)){
+                return false;
+            }
+            this.skipWhitespace();
+            if(current != '>'){
+                return false;
+            }
+        }
+        this.advance();
+
+        return this.handleRule(handler, hasName, hasType, hasWeight);
+    }
+
+    /**
+     * Validates the attribute values of the scanned rule and passes the rule to the {@code handler} if they are valid.
+     *
+     * @param handler handler which receives valid rules.
+     * @param hasName {@code true} if the rule has {@code "name"} attribute.
+     * @param hasType {@code true} if the rule has {@code "type"} attribute.
+     * @param hasWeight {@code true} if the rule has {@code "weight"} attribute.
+     * @return {@code true} if the values are supported, {@code false} if the name is not a valid UTF-8 sequence.
+     * @throws InterruptedException if the {@code handler} was interrupted.
+     */
+    private boolean handleRule(RuleHandler handler, boolean hasName, boolean hasType, boolean hasWeight) throws InterruptedException {
+        String name = hasName ? nameValue.toUtf8String() : null;
+        if(hasName && name == null){
+            return false;
+        }
+        int type = hasType ? MappedRuleScanner.parseType(typeValue) : 0;
+        int weight = hasWeight ? MappedRuleScanner.parseWeight(weightValue) : 0;
+
+        scannedRules++;
+        if(name != null && name.length() > 0 && type != 0 && weight > 0){
+            handler.handleRule(new RuleRecord(name, type, weight, rangeIdBase + scannedRules));
+        }
+        else {
+            invalidRules++;
+            SAXReader.checkRuleAttributes(name,
+                                          hasType ? typeValue.toUtf8String() : null,
+                                          hasWeight ? weightValue.toUtf8String() : null,
+                                          threadName);
+        }
+        return true;
+    }
+
+    /**
+     * Scans whitespace and comments after the end tag of the root element till the end of the file.
+     *
+     * @return {@code true} if there is nothing but whitespace and comments, {@code false} otherwise.
+     * @throws IOException if the file can not be read.
+     */
+    private boolean scanEpilogue() throws IOException {
+        while (true){
+            this.skipWhitespace();
+            if(current == EOF){
+                return true;
+            }
+            if(current != '<' || this.advance() != '!' || !this.skipComment()){
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Skips the comment after its {@code "<!"}.
+     *
+     * @return {@code true} if the comment was skipped, {@code false} if it is not a well-formed comment.
+     * @throws IOException if the file can not be read.
+     */
+    private boolean skipComment() throws IOException {
+        if(this.advance() != '-' || this.advance() != '-'){
+            return false;
+        }
+        int dashes = 0;
+        while (this.advance() != EOF){
+            if(current == '-'){
+                dashes++;
+            }
+            else {
+                if(dashes >= 2){
+                    if(current == '>' && dashes == 2){
+                        this.advance();
+                        return true;
+                    }
+                    return false;
+                }
+                dashes = 0;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Skips whitespace chars.
+     *
+     * @return {@code true} if at least one char was skipped, {@code false} otherwise.
+     * @throws IOException if the file can not be read.
+     */
+    private boolean skipWhitespace() throws IOException {
+        boolean skipped = false;
+        while (current == ' ' || current == '\n' || current == '\t' || current == '\r'){
+            this.advance();
+            skipped = true;
+        }
+        return skipped;
+    }
+
+    /**
+     * Reads the name of the element or attribute.<br>
+     * Names with namespace prefixes are not supported.
+     *
+     * @param name array for the name.
+     * @return {@code true} if the name was read, {@code false} otherwise.
+     * @throws IOException if the file can not be read.
+     */
+    private boolean readName(ByteArray name) throws IOException {
+        name.clear();
+        while (current != EOF && current != ' ' && current != '\n' && current != '\t' && current != '\r'
+               && current != '=' && current != '/' && current != '>' && current != '<' && current != '?'){
+            if(current == ':' || current == '&' || current == '"' || current == '\''){
+                return false;
+            }
+            name.add(current);
+            this.advance();
+        }
+        return name.length > 0;
+    }
+
+    /**
+     * Reads {@code ="value"} part of the attribute.<br>
+     * Whitespace chars of the value are normalized to spaces as XML parser does;
+     * values with entity or character references are not supported.
+     *
+     * @param value array for the value.
+     * @return {@code true} if the value was read, {@code false} otherwise.
+     * @throws IOException if the file can not be read.
+     */
+    private boolean readAttributeValue(ByteArray value) throws IOException {
+        this.skipWhitespace();
+        if(current != '='){
+            return false;
+        }
+        this.advance();
+        this.skipWhitespace();
+        int quote = current;
+        if(quote != '"' && quote != '\''){
+            return false;
+        }
+        value.clear();
+        while (this.advance() != quote){
+            switch (current){
+                case EOF:
+                case '<':
+                case '&':
+                    return false;
+                case '\r':
+                    if(this.peek() == '\n'){
+                        this.advance();
+                    }
+                    value.add(' ');
+                    break;
+                case '\n':
+                case '\t':
+                    value.add(' ');
+                    break;
+                default:
+                    value.add(current);
+            }
+        }
+        this.advance();
+        return true;
+    }
+
+    /**
+     * Moves to the next byte of the file, mapping the next window if necessary.
+     *
+     * @return the next byte or {@link MappedRuleScanner#EOF} at the end of the file.
+     * @throws IOException if the file can not be mapped.
+     */
+    private int advance() throws IOException {
+        if(index == limit && !this.mapNextWindow()){
+            current = EOF;
+        }
+        else {
+            current = window.get(index++) & 0xFF;
+        }
+        return current;
+    }
+
+    /**
+     * Returns the byte after the current one without moving to it.
+     *
+     * @return the byte after the current one or {@link MappedRuleScanner#EOF} at the end of the file.
+     * @throws IOException if the file can not be mapped.
+     */
+    private int peek() throws IOException {
+        if(index == limit){
+            long nextPosition = windowStart + limit;
+            if(nextPosition >= fileSize){
+                return EOF;
+            }
+            ByteBuffer oneByte = ByteBuffer.allocate(1);
+            channel.read(oneByte, nextPosition);
+            return oneByte.get(0) & 0xFF;
+        }
+        return window.get(index) & 0xFF;
+    }
+
+    /**
+     * Maps the next window of the file.
+     *
+     * @return {@code true} if the window was mapped, {@code false} at the end of the file.
+     * @throws IOException if the file can not be mapped.
+     */
+    private boolean mapNextWindow() throws IOException {
+        long nextStart = windowStart + limit;
+        if(nextStart >= fileSize){
+            return false;
+        }
+        int size = (int) Math.min(windowSize, fileSize - nextStart);
+        window = channel.map(FileChannel.MapMode.READ_ONLY, nextStart, size);
+        mappedBytes += size;
+        windowStart = nextStart;
+        index = 0;
+        limit = size;
+        return true;
+    }
+
+    /**
+     * Returns position of the current byte in the file.
+     *
+     * @return position of the current byte in the file.
+     */
+    private long position() {
+        return current == EOF ? fileSize : windowStart + index - 1;
+    }
+
+    /**
+     * Returns integer representation of {@code "type"} attribute value (see {@link NodeType#getType(String)}).
+     *
+     * @param value {@code "type"} attribute value encoded to UTF-8.
+     * @return integer representation of {@code "type"} attribute value or {@code 0} if the value is not valid.
+     */
+    static int parseType(ByteArray value){
+        if(!value.isAscii()){
+            String type = value.toUtf8String();
+            return type == null ? 0 : NodeType.getType(type);
+        }
+        for(int type = 1; type <= NodeType.values().length; type++){
+            if(value.equalsIgnoreCase(NodeType.getTypeName(type))){
+                return type;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns {@code "weight"} attribute value as {@link Integer#parseInt(String)} does.
+     *
+     * @param value {@code "weight"} attribute value encoded to UTF-8.
+     * @return {@code "weight"} attribute value or {@code 0} if the value is not an integer.
+     */
+    static int parseWeight(ByteArray value){
+        if(!value.isAscii()){
+            String weight = value.toUtf8String();
+            try {
+                return weight == null ? 0 : Math.max(Integer.parseInt(weight), 0);
+            }
+            catch (NumberFormatException ex){
+                return 0;
+            }
+        }
+        int length = value.length;
+        if(length == 0){
+            return 0;
+        }
+        int i = 0;
+        boolean negative = false;
+        if(value.bytes[0] == '-' || value.bytes[0] == '+'){
+            negative = value.bytes[0] == '-';
+            i++;
+            if(length == 1){
+                return 0;
+            }
+        }
+        long weight = 0;
+        for(; i < length; i++){
+            int digit = value.bytes[i] - '0';
+            if(digit < 0 || digit > 9){
+                return 0;
+            }
+            weight = weight * 10 + digit;
+            if(weight > Integer.MAX_VALUE){
+                return 0;
+            }
+        }
+        return negative ? 0 : (int) weight;
+    }
+
+    /**
+     * Returns the given string encoded to UTF-8.
+     *
+     * @param value string to encode.
+     * @return the given string encoded to UTF-8.
+     */
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Growable array of bytes for names and values of the scanned markup.
+     */
+    static final class ByteArray {
+
+        /**
+         * Bytes of the array.
+         */
+        byte[] bytes = new byte[64];
+
+        /**
+         * Number of bytes in the array.
+         */
+        int length;
+
+        /**
+         * Flag which reflects whether all bytes of the array are ASCII chars.
+         */
+        private boolean ascii = true;
+
+        /**
+         * Removes all bytes from the array.
+         */
+        void clear(){
+            length = 0;
+            ascii = true;
+        }
+
+        /**
+         * Adds the byte to the array.
+         *
+         * @param value byte to add.
+         */
+        void add(int value){
+            if(length == bytes.length){
+                bytes = Arrays.copyOf(bytes, length << 1);
+            }
+            bytes[length++] = (byte) value;
+            ascii &= value < 0x80;
+        }
+
+        /**
+         * Returns {@code true} if all bytes of the array are ASCII chars.
+         *
+         * @return {@code true} if all bytes of the array are ASCII chars.
+         */
+        boolean isAscii(){
+            return ascii;
+        }
+
+        /**
+         * Returns {@code true} if the array contains the same bytes as the given array.
+         *
+         * @param other bytes to compare with.
+         * @return {@code true} if the array contains the same bytes as the given array.
+         */
+        boolean equalsTo(byte[] other){
+            if(length != other.length){
+                return false;
+            }
+            for(int i = 0; i < length; i++){
+                if(bytes[i] != other[i]){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns {@code true} if the array contains the ASCII chars of the given string ignoring case.
+         *
+         * @param other ASCII string to compare with.
+         * @return {@code true} if the array contains the ASCII chars of the given string ignoring case.
+         */
+        boolean equalsIgnoreCase(String other){
+            if(length != other.length()){
+                return false;
+            }
+            for(int i = 0; i < length; i++){
+                int c = bytes[i];
+                if(c >= 'A' && c <= 'Z'){
+                    c += 'a' - 'A';
+                }
+                int o = other.charAt(i);
+                if(o >= 'A' && o <= 'Z'){
+                    o += 'a' - 'A';
+                }
+                if(c != o){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the string of the ASCII chars of the array.
+         *
+         * @return the string of the ASCII chars of the array.
+         */
+        String toAsciiString(){
+            return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * Returns the string decoded from the UTF-8 bytes of the array.
+         *
+         * @return the decoded string or {@code null} if the bytes are not a valid UTF-8 sequence.
+         */
+        String toUtf8String(){
+            if(ascii){
+                return this.toAsciiString();
+            }
+            try {
+                CharBuffer chars = StandardCharsets.UTF_8.newDecoder()
+                                                         .onMalformedInput(CodingErrorAction.REPORT)
+                                                         .onUnmappableCharacter(CodingErrorAction.REPORT)
+                                                         .decode(ByteBuffer.wrap(bytes, 0, length));
+                return chars.toString();
+            }
+            catch (CharacterCodingException ex){
+                return null;
+            }
+        }
+    }
+}
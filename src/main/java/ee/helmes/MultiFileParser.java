@@ -0,0 +1,237 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Parses several input XML files concurrently into one result of filtering.<br>
+ *     Each file is parsed and filtered in one thread of the pool into its own map: by {@link ee.helmes.MappedRuleScanner}
+ *     if it is enabled and supports the file, otherwise by {@link ee.helmes.StAXReader}, which skips the rules
+ *     filtered by the scanner before it met unsupported content.
+ *     The maps are merged into the target {@link ee.helmes.XMLNodeFilter} in order of the files with the same
+ *     precedence rules (see {@link XMLNodeFilter#mergeFilteredNodes(Map)}), so the result does not depend on
+ *     which file is parsed first.<br>
+ *     A file which can not be parsed is reported, and the rules read from it before the error are still merged,
+ *     as it is done for one input file.
+ */
+public class MultiFileParser {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * Input XML files for parsing.
+     */
+    private final List<File> xmlFiles;
+
+    /**
+     * {@code XMLNodeFilter} object which receives the result of filtering of all files.
+     */
+    private final XMLNodeFilter xmlNodeFilter;
+
+    /**
+     * Number of threads which parse files.
+     */
+    private final int parserThreads;
+
+    /**
+     * {@code true} if files are scanned by {@link ee.helmes.MappedRuleScanner} first.
+     */
+    private final boolean mappedScannerEnabled;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.MultiFileParser} object.
+     *
+     * @param xmlFiles {@link java.io.File} objects associated with the input source XML files.
+     * @param xmlNodeFilter {@link ee.helmes.XMLNodeFilter} object which receives the result of filtering.
+     * @param parserThreads number of threads which parse files.
+     * @param mappedScannerEnabled {@code true} if files should be scanned by {@link ee.helmes.MappedRuleScanner} first.
+     *
+     * @throws IllegalArgumentException if {@code parserThreads} is less than 1.
+     */
+    public MultiFileParser(List<File> xmlFiles, XMLNodeFilter xmlNodeFilter, int parserThreads, boolean mappedScannerEnabled){
+        if(xmlFiles == null || xmlNodeFilter == null){
+            throw new NullPointerException();
+        }
+        if(parserThreads < 1){
+            throw new IllegalArgumentException("Invalid number of parser threads " + parserThreads);
+        }
+        this.xmlFiles = new ArrayList<>(xmlFiles);
+        this.xmlNodeFilter = xmlNodeFilter;
+        this.parserThreads = parserThreads;
+        this.mappedScannerEnabled = mappedScannerEnabled;
+    }
+
+    /**
+     * Returns {@code true} if all input XML files were parsed, {@code false} otherwise.<br>
+     *     Rules of all files, including the rules read before an error, are merged into the filter.
+     *
+     * @return {@code true} if all input XML files were parsed, {@code false} otherwise.
+     * @throws InterruptedException if the current thread was interrupted while waiting for the files.
+     */
+    public boolean startParsing() throws InterruptedException {
+        String threadName = Thread.currentThread().getName();
+        int threads = Math.min(parserThreads, Math.max(xmlFiles.size(), 1));
+        logger.info(threadName + ": " + xmlFiles.size() + " XML files are being parsed in " + threads + " threads...");
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable task) {
+                return new Thread(task, "FILE_PARSING_THREAD-" + threadNumber.incrementAndGet());
+            }
+        });
+        boolean parsed = true;
+        try {
+            List<Future<FileResult>> results = new ArrayList<>(xmlFiles.size());
+            for(int i = 0; i < xmlFiles.size(); i++){
+                results.add(executor.submit(new FileTask(xmlFiles.get(i), i + 1)));
+            }
+            for(int i = 0; i < results.size(); i++){
+                try {
+                    FileResult result = results.get(i).get();
+                    xmlNodeFilter.mergeFilteredNodes(result.filteredNodeMap);
+                    parsed &= result.parsed;
+                }
+                catch (ExecutionException ex){
+                    logger.log(Level.SEVERE, threadName + ": file " + xmlFiles.get(i).getAbsolutePath()
+                                             + " was not parsed because of " + ex.getCause(), ex.getCause());
+                    parsed = false;
+                }
+                results.set(i, null);
+            }
+        }
+        finally {
+            executor.shutdownNow();
+        }
+
+        logger.info(threadName + (parsed ? ": XML files were parsed." : ": some XML files were not parsed completely."));
+        return parsed;
+    }
+
+    /**
+     * Result of filtering of one file.
+     */
+    private static final class FileResult {
+
+        /**
+         * {@link java.util.Map} object which stores the result of filtering of the file.
+         */
+        private final Map<String, RuleRecord> filteredNodeMap;
+
+        /**
+         * {@code true} if the file was parsed completely.
+         */
+        private final boolean parsed;
+
+        /**
+         * Initializes a newly created {@link ee.helmes.MultiFileParser.FileResult} object.
+         *
+         * @param filteredNodeMap {@link java.util.Map} object which stores the result of filtering of the file.
+         * @param parsed {@code true} if the file was parsed completely.
+         */
+        FileResult(Map<String, RuleRecord> filteredNodeMap, boolean parsed){
+            this.filteredNodeMap = filteredNodeMap;
+            this.parsed = parsed;
+        }
+    }
+
+    /**
+     * Task which parses and filters one file.
+     */
+    private class FileTask implements Callable<FileResult> {
+
+        /**
+         * Input XML file for parsing.
+         */
+        private final File xmlFile;
+
+        /**
+         * Base of the ids of the rules of the file: the number of the file
+         * shifted by {@link ee.helmes.DecisionJournal#SOURCE_SHIFT} bits.
+         */
+        private final long ruleIdBase;
+
+        /**
+         * Initializes a newly created {@link ee.helmes.MultiFileParser.FileTask} object.
+         *
+         * @param xmlFile {@link java.io.File} object associated with the input source XML file.
+         * @param fileNumber 1-based number of the file in the list of input files.
+         */
+        FileTask(File xmlFile, int fileNumber){
+            this.xmlFile = xmlFile;
+            this.ruleIdBase = (long) fileNumber << DecisionJournal.SOURCE_SHIFT;
+        }
+
+        /**
+         * Returns the result of filtering of the file.<br>
+         * If the scanner meets unsupported content or can not read the file, the rules filtered by the scanner
+         * are kept and the file is parsed by {@link ee.helmes.StAXReader} after them.
+         *
+         * @return the result of filtering of the file.
+         * @throws InterruptedException never, rules are filtered in the current thread.
+         */
+        @Override
+        public FileResult call() throws InterruptedException {
+            final XMLNodeFilter fileFilter = new XMLNodeFilter(xmlNodeFilter.getResultXml());
+            fileFilter.setDecisionJournal(xmlNodeFilter.getDecisionJournal());
+            try {
+                long skippedRules = 0;
+                if(mappedScannerEnabled){
+                    long startNanos = System.nanoTime();
+                    PipelineEvents.ParseEvent event = new PipelineEvents.ParseEvent();
+                    event.begin();
+                    MappedRuleScanner scanner = new MappedRuleScanner(xmlFile);
+                    scanner.setRuleIdBase(ruleIdBase);
+                    boolean scanned = false;
+                    try {
+                        scanned = scanner.scan(new MappedRuleScanner.RuleHandler() {
+                            @Override
+                            public void handleRule(RuleRecord rule) {
+                                fileFilter.applyFilter(rule);
+                            }
+                        });
+                    }
+                    catch (IOException ex){
+                        logger.log(Level.WARNING, Thread.currentThread().getName() + ": scanning of the file "
+                                                  + xmlFile.getAbsolutePath() + " failed because of " + ex.toString(), ex);
+                    }
+                    finally {
+                        PipelineStats.get().addParseTime(startNanos);
+                        event.finish(xmlFile, "mapped", 0, xmlFile.length());
+                    }
+                    if(scanned){
+                        scanner.publishStats();
+                        return new FileResult(fileFilter.getFilteredNodeMap(), true);
+                    }
+                    skippedRules = scanner.getScannedRules();
+                    PipelineStats.get().addParsedRules(skippedRules, scanner.getInvalidRules());
+                }
+                StAXReader staxReader = new StAXReader(xmlFile, fileFilter);
+                staxReader.setSkippedRules(skippedRules);
+                staxReader.setRuleIdBase(ruleIdBase);
+                boolean parsed = staxReader.startParsing();
+                return new FileResult(fileFilter.getFilteredNodeMap(), parsed);
+            }
+            finally {
+                fileFilter.flushDecisions();
+                PipelineStats.get().removeFilter(fileFilter);
+            }
+        }
+    }
+}
@@ -0,0 +1,425 @@
+package ee.helmes;
+
+import java.util.Arrays;
+
+/**
+ * Dictionary which assigns each name an {@code int} id and shares common prefixes of hierarchical names.<br>
+ *     Names are split into segments at {@value #SEPARATOR} chars, and the dictionary is a trie of segments:
+ *     the name {@code billing.eu.de.tariff} is the node of the segment {@code tariff} whose parent is the node of
+ *     {@code billing.eu.de}, and so on up to the node of {@code billing} which has no parent. So the prefix shared by
+ *     thousands of names is stored once, and each name costs a few {@code int} values in primitive arrays:<br>
+ *          - each distinct segment text is stored once in the array of segment bytes and gets the segment id;<br>
+ *          - each node holds the id of its parent node, the id of its segment and the length of its name in bytes;<br>
+ *          - nodes and segments are found by open-addressing hash tables of ids with linear probing.<br>
+ *     Ids are assigned in order of the first occurrence of the names, starting with {@code 0}; the nodes of
+ *     the prefixes get their ids as well, so ids are dense but not every id is a name which was added.
+ *     Names are rebuilt from the nodes only when they are needed (see {@link NameDictionary#getName(int, byte[])}).<br>
+ *     Names are compared as UTF-8 bytes. The dictionary is not thread-safe.
+ */
+public class NameDictionary {
+
+    /**
+     * Value returned for the name which is not in the dictionary.
+     */
+    public static final int NO_ID = -1;
+
+    /**
+     * Char which separates segments of the name.
+     */
+    public static final char SEPARATOR = '.';
+
+    /**
+     * Minimum number of slots of the hash tables and of the entries of the arrays.
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Maximum number of entries of the arrays.
+     */
+    private static final int MAX_CAPACITY = 1 << 29;
+
+    /**
+     * Bytes of the distinct segments, one after another.
+     */
+    private byte[] segmentBytes = new byte[MIN_CAPACITY * 8];
+
+    /**
+     * Number of used bytes of the {@link NameDictionary#segmentBytes}.
+     */
+    private int segmentBytesSize;
+
+    /**
+     * Index of the first byte of each segment in the {@link NameDictionary#segmentBytes}, indexed by segment id;
+     * the segment ends where the next one starts.
+     */
+    private int[] segmentOffsets = new int[MIN_CAPACITY + 1];
+
+    /**
+     * Hash of each segment, indexed by segment id.
+     */
+    private int[] segmentHashes = new int[MIN_CAPACITY];
+
+    /**
+     * Number of distinct segments.
+     */
+    private int segmentCount;
+
+    /**
+     * Hash table of segment ids plus one; {@code 0} is the empty slot.
+     */
+    private int[] segmentSlots = new int[MIN_CAPACITY];
+
+    /**
+     * Id of the parent node of each node or {@link NameDictionary#NO_ID} for the first segment of the name, indexed by id.
+     */
+    private int[] parents = new int[MIN_CAPACITY];
+
+    /**
+     * Segment id of each node, indexed by id.
+     */
+    private int[] segments = new int[MIN_CAPACITY];
+
+    /**
+     * Length in bytes of the name of each node, indexed by id.
+     */
+    private int[] nameLengths = new int[MIN_CAPACITY];
+
+    /**
+     * Number of nodes.
+     */
+    private int nodeCount;
+
+    /**
+     * Hash table of node ids plus one; {@code 0} is the empty slot.
+     */
+    private int[] nodeSlots = new int[MIN_CAPACITY];
+
+    /**
+     * Returns the number of ids assigned by the dictionary, including the ids of the prefixes.
+     *
+     * @return the number of ids; ids are less than this number.
+     */
+    public int size() {
+        return nodeCount;
+    }
+
+    /**
+     * Returns the number of distinct segments of the names.
+     *
+     * @return the number of distinct segments.
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Returns the number of bytes of the heap used by the arrays of the dictionary.
+     *
+     * @return the number of bytes used by segments, nodes and hash tables.
+     */
+    public long getAllocatedBytes() {
+        return segmentBytes.length
+               + 4L * (segmentOffsets.length + segmentHashes.length + segmentSlots.length)
+               + 4L * (parents.length + segments.length + nameLengths.length + nodeSlots.length);
+    }
+
+    /**
+     * Returns the id of the name.
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param nameLength number of bytes of the name.
+     * @return the id of the name or {@link NameDictionary#NO_ID} if the name was not added to the dictionary.
+     */
+    public int get(byte[] name, int nameLength) {
+        int node = NO_ID;
+        int start = 0;
+        while (true){
+            int end = NameDictionary.segmentEnd(name, start, nameLength);
+            int segment = this.findSegment(name, start, end - start, OffHeapWinnerTable.hash(name, start, end - start));
+            if(segment == NO_ID){
+                return NO_ID;
+            }
+            node = this.findNode(node, segment);
+            if(node == NO_ID || end == nameLength){
+                return node;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Returns the id of the name, adding the name and its prefixes to the dictionary if they are not there.
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param nameLength number of bytes of the name.
+     * @return the id of the name.
+     *
+     * @throws IllegalStateException if the dictionary is full.
+     */
+    public int add(byte[] name, int nameLength) {
+        int node = NO_ID;
+        int start = 0;
+        while (true){
+            int end = NameDictionary.segmentEnd(name, start, nameLength);
+            int segment = this.addSegment(name, start, end - start);
+            int child = this.findNode(node, segment);
+            node = child == NO_ID ? this.addNode(node, segment, end) : child;
+            if(end == nameLength){
+                return node;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Returns the length in bytes of the name with the given id.
+     *
+     * @param id id of the name.
+     * @return the number of UTF-8 bytes of the name.
+     *
+     * @throws IndexOutOfBoundsException if there is no such id.
+     */
+    public int getNameLength(int id) {
+        this.checkId(id);
+        return nameLengths[id];
+    }
+
+    /**
+     * Rebuilds the name with the given id from its segments.
+     *
+     * @param id id of the name.
+     * @param target array which receives the UTF-8 bytes of the name from index {@code 0};
+     *               it should hold at least {@link NameDictionary#getNameLength(int)} bytes.
+     * @return the number of bytes of the name.
+     *
+     * @throws IndexOutOfBoundsException if there is no such id or the name does not fit the {@code target}.
+     */
+    public int getName(int id, byte[] target) {
+        this.checkId(id);
+        int nameLength = nameLengths[id];
+        if(target.length < nameLength){
+            throw new IndexOutOfBoundsException("The name of " + nameLength + " bytes does not fit " + target.length + " bytes.");
+        }
+        int position = nameLength;
+        int node = id;
+        while (true){
+            int segment = segments[node];
+            int segmentOffset = segmentOffsets[segment];
+            int segmentLength = segmentOffsets[segment + 1] - segmentOffset;
+            position -= segmentLength;
+            System.arraycopy(segmentBytes, segmentOffset, target, position, segmentLength);
+            node = parents[node];
+            if(node == NO_ID){
+                return nameLength;
+            }
+            target[--position] = (byte) SEPARATOR;
+        }
+    }
+
+    /**
+     * Returns the index of the separator which ends the segment or {@code nameLength} for the last segment.
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param start index of the first byte of the segment.
+     * @param nameLength number of bytes of the name.
+     * @return the index after the last byte of the segment.
+     */
+    private static int segmentEnd(byte[] name, int start, int nameLength) {
+        int end = start;
+        while (end < nameLength && name[end] != SEPARATOR){
+            end++;
+        }
+        return end;
+    }
+
+    /**
+     * Returns the id of the segment with the given bytes.
+     *
+     * @param name array which holds the UTF-8 bytes of the segment.
+     * @param offset index of the first byte of the segment.
+     * @param length number of bytes of the segment.
+     * @param hash hash of the segment.
+     * @return the segment id or {@link NameDictionary#NO_ID} if there is no such segment.
+     */
+    private int findSegment(byte[] name, int offset, int length, int hash) {
+        int mask = segmentSlots.length - 1;
+        for(int slot = hash & mask; segmentSlots[slot] != 0; slot = (slot + 1) & mask){
+            int segment = segmentSlots[slot] - 1;
+            if(segmentHashes[segment] == hash && this.segmentEquals(segment, name, offset, length)){
+                return segment;
+            }
+        }
+        return NO_ID;
+    }
+
+    /**
+     * Returns the id of the segment with the given bytes, adding the segment if it is not there.
+     *
+     * @param name array which holds the UTF-8 bytes of the segment.
+     * @param offset index of the first byte of the segment.
+     * @param length number of bytes of the segment.
+     * @return the segment id.
+     */
+    private int addSegment(byte[] name, int offset, int length) {
+        int hash = OffHeapWinnerTable.hash(name, offset, length);
+        int segment = this.findSegment(name, offset, length, hash);
+        if(segment != NO_ID){
+            return segment;
+        }
+        if(segmentCount == segmentHashes.length){
+            int newCapacity = NameDictionary.grow(segmentCount);
+            segmentHashes = Arrays.copyOf(segmentHashes, newCapacity);
+            segmentOffsets = Arrays.copyOf(segmentOffsets, newCapacity + 1);
+        }
+        if(segmentBytes.length - segmentBytesSize < length){
+            long newSize = Math.max((long) segmentBytes.length * 2, (long) segmentBytesSize + length);
+            if(newSize > Integer.MAX_VALUE - 8){
+                throw new IllegalStateException("Too many segment bytes: " + newSize);
+            }
+            segmentBytes = Arrays.copyOf(segmentBytes, (int) newSize);
+        }
+        System.arraycopy(name, offset, segmentBytes, segmentBytesSize, length);
+        segmentBytesSize += length;
+        segment = segmentCount++;
+        segmentHashes[segment] = hash;
+        segmentOffsets[segment + 1] = segmentBytesSize;
+        if(segmentCount > segmentSlots.length * 3 / 4){
+            segmentSlots = new int[segmentSlots.length * 2];
+            for(int i = 0; i < segmentCount; i++){
+                NameDictionary.putSlot(segmentSlots, segmentHashes[i], i);
+            }
+        }
+        else {
+            NameDictionary.putSlot(segmentSlots, hash, segment);
+        }
+        return segment;
+    }
+
+    /**
+     * Returns {@code true} if the stored segment is equal to the given bytes.
+     *
+     * @param segment segment id.
+     * @param name array which holds the UTF-8 bytes of the segment.
+     * @param offset index of the first byte of the segment.
+     * @param length number of bytes of the segment.
+     * @return {@code true} if the segments are equal, {@code false} otherwise.
+     */
+    private boolean segmentEquals(int segment, byte[] name, int offset, int length) {
+        int segmentOffset = segmentOffsets[segment];
+        if(segmentOffsets[segment + 1] - segmentOffset != length){
+            return false;
+        }
+        for(int i = 0; i < length; i++){
+            if(segmentBytes[segmentOffset + i] != name[offset + i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the id of the node with the given parent and segment.
+     *
+     * @param parent id of the parent node or {@link NameDictionary#NO_ID} for the first segment of the name.
+     * @param segment segment id.
+     * @return the id of the node or {@link NameDictionary#NO_ID} if there is no such node.
+     */
+    private int findNode(int parent, int segment) {
+        int mask = nodeSlots.length - 1;
+        for(int slot = NameDictionary.nodeHash(parent, segment) & mask; nodeSlots[slot] != 0; slot = (slot + 1) & mask){
+            int node = nodeSlots[slot] - 1;
+            if(parents[node] == parent && segments[node] == segment){
+                return node;
+            }
+        }
+        return NO_ID;
+    }
+
+    /**
+     * Adds the node with the given parent and segment.
+     *
+     * @param parent id of the parent node or {@link NameDictionary#NO_ID} for the first segment of the name.
+     * @param segment segment id.
+     * @param nameLength length in bytes of the name of the node.
+     * @return the id of the new node.
+     */
+    private int addNode(int parent, int segment, int nameLength) {
+        if(nodeCount == parents.length){
+            int newCapacity = NameDictionary.grow(nodeCount);
+            parents = Arrays.copyOf(parents, newCapacity);
+            segments = Arrays.copyOf(segments, newCapacity);
+            nameLengths = Arrays.copyOf(nameLengths, newCapacity);
+        }
+        int node = nodeCount++;
+        parents[node] = parent;
+        segments[node] = segment;
+        nameLengths[node] = nameLength;
+        if(nodeCount > nodeSlots.length * 3 / 4){
+            nodeSlots = new int[nodeSlots.length * 2];
+            for(int i = 0; i < nodeCount; i++){
+                NameDictionary.putSlot(nodeSlots, NameDictionary.nodeHash(parents[i], segments[i]), i);
+            }
+        }
+        else {
+            NameDictionary.putSlot(nodeSlots, NameDictionary.nodeHash(parent, segment), node);
+        }
+        return node;
+    }
+
+    /**
+     * Puts the id to the first empty slot of the hash table starting with the slot of the hash.
+     *
+     * @param slots hash table of ids plus one.
+     * @param hash hash of the entry.
+     * @param id id of the entry.
+     */
+    private static void putSlot(int[] slots, int hash, int id) {
+        int mask = slots.length - 1;
+        int slot = hash & mask;
+        while (slots[slot] != 0){
+            slot = (slot + 1) & mask;
+        }
+        slots[slot] = id + 1;
+    }
+
+    /**
+     * Returns the hash of the node with the given parent and segment.
+     *
+     * @param parent id of the parent node.
+     * @param segment segment id.
+     * @return the hash of the node.
+     */
+    private static int nodeHash(int parent, int segment) {
+        long key = ((long) parent << 32) | (segment & 0xFFFFFFFFL);
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    /**
+     * Returns the new capacity of the full arrays.
+     *
+     * @param capacity current capacity.
+     * @return the doubled capacity.
+     *
+     * @throws IllegalStateException if the capacity can not grow.
+     */
+    private static int grow(int capacity) {
+        if(capacity >= MAX_CAPACITY){
+            throw new IllegalStateException("Too many names: " + capacity);
+        }
+        return capacity * 2;
+    }
+
+    /**
+     * Checks that the id was assigned by the dictionary.
+     *
+     * @param id id of the name.
+     *
+     * @throws IndexOutOfBoundsException if there is no such id.
+     */
+    private void checkId(int id) {
+        if(id < 0 || id >= nodeCount){
+            throw new IndexOutOfBoundsException("Invalid id " + id);
+        }
+    }
+}
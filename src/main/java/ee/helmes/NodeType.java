@@ -1,11 +1,21 @@
 package ee.helmes;
 
+import java.util.Locale;
+
 /**
  * Stores the enum of {@code "type"} attribute value.
  */
 public enum NodeType {
     ROOT, SUB, CHILD;
 
+    /**
+     * Lower case string representations of {@code "type"} attribute values indexed by their integer representation.
+     */
+    private static final String[] TYPE_NAMES = {"",
+                                                ROOT.toString().toLowerCase(Locale.ROOT),
+                                                SUB.toString().toLowerCase(Locale.ROOT),
+                                                CHILD.toString().toLowerCase(Locale.ROOT)};
+
     /**
      * Returns integer representation of {@code NodeType} associated with the given string parameter.
      *
@@ -28,5 +38,19 @@ public enum NodeType {
         return 0;
     }
 
+    /**
+     * Returns string representation of {@code "type"} attribute value associated with the given integer representation.
+     *
+     * @param type integer representation of {@link ee.helmes.NodeType} (see {@link NodeType#getType(String)}).
+     * @return lower case string representation of {@code "type"} attribute value
+     * or empty string if the given integer does not represent any {@link ee.helmes.NodeType}.
+     */
+    public static String getTypeName(int type){
+        if(type < 1 || type >= TYPE_NAMES.length){
+            return "";
+        }
+        return TYPE_NAMES[type];
+    }
+
 
 }
@@ -0,0 +1,392 @@
+package ee.helmes;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Open-addressing hash table of the winners of filtering kept outside of the heap.<br>
+ *     The table is keyed by UTF-8 bytes of the names, and the type and weight of the winner are stored
+ *     in the slot, so millions of winners do not create millions of objects for the garbage collector.
+ *     Slots and names are stored in direct {@link java.nio.ByteBuffer buffers}:<br>
+ *          - slots are split into pages of {@value #PAGE_SLOTS} slots; each slot holds the {@code long} reference
+ *            to the name ({@code 0} for the empty slot), {@code int} length and hash of the name,
+ *            {@code int} type and {@code int} weight;<br>
+ *          - names are appended to the chunks of up to {@value #NAME_CHUNK_SIZE} bytes and never move; the reference
+ *            holds the index of the chunk plus one in the high {@code int} and the position in the low one.<br>
+ *     Collisions are resolved by linear probing, and the table doubles when it is filled by three quarters;
+ *     the hash is kept in the slot, so names are not read while the table is resized.<br>
+ *     The table is not thread-safe. The memory is released when the table is garbage collected,
+ *     so direct memory limit of the JVM ({@code -XX:MaxDirectMemorySize}) should fit the table.
+ */
+public class OffHeapWinnerTable implements WinnerTable {
+
+    /**
+     * Size of the slot in bytes.
+     */
+    private static final int SLOT_SIZE = 24;
+
+    /**
+     * Offsets of the fields of the slot.
+     */
+    private static final int NAME_OFFSET = 0,
+                             LENGTH_OFFSET = 8,
+                             HASH_OFFSET = 12,
+                             TYPE_OFFSET = 16,
+                             WEIGHT_OFFSET = 20;
+
+    /**
+     * Maximum number of slots in one page.
+     */
+    static final int PAGE_SLOTS = 1 << 16;
+
+    /**
+     * Maximum size of the chunk of names in bytes. Longer names get their own chunks.
+     */
+    static final int NAME_CHUNK_SIZE = 1 << 24;
+
+    /**
+     * Size of the first chunk of names in bytes; each next chunk is twice as large up to {@value #NAME_CHUNK_SIZE}.
+     */
+    private static final int MIN_NAME_CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Minimum number of slots.
+     */
+    private static final int MIN_CAPACITY = 16;
+
+    /**
+     * Pages of slots.
+     */
+    private ByteBuffer[] slotPages;
+
+    /**
+     * Number of slots, a power of two.
+     */
+    private long capacity;
+
+    /**
+     * Number of slots in one page, a power of two.
+     */
+    private int pageSlots;
+
+    /**
+     * Number of winners in the table.
+     */
+    private long size;
+
+    /**
+     * Chunks of names.
+     */
+    private final List<ByteBuffer> nameChunks = new ArrayList<>();
+
+    /**
+     * Chunk which receives new names.
+     */
+    private ByteBuffer currentChunk;
+
+    /**
+     * Index of the {@link OffHeapWinnerTable#currentChunk} in the list of chunks plus one.
+     */
+    private int currentChunkNumber;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.OffHeapWinnerTable} object.
+     *
+     * @param expectedWinners expected number of winners; the table grows when it is exceeded.
+     *
+     * @throws IllegalArgumentException if {@code expectedWinners} is negative.
+     */
+    public OffHeapWinnerTable(long expectedWinners){
+        if(expectedWinners < 0){
+            throw new IllegalArgumentException("Invalid number of winners " + expectedWinners);
+        }
+        long initialCapacity = MIN_CAPACITY;
+        while (initialCapacity * 3 / 4 < expectedWinners){
+            initialCapacity <<= 1;
+        }
+        this.allocateSlots(initialCapacity);
+    }
+
+    /**
+     * Returns the number of winners in the table.
+     *
+     * @return the number of winners.
+     */
+    @Override
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes of direct memory used by the table.
+     *
+     * @return the number of bytes used by slots and names.
+     */
+    @Override
+    public long getAllocatedBytes() {
+        long allocated = capacity * SLOT_SIZE;
+        for(ByteBuffer chunk : nameChunks){
+            allocated += chunk.capacity();
+        }
+        return allocated;
+    }
+
+    /**
+     * Returns the winner with the given name packed by {@link WinnerTable#pack(int, int)}.
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param nameLength number of bytes of the name.
+     * @return the packed winner or {@link OffHeapWinnerTable#NO_WINNER} if there is no winner with this name.
+     */
+    @Override
+    public long get(byte[] name, int nameLength) {
+        long slot = this.findSlot(name, nameLength, OffHeapWinnerTable.hash(name, nameLength));
+        ByteBuffer page = this.page(slot);
+        int position = this.position(slot);
+        if(page.getLong(position + NAME_OFFSET) == 0){
+            return NO_WINNER;
+        }
+        return WinnerTable.pack(page.getInt(position + TYPE_OFFSET), page.getInt(position + WEIGHT_OFFSET));
+    }
+
+    /**
+     * Puts the rule to the table if there is no winner with its name or the rule outranks the winner
+     * (see {@link RuleRecord#outranks(RuleRecord)}), and returns the previous winner.
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param nameLength number of bytes of the name.
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @return the previous winner packed by {@link WinnerTable#pack(int, int)}
+     * or {@link OffHeapWinnerTable#NO_WINNER} if the rule is the first rule with this name.
+     */
+    @Override
+    public long putIfOutranks(byte[] name, int nameLength, int type, int weight) {
+        int hash = OffHeapWinnerTable.hash(name, nameLength);
+        long slot = this.findSlot(name, nameLength, hash);
+        ByteBuffer page = this.page(slot);
+        int position = this.position(slot);
+
+        if(page.getLong(position + NAME_OFFSET) != 0){
+            int winnerType = page.getInt(position + TYPE_OFFSET);
+            int winnerWeight = page.getInt(position + WEIGHT_OFFSET);
+            if(type > winnerType || (type == winnerType && weight > winnerWeight)){
+                page.putInt(position + TYPE_OFFSET, type);
+                page.putInt(position + WEIGHT_OFFSET, weight);
+            }
+            return WinnerTable.pack(winnerType, winnerWeight);
+        }
+
+        page.putLong(position + NAME_OFFSET, this.storeName(name, nameLength));
+        page.putInt(position + LENGTH_OFFSET, nameLength);
+        page.putInt(position + HASH_OFFSET, hash);
+        page.putInt(position + TYPE_OFFSET, type);
+        page.putInt(position + WEIGHT_OFFSET, weight);
+        size++;
+        if(size > capacity * 3 / 4){
+            this.resize();
+        }
+        return NO_WINNER;
+    }
+
+    /**
+     * Passes all winners to the visitor in order of the slots.<br>
+     * The same array is passed for all names, the visitor should copy it if it needs the name later.
+     *
+     * @param visitor visitor of the winners.
+     * @throws IOException if the visitor throws it.
+     */
+    @Override
+    public void forEach(WinnerVisitor visitor) throws IOException {
+        ByteBuffer[] chunkViews = new ByteBuffer[nameChunks.size()];
+        for(int i = 0; i < chunkViews.length; i++){
+            chunkViews[i] = nameChunks.get(i).duplicate();
+        }
+        byte[] name = new byte[256];
+        for(ByteBuffer page : slotPages){
+            for(int position = 0; position < page.capacity(); position += SLOT_SIZE){
+                long reference = page.getLong(position + NAME_OFFSET);
+                if(reference == 0){
+                    continue;
+                }
+                int nameLength = page.getInt(position + LENGTH_OFFSET);
+                if(name.length < nameLength){
+                    name = new byte[Math.max(nameLength, name.length * 2)];
+                }
+                ByteBuffer chunkView = chunkViews[(int) (reference >>> 32) - 1];
+                chunkView.position((int) reference);
+                chunkView.get(name, 0, nameLength);
+                visitor.visit(name, nameLength, page.getInt(position + TYPE_OFFSET), page.getInt(position + WEIGHT_OFFSET));
+            }
+        }
+    }
+
+    /**
+     * Returns the slot which holds the name or the empty slot where the name should be put.
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param nameLength number of bytes of the name.
+     * @param hash hash of the name.
+     * @return index of the slot.
+     */
+    private long findSlot(byte[] name, int nameLength, int hash) {
+        long mask = capacity - 1;
+        long slot = hash & mask;
+        while (true){
+            ByteBuffer page = this.page(slot);
+            int position = this.position(slot);
+            long reference = page.getLong(position + NAME_OFFSET);
+            if(reference == 0){
+                return slot;
+            }
+            if(page.getInt(position + HASH_OFFSET) == hash && page.getInt(position + LENGTH_OFFSET) == nameLength
+               && this.nameEquals(reference, name, nameLength)){
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns {@code true} if the stored name is equal to the given one.
+     *
+     * @param reference reference to the stored name.
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param nameLength number of bytes of the name.
+     * @return {@code true} if the names are equal, {@code false} otherwise.
+     */
+    private boolean nameEquals(long reference, byte[] name, int nameLength) {
+        ByteBuffer chunk = nameChunks.get((int) (reference >>> 32) - 1);
+        int start = (int) reference;
+        for(int i = 0; i < nameLength; i++){
+            if(chunk.get(start + i) != name[i]){
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the name to the chunks of names and returns the reference to it.
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param nameLength number of bytes of the name.
+     * @return reference to the stored name.
+     */
+    private long storeName(byte[] name, int nameLength) {
+        if(nameLength > NAME_CHUNK_SIZE){
+            ByteBuffer chunk = ByteBuffer.allocateDirect(nameLength);
+            chunk.put(name, 0, nameLength);
+            nameChunks.add(chunk);
+            return (long) nameChunks.size() << 32;
+        }
+        if(currentChunk == null || currentChunk.remaining() < nameLength){
+            int chunkSize = currentChunk == null ? MIN_NAME_CHUNK_SIZE : Math.min(NAME_CHUNK_SIZE, currentChunk.capacity() * 2);
+            currentChunk = ByteBuffer.allocateDirect(Math.max(chunkSize, nameLength));
+            nameChunks.add(currentChunk);
+            currentChunkNumber = nameChunks.size();
+        }
+        long reference = ((long) currentChunkNumber << 32) | currentChunk.position();
+        currentChunk.put(name, 0, nameLength);
+        return reference;
+    }
+
+    /**
+     * Doubles the number of slots and moves the winners to the new slots.
+     */
+    private void resize() {
+        ByteBuffer[] oldPages = slotPages;
+        this.allocateSlots(capacity << 1);
+        long mask = capacity - 1;
+        for(ByteBuffer oldPage : oldPages){
+            for(int oldPosition = 0; oldPosition < oldPage.capacity(); oldPosition += SLOT_SIZE){
+                if(oldPage.getLong(oldPosition + NAME_OFFSET) == 0){
+                    continue;
+                }
+                long slot = oldPage.getInt(oldPosition + HASH_OFFSET) & mask;
+                while (this.page(slot).getLong(this.position(slot) + NAME_OFFSET) != 0){
+                    slot = (slot + 1) & mask;
+                }
+                ByteBuffer page = this.page(slot);
+                int position = this.position(slot);
+                for(int offset = 0; offset < SLOT_SIZE; offset += 4){
+                    page.putInt(position + offset, oldPage.getInt(oldPosition + offset));
+                }
+            }
+        }
+    }
+
+    /**
+     * Allocates empty pages for the given number of slots.
+     *
+     * @param newCapacity number of slots, a power of two.
+     */
+    private void allocateSlots(long newCapacity) {
+        int newPageSlots = (int) Math.min(newCapacity, PAGE_SLOTS);
+        long pageCount = newCapacity / newPageSlots;
+        if(pageCount > Integer.MAX_VALUE){
+            throw new IllegalStateException("Too many winners: " + size);
+        }
+        ByteBuffer[] pages = new ByteBuffer[(int) pageCount];
+        for(int i = 0; i < pages.length; i++){
+            pages[i] = ByteBuffer.allocateDirect(newPageSlots * SLOT_SIZE);
+        }
+        this.slotPages = pages;
+        this.capacity = newCapacity;
+        this.pageSlots = newPageSlots;
+    }
+
+    /**
+     * Returns the page of the slot.
+     *
+     * @param slot index of the slot.
+     * @return the page which holds the slot.
+     */
+    private ByteBuffer page(long slot) {
+        return slotPages[(int) (slot / pageSlots)];
+    }
+
+    /**
+     * Returns the position of the slot in its page.
+     *
+     * @param slot index of the slot.
+     * @return the position of the slot in bytes.
+     */
+    private int position(long slot) {
+        return (int) (slot & (pageSlots - 1)) * SLOT_SIZE;
+    }
+
+    /**
+     * Returns the hash of the name.<br>
+     * Bytes are mixed by FNV-1a, and the result is finalized by the multiplicative mixing,
+     * so the low bits used for the slot index depend on all bytes.
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param nameLength number of bytes of the name.
+     * @return the hash of the name.
+     */
+    static int hash(byte[] name, int nameLength) {
+        return OffHeapWinnerTable.hash(name, 0, nameLength);
+    }
+
+    /**
+     * Returns the hash of the part of the name (see {@link OffHeapWinnerTable#hash(byte[], int)}).
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param offset index of the first byte of the part.
+     * @param length number of bytes of the part.
+     * @return the hash of the part of the name.
+     */
+    static int hash(byte[] name, int offset, int length) {
+        int hash = 0x811C9DC5;
+        for(int i = offset, end = offset + length; i < end; i++){
+            hash = (hash ^ name[i]) * 0x01000193;
+        }
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+}
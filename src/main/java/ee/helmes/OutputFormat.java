@@ -0,0 +1,99 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Stores the enum of the outputs of the result of filtering.<br>
+ *     The XML output is written to the result file; the other outputs are written next to it
+ *     with their own extensions: {@code result.html} (and the next pages, see {@link ee.helmes.HtmlReportWriter}),
+ *     {@code result.csv}, {@code result.jsonl} and {@code result.bin} (see {@link ee.helmes.BinaryResultReader}).
+ */
+public enum OutputFormat {
+    XML(".xml"), HTML(".html"), CSV(".csv"), JSON(".jsonl"), BINARY(".bin");
+
+    /**
+     * Extension of the output file.
+     */
+    private final String extension;
+
+    /**
+     * Initializes the output format.
+     *
+     * @param extension extension of the output file.
+     */
+    OutputFormat(String extension){
+        this.extension = extension;
+    }
+
+    /**
+     * Returns the extension of the output file, for example {@code ".bin"}.
+     *
+     * @return the extension of the output file.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Returns the output file of this format for the given result XML file.<br>
+     * If the result XML file is compressed ({@code result.xml.gz}), the CSV and JSON Lines outputs are compressed as well
+     * ({@code result.csv.gz}, {@code result.jsonl.gz}); the HTML view is displayed by the browser and the binary
+     * output is read at two positions at once, so they are not compressed.
+     *
+     * @param resultXml {@link java.io.File} object of the result XML file.
+     * @return the result XML file for {@link OutputFormat#XML}, otherwise the file next to it with the extension of the format.
+     */
+    public File getFile(File resultXml) {
+        if(this == XML){
+            return resultXml;
+        }
+        String name = CompressedFiles.removeGzipSuffix(resultXml.getName());
+        boolean compressed = !name.equals(resultXml.getName()) && (this == CSV || this == JSON);
+        int dotIndex = name.lastIndexOf('.');
+        String baseName = dotIndex > 0 ? name.substring(0, dotIndex) : name;
+        return new File(resultXml.getAbsoluteFile().getParentFile(),
+                        baseName + extension + (compressed ? CompressedFiles.GZIP_SUFFIX : ""));
+    }
+
+    /**
+     * Returns new {@link ee.helmes.ResultSink} which writes the output of this format.
+     *
+     * @param resultXml {@link java.io.File} object of the result XML file.
+     * @param htmlPageRows maximum number of rows in one page of the {@link OutputFormat#HTML} output.
+     * @return new {@link ee.helmes.ResultSink} object.
+     * @throws IOException if the output file can not be opened.
+     */
+    ResultSink openSink(File resultXml, long htmlPageRows) throws IOException {
+        File file = this.getFile(resultXml);
+        switch (this){
+            case XML: return new ResultXmlWriter(file);
+            case HTML: return new HtmlReportWriter(file, htmlPageRows);
+            case CSV: return new CsvResultWriter(file);
+            case JSON: return new JsonLinesResultWriter(file);
+            default: return new BinaryResultWriter(file);
+        }
+    }
+
+    /**
+     * Returns the set of outputs given by the comma-separated list of their names, for example {@code "xml,csv"}.<br>
+     * {@code "none"} stands for no outputs.
+     *
+     * @param outputs comma-separated list of output names; names are case-insensitive.
+     * @return the set of outputs.
+     * @throws IllegalArgumentException if the list has unknown names.
+     */
+    public static Set<OutputFormat> parse(String outputs) {
+        Set<OutputFormat> formats = EnumSet.noneOf(OutputFormat.class);
+        for(String output : outputs.split(",")){
+            String name = output.trim().toUpperCase(Locale.ROOT);
+            if(!name.isEmpty() && !"NONE".equals(name)){
+                formats.add(OutputFormat.valueOf(name));
+            }
+        }
+        return formats;
+    }
+}
@@ -0,0 +1,219 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stream of the uncompressed content of the gzip file which is decompressed in its own thread.<br>
+ *     The decompressing thread reads the file by {@link java.util.zip.GZIPInputStream} into blocks of
+ *     {@link PipedGzipInputStream#BLOCK_SIZE} bytes and passes them through the bounded queue, so decompression
+ *     of the next blocks overlaps with parsing of the current one instead of adding to it, and the file is never
+ *     decompressed to disk. Concatenated gzip members are read one after another.<br>
+ *     An error of decompression is thrown by the read which reaches it.
+ *     The stream is read by one thread.
+ */
+class PipedGzipInputStream extends InputStream {
+
+    /**
+     * Size of one block of the uncompressed content.
+     */
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Number of blocks which may wait in the queue.
+     */
+    private static final int QUEUE_BLOCKS = 16;
+
+    /**
+     * Block which marks the end of the content.
+     */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /**
+     * Number of the decompressing threads started by the current JVM.
+     */
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    /**
+     * Queue of the decompressed blocks.
+     */
+    private final BlockingQueue<ByteBuffer> blocks = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+
+    /**
+     * Thread which decompresses the file.
+     */
+    private final Thread decompressor;
+
+    /**
+     * Error of decompression or {@code null} if there was no error.
+     */
+    private volatile IOException error;
+
+    /**
+     * Block which is read now or {@code null} if the next block should be taken.
+     */
+    private ByteBuffer block;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.PipedGzipInputStream} object and starts decompressing thread.
+     *
+     * @param file {@link java.io.File} object associated with the gzip file.
+     * @throws IOException if the file can not be opened or is not a gzip file.
+     */
+    PipedGzipInputStream(File file) throws IOException {
+        FileInputStream fileInput = new CompressedFiles.CountedFileInputStream(file);
+        final GZIPInputStream input;
+        try {
+            input = new GZIPInputStream(fileInput, BLOCK_SIZE);
+        }
+        catch (IOException ex){
+            fileInput.close();
+            throw ex;
+        }
+        this.decompressor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                PipedGzipInputStream.this.decompress(input);
+            }
+        }, "DECOMPRESSING_THREAD-" + threadNumber.incrementAndGet());
+        decompressor.setDaemon(true);
+        decompressor.start();
+    }
+
+    /**
+     * Reads the next byte of the uncompressed content.
+     *
+     * @return the next byte or {@code -1} if the end of the content is reached.
+     * @throws IOException if the file can not be decompressed or the current thread was interrupted.
+     */
+    @Override
+    public int read() throws IOException {
+        if(!this.nextBlock()){
+            return -1;
+        }
+        return block.get() & 0xFF;
+    }
+
+    /**
+     * Reads up to {@code length} bytes of the uncompressed content into the array.
+     *
+     * @param bytes array which receives the bytes.
+     * @param offset index of the first received byte in the array.
+     * @param length maximum number of bytes to read.
+     * @return number of read bytes or {@code -1} if the end of the content is reached.
+     * @throws IOException if the file can not be decompressed or the current thread was interrupted.
+     */
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if(length == 0){
+            return 0;
+        }
+        if(!this.nextBlock()){
+            return -1;
+        }
+        int read = Math.min(length, block.remaining());
+        block.get(bytes, offset, read);
+        return read;
+    }
+
+    /**
+     * Returns number of bytes which can be read without waiting for the decompressing thread.
+     *
+     * @return number of bytes left in the current block.
+     */
+    @Override
+    public int available() {
+        return block == null || block == END ? 0 : block.remaining();
+    }
+
+    /**
+     * Stops the decompressing thread, which closes the file.
+     */
+    @Override
+    public void close() {
+        block = END;
+        decompressor.interrupt();
+    }
+
+    /**
+     * Returns {@code true} if the current block has bytes to read, taking the next block if needed,
+     * {@code false} if the end of the content is reached.
+     *
+     * @return {@code true} if the current block has bytes to read, {@code false} otherwise.
+     * @throws IOException if the file can not be decompressed or the current thread was interrupted.
+     */
+    private boolean nextBlock() throws IOException {
+        while (block == null || (block != END && !block.hasRemaining())){
+            try {
+                block = blocks.take();
+            }
+            catch (InterruptedException ex){
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Reading of the gzip file was interrupted");
+            }
+        }
+        if(block == END && error != null){
+            throw error;
+        }
+        return block != END;
+    }
+
+    /**
+     * Decompresses the file into blocks till the end of the file, an error or interruption of the thread.
+     *
+     * @param input stream of the uncompressed content of the file.
+     */
+    private void decompress(GZIPInputStream input) {
+        try (GZIPInputStream gzipInput = input) {
+            int length;
+            do {
+                byte[] bytes = new byte[BLOCK_SIZE];
+                length = readBlock(gzipInput, bytes);
+                if(length > 0){
+                    blocks.put(ByteBuffer.wrap(bytes, 0, length));
+                }
+            } while (length == BLOCK_SIZE);
+            blocks.put(END);
+        }
+        catch (IOException ex){
+            error = ex;
+            try {
+                blocks.put(END);
+            }
+            catch (InterruptedException interruptedEx){
+                Thread.currentThread().interrupt();
+            }
+        }
+        catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns number of bytes read into the array, which is less than its length only at the end of the content.
+     *
+     * @param input stream of the uncompressed content of the file.
+     * @param bytes array which receives the bytes.
+     * @return number of read bytes.
+     * @throws IOException if the file can not be decompressed.
+     */
+    private static int readBlock(InputStream input, byte[] bytes) throws IOException {
+        int length = 0;
+        while (length < bytes.length){
+            int read = input.read(bytes, length, bytes.length - length);
+            if(read < 0){
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,220 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Stream which writes the gzip file compressed in its own thread.<br>
+ *     Written bytes are collected into blocks of {@link PipedGzipOutputStream#BLOCK_SIZE} bytes, and full blocks
+ *     are passed through the bounded queue to the compressing thread, which writes them by
+ *     {@link java.util.zip.GZIPOutputStream}. So compression of the previous blocks overlaps with encoding of the
+ *     next ones instead of adding to it.<br>
+ *     If compression fails, the compressing thread keeps taking blocks without writing them, and the error
+ *     is thrown by the next write or by {@link PipedGzipOutputStream#close()}.
+ *     The stream is written by one thread.<br>
+ *     The stream must be closed: only {@link PipedGzipOutputStream#close()} writes the last block, waits for the
+ *     compressing thread and completes the file. The compressing thread is a daemon, so a stream which was not
+ *     closed does not keep the JVM running, but its file is left incomplete.
+ */
+class PipedGzipOutputStream extends OutputStream {
+
+    /**
+     * Size of one block of the uncompressed content.
+     */
+    static final int BLOCK_SIZE = 64 * 1024;
+
+    /**
+     * Number of blocks which may wait in the queue.
+     */
+    private static final int QUEUE_BLOCKS = 16;
+
+    /**
+     * Block which marks the end of the content.
+     */
+    private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+    /**
+     * Number of the compressing threads started by the current JVM.
+     */
+    private static final AtomicInteger threadNumber = new AtomicInteger();
+
+    /**
+     * Queue of the blocks to compress.
+     */
+    private final BlockingQueue<ByteBuffer> blocks = new ArrayBlockingQueue<>(QUEUE_BLOCKS);
+
+    /**
+     * Thread which compresses the blocks.
+     */
+    private final Thread compressor;
+
+    /**
+     * Error of compression or {@code null} if there was no error.
+     */
+    private volatile IOException error;
+
+    /**
+     * Block which collects the next bytes.
+     */
+    private ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+
+    /**
+     * Flag that reflects whether the stream was closed.
+     */
+    private boolean closed;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.PipedGzipOutputStream} object and starts compressing daemon thread.
+     *
+     * @param file {@link java.io.File} object associated with the gzip file; the file is truncated.
+     * @throws IOException if the file can not be opened.
+     */
+    PipedGzipOutputStream(File file) throws IOException {
+        final OutputStream output = new FileOutputStream(file);
+        this.compressor = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                PipedGzipOutputStream.this.compress(output);
+            }
+        }, "COMPRESSING_THREAD-" + threadNumber.incrementAndGet());
+        compressor.setDaemon(true);
+        compressor.start();
+    }
+
+    /**
+     * Writes the byte to the stream.
+     *
+     * @param b the byte to write.
+     * @throws IOException if the stream is closed, compression failed or the current thread was interrupted.
+     */
+    @Override
+    public void write(int b) throws IOException {
+        this.write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    /**
+     * Writes {@code length} bytes of the array to the stream.
+     *
+     * @param bytes array which holds the bytes.
+     * @param offset index of the first byte to write.
+     * @param length number of bytes to write.
+     * @throws IOException if the stream is closed, compression failed or the current thread was interrupted.
+     */
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if(closed){
+            throw new IOException("Stream is closed");
+        }
+        while (length > 0){
+            int put = Math.min(length, block.remaining());
+            block.put(bytes, offset, put);
+            offset += put;
+            length -= put;
+            if(!block.hasRemaining()){
+                block.flip();
+                this.publish(block);
+                block = ByteBuffer.allocate(BLOCK_SIZE);
+            }
+        }
+    }
+
+    /**
+     * Passes the rest of the bytes to the compressing thread, waits for it to write the end of the gzip file
+     * and closes the file.<br>
+     * Closing the closed stream has no effect.
+     *
+     * @throws IOException if compression failed or the current thread was interrupted.
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed){
+            return;
+        }
+        closed = true;
+        try {
+            if(block.position() > 0){
+                block.flip();
+                this.publish(block);
+            }
+            this.publish(END);
+            compressor.join();
+        }
+        catch (InterruptedException ex){
+            compressor.interrupt();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Compression of the gzip file was interrupted");
+        }
+        catch (IOException ex){
+            compressor.interrupt();
+            throw ex;
+        }
+        if(error != null){
+            throw error;
+        }
+    }
+
+    /**
+     * Puts the block to the queue of the compressing thread, waiting while it is full.
+     *
+     * @param block block to pass, ready to be read.
+     * @throws IOException if compression failed or the current thread was interrupted.
+     */
+    private void publish(ByteBuffer block) throws IOException {
+        if(error != null){
+            throw error;
+        }
+        try {
+            blocks.put(block);
+        }
+        catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Writing of the gzip file was interrupted");
+        }
+    }
+
+    /**
+     * Compresses the blocks till the end of the content and closes the file.
+     *
+     * @param output stream of the file.
+     */
+    private void compress(OutputStream output) {
+        try (GZIPOutputStream gzipOutput = new GZIPOutputStream(output, BLOCK_SIZE)) {
+            for(ByteBuffer next = blocks.take(); next != END; next = blocks.take()){
+                if(error == null){
+                    try {
+                        gzipOutput.write(next.array(), next.position(), next.remaining());
+                    }
+                    catch (IOException ex){
+                        error = ex;
+                    }
+                }
+            }
+        }
+        catch (IOException ex){
+            if(error == null){
+                error = ex;
+            }
+        }
+        catch (InterruptedException ex){
+            error = new InterruptedIOException("Compression of the gzip file was interrupted");
+        }
+        finally {
+            try {
+                output.close();
+            }
+            catch (IOException ex){
+                if(error == null){
+                    error = ex;
+                }
+            }
+        }
+    }
+}
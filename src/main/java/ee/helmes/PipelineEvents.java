@@ -0,0 +1,221 @@
+package ee.helmes;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.io.File;
+
+/**
+ * JDK Flight Recorder events of the phases of the filtering pipeline.<br>
+ *     A recording of a slow run shows where the time went: parsing of the file or its chunks, filtering of
+ *     the batches, stalls of the parser and the filter on the {@link ee.helmes.RuleRingBuffer}, saving the
+ *     result and rendering the HTML view by XSLT. Each event is started with {@code begin()} and finished by its
+ *     {@code finish} method, which sets the fields only if the event is recorded; when no recording is running
+ *     the JIT compiler removes the events, so they cost nothing.<br>
+ *     The events are recorded by any recording, for example
+ *     {@code java -XX:StartFlightRecording=filename=run.jfr ...}, and are shown under the
+ *     {@link PipelineEvents#CATEGORY} category.
+ */
+final class PipelineEvents {
+
+    /**
+     * Category of the events.
+     */
+    static final String CATEGORY = "Filtering Rules";
+
+    /**
+     * Use of this constructor is unnecessary because this class only holds the event classes.
+     */
+    private PipelineEvents(){}
+
+    /**
+     * Parsing of the input file or of its chunk.
+     */
+    @Name("ee.helmes.Parse")
+    @Label("Parse")
+    @Category(CATEGORY)
+    @Description("Parsing of the input XML file or of its chunk")
+    @StackTrace(false)
+    static final class ParseEvent extends Event {
+
+        @Label("File")
+        String file;
+
+        @Label("Parser")
+        String parser;
+
+        @Label("Start Offset")
+        @DataAmount
+        long startOffset;
+
+        @Label("End Offset")
+        @DataAmount
+        long endOffset;
+
+        /**
+         * Ends the event and commits it if it is recorded.
+         *
+         * @param file {@link java.io.File} object associated with the input file.
+         * @param parser name of the parser.
+         * @param startOffset position of the first byte of the parsed range.
+         * @param endOffset position after the last byte of the parsed range.
+         */
+        void finish(File file, String parser, long startOffset, long endOffset) {
+            this.end();
+            if(this.shouldCommit()){
+                this.file = file == null ? null : file.getPath();
+                this.parser = parser;
+                this.startOffset = startOffset;
+                this.endOffset = endOffset;
+                this.commit();
+            }
+        }
+    }
+
+    /**
+     * Filtering of one batch of rules taken from the ring buffer.
+     */
+    @Name("ee.helmes.FilterBatch")
+    @Label("Filter Batch")
+    @Category(CATEGORY)
+    @Description("Filtering of one batch of rules taken from the ring buffer")
+    @StackTrace(false)
+    static final class FilterBatchEvent extends Event {
+
+        @Label("Rules")
+        int rules;
+
+        @Label("Held Names")
+        long heldNames;
+
+        /**
+         * Ends the event and commits it if it is recorded.
+         *
+         * @param rules number of rules in the batch.
+         * @param heldNames number of distinct names held by the filter after the batch.
+         */
+        void finish(int rules, long heldNames) {
+            this.end();
+            if(this.shouldCommit()){
+                this.rules = rules;
+                this.heldNames = heldNames;
+                this.commit();
+            }
+        }
+    }
+
+    /**
+     * Waiting of the parser for a free slot or of the filter for a batch of the ring buffer.
+     */
+    @Name("ee.helmes.QueueStall")
+    @Label("Queue Stall")
+    @Category(CATEGORY)
+    @Description("Waiting of the producer for a free slot or of the consumer for a batch of the ring buffer")
+    @StackTrace(false)
+    @Threshold("1 ms")
+    static final class QueueStallEvent extends Event {
+
+        @Label("Producer")
+        @Description("True if the producer waited for a free slot, false if the consumer waited for a batch")
+        boolean producer;
+
+        @Label("Capacity")
+        @Description("Maximum number of batches in the ring buffer")
+        int capacity;
+
+        /**
+         * Ends the event and commits it if it is recorded.
+         *
+         * @param producer {@code true} if the producer waited, {@code false} if the consumer waited.
+         * @param capacity maximum number of batches in the ring buffer.
+         */
+        void finish(boolean producer, int capacity) {
+            this.end();
+            if(this.shouldCommit()){
+                this.producer = producer;
+                this.capacity = capacity;
+                this.commit();
+            }
+        }
+    }
+
+    /**
+     * Saving of the result of filtering to all outputs.
+     */
+    @Name("ee.helmes.SaveResult")
+    @Label("Save Result")
+    @Category(CATEGORY)
+    @Description("Saving of the result of filtering to all outputs")
+    @StackTrace(false)
+    static final class SaveResultEvent extends Event {
+
+        @Label("Result File")
+        String resultFile;
+
+        @Label("Outputs")
+        String outputs;
+
+        @Label("Rules")
+        long rules;
+
+        @Label("Saved")
+        boolean saved;
+
+        /**
+         * Ends the event and commits it if it is recorded.
+         *
+         * @param resultFile {@link java.io.File} object associated with the result file.
+         * @param outputs outputs of the result.
+         * @param rules number of rules written.
+         * @param saved {@code true} if the result was saved to all outputs.
+         */
+        void finish(File resultFile, String outputs, long rules, boolean saved) {
+            this.end();
+            if(this.shouldCommit()){
+                this.resultFile = resultFile.getPath();
+                this.outputs = outputs;
+                this.rules = rules;
+                this.saved = saved;
+                this.commit();
+            }
+        }
+    }
+
+    /**
+     * Rendering of the HTML view by the XSLT stylesheet.
+     */
+    @Name("ee.helmes.HtmlRender")
+    @Label("HTML Render")
+    @Category(CATEGORY)
+    @Description("Rendering of the HTML view by the XSLT stylesheet")
+    @StackTrace(false)
+    static final class HtmlRenderEvent extends Event {
+
+        @Label("HTML File")
+        String htmlFile;
+
+        @Label("HTML Size")
+        @DataAmount
+        long htmlSize;
+
+        /**
+         * Ends the event and commits it if it is recorded.
+         *
+         * @param htmlFile {@link java.io.File} object associated with the HTML file or {@code null} if it was not produced.
+         */
+        void finish(File htmlFile) {
+            this.end();
+            if(this.shouldCommit()){
+                this.htmlFile = htmlFile == null ? null : htmlFile.getPath();
+                this.htmlSize = htmlFile == null ? 0 : htmlFile.length();
+                this.commit();
+            }
+        }
+    }
+}
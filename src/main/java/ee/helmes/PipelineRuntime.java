@@ -0,0 +1,380 @@
+package ee.helmes;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs the stages of filtering jobs, such as parsing and filtering connected by {@link ee.helmes.RuleRingBuffer},
+ * on shared executors instead of threads created for each job.<br>
+ *     I/O bound stages run on the I/O executor and the other stages on the compute executor. The default runtime
+ *     (see {@link PipelineRuntime#getDefault()}) runs I/O bound stages on virtual threads if the JDK supports them
+ *     and {@link PipelineRuntime#VIRTUAL_THREADS_PROPERTY} is not {@code false}, otherwise on pooled platform threads;
+ *     the threads are reused by the next jobs, so many jobs may share one JVM.<br>
+ *     The stages of one job are structured by {@link ee.helmes.PipelineRuntime.Job}: the job waits for all of
+ *     its stages, and if any stage fails, the other stages are cancelled and the failure is thrown by
+ *     {@link PipelineRuntime.Job#join()}. No stage outlives its job.
+ */
+public final class PipelineRuntime {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * Name of the system property which enables virtual threads for I/O bound stages of the default runtime
+     * where the JDK supports them.<br>
+     * Defaults to {@code true}.
+     */
+    static final String VIRTUAL_THREADS_PROPERTY = "filteringRules.virtualThreads";
+
+    /**
+     * The runtime shared by the jobs of the JVM or {@code null} if it was not created yet.
+     */
+    private static PipelineRuntime defaultRuntime;
+
+    /**
+     * Executor of I/O bound stages.
+     */
+    private final ExecutorService ioExecutor;
+
+    /**
+     * Executor of compute bound stages.
+     */
+    private final ExecutorService computeExecutor;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.PipelineRuntime} object.<br>
+     * The executors are owned by the caller; they must start each submitted task.
+     *
+     * @param ioExecutor executor of I/O bound stages.
+     * @param computeExecutor executor of compute bound stages.
+     */
+    public PipelineRuntime(ExecutorService ioExecutor, ExecutorService computeExecutor){
+        if(ioExecutor == null || computeExecutor == null){
+            throw new NullPointerException();
+        }
+        this.ioExecutor = ioExecutor;
+        this.computeExecutor = computeExecutor;
+    }
+
+    /**
+     * Returns the runtime shared by the jobs of the JVM, creating it on the first call.<br>
+     * Compute bound stages run on the pool of daemon platform threads {@code PIPELINE_THREAD-n};
+     * I/O bound stages run on virtual threads (see {@link PipelineRuntime#VIRTUAL_THREADS_PROPERTY})
+     * or on the pool of daemon platform threads {@code PIPELINE_IO_THREAD-n}.
+     * Idle pooled threads are stopped after one minute.
+     *
+     * @return the runtime shared by the jobs of the JVM.
+     */
+    public static synchronized PipelineRuntime getDefault() {
+        if(defaultRuntime == null){
+            ExecutorService ioExecutor = null;
+            if(!"false".equalsIgnoreCase(System.getProperty(VIRTUAL_THREADS_PROPERTY))){
+                ioExecutor = PipelineRuntime.newVirtualThreadExecutor();
+            }
+            boolean virtual = ioExecutor != null;
+            if(!virtual){
+                ioExecutor = Executors.newCachedThreadPool(new PipelineThreadFactory("PIPELINE_IO_THREAD-"));
+            }
+            defaultRuntime = new PipelineRuntime(ioExecutor,
+                                                 Executors.newCachedThreadPool(new PipelineThreadFactory("PIPELINE_THREAD-")));
+            logger.info(": I/O bound pipeline stages run on " + (virtual ? "virtual" : "pooled platform")
+                        + " threads, compute bound stages on pooled platform threads.");
+        }
+        return defaultRuntime;
+    }
+
+    /**
+     * Returns new job which runs its stages on the executors of this runtime.
+     *
+     * @return new {@link ee.helmes.PipelineRuntime.Job} object.
+     */
+    public Job newJob() {
+        return new Job();
+    }
+
+    /**
+     * Returns new executor which starts a virtual thread for each task
+     * ({@code Executors.newVirtualThreadPerTaskExecutor()}).<br>
+     * The method is looked up reflectively, so the application still runs on JDKs without virtual threads.
+     *
+     * @return new executor or {@code null} if the JDK does not support virtual threads.
+     */
+    static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (NoSuchMethodException ex){
+            return null;
+        }
+        catch (IllegalAccessException | InvocationTargetException ex){
+            logger.log(Level.FINE, ": virtual threads are not available because of " + ex, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Stages of one filtering job.<br>
+     *     Stages are forked by {@link Job#fork(String, Callable)} and {@link Job#forkIo(String, Callable)} and run
+     *     under their names, so the log of the stage looks as if it ran in its own thread.
+     *     {@link Job#join()} waits for all stages; the first failure cancels the other stages by interrupting them
+     *     (stages waiting on the {@link ee.helmes.RuleRingBuffer} stop at once) and is thrown when they have stopped.
+     *     Closing the job cancels the stages which are still running and waits for them.<br>
+     *     The job is used by the thread which created it and is joined once.
+     */
+    public final class Job implements AutoCloseable {
+
+        /**
+         * Forked stages in order of forking.
+         */
+        private final List<StageTask<?>> stages = new ArrayList<>();
+
+        /**
+         * Stages which are done, in order of completion.
+         */
+        private final BlockingQueue<StageTask<?>> completedStages = new LinkedBlockingQueue<>();
+
+        /**
+         * Use {@link PipelineRuntime#newJob()} to create the job.
+         */
+        private Job(){}
+
+        /**
+         * Forks the compute bound stage.
+         *
+         * @param stageName name of the stage, used as the name of its thread while it runs.
+         * @param stage the stage.
+         * @param <T> type of the result of the stage.
+         * @return {@link java.util.concurrent.Future} of the result of the stage.
+         */
+        public <T> Future<T> fork(String stageName, Callable<T> stage) {
+            return this.fork(stageName, stage, computeExecutor);
+        }
+
+        /**
+         * Forks the I/O bound stage, for example the parser of the input file.
+         *
+         * @param stageName name of the stage, used as the name of its thread while it runs.
+         * @param stage the stage.
+         * @param <T> type of the result of the stage.
+         * @return {@link java.util.concurrent.Future} of the result of the stage.
+         */
+        public <T> Future<T> forkIo(String stageName, Callable<T> stage) {
+            return this.fork(stageName, stage, ioExecutor);
+        }
+
+        /**
+         * Waits for all forked stages.<br>
+         * If a stage fails, the other stages are cancelled; the failure is thrown when all stages have stopped.
+         * If the current thread is interrupted, all stages are cancelled as well.
+         *
+         * @throws ExecutionException if any stage failed; the cause is the first failure.
+         * @throws InterruptedException if the current thread was interrupted while waiting.
+         */
+        public void join() throws ExecutionException, InterruptedException {
+            Throwable failure = null;
+            try {
+                for(int i = 0; i < stages.size(); i++){
+                    StageTask<?> stage = completedStages.take();
+                    if(failure != null || stage.isCancelled()){
+                        continue;
+                    }
+                    try {
+                        stage.get();
+                    }
+                    catch (ExecutionException ex){
+                        failure = ex.getCause();
+                        logger.log(Level.SEVERE, ": stage " + stage.stageName + " failed, other stages are cancelled:", failure);
+                        this.cancel();
+                    }
+                }
+            }
+            catch (InterruptedException ex){
+                this.close();
+                throw ex;
+            }
+            this.awaitStages();
+            if(failure != null){
+                throw new ExecutionException(failure);
+            }
+        }
+
+        /**
+         * Cancels the stages which are still running and waits for them to stop.
+         */
+        @Override
+        public void close() {
+            this.cancel();
+            this.awaitStages();
+        }
+
+        /**
+         * Forks the stage on the given executor.
+         *
+         * @param stageName name of the stage.
+         * @param stage the stage.
+         * @param executor executor of the stage.
+         * @param <T> type of the result of the stage.
+         * @return {@link java.util.concurrent.Future} of the result of the stage.
+         * @throws RejectedExecutionException if the executor does not accept the stage; the other stages are cancelled.
+         */
+        private <T> Future<T> fork(String stageName, Callable<T> stage, ExecutorService executor) {
+            if(stageName == null || stage == null){
+                throw new NullPointerException();
+            }
+            StageTask<T> task = new StageTask<>(stageName, stage, completedStages);
+            try {
+                executor.execute(task);
+            }
+            catch (RejectedExecutionException ex){
+                this.close();
+                throw ex;
+            }
+            stages.add(task);
+            return task;
+        }
+
+        /**
+         * Cancels the stages which are not done, interrupting the running ones.
+         */
+        private void cancel() {
+            for(StageTask<?> stage : stages){
+                stage.cancel(true);
+            }
+        }
+
+        /**
+         * Waits for all stages to stop, even if the current thread is interrupted.
+         */
+        private void awaitStages() {
+            boolean interrupted = false;
+            for(StageTask<?> stage : stages){
+                while (true){
+                    try {
+                        stage.stopped.await();
+                        break;
+                    }
+                    catch (InterruptedException ex){
+                        interrupted = true;
+                    }
+                }
+            }
+            if(interrupted){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Task of one stage which runs under the name of the stage and reports its completion to the job.
+     *
+     * @param <T> type of the result of the stage.
+     */
+    private static final class StageTask<T> extends FutureTask<T> {
+
+        /**
+         * Name of the stage.
+         */
+        private final String stageName;
+
+        /**
+         * Queue of the completed stages of the job.
+         */
+        private final BlockingQueue<StageTask<?>> completedStages;
+
+        /**
+         * Latch which is released when the task has stopped running; the task which was cancelled before it started
+         * is released when the executor runs it.
+         */
+        private final CountDownLatch stopped = new CountDownLatch(1);
+
+        /**
+         * Initializes a newly created {@link ee.helmes.PipelineRuntime.StageTask} object.
+         *
+         * @param stageName name of the stage.
+         * @param stage the stage.
+         * @param completedStages queue of the completed stages of the job.
+         */
+        StageTask(String stageName, Callable<T> stage, BlockingQueue<StageTask<?>> completedStages){
+            super(stage);
+            this.stageName = stageName;
+            this.completedStages = completedStages;
+        }
+
+        /**
+         * Runs the stage under its name and restores the name of the thread afterwards.
+         */
+        @Override
+        public void run() {
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName(stageName);
+            try {
+                super.run();
+            }
+            finally {
+                thread.setName(threadName);
+                stopped.countDown();
+            }
+        }
+
+        /**
+         * Reports the completion of the stage to the job.
+         */
+        @Override
+        protected void done() {
+            completedStages.add(this);
+        }
+
+    }
+
+    /**
+     * Factory of the daemon platform threads of the runtime.
+     */
+    private static final class PipelineThreadFactory implements ThreadFactory {
+
+        /**
+         * Prefix of the names of the threads.
+         */
+        private final String namePrefix;
+
+        /**
+         * Number of the last created thread.
+         */
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        /**
+         * Initializes a newly created {@link ee.helmes.PipelineRuntime.PipelineThreadFactory} object.
+         *
+         * @param namePrefix prefix of the names of the threads.
+         */
+        PipelineThreadFactory(String namePrefix){
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, namePrefix + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package ee.helmes;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Live counters and phase timings of the filtering pipeline, exposed as the JMX MBean
+ * {@link PipelineStats#OBJECT_NAME}.<br>
+ *     Counters are updated on the hot path by the parsing and filtering threads, so they are
+ *     {@link java.util.concurrent.atomic.LongAdder adders}: under contention an update goes to the cell of the thread
+ *     instead of one shared atomic value.<br>
+ *     Each valid parsed rule is counted as exactly one of the accepted, replaced or rejected rules: when the results
+ *     filtered separately (chunks, files or spilled runs) are merged, the rule accepted in one part which meets the rule
+ *     with the same name from another part is counted again as replaced or rejected (see
+ *     {@link PipelineStats#countMergedDecision(boolean)}).
+ *     Queue depth and number of distinct names are read on demand from the {@link ee.helmes.XMLNodeFilter filters}
+ *     of the running jobs, which register themselves when they are created and leave when their result is saved;
+ *     filters which are dropped without saving are forgotten by the garbage collector.<br>
+ *     The statistics are shared by all jobs of the JVM.
+ */
+public final class PipelineStats implements PipelineStatsMBean {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * Name of the MBean.
+     */
+    public static final String OBJECT_NAME = "ee.helmes:type=PipelineStats";
+
+    /**
+     * The statistics of the current JVM.
+     */
+    private static final PipelineStats INSTANCE = new PipelineStats();
+
+    /**
+     * Counters of the rules.
+     */
+    private final LongAdder rulesParsed = new LongAdder(),
+                           rulesInvalid = new LongAdder(),
+                           rulesAccepted = new LongAdder(),
+                           rulesReplaced = new LongAdder(),
+                           rulesRejected = new LongAdder();
+
+    /**
+     * Counter of the bytes read by the parsers.
+     */
+    private final LongAdder bytesRead = new LongAdder();
+
+    /**
+     * Times of the phases in nanoseconds.
+     */
+    private final LongAdder parseTime = new LongAdder(),
+                           filterTime = new LongAdder(),
+                           saveTime = new LongAdder(),
+                           htmlRenderTime = new LongAdder();
+
+    /**
+     * Filters of the running jobs.
+     */
+    private final Set<XMLNodeFilter> filters = Collections.newSetFromMap(new WeakHashMap<XMLNodeFilter, Boolean>());
+
+    /**
+     * Use {@link PipelineStats#get()} to get the statistics of the current JVM.
+     */
+    private PipelineStats(){}
+
+    /**
+     * Returns the statistics of the current JVM.
+     *
+     * @return the statistics of the current JVM.
+     */
+    public static PipelineStats get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers the statistics of the current JVM in the platform MBean server as {@link PipelineStats#OBJECT_NAME}.<br>
+     * Registering it again has no effect; if the MBean can not be registered, the error is logged and the
+     * statistics are still collected.
+     */
+    public static void register() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+            logger.info(": Pipeline statistics are available as JMX MBean " + OBJECT_NAME + ".");
+        }
+        catch (InstanceAlreadyExistsException ex){
+            logger.log(Level.FINE, ex.getMessage(), ex);
+        }
+        catch (JMException ex){
+            logger.log(Level.WARNING, ": MBean " + OBJECT_NAME + " wasn't registered because of the " + ex, ex);
+        }
+    }
+
+    /**
+     * Counts the rule element read by the parser.
+     */
+    void countParsedRule() {
+        rulesParsed.increment();
+    }
+
+    /**
+     * Counts the rule element rejected by the validation of attributes.
+     */
+    void countInvalidRule() {
+        rulesInvalid.increment();
+    }
+
+    /**
+     * Counts the decision of the filter.
+     *
+     * @param newName {@code true} if there was no rule with the same name.
+     * @param passed {@code true} if the rule passed the filter.
+     */
+    void countDecision(boolean newName, boolean passed) {
+        if(!passed){
+            rulesRejected.increment();
+        }
+        else if(newName){
+            rulesAccepted.increment();
+        }
+        else {
+            rulesReplaced.increment();
+        }
+    }
+
+    /**
+     * Counts the decision about the name met in two results of filtering which are merged.<br>
+     * The rule of each result was counted as accepted by the part it came from, but only one rule
+     * with the name is accepted in the whole input, so one accepted rule is taken back and counted
+     * as replaced or rejected.
+     *
+     * @param passed {@code true} if the merged rule replaced the rule with the same name.
+     */
+    void countMergedDecision(boolean passed) {
+        rulesAccepted.decrement();
+        if(passed){
+            rulesReplaced.increment();
+        }
+        else {
+            rulesRejected.increment();
+        }
+    }
+
+    /**
+     * Adds the rule elements read by the parser which counted them on its own, for example by
+     * {@link ee.helmes.MappedRuleScanner} which publishes its counts only when they are not read again.
+     *
+     * @param rules number of rule elements read, including the invalid ones.
+     * @param invalidRules number of rule elements rejected by the validation of attributes.
+     */
+    void addParsedRules(long rules, long invalidRules) {
+        rulesParsed.add(rules);
+        rulesInvalid.add(invalidRules);
+    }
+
+    /**
+     * Adds the decisions of the filter counted on their own.<br>
+     * Negative numbers take back the decisions counted by {@link PipelineStats#countDecision(boolean, boolean)}
+     * whose result was discarded, for example by the chunks of {@link ee.helmes.ChunkedRuleParser} when the file
+     * is parsed again by the other engine.
+     *
+     * @param accepted number of the rules which passed the filter and had no rule with the same name.
+     * @param replaced number of the rules which passed the filter and replaced the rule with the same name.
+     * @param rejected number of the rules which did not pass the filter.
+     */
+    void addDecisions(long accepted, long replaced, long rejected) {
+        rulesAccepted.add(accepted);
+        rulesReplaced.add(replaced);
+        rulesRejected.add(rejected);
+    }
+
+    /**
+     * Counts the bytes read by the parser.
+     *
+     * @param bytes number of bytes read.
+     */
+    void countBytesRead(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    /**
+     * Adds time of parsing.
+     *
+     * @param startNanos value of {@link System#nanoTime()} at the start of parsing.
+     */
+    void addParseTime(long startNanos) {
+        parseTime.add(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Adds time of filtering.
+     *
+     * @param startNanos value of {@link System#nanoTime()} at the start of filtering.
+     */
+    void addFilterTime(long startNanos) {
+        filterTime.add(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Adds time of saving the result.
+     *
+     * @param startNanos value of {@link System#nanoTime()} at the start of saving.
+     */
+    void addSaveTime(long startNanos) {
+        saveTime.add(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Adds time of rendering the HTML view by XSLT.
+     *
+     * @param startNanos value of {@link System#nanoTime()} at the start of rendering.
+     */
+    void addHtmlRenderTime(long startNanos) {
+        htmlRenderTime.add(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Adds the filter of the running job.
+     *
+     * @param filter {@link ee.helmes.XMLNodeFilter} object of the running job.
+     */
+    void addFilter(XMLNodeFilter filter) {
+        synchronized (filters){
+            filters.add(filter);
+        }
+    }
+
+    /**
+     * Removes the filter of the finished job.
+     *
+     * @param filter {@link ee.helmes.XMLNodeFilter} object of the finished job.
+     */
+    void removeFilter(XMLNodeFilter filter) {
+        synchronized (filters){
+            filters.remove(filter);
+        }
+    }
+
+    @Override
+    public long getRulesParsed() {
+        return rulesParsed.sum();
+    }
+
+    @Override
+    public long getRulesInvalid() {
+        return rulesInvalid.sum();
+    }
+
+    @Override
+    public long getRulesAccepted() {
+        return rulesAccepted.sum();
+    }
+
+    @Override
+    public long getRulesReplaced() {
+        return rulesReplaced.sum();
+    }
+
+    @Override
+    public long getRulesRejected() {
+        return rulesRejected.sum();
+    }
+
+    @Override
+    public long getQueueDepth() {
+        long queueDepth = 0;
+        for(XMLNodeFilter filter : this.getFilters()){
+            queueDepth += filter.getQueueDepth();
+        }
+        return queueDepth;
+    }
+
+    @Override
+    public long getDistinctNames() {
+        long distinctNames = 0;
+        for(XMLNodeFilter filter : this.getFilters()){
+            distinctNames += filter.getHeldNames();
+        }
+        return distinctNames;
+    }
+
+    @Override
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    @Override
+    public long getParseTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(parseTime.sum());
+    }
+
+    @Override
+    public long getFilterTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(filterTime.sum());
+    }
+
+    @Override
+    public long getSaveTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(saveTime.sum());
+    }
+
+    @Override
+    public long getHtmlRenderTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(htmlRenderTime.sum());
+    }
+
+    @Override
+    public void reset() {
+        for(LongAdder counter : new LongAdder[]{rulesParsed, rulesInvalid, rulesAccepted, rulesReplaced,
+                                                rulesRejected, bytesRead, parseTime, filterTime,
+                                                saveTime, htmlRenderTime}){
+            counter.reset();
+        }
+    }
+
+    /**
+     * Returns the filters of the running jobs.
+     *
+     * @return copy of the set of the filters.
+     */
+    private List<XMLNodeFilter> getFilters() {
+        synchronized (filters){
+            return new ArrayList<>(filters);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ee.helmes;
+
+/**
+ * Management interface of {@link ee.helmes.PipelineStats}.<br>
+ *     Counters and times are cumulative since the start of the JVM or the last {@link PipelineStatsMBean#reset()};
+ *     times are summed over all threads which run the phase, so parallel phases may exceed the elapsed time.
+ */
+public interface PipelineStatsMBean {
+
+    /**
+     * Returns number of rule elements read by the parsers, valid or not.
+     *
+     * @return number of rule elements read by the parsers.
+     */
+    long getRulesParsed();
+
+    /**
+     * Returns number of rule elements rejected by the validation of attributes.
+     *
+     * @return number of invalid rule elements.
+     */
+    long getRulesInvalid();
+
+    /**
+     * Returns number of rules which passed the filter with the new name.
+     *
+     * @return number of added rules.
+     */
+    long getRulesAccepted();
+
+    /**
+     * Returns number of rules which passed the filter and replaced the rule with the same name.
+     *
+     * @return number of rules which replaced other rules.
+     */
+    long getRulesReplaced();
+
+    /**
+     * Returns number of rules which did not pass the filter.
+     *
+     * @return number of rejected rules.
+     */
+    long getRulesRejected();
+
+    /**
+     * Returns number of batches of rules waiting in the ring buffers between the parsers and the filters
+     * of the running jobs.
+     *
+     * @return number of batches in the ring buffers.
+     */
+    long getQueueDepth();
+
+    /**
+     * Returns number of distinct names held by the filters of the running jobs.
+     *
+     * @return number of distinct names held in memory or in the off-heap winner tables.
+     */
+    long getDistinctNames();
+
+    /**
+     * Returns number of bytes read from the input files by the parsers; compressed files are counted
+     * by their compressed size.
+     *
+     * @return number of bytes read.
+     */
+    long getBytesRead();
+
+    /**
+     * Returns time in milliseconds spent in parsing; the filter is applied in the parsing threads
+     * if it does not run in its own thread.
+     *
+     * @return parsing time in milliseconds.
+     */
+    long getParseTimeMillis();
+
+    /**
+     * Returns time in milliseconds spent by the filter threads.
+     *
+     * @return filtering time in milliseconds.
+     */
+    long getFilterTimeMillis();
+
+    /**
+     * Returns time in milliseconds spent in saving the result to all outputs, including the HTML view
+     * written straight from the winners.
+     *
+     * @return saving time in milliseconds.
+     */
+    long getSaveTimeMillis();
+
+    /**
+     * Returns time in milliseconds spent in rendering the HTML view by the custom XSLT stylesheet.
+     *
+     * @return rendering time in milliseconds.
+     */
+    long getHtmlRenderTimeMillis();
+
+    /**
+     * Sets all counters and times to zero.
+     */
+    void reset();
+}
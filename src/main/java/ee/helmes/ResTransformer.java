@@ -8,13 +8,18 @@ import javax.xml.transform.stream.StreamSource;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * Transforms the result of filtering to XML and HTML files.<br>
  *     Creates XML file from and saves the result of parsing and filtering to it.<br>
- *     Produces HTML file from result XML file by applying XSLT template to it.
+ *     Produces HTML file from result XML file by applying XSLT template to it; compiled templates
+ *     are cached, so the stylesheet is loaded and compiled once per JVM.<br>
+ *     The result may be given as {@link org.w3c.dom.Document} object or as XML file
+ *     already saved by {@link ee.helmes.ResultXmlWriter}.
  */
 class ResTransformer {
 
@@ -24,6 +29,17 @@ class ResTransformer {
      */
     private static final Logger logger = Logger.getLogger(ResTransformer.class.getName());
 
+    /**
+     * Classpath location of the default XSLT stylesheet.
+     */
+    static final String DEFAULT_STYLESHEET = "/stylesheet.xsl";
+
+    /**
+     * Compiled stylesheets by their location, one for each stylesheet.<br>
+     * {@link javax.xml.transform.Templates} objects are thread-safe, so they are shared by all transformations.
+     */
+    private static final ConcurrentMap<String, CompiledStylesheet> TEMPLATES = new ConcurrentHashMap<>();
+
     /**
      * Auxiliary variable which stores the name of the current {@link java.lang.Thread}.<br>
      * Is used in creating messages for {@link java.util.logging.Logger} object
@@ -31,18 +47,55 @@ class ResTransformer {
     private final String threadName;
 
     /**
-     * {@code Documet} object which represents the result of parsing and filtering.
+     * {@code Source} object which represents the result of parsing and filtering.
+     */
+    private final Source resultSource;
+
+    /**
+     * Custom XSLT stylesheet or {@code null} if the {@link ResTransformer#DEFAULT_STYLESHEET} is used.
      */
-    private Document resultDocument;
+    private final File stylesheet;
 
 
     /**
-     * Initializes a newly created {@link ee.helmes.XMLNodeFilter} object.
+     * Initializes a newly created {@link ee.helmes.ResTransformer} object.
      *
      * @param resultDocument {@link org.w3c.dom.Document} object.
      */
     ResTransformer(Document resultDocument){
-        this.resultDocument = resultDocument;
+        this(new DOMSource(resultDocument), null);
+    }
+
+    /**
+     * Initializes a newly created {@link ee.helmes.ResTransformer} object
+     * for the result XML file which was already saved.
+     *
+     * @param resultXml {@link java.io.File} object which stores the result of parsing and filtering.
+     */
+    ResTransformer(File resultXml){
+        this(new StreamSource(resultXml), null);
+    }
+
+    /**
+     * Initializes a newly created {@link ee.helmes.ResTransformer} object
+     * for the result XML file which was already saved and the custom XSLT stylesheet.
+     *
+     * @param resultXml {@link java.io.File} object which stores the result of parsing and filtering.
+     * @param stylesheet custom XSLT stylesheet or {@code null} if the {@link ResTransformer#DEFAULT_STYLESHEET} is used.
+     */
+    ResTransformer(File resultXml, File stylesheet){
+        this(new StreamSource(resultXml), stylesheet);
+    }
+
+    /**
+     * Initializes a newly created {@link ee.helmes.ResTransformer} object.
+     *
+     * @param resultSource {@link javax.xml.transform.Source} object which represents the result of parsing and filtering.
+     * @param stylesheet custom XSLT stylesheet or {@code null} if the {@link ResTransformer#DEFAULT_STYLESHEET} is used.
+     */
+    private ResTransformer(Source resultSource, File stylesheet){
+        this.resultSource = resultSource;
+        this.stylesheet = stylesheet;
         this.threadName = Thread.currentThread().getName();
     }
 
@@ -54,35 +107,53 @@ class ResTransformer {
      */
     public void performTransformation(File resultXml) {
         TransformerFactory factory = TransformerFactory.newInstance();
-        DOMSource xmlSource = new DOMSource(resultDocument);
 
-        if(this.saveResultToFile(resultXml, xmlSource,factory)){
+        if(this.saveResultToFile(resultXml, resultSource,factory)){
             logger.info(threadName + ": - the result document was successfully saved to "+resultXml.getAbsolutePath()+".");
         }
 
-        File resultHTML = this.produceHTML(xmlSource,factory);
+        this.performHTMLTransformation(factory);
+    }
+
+    /**
+     * Transforms results of filtering rules to HTML file and displays it.<br>
+     * This method is used when the result XML file was already saved.
+     */
+    public void performHTMLTransformation() {
+        this.performHTMLTransformation(TransformerFactory.newInstance());
+    }
+
+    /**
+     * Transforms results of filtering rules to HTML file and displays it.<br>
+     * Time of the transformation is counted by {@link ee.helmes.PipelineStats}.
+     *
+     * @param factory {@link javax.xml.transform.TransformerFactory} object to produce {@link javax.xml.transform.Transformer}.
+     */
+    private void performHTMLTransformation(TransformerFactory factory) {
+        long startNanos = System.nanoTime();
+        File resultHTML = this.produceHTML(resultSource,factory);
+        PipelineStats.get().addHtmlRenderTime(startNanos);
 
         if(resultHTML!=null){
             this.displayResultFile(resultHTML);
         }
-
     }
 
     /**
-     * Returns {@code true} if result from {@link ResTransformer#resultDocument}
+     * Returns {@code true} if result from {@link ResTransformer#resultSource}
      * was saved in XML form to {@code resultXML} file, {@code false} otherwise.
      *
      * @param resultXml {@link java.io.File} object for saving results in it.
      *
-     * @param xmlSource {@link javax.xml.transform.dom.DOMSource} object created
+     * @param xmlSource {@link javax.xml.transform.Source} object
      *
-     *                  from {@link ResTransformer#resultDocument}.
+     *                  which represents the result of parsing and filtering.
      * @param factory {@link javax.xml.transform.TransformerFactory} object to produce {@link javax.xml.transform.Transformer}.
      *
-     * @return {@code true} if result from {@link ResTransformer#resultDocument}
+     * @return {@code true} if result from {@link ResTransformer#resultSource}
      * was saved in XML form to {@code resultXML} file, {@code false} otherwise.
      */
-    protected boolean saveResultToFile(File resultXml, DOMSource xmlSource, TransformerFactory factory){
+    protected boolean saveResultToFile(File resultXml, Source xmlSource, TransformerFactory factory){
         boolean saved = false;
         Transformer xmlTransformer;
 
@@ -111,18 +182,21 @@ class ResTransformer {
 
     /**
      * Returns {@link java.io.File} object which stores the result of applying XSLT template
-     * to {@link javax.xml.transform.dom.DOMSource} in HTML format.
+     * to {@link javax.xml.transform.Source} in HTML format.<br>
+     * The transformation is recorded as {@link ee.helmes.PipelineEvents.HtmlRenderEvent} event of JDK Flight Recorder.
      *
-     * @param xmlSource {@link javax.xml.transform.dom.DOMSource} object
-     *                   created from {@link ResTransformer#resultDocument}.
+     * @param xmlSource {@link javax.xml.transform.Source} object
+     *                   which represents the result of parsing and filtering.
      *
      * @param factory {@link javax.xml.transform.TransformerFactory} object to produce
      *                {@link javax.xml.transform.Transformer}.
      *
      * @return {@link java.io.File} object which stores the result of applying XSLT template
-     * to {@link javax.xml.transform.dom.DOMSource} in HTML format.
+     * to {@link javax.xml.transform.Source} in HTML format.
      */
-    protected File produceHTML(DOMSource xmlSource, TransformerFactory factory){
+    protected File produceHTML(Source xmlSource, TransformerFactory factory){
+        PipelineEvents.HtmlRenderEvent event = new PipelineEvents.HtmlRenderEvent();
+        event.begin();
         File resultHtml = null;
         try {
 
@@ -130,10 +204,7 @@ class ResTransformer {
             resultHtml = File.createTempFile("result", ".html");
             Result resultToHtml = new StreamResult(resultHtml);
 
-            logger.info(threadName + ": - loading XSLT file from resources...");
-            Source source = new StreamSource(this.getClass().getResourceAsStream("/stylesheet.xsl"));
-
-            Transformer xmlTransformer = factory.newTransformer(source);
+            Transformer xmlTransformer = this.getTemplates(factory).newTransformer();
             logger.info(threadName + ": - applying XSLT to result XML file...");
             xmlTransformer.transform(xmlSource, resultToHtml);
 
@@ -146,15 +217,53 @@ class ResTransformer {
                                      + ":", ex);
         }
 
+        event.finish(resultHtml);
         return resultHtml;
     }
 
     /**
-     * Opens the result HTML file in the default browser, if the current JVM supports this action.
+     * Returns the compiled {@link ResTransformer#stylesheet}.<br>
+     * The stylesheet is loaded and compiled on the first use only; the custom stylesheet is compiled again
+     * if the file was modified since then, and the new compiled stylesheet replaces the old one in the cache.
+     *
+     * @param factory {@link javax.xml.transform.TransformerFactory} object to compile the stylesheet.
+     * @return the compiled stylesheet.
+     * @throws TransformerConfigurationException if the stylesheet can not be compiled.
+     */
+    Templates getTemplates(TransformerFactory factory) throws TransformerConfigurationException {
+        String key = stylesheet == null ? DEFAULT_STYLESHEET : stylesheet.getAbsolutePath();
+        long lastModified = stylesheet == null ? 0 : stylesheet.lastModified();
+        CompiledStylesheet compiled = TEMPLATES.get(key);
+        if(compiled == null || compiled.lastModified != lastModified){
+            logger.info(threadName + ": - loading and compiling XSLT file " + (stylesheet == null ? "from resources" : stylesheet.getAbsolutePath()) + "...");
+            Source source = stylesheet == null ? new StreamSource(ResTransformer.class.getResourceAsStream(DEFAULT_STYLESHEET))
+                                               : new StreamSource(stylesheet);
+            compiled = new CompiledStylesheet(factory.newTemplates(source), lastModified);
+            TEMPLATES.put(key, compiled);
+        }
+        return compiled.templates;
+    }
+
+    /**
+     * Returns the number of compiled stylesheets in the cache.
+     *
+     * @return the number of cached stylesheets.
+     */
+    static int getCachedStylesheets() {
+        return TEMPLATES.size();
+    }
+
+    /**
+     * Opens the result HTML file in the default browser, if the current JVM supports this action.<br>
+     * In the headless JVM the file is only reported.
      *
      * @param resultHtml {@link java.io.File} object in HTML format.
      */
-    private void displayResultFile(File resultHtml){
+    void displayResultFile(File resultHtml){
+        if(GraphicsEnvironment.isHeadless() || !Desktop.isDesktopSupported()){
+            logger.info(threadName + ": - the result HTML file " + resultHtml.getAbsolutePath() + " can not be displayed in the headless environment.");
+            return;
+        }
 
        try {
            if (resultHtml!=null){
@@ -171,5 +280,30 @@ class ResTransformer {
         logger.info(threadName + ": - the result XML file was successfully displayed in HTML.");
     }
 
+    /**
+     * Compiled stylesheet with the modification time of its file.
+     */
+    private static final class CompiledStylesheet {
+
+        /**
+         * The compiled stylesheet.
+         */
+        private final Templates templates;
 
+        /**
+         * Modification time of the stylesheet file when it was compiled, {@code 0} for the default stylesheet.
+         */
+        private final long lastModified;
+
+        /**
+         * Initializes a newly created {@link ee.helmes.ResTransformer.CompiledStylesheet} object.
+         *
+         * @param templates the compiled stylesheet.
+         * @param lastModified modification time of the stylesheet file when it was compiled.
+         */
+        CompiledStylesheet(Templates templates, long lastModified){
+            this.templates = templates;
+            this.lastModified = lastModified;
+        }
+    }
 }
@@ -0,0 +1,329 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Queryable in-memory index of the winners of filtering.<br>
+ *     The winners are kept in arrays sorted once when the index is built:<br>
+ *          - one array for each type, sorted by weight from the highest to the lowest (equal weights by name),
+ *            so the rules of the type in the range of weights ({@link ResultIndex#findByWeight(int, int, int)})
+ *            and the rules with the highest weights ({@link ResultIndex#top(int, int)}) are found by binary search;<br>
+ *          - one array of all winners sorted by name for the lookup by name ({@link ResultIndex#get(String)}).<br>
+ *     Queries take logarithmic time and return unmodifiable views of the arrays, so nothing is copied.
+ *     The index is built from the finished filter (see {@link XMLNodeFilter#createResultIndex()}) or loaded
+ *     from the result file, and it is immutable, so it may be shared by threads.<br>
+ *     Usage: {@code java -cp FilteringRules.jar ee.helmes.ResultIndex result_file name rule_name}<br>
+ *     {@code java -cp FilteringRules.jar ee.helmes.ResultIndex result_file range type min_weight [max_weight]}<br>
+ *     {@code java -cp FilteringRules.jar ee.helmes.ResultIndex result_file top type count}<br>
+ *     where the result file is the binary result ({@code result.bin}) or the result XML file.
+ */
+public class ResultIndex {
+
+    /**
+     * Number of integer representations of {@code "type"} attribute values (see {@link NodeType#getType(String)}).
+     */
+    private static final int TYPE_COUNT = 4;
+
+    /**
+     * Order of the rules by weight from the highest to the lowest, then by name.
+     */
+    private static final Comparator<RuleRecord> BY_WEIGHT = new Comparator<RuleRecord>() {
+        @Override
+        public int compare(RuleRecord rule, RuleRecord other) {
+            int order = Integer.compare(other.getWeight(), rule.getWeight());
+            return order != 0 ? order : rule.getName().compareTo(other.getName());
+        }
+    };
+
+    /**
+     * Order of the rules by name.
+     */
+    private static final Comparator<RuleRecord> BY_NAME = new Comparator<RuleRecord>() {
+        @Override
+        public int compare(RuleRecord rule, RuleRecord other) {
+            return rule.getName().compareTo(other.getName());
+        }
+    };
+
+    /**
+     * Rules of each type sorted by {@link ResultIndex#BY_WEIGHT}, indexed by integer representation of the type.
+     */
+    private final RuleRecord[][] rulesByType = new RuleRecord[TYPE_COUNT][];
+
+    /**
+     * All rules sorted by name.
+     */
+    private final RuleRecord[] rulesByName;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.ResultIndex} object and sorts the winners.
+     *
+     * @param winners the winners of filtering, one rule for each name.
+     *
+     * @throws IllegalArgumentException if two winners have the same name or a winner has unknown type.
+     */
+    public ResultIndex(Collection<RuleRecord> winners){
+        rulesByName = winners.toArray(new RuleRecord[0]);
+        Arrays.sort(rulesByName, BY_NAME);
+
+        int[] typeCounts = new int[TYPE_COUNT];
+        for(int i = 0; i < rulesByName.length; i++){
+            RuleRecord rule = rulesByName[i];
+            if(i > 0 && rule.getName().equals(rulesByName[i - 1].getName())){
+                throw new IllegalArgumentException("Duplicate name of the winner " + rule);
+            }
+            typeCounts[ResultIndex.checkType(rule.getType())]++;
+        }
+        for(int type = 0; type < TYPE_COUNT; type++){
+            rulesByType[type] = new RuleRecord[typeCounts[type]];
+            typeCounts[type] = 0;
+        }
+        for(RuleRecord rule : rulesByName){
+            rulesByType[rule.getType()][typeCounts[rule.getType()]++] = rule;
+        }
+        for(RuleRecord[] rules : rulesByType){
+            Arrays.sort(rules, BY_WEIGHT);
+        }
+    }
+
+    /**
+     * Returns the index of the winners saved to the result file.<br>
+     * The binary result file (the name ends with the extension of {@link OutputFormat#BINARY}) is read by
+     * {@link ee.helmes.BinaryResultReader}, any other file is parsed as the result XML file by {@link ee.helmes.StAXReader}.
+     *
+     * @param resultFile {@link java.io.File} object associated with the result file.
+     * @return the index of the winners of the file.
+     * @throws IOException if the file can not be read or parsed completely.
+     */
+    public static ResultIndex load(File resultFile) throws IOException {
+        if(resultFile.getName().endsWith(OutputFormat.BINARY.getExtension())){
+            return new ResultIndex(BinaryResultReader.readAll(resultFile));
+        }
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        if(!new StAXReader(resultFile, xmlNodeFilter).startParsing()){
+            throw new IOException("Result file " + resultFile.getAbsolutePath() + " was not parsed completely");
+        }
+        return new ResultIndex(xmlNodeFilter.getFilteredNodeMap().values());
+    }
+
+    /**
+     * Returns the number of winners in the index.
+     *
+     * @return the number of winners.
+     */
+    public int size() {
+        return rulesByName.length;
+    }
+
+    /**
+     * Returns the number of winners of the type.
+     *
+     * @param type integer representation of {@code "type"} attribute value.
+     * @return the number of winners of the type.
+     *
+     * @throws IllegalArgumentException if the type is unknown.
+     */
+    public int count(int type) {
+        return rulesByType[ResultIndex.checkType(type)].length;
+    }
+
+    /**
+     * Returns the winner with the given name.
+     *
+     * @param name {@code "name"} attribute value.
+     * @return {@link ee.helmes.RuleRecord} object of the winner or {@code null} if there is no winner with this name.
+     */
+    public RuleRecord get(String name) {
+        int low = 0;
+        int high = rulesByName.length - 1;
+        while (low <= high){
+            int middle = (low + high) >>> 1;
+            int order = rulesByName[middle].getName().compareTo(name);
+            if(order < 0){
+                low = middle + 1;
+            }
+            else if(order > 0){
+                high = middle - 1;
+            }
+            else {
+                return rulesByName[middle];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the winners of the type with weights in the given range, from the highest weight to the lowest.
+     *
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param minWeight the lowest weight, inclusive.
+     * @param maxWeight the highest weight, inclusive.
+     * @return unmodifiable {@link java.util.List} of the winners, empty if {@code minWeight} is greater than {@code maxWeight}.
+     *
+     * @throws IllegalArgumentException if the type is unknown.
+     */
+    public List<RuleRecord> findByWeight(int type, int minWeight, int maxWeight) {
+        RuleRecord[] rules = rulesByType[ResultIndex.checkType(type)];
+        int from = ResultIndex.firstBelow(rules, maxWeight + 1L);
+        int to = ResultIndex.firstBelow(rules, minWeight);
+        return ResultIndex.view(rules, from, Math.max(from, to));
+    }
+
+    /**
+     * Returns the winners of the type with the highest weights, from the highest weight to the lowest.
+     *
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param limit maximum number of the winners.
+     * @return unmodifiable {@link java.util.List} of at most {@code limit} winners.
+     *
+     * @throws IllegalArgumentException if the type is unknown or {@code limit} is negative.
+     */
+    public List<RuleRecord> top(int type, int limit) {
+        if(limit < 0){
+            throw new IllegalArgumentException("Invalid number of winners " + limit);
+        }
+        RuleRecord[] rules = rulesByType[ResultIndex.checkType(type)];
+        return ResultIndex.view(rules, 0, Math.min(limit, rules.length));
+    }
+
+    /**
+     * The entry point of the tool.<br>
+     * Loads the result file and prints the winners which match the query to the standard output.
+     *
+     * @param args {@link java.lang.String}[] object with pathname of the result file and the query.
+     *
+     * @throws IllegalArgumentException if input arguments are not valid.
+     * @throws IOException if the result file can not be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args == null || args.length < 3){
+            throw new IllegalArgumentException("Usage: ResultIndex result_file name rule_name | range type min_weight [max_weight]"
+                                               + " | top type count");
+        }
+        ResultIndex.load(new File(args[0])).query(Arrays.copyOfRange(args, 1, args.length), System.out);
+    }
+
+    /**
+     * Returns the number of winners which match the query and prints them, one rule in a line.<br>
+     * Queries:<br>
+     *     {@code name rule_name} - the winner with the name;<br>
+     *     {@code range type min_weight [max_weight]} - the winners of the type with weights in the range, inclusive;<br>
+     *     {@code top type count} - {@code count} winners of the type with the highest weights.
+     *
+     * @param query {@link java.lang.String}[] object with the name of the query and its arguments.
+     * @param out stream for the winners.
+     * @return the number of printed winners.
+     *
+     * @throws IllegalArgumentException if the query is not valid.
+     */
+    public int query(String[] query, PrintStream out) {
+        List<RuleRecord> rules;
+        if(query.length == 2 && "name".equals(query[0])){
+            RuleRecord rule = this.get(query[1]);
+            rules = rule == null ? Collections.<RuleRecord>emptyList() : Collections.singletonList(rule);
+        }
+        else if((query.length == 3 || query.length == 4) && "range".equals(query[0])){
+            rules = this.findByWeight(ResultIndex.parseType(query[1]), ResultIndex.parseInt(query[2]),
+                                      query.length == 4 ? ResultIndex.parseInt(query[3]) : Integer.MAX_VALUE);
+        }
+        else if(query.length == 3 && "top".equals(query[0])){
+            rules = this.top(ResultIndex.parseType(query[1]), ResultIndex.parseInt(query[2]));
+        }
+        else {
+            throw new IllegalArgumentException("Invalid query " + Arrays.toString(query));
+        }
+        for(RuleRecord rule : rules){
+            out.println(rule);
+        }
+        return rules.size();
+    }
+
+    /**
+     * Returns the index of the first rule with weight less than the given one.
+     *
+     * @param rules rules sorted by {@link ResultIndex#BY_WEIGHT}.
+     * @param weight the weight.
+     * @return index of the first rule with the lower weight or length of the array if there is no such rule.
+     */
+    private static int firstBelow(RuleRecord[] rules, long weight) {
+        int low = 0;
+        int high = rules.length;
+        while (low < high){
+            int middle = (low + high) >>> 1;
+            if(rules[middle].getWeight() >= weight){
+                low = middle + 1;
+            }
+            else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns unmodifiable view of the part of the array.
+     *
+     * @param rules the array of rules.
+     * @param from index of the first rule, inclusive.
+     * @param to index of the last rule, exclusive.
+     * @return unmodifiable {@link java.util.List} backed by the array.
+     */
+    private static List<RuleRecord> view(RuleRecord[] rules, int from, int to) {
+        return Collections.unmodifiableList(Arrays.asList(rules).subList(from, to));
+    }
+
+    /**
+     * Checks that the integer represents the type.
+     *
+     * @param type integer representation of {@code "type"} attribute value.
+     * @return the given type.
+     *
+     * @throws IllegalArgumentException if the type is unknown.
+     */
+    private static int checkType(int type) {
+        if(type < 0 || type >= TYPE_COUNT){
+            throw new IllegalArgumentException("Invalid type " + type);
+        }
+        return type;
+    }
+
+    /**
+     * Returns integer representation of the type given in the query.
+     *
+     * @param typeName lower case string representation of {@code "type"} attribute value.
+     * @return integer representation of the type.
+     *
+     * @throws IllegalArgumentException if the type is unknown.
+     */
+    private static int parseType(String typeName) {
+        int type = NodeType.getType(typeName);
+        if(type == 0){
+            throw new IllegalArgumentException("Invalid type " + typeName);
+        }
+        return type;
+    }
+
+    /**
+     * Returns the integer given in the query.
+     *
+     * @param value string representation of the integer.
+     * @return the integer.
+     *
+     * @throws IllegalArgumentException if the value is not an integer.
+     */
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        }
+        catch (NumberFormatException ex){
+            throw new IllegalArgumentException("Invalid number " + value, ex);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package ee.helmes;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receiver of the winners of filtering which serializes them to one output.<br>
+ *     Winners kept in the heap are passed as {@link ee.helmes.RuleRecord} objects, winners kept outside
+ *     of the heap (see {@link ee.helmes.OffHeapWinnerTable}) as UTF-8 bytes of the name, so names are not decoded.
+ *     All sinks of the result are fed from one pass over the winners (see {@link ee.helmes.ResultSinkFanout}).
+ *     {@link java.io.Closeable#close()} finishes the output.
+ */
+interface ResultSink extends Closeable {
+
+    /**
+     * Writes the rule to the output.
+     *
+     * @param rule {@link ee.helmes.RuleRecord} object to write.
+     * @throws IOException if the output can not be written.
+     */
+    void writeRule(RuleRecord rule) throws IOException;
+
+    /**
+     * Writes the rule with the given UTF-8 encoded name to the output.
+     *
+     * @param name array which holds the UTF-8 bytes of the {@code "name"} attribute value.
+     * @param nameOffset index of the first byte of the name.
+     * @param nameLength number of bytes of the name.
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the output can not be written.
+     */
+    void writeRule(byte[] name, int nameOffset, int nameLength, int type, int weight) throws IOException;
+}
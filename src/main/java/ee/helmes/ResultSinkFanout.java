@@ -0,0 +1,379 @@
+package ee.helmes;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Feeds several {@link ee.helmes.ResultSink sinks} from one pass over the winners.<br>
+ *     Rules are collected into batches of {@link ResultSinkFanout#BATCH_SIZE} rules, and each full batch
+ *     is passed to every sink through its own bounded queue. Each sink is written by its own thread, so
+ *     the outputs are encoded and written concurrently, while the winners are read only once.
+ *     Batches are not changed after they are passed, so they are shared by all sinks; names given as bytes
+ *     are copied into the batch, because the caller may reuse its array.<br>
+ *     The single sink is written directly in the current thread.<br>
+ *     If a sink fails, its thread keeps taking batches without writing them, so other sinks are completed;
+ *     {@link ResultSinkFanout#close()} throws the first error after all sinks are closed.
+ */
+class ResultSinkFanout implements ResultSink {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * Number of rules in one batch.
+     */
+    static final int BATCH_SIZE = 1024;
+
+    /**
+     * Number of batches which may wait in the queue of one sink.
+     */
+    private static final int QUEUE_BATCHES = 16;
+
+    /**
+     * Batch which marks the end of the rules.
+     */
+    private static final Batch END = new Batch();
+
+    /**
+     * The single sink which is written directly or {@code null} if sinks are written by {@link ResultSinkFanout#workers}.
+     */
+    private final ResultSink directSink;
+
+    /**
+     * Threads which write the sinks.
+     */
+    private final List<SinkWorker> workers = new ArrayList<>();
+
+    /**
+     * Batch which collects the next rules.
+     */
+    private Batch batch = new Batch();
+
+    /**
+     * Number of rules passed to the sinks.
+     */
+    private long ruleCount;
+
+    /**
+     * Flag that reflects whether the fanout was closed.
+     */
+    private boolean closed;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.ResultSinkFanout} object and starts the threads of the sinks.
+     *
+     * @param sinks sinks which receive all rules; they are closed by {@link ResultSinkFanout#close()}.
+     */
+    ResultSinkFanout(List<? extends ResultSink> sinks){
+        if(sinks.size() == 1){
+            this.directSink = sinks.get(0);
+            return;
+        }
+        this.directSink = null;
+        for(ResultSink sink : sinks){
+            SinkWorker worker = new SinkWorker(sink, "RESULT_SINK_THREAD-" + (workers.size() + 1));
+            workers.add(worker);
+            worker.start();
+        }
+    }
+
+    /**
+     * Passes the rule to all sinks.
+     *
+     * @param rule {@link ee.helmes.RuleRecord} object to write.
+     * @throws IOException if the single sink can not be written or the current thread was interrupted.
+     */
+    @Override
+    public void writeRule(RuleRecord rule) throws IOException {
+        ruleCount++;
+        if(directSink != null){
+            directSink.writeRule(rule);
+            return;
+        }
+        batch.add(rule);
+        this.publishIfFull();
+    }
+
+    /**
+     * Passes the rule with the given UTF-8 encoded name to all sinks.
+     *
+     * @param name array which holds the UTF-8 bytes of the {@code "name"} attribute value.
+     * @param nameOffset index of the first byte of the name.
+     * @param nameLength number of bytes of the name.
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the single sink can not be written or the current thread was interrupted.
+     */
+    @Override
+    public void writeRule(byte[] name, int nameOffset, int nameLength, int type, int weight) throws IOException {
+        ruleCount++;
+        if(directSink != null){
+            directSink.writeRule(name, nameOffset, nameLength, type, weight);
+            return;
+        }
+        batch.add(name, nameOffset, nameLength, type, weight);
+        this.publishIfFull();
+    }
+
+    /**
+     * Returns number of rules passed to the sinks.
+     *
+     * @return number of rules passed to the sinks.
+     */
+    long getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Passes the rest of the rules to all sinks, waits for the sinks to complete and closes them.<br>
+     * Closing the closed fanout has no effect.
+     *
+     * @throws IOException the first error of the sinks or if the current thread was interrupted.
+     */
+    @Override
+    public void close() throws IOException {
+        if(closed){
+            return;
+        }
+        closed = true;
+        if(directSink != null){
+            directSink.close();
+            return;
+        }
+        IOException error = null;
+        try {
+            if(batch.size > 0){
+                this.publish(batch);
+            }
+            this.publish(END);
+        }
+        catch (IOException ex){
+            error = ex;
+            for(SinkWorker worker : workers){
+                worker.interrupt();
+            }
+        }
+        boolean interrupted = false;
+        for(SinkWorker worker : workers){
+            while (worker.isAlive()){
+                try {
+                    worker.join();
+                }
+                catch (InterruptedException ex){
+                    interrupted = true;
+                }
+            }
+            if(error == null){
+                error = worker.error;
+            }
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+        if(error != null){
+            throw error;
+        }
+    }
+
+    /**
+     * Passes the current batch to all sinks when it is full and starts the new batch.
+     *
+     * @throws IOException if the current thread was interrupted.
+     */
+    private void publishIfFull() throws IOException {
+        if(batch.size == BATCH_SIZE){
+            this.publish(batch);
+            batch = new Batch();
+        }
+    }
+
+    /**
+     * Puts the batch to the queues of all sinks, waiting while they are full.
+     *
+     * @param batch batch to pass.
+     * @throws IOException if the current thread was interrupted.
+     */
+    private void publish(Batch batch) throws IOException {
+        try {
+            for(SinkWorker worker : workers){
+                worker.queue.put(batch);
+            }
+        }
+        catch (InterruptedException ex){
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Writing of the result was interrupted");
+        }
+    }
+
+    /**
+     * Rules passed to the sinks at once.<br>
+     * Each rule is kept either as {@link ee.helmes.RuleRecord} object or as UTF-8 bytes of the name in the {@code names} array.
+     */
+    private static final class Batch {
+
+        /**
+         * Rules given as objects or {@code null} for rules given as bytes.
+         */
+        private final RuleRecord[] rules = new RuleRecord[BATCH_SIZE];
+
+        /**
+         * Offsets and lengths of the names in the {@code names} array.
+         */
+        private final int[] nameOffsets = new int[BATCH_SIZE],
+                            nameLengths = new int[BATCH_SIZE];
+
+        /**
+         * Types and weights of the rules given as bytes.
+         */
+        private final int[] types = new int[BATCH_SIZE],
+                            weights = new int[BATCH_SIZE];
+
+        /**
+         * UTF-8 bytes of the names of the rules given as bytes.
+         */
+        private byte[] names = new byte[0];
+
+        /**
+         * Number of bytes used in the {@code names} array.
+         */
+        private int namesLength;
+
+        /**
+         * Number of rules in the batch.
+         */
+        private int size;
+
+        /**
+         * Adds the rule object to the batch.
+         *
+         * @param rule {@link ee.helmes.RuleRecord} object to add.
+         */
+        void add(RuleRecord rule){
+            rules[size++] = rule;
+        }
+
+        /**
+         * Adds the copy of the rule with the given UTF-8 encoded name to the batch.
+         *
+         * @param name array which holds the UTF-8 bytes of the name.
+         * @param nameOffset index of the first byte of the name.
+         * @param nameLength number of bytes of the name.
+         * @param type integer representation of {@code "type"} attribute value.
+         * @param weight {@code "weight"} attribute value.
+         */
+        void add(byte[] name, int nameOffset, int nameLength, int type, int weight){
+            if(names.length - namesLength < nameLength){
+                names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + nameLength) + 64);
+            }
+            System.arraycopy(name, nameOffset, names, namesLength, nameLength);
+            nameOffsets[size] = namesLength;
+            nameLengths[size] = nameLength;
+            types[size] = type;
+            weights[size] = weight;
+            namesLength += nameLength;
+            size++;
+        }
+
+        /**
+         * Writes all rules of the batch to the sink.
+         *
+         * @param sink sink to write.
+         * @throws IOException if the sink can not be written.
+         */
+        void writeTo(ResultSink sink) throws IOException {
+            for(int i = 0; i < size; i++){
+                if(rules[i] != null){
+                    sink.writeRule(rules[i]);
+                }
+                else {
+                    sink.writeRule(names, nameOffsets[i], nameLengths[i], types[i], weights[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Thread which takes batches from its queue and writes them to its sink till the end of the rules.
+     */
+    private static final class SinkWorker extends Thread {
+
+        /**
+         * Sink written by this thread.
+         */
+        private final ResultSink sink;
+
+        /**
+         * Queue of the batches for the sink.
+         */
+        private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_BATCHES);
+
+        /**
+         * The first error of the sink or {@code null} if the sink was written; unchecked errors are wrapped.
+         */
+        private volatile IOException error;
+
+        /**
+         * Initializes a newly created {@link ee.helmes.ResultSinkFanout.SinkWorker} object.
+         *
+         * @param sink sink written by this thread.
+         * @param name name of the thread.
+         */
+        SinkWorker(ResultSink sink, String name){
+            super(name);
+            this.sink = sink;
+        }
+
+        /**
+         * Writes the batches to the sink and closes it.<br>
+         * Any error of the sink, checked or not, is recorded and the remaining batches are taken without writing
+         * them till the end of the rules, so the producer never waits for the full queue of the failed sink.
+         */
+        @Override
+        public void run() {
+            try {
+                for(Batch next = queue.take(); next != END; next = queue.take()){
+                    if(error == null){
+                        try {
+                            next.writeTo(sink);
+                        }
+                        catch (IOException ex){
+                            logger.log(Level.WARNING, this.getName() + ": the output wasn't written because of the IOException", ex);
+                            error = ex;
+                        }
+                        catch (RuntimeException ex){
+                            logger.log(Level.WARNING, this.getName() + ": the output wasn't written because of the " + ex.getClass().getSimpleName(), ex);
+                            error = new IOException("The output wasn't written because of " + ex, ex);
+                        }
+                    }
+                }
+            }
+            catch (InterruptedException ex){
+                error = new InterruptedIOException("Writing of the output was interrupted");
+            }
+            finally {
+                try {
+                    sink.close();
+                }
+                catch (IOException ex){
+                    if(error == null){
+                        error = ex;
+                    }
+                }
+                catch (RuntimeException ex){
+                    if(error == null){
+                        error = new IOException("The output wasn't closed because of " + ex, ex);
+                    }
+                }
+            }
+        }
+    }
+}
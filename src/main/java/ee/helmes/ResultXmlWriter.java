@@ -0,0 +1,140 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Writes the result of filtering to XML file without building {@link org.w3c.dom.Document} object.<br>
+ *     Rules are encoded to UTF-8 straight into the buffer which is flushed to the file (see {@link ee.helmes.Utf8FileWriter}),
+ *     so time and memory needed for saving the result depend only on the number of rules.<br>
+ *     The file has the same form as the one produced by identity {@link javax.xml.transform.Transformer}:<br>
+ *     {@code <?xml version="1.0" encoding="UTF-8" standalone="no"?><rules><rule name=".." type=".." weight=".."/>...</rules>}
+ */
+class ResultXmlWriter extends Utf8FileWriter implements ResultSink {
+
+    /**
+     * Declaration and start tag of the root element of the result XML file.
+     */
+    private static final byte[] DOCUMENT_START = bytes("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?><rules>");
+
+    /**
+     * End tag of the root element of the result XML file.
+     */
+    private static final byte[] DOCUMENT_END = bytes("</rules>");
+
+    /**
+     * Start of the rule element up to the {@code "name"} attribute value.
+     */
+    private static final byte[] RULE_NAME = bytes("<rule name=\"");
+
+    /**
+     * Part of the rule element between {@code "name"} and {@code "type"} attribute values.
+     */
+    private static final byte[] RULE_TYPE = bytes("\" type=\"");
+
+    /**
+     * Part of the rule element between {@code "type"} and {@code "weight"} attribute values.
+     */
+    private static final byte[] RULE_WEIGHT = bytes("\" weight=\"");
+
+    /**
+     * End of the rule element after {@code "weight"} attribute value.
+     */
+    private static final byte[] RULE_END = bytes("\"/>");
+
+    /**
+     * Number of rules written to the file.
+     */
+    private long ruleCount;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.ResultXmlWriter} object.<br>
+     * Opens (truncates) the result XML file and writes the start of the document.
+     *
+     * @param resultXml {@link java.io.File} object for saving results in it.
+     * @throws IOException if the file can not be opened or written.
+     */
+    ResultXmlWriter(File resultXml) throws IOException {
+        super(XML_ESCAPES);
+        this.open(resultXml);
+        this.put(DOCUMENT_START);
+    }
+
+    /**
+     * Writes the rule element to the result XML file.
+     *
+     * @param rule {@link ee.helmes.RuleRecord} object to write.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    @Override
+    public void writeRule(RuleRecord rule) throws IOException {
+        this.writeRule(rule.getName(), rule.getType(), rule.getWeight());
+    }
+
+    /**
+     * Writes the rule element with given attribute values to the result XML file.
+     *
+     * @param name {@code "name"} attribute value.
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    public void writeRule(String name, int type, int weight) throws IOException {
+        this.put(RULE_NAME);
+        this.putEscaped(name);
+        this.put(RULE_TYPE);
+        this.putType(type);
+        this.put(RULE_WEIGHT);
+        this.putInt(weight);
+        this.put(RULE_END);
+        ruleCount++;
+    }
+
+    /**
+     * Writes the rule element with the given UTF-8 encoded name to the result XML file.<br>
+     * The name is copied byte by byte, so rules kept outside of the heap (see {@link ee.helmes.OffHeapWinnerTable})
+     * are written without decoding names to {@link java.lang.String}.
+     *
+     * @param name array which holds the UTF-8 bytes of the {@code "name"} attribute value.
+     * @param nameOffset index of the first byte of the name.
+     * @param nameLength number of bytes of the name.
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    @Override
+    public void writeRule(byte[] name, int nameOffset, int nameLength, int type, int weight) throws IOException {
+        this.put(RULE_NAME);
+        this.putEscaped(name, nameOffset, nameLength);
+        this.put(RULE_TYPE);
+        this.putType(type);
+        this.put(RULE_WEIGHT);
+        this.putInt(weight);
+        this.put(RULE_END);
+        ruleCount++;
+    }
+
+    /**
+     * Returns number of rules written to the file.
+     *
+     * @return number of rules written to the file.
+     */
+    public long getRuleCount() {
+        return ruleCount;
+    }
+
+    /**
+     * Writes the end of the document and closes the file.
+     *
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.put(DOCUMENT_END);
+        }
+        finally {
+            this.closeFile();
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package ee.helmes;
+
+import org.xml.sax.Attributes;
+
+/**
+ * Compact representation of a valid rule from the input XML file.<br>
+ * Stores {@code "name"} attribute value, integer representation of {@code "type"} attribute value
+ * (see {@link NodeType#getType(String)}) and {@code "weight"} attribute value as primitives,
+ * so rules are compared without reading attributes by string key.<br>
+ * The rule also keeps its id, the position of the rule element in the input given by the parser
+ * (see {@link ee.helmes.DecisionJournal}), so the decisions about the rule are journaled with the same id
+ * whichever thread makes them. The id is not a part of the rule: it is ignored by {@link RuleRecord#equals(Object)}.
+ */
+public final class RuleRecord {
+
+    /**
+     * {@code "name"} attribute value of the rule.
+     */
+    private final String name;
+
+    /**
+     * Integer representation of {@code "type"} attribute value of the rule.
+     */
+    private final byte type;
+
+    /**
+     * {@code "weight"} attribute value of the rule.
+     */
+    private final int weight;
+
+    /**
+     * Id of the rule or {@code 0} if the rule was not read from the input.
+     */
+    private final long ruleId;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.RuleRecord} object which was not read from the input.
+     *
+     * @param name {@code "name"} attribute value of the rule.
+     * @param type integer representation of {@code "type"} attribute value of the rule (see {@link NodeType#getType(String)}).
+     * @param weight {@code "weight"} attribute value of the rule.
+     */
+    public RuleRecord(String name, int type, int weight){
+        this(name, type, weight, 0);
+    }
+
+    /**
+     * Initializes a newly created {@link ee.helmes.RuleRecord} object.
+     *
+     * @param name {@code "name"} attribute value of the rule.
+     * @param type integer representation of {@code "type"} attribute value of the rule (see {@link NodeType#getType(String)}).
+     * @param weight {@code "weight"} attribute value of the rule.
+     * @param ruleId position of the rule element in the input or {@code 0} if the rule was not read from the input.
+     */
+    public RuleRecord(String name, int type, int weight, long ruleId){
+        if(name == null){
+            throw new NullPointerException();
+        }
+        this.name = name;
+        this.type = (byte) type;
+        this.weight = weight;
+        this.ruleId = ruleId;
+    }
+
+    /**
+     * Returns new {@link ee.helmes.RuleRecord} object created from the attributes of the rule element.<br>
+     * Attributes should be validated before (see {@link SAXReader.MyDefaultHandler#validateNodeAttributes(Attributes)}).
+     *
+     * @param attributes valid attributes of the rule element.
+     * @return new {@link ee.helmes.RuleRecord} object created from the attributes of the rule element.
+     * @throws NumberFormatException if {@code "weight"} attribute value is not an integer.
+     */
+    public static RuleRecord valueOf(Attributes attributes){
+        return RuleRecord.valueOf(attributes, 0);
+    }
+
+    /**
+     * Returns new {@link ee.helmes.RuleRecord} object created from the attributes of the rule element with the given id.<br>
+     * Attributes should be validated before (see {@link SAXReader.MyDefaultHandler#validateNodeAttributes(Attributes)}).
+     *
+     * @param attributes valid attributes of the rule element.
+     * @param ruleId position of the rule element in the input.
+     * @return new {@link ee.helmes.RuleRecord} object created from the attributes of the rule element.
+     * @throws NumberFormatException if {@code "weight"} attribute value is not an integer.
+     */
+    public static RuleRecord valueOf(Attributes attributes, long ruleId){
+        return RuleRecord.valueOf(attributes.getValue(RuleAttr.NAME.getValue()),
+                                  attributes.getValue(RuleAttr.TYPE.getValue()),
+                                  attributes.getValue(RuleAttr.WEIGHT.getValue()),
+                                  ruleId);
+    }
+
+    /**
+     * Returns new {@link ee.helmes.RuleRecord} object created from the attribute values of the rule element.<br>
+     * Values should be validated before (see {@link SAXReader#validateRuleAttributes(String, String, String, String)}).
+     *
+     * @param name {@code "name"} attribute value.
+     * @param type {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @return new {@link ee.helmes.RuleRecord} object created from the attribute values of the rule element.
+     * @throws NumberFormatException if {@code "weight"} attribute value is not an integer.
+     */
+    public static RuleRecord valueOf(String name, String type, String weight){
+        return RuleRecord.valueOf(name, type, weight, 0);
+    }
+
+    /**
+     * Returns new {@link ee.helmes.RuleRecord} object created from the attribute values of the rule element with the given id.<br>
+     * Values should be validated before (see {@link SAXReader#validateRuleAttributes(String, String, String, String)}).
+     *
+     * @param name {@code "name"} attribute value.
+     * @param type {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @param ruleId position of the rule element in the input.
+     * @return new {@link ee.helmes.RuleRecord} object created from the attribute values of the rule element.
+     * @throws NumberFormatException if {@code "weight"} attribute value is not an integer.
+     */
+    public static RuleRecord valueOf(String name, String type, String weight, long ruleId){
+        return new RuleRecord(name, NodeType.getType(type), Integer.parseInt(weight), ruleId);
+    }
+
+    /**
+     * Returns {@code true} if this rule takes precedence over the given rule with the same name, {@code false} otherwise.<br>
+     * The rule with the higher type wins; for the equal types the rule with the bigger weight wins.
+     *
+     * @param other rule with the same name.
+     * @return {@code true} if this rule takes precedence over the given rule, {@code false} otherwise.
+     */
+    public boolean outranks(RuleRecord other){
+        return type > other.type || (type == other.type && weight > other.weight);
+    }
+
+    /**
+     * Returns {@code "name"} attribute value of the rule.
+     *
+     * @return {@code "name"} attribute value of the rule.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns integer representation of {@code "type"} attribute value of the rule.
+     *
+     * @return integer representation of {@code "type"} attribute value of the rule.
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * Returns string representation of {@code "type"} attribute value of the rule.
+     *
+     * @return string representation of {@code "type"} attribute value of the rule.
+     */
+    public String getTypeName() {
+        return NodeType.getTypeName(type);
+    }
+
+    /**
+     * Returns {@code "weight"} attribute value of the rule.
+     *
+     * @return {@code "weight"} attribute value of the rule.
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * Returns the id of the rule: the position of the rule element in the input (see {@link ee.helmes.DecisionJournal}).
+     *
+     * @return the id of the rule or {@code 0} if the rule was not read from the input.
+     */
+    public long getRuleId() {
+        return ruleId;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if(obj == this){
+            return true;
+        }
+        if(!(obj instanceof RuleRecord)){
+            return false;
+        }
+        RuleRecord rule = (RuleRecord) obj;
+
+        return type == rule.type && weight == rule.weight && name.equals(rule.name);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = name.hashCode();
+
+        result = prime*result + type;
+        result = prime*result + weight;
+
+        return result;
+    }
+
+    /**
+     * Returns the XML representation of the rule.<br>
+     * This method is used by {@code logger} object during logging messages.
+     *
+     * @return the XML representation of the rule.
+     */
+    @Override
+    public String toString() {
+        return "<rule name=\"" + name + "\" type=\"" + getTypeName() + "\" weight=\"" + weight + "\"/>";
+    }
+}
@@ -0,0 +1,309 @@
+package ee.helmes;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded single-producer/single-consumer ring buffer which moves batches of {@link ee.helmes.RuleRecord rules}
+ * between two threads without locks.<br>
+ *     The producer collects rules into a batch and publishes the batch when it is full,
+ *     so the threads synchronize once per batch instead of once per rule.<br>
+ *     The end of the stream and errors are signalled explicitly by {@link RuleRingBuffer#close()}
+ *     and {@link RuleRingBuffer#fail(Throwable)}, so the consumer does not poll flags of the producer.<br>
+ *     A thread which waits for free or published slots spins first, then yields and then parks
+ *     for increasing periods of time, so an idle thread does not burn CPU. Waits are recorded
+ *     as {@link ee.helmes.PipelineEvents.QueueStallEvent} events of JDK Flight Recorder.
+ */
+public class RuleRingBuffer {
+
+    /**
+     * Number of attempts the waiting thread spins before it starts yielding.
+     */
+    private static final int SPIN_TRIES = 100;
+
+    /**
+     * Number of attempts the waiting thread yields before it starts parking.
+     */
+    private static final int YIELD_TRIES = 200;
+
+    /**
+     * Maximum period of time in nanoseconds the waiting thread parks for.
+     */
+    private static final long MAX_PARK_NANOS = 1000000L;
+
+    /**
+     * Slots of the ring buffer, each slot stores one published batch.
+     */
+    private final RuleRecord[][] slots;
+
+    /**
+     * Mask which converts sequence numbers to indexes of {@code slots}.
+     */
+    private final int mask;
+
+    /**
+     * Maximum number of rules in one batch.
+     */
+    private final int batchSize;
+
+    /**
+     * Sequence number of the next batch to publish. Written by the producer only.
+     */
+    private final AtomicLong tail = new PaddedAtomicLong();
+
+    /**
+     * Sequence number of the next batch to take. Written by the consumer only.
+     */
+    private final AtomicLong head = new PaddedAtomicLong();
+
+    /**
+     * The last value of {@code head} seen by the producer.
+     */
+    private long cachedHead;
+
+    /**
+     * The last value of {@code tail} seen by the consumer.
+     */
+    private long cachedTail;
+
+    /**
+     * Batch which is being filled by the producer.
+     */
+    private RuleRecord[] batch;
+
+    /**
+     * Number of rules in the {@code batch}.
+     */
+    private int batchLength;
+
+    /**
+     * Flag that reflects the end of the stream.<br>
+     * {@code true} if the producer published all batches, {@code false} otherwise.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Error which stopped the producer or {@code null} if there was no error.
+     */
+    private volatile Throwable failure;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.RuleRingBuffer} object.
+     *
+     * @param capacity maximum number of batches in the buffer; rounded up to the power of two.
+     * @param batchSize maximum number of rules in one batch.
+     *
+     * @throws IllegalArgumentException if {@code capacity} or {@code batchSize} is less than 1.
+     */
+    public RuleRingBuffer(int capacity, int batchSize){
+        if(capacity < 1 || capacity > (1 << 30) || batchSize < 1){
+            throw new IllegalArgumentException("Invalid ring buffer capacity " + capacity + " or batch size " + batchSize);
+        }
+        int slotCount = Integer.highestOneBit(capacity);
+        if(slotCount < capacity){
+            slotCount <<= 1;
+        }
+        this.slots = new RuleRecord[slotCount][];
+        this.mask = slotCount - 1;
+        this.batchSize = batchSize;
+        this.batch = new RuleRecord[batchSize];
+    }
+
+    /**
+     * Adds the rule to the current batch and publishes the batch if it is full.<br>
+     * Called by the producer thread only.
+     *
+     * @param rule {@link ee.helmes.RuleRecord} object to publish.
+     * @throws InterruptedException if the producer was interrupted while waiting for a free slot.
+     */
+    public void publish(RuleRecord rule) throws InterruptedException {
+        batch[batchLength++] = rule;
+        if(batchLength == batchSize){
+            this.flush();
+        }
+    }
+
+    /**
+     * Publishes the current batch if it is not empty.<br>
+     * If the error was signalled, the batch is discarded.<br>
+     * Called by the producer thread only.
+     *
+     * @throws InterruptedException if the producer was interrupted while waiting for a free slot.
+     */
+    public void flush() throws InterruptedException {
+        if(batchLength == 0){
+            return;
+        }
+        long sequence = tail.get();
+        int attempt = 0;
+        PipelineEvents.QueueStallEvent stall = null;
+        while (sequence - cachedHead > mask){
+            cachedHead = head.get();
+            if(sequence - cachedHead > mask){
+                if(stall == null){
+                    stall = new PipelineEvents.QueueStallEvent();
+                    stall.begin();
+                }
+                RuleRingBuffer.idle(attempt++);
+            }
+            if(failure != null){
+                batchLength = 0;
+                return;
+            }
+        }
+        if(stall != null){
+            stall.finish(true, slots.length);
+        }
+        slots[(int) sequence & mask] = batchLength == batchSize ? batch : Arrays.copyOf(batch, batchLength);
+        tail.lazySet(sequence + 1);
+
+        batch = new RuleRecord[batchSize];
+        batchLength = 0;
+    }
+
+    /**
+     * Publishes the current batch and signals the end of the stream.<br>
+     * Called by the producer thread only.
+     *
+     * @throws InterruptedException if the producer was interrupted while waiting for a free slot.
+     */
+    public void close() throws InterruptedException {
+        try {
+            this.flush();
+        }
+        finally {
+            closed = true;
+        }
+    }
+
+    /**
+     * Signals the error which stopped the producer or the consumer.<br>
+     * The consumer stops taking batches, and the producer stops waiting for free slots.
+     *
+     * @param cause the error.
+     */
+    public void fail(Throwable cause){
+        failure = cause;
+    }
+
+    /**
+     * Returns the next published batch, waiting for it if necessary.<br>
+     * Called by the consumer thread only.
+     *
+     * @return array of rules or {@code null} if the stream is closed and all batches were taken
+     * or if the error was signalled.
+     * @throws InterruptedException if the consumer was interrupted while waiting for a batch.
+     */
+    public RuleRecord[] takeBatch() throws InterruptedException {
+        long sequence = head.get();
+        int attempt = 0;
+        PipelineEvents.QueueStallEvent stall = null;
+        while (sequence >= cachedTail){
+            if(failure != null){
+                return null;
+            }
+            boolean wasClosed = closed;
+            cachedTail = tail.get();
+            if(sequence >= cachedTail){
+                if(wasClosed){
+                    return null;
+                }
+                if(stall == null){
+                    stall = new PipelineEvents.QueueStallEvent();
+                    stall.begin();
+                }
+                RuleRingBuffer.idle(attempt++);
+            }
+        }
+        if(stall != null){
+            stall.finish(false, slots.length);
+        }
+        if(failure != null){
+            return null;
+        }
+        int index = (int) sequence & mask;
+        RuleRecord[] rules = slots[index];
+        slots[index] = null;
+        head.lazySet(sequence + 1);
+
+        return rules;
+    }
+
+    /**
+     * Returns the error signalled by {@link RuleRingBuffer#fail(Throwable)}.
+     *
+     * @return the error or {@code null} if there was no error.
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * Returns number of batches published but not taken yet.
+     *
+     * @return number of batches published but not taken yet.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Returns maximum number of batches in the buffer.
+     *
+     * @return maximum number of batches in the buffer.
+     */
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    /**
+     * Returns maximum number of rules in one batch.
+     *
+     * @return maximum number of rules in one batch.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Waits before the next attempt to publish or take a batch.<br>
+     * Spins first, then yields and then parks for increasing periods of time.
+     *
+     * @param attempt number of the failed attempts.
+     * @throws InterruptedException if the current thread was interrupted.
+     */
+    private static void idle(int attempt) throws InterruptedException {
+        if(attempt < SPIN_TRIES){
+            return;
+        }
+        if(attempt < SPIN_TRIES + YIELD_TRIES){
+            Thread.yield();
+        }
+        else {
+            int parkShift = Math.min(attempt - SPIN_TRIES - YIELD_TRIES, 10);
+            LockSupport.parkNanos(Math.min(1000L << parkShift, MAX_PARK_NANOS));
+        }
+        if(Thread.interrupted()){
+            throw new InterruptedException();
+        }
+    }
+
+    /**
+     * {@link java.util.concurrent.atomic.AtomicLong} padded to its own cache line,
+     * so the counters of the producer and the consumer do not share cache lines.
+     */
+    @SuppressWarnings("unused")
+    private static final class PaddedAtomicLong extends AtomicLong {
+
+        /**
+         * Version of the serialized form; the counter is never serialized, the field only keeps the form stable.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * Padding fields.
+         */
+        private long p1, p2, p3, p4, p5, p6, p7;
+    }
+}
@@ -0,0 +1,331 @@
+package ee.helmes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps partial results of filtering in temporary files when they do not fit in memory.<br>
+ *     Each {@link RuleRunMerger#spill(Map) spill} sorts the winners of the map by name and writes them
+ *     to the new run file. When the input is finished, the runs and the winners left in memory are merged
+ *     by name with the precedence rules of {@link ee.helmes.XMLNodeFilter}, and each final winner is streamed
+ *     straight to the {@link ee.helmes.ResultSink}, so only one rule of each run is held in memory.<br>
+ *     The result is written in order of names. Each rule of the run is written as {@code int} length
+ *     and UTF-8 bytes of the name, {@code byte} type, {@code int} weight and {@code long} id of the rule.
+ */
+public class RuleRunMerger implements Closeable {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * Size of the buffers of the run streams.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Order of rules in the runs.
+     */
+    private static final Comparator<RuleRecord> NAME_ORDER = new Comparator<RuleRecord>() {
+        @Override
+        public int compare(RuleRecord rule, RuleRecord other) {
+            return rule.getName().compareTo(other.getName());
+        }
+    };
+
+    /**
+     * Directory of the run files.
+     */
+    private final File spillDirectory;
+
+    /**
+     * Run files in order of spilling.
+     */
+    private final List<File> runFiles = new ArrayList<>();
+
+    /**
+     * Initializes a newly created {@link ee.helmes.RuleRunMerger} object.
+     *
+     * @param spillDirectory directory of the run files or {@code null} for the default temporary-file directory.
+     */
+    public RuleRunMerger(File spillDirectory){
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * Returns the number of runs written to the temporary files.
+     *
+     * @return the number of runs.
+     */
+    public int getRunCount() {
+        return runFiles.size();
+    }
+
+    /**
+     * Writes the winners of the map to the new run file and clears the map.
+     *
+     * @param filteredNodeMap {@link java.util.Map} object which stores the partial result of filtering.
+     * @throws IOException if the run file can not be written; the map is not changed in this case.
+     */
+    public void spill(Map<String, RuleRecord> filteredNodeMap) throws IOException {
+        RuleRecord[] rules = RuleRunMerger.sortByName(filteredNodeMap);
+        File runFile = File.createTempFile("rules-run-", ".bin", spillDirectory);
+        runFile.deleteOnExit();
+        runFiles.add(runFile);
+
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), BUFFER_SIZE))) {
+            output.writeInt(rules.length);
+            for(RuleRecord rule : rules){
+                byte[] nameBytes = rule.getName().getBytes(StandardCharsets.UTF_8);
+                output.writeInt(nameBytes.length);
+                output.write(nameBytes);
+                output.writeByte(rule.getType());
+                output.writeInt(rule.getWeight());
+                output.writeLong(rule.getRuleId());
+            }
+        }
+        filteredNodeMap.clear();
+        logger.info(Thread.currentThread().getName() + ": " + rules.length + " rules were spilled to run #"
+                    + runFiles.size() + " " + runFile.getAbsolutePath() + ".");
+    }
+
+    /**
+     * Merges the runs and the winners left in memory and writes the final winners in order of names.<br>
+     *     The runs precede the map in the input, so rules with the same name are merged in order of the runs
+     *     and then the map (see {@link XMLNodeFilter#mergeFilteredNodes(Map, Map, DecisionJournal.Recorder)}).
+     *     Decisions about names met in several parts are passed to the {@code journalRecorder}
+     *     and counted by {@link PipelineStats#countMergedDecision(boolean)}.
+     *
+     * @param filteredNodeMap {@link java.util.Map} object which stores the winners left in memory.
+     * @param resultSink sink of the result.
+     * @param journalRecorder recorder of the decisions or {@code null} if decisions are not journaled.
+     * @return the number of written rules.
+     * @throws IOException if the run files can not be read or the result can not be written.
+     */
+    public long merge(Map<String, RuleRecord> filteredNodeMap, ResultSink resultSink,
+                      DecisionJournal.Recorder journalRecorder) throws IOException {
+        PriorityQueue<RunCursor> cursors = new PriorityQueue<>(runFiles.size() + 1);
+        long written = 0;
+        try {
+            for(int i = 0; i < runFiles.size(); i++){
+                RunCursor cursor = new RunCursor(i, runFiles.get(i));
+                if(cursor.advance()){
+                    cursors.add(cursor);
+                }
+                else {
+                    cursor.close();
+                }
+            }
+            RunCursor memoryCursor = new RunCursor(runFiles.size(), RuleRunMerger.sortByName(filteredNodeMap));
+            if(memoryCursor.advance()){
+                cursors.add(memoryCursor);
+            }
+
+            while (!cursors.isEmpty()){
+                RunCursor cursor = cursors.poll();
+                RuleRecord winner = cursor.current;
+                this.reinsert(cursors, cursor);
+
+                while (!cursors.isEmpty() && cursors.peek().current.getName().equals(winner.getName())){
+                    cursor = cursors.poll();
+                    RuleRecord rule = cursor.current;
+                    boolean replace = rule.outranks(winner);
+                    PipelineStats.get().countMergedDecision(replace);
+                    if(journalRecorder != null){
+                        journalRecorder.record(rule, replace ? DecisionJournal.Outcome.REPLACED : DecisionJournal.Outcome.REJECTED, winner);
+                    }
+                    if(replace){
+                        winner = rule;
+                    }
+                    this.reinsert(cursors, cursor);
+                }
+                resultSink.writeRule(winner);
+                written++;
+            }
+        }
+        finally {
+            for(RunCursor cursor : cursors){
+                cursor.close();
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Deletes the run files.
+     */
+    @Override
+    public void close() {
+        for(File runFile : runFiles){
+            if(!runFile.delete() && runFile.exists()){
+                logger.warning(Thread.currentThread().getName() + ": run file " + runFile.getAbsolutePath() + " wasn't deleted.");
+            }
+        }
+        runFiles.clear();
+    }
+
+    /**
+     * Moves the cursor to its next rule and returns it to the queue, or closes it at the end of its run.
+     *
+     * @param cursors queue of cursors ordered by their current rules.
+     * @param cursor cursor which current rule was taken.
+     * @throws IOException if the run file can not be read.
+     */
+    private void reinsert(PriorityQueue<RunCursor> cursors, RunCursor cursor) throws IOException {
+        if(cursor.advance()){
+            cursors.add(cursor);
+        }
+        else {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Returns the winners of the map sorted by name.
+     *
+     * @param filteredNodeMap {@link java.util.Map} object which stores the result of filtering.
+     * @return the winners sorted by name.
+     */
+    private static RuleRecord[] sortByName(Map<String, RuleRecord> filteredNodeMap) {
+        RuleRecord[] rules = filteredNodeMap.values().toArray(new RuleRecord[filteredNodeMap.size()]);
+        Arrays.sort(rules, NAME_ORDER);
+        return rules;
+    }
+
+    /**
+     * Cursor over the rules of one run: either the run file or the sorted winners left in memory.<br>
+     * Cursors are ordered by their current rules and then by order of the runs.
+     */
+    private static final class RunCursor implements Comparable<RunCursor> {
+
+        /**
+         * Index of the run in order of the input.
+         */
+        private final int runIndex;
+
+        /**
+         * Stream of the run file or {@code null} for the winners left in memory.
+         */
+        private final DataInputStream input;
+
+        /**
+         * Sorted winners left in memory or {@code null} for the run file.
+         */
+        private final RuleRecord[] rules;
+
+        /**
+         * Number of rules which are not read yet.
+         */
+        private int remaining;
+
+        /**
+         * Current rule of the run.
+         */
+        private RuleRecord current;
+
+        /**
+         * Auxiliary array for names read from the run file.
+         */
+        private byte[] nameBytes;
+
+        /**
+         * Initializes a newly created cursor over the run file.
+         *
+         * @param runIndex index of the run in order of the input.
+         * @param runFile run file.
+         * @throws IOException if the run file can not be read.
+         */
+        RunCursor(int runIndex, File runFile) throws IOException {
+            this.runIndex = runIndex;
+            this.rules = null;
+            this.nameBytes = new byte[64];
+            this.input = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), BUFFER_SIZE));
+            try {
+                this.remaining = input.readInt();
+            }
+            catch (IOException ex){
+                input.close();
+                throw ex;
+            }
+        }
+
+        /**
+         * Initializes a newly created cursor over the sorted winners left in memory.
+         *
+         * @param runIndex index of the run in order of the input.
+         * @param rules sorted winners.
+         */
+        RunCursor(int runIndex, RuleRecord[] rules){
+            this.runIndex = runIndex;
+            this.rules = rules;
+            this.input = null;
+            this.remaining = rules.length;
+        }
+
+        /**
+         * Returns {@code true} if the cursor was moved to the next rule, {@code false} at the end of the run.
+         *
+         * @return {@code true} if there is the current rule.
+         * @throws IOException if the run file can not be read.
+         */
+        boolean advance() throws IOException {
+            if(remaining == 0){
+                current = null;
+                return false;
+            }
+            remaining--;
+            if(rules != null){
+                current = rules[rules.length - remaining - 1];
+                return true;
+            }
+            int nameLength = input.readInt();
+            if(nameBytes.length < nameLength){
+                nameBytes = new byte[Math.max(nameLength, nameBytes.length * 2)];
+            }
+            input.readFully(nameBytes, 0, nameLength);
+            int type = input.readByte();
+            int weight = input.readInt();
+            long ruleId = input.readLong();
+            current = new RuleRecord(new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8), type, weight, ruleId);
+            return true;
+        }
+
+        /**
+         * Closes the run file.
+         */
+        void close() {
+            if(input == null){
+                return;
+            }
+            try {
+                input.close();
+            }
+            catch (IOException ex){
+                logger.log(Level.FINE, ex.getMessage(), ex);
+            }
+        }
+
+        @Override
+        public int compareTo(RunCursor other) {
+            int order = current.getName().compareTo(other.current.getName());
+            return order != 0 ? order : Integer.compare(runIndex, other.runIndex);
+        }
+    }
+}
@@ -0,0 +1,705 @@
+package ee.helmes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * Generates input XML files of any size for load and scaling tests.<br>
+ *     Rules are encoded straight into the buffer which is flushed to the {@link java.nio.channels.FileChannel},
+ *     nothing is kept in memory, so the generator writes at disk speed.<br>
+ *     Generated names have the form {@code r000042}: all names of the file have the same number of digits,
+ *     so the order of names is the order of their numbers. The generator is configured by setters:<br>
+ *          - {@link RulesGenerator#setNameCount(long) name cardinality} - size of the pool of names;<br>
+ *          - {@link RulesGenerator#setTypeShares(int, int, int) type distribution} across root, sub and child;<br>
+ *          - {@link RulesGenerator#setWeightRange(int, int) weight range};<br>
+ *          - {@link RulesGenerator#setDuplicateRatio(double) duplicate ratio} - share of rules which repeat
+ *            names of the previous rules;<br>
+ *          - {@link RulesGenerator.Order order} of rules;<br>
+ *          - {@link RulesGenerator#setInvalidRatio(double) invalid ratio} - share of rules with missing or invalid
+ *            attributes rejected by {@link SAXReader#validateRuleAttributes(String, String, String, String)}.<br>
+ *     The same settings and {@link RulesGenerator#setSeed(long) seed} always produce the same file.<br>
+ *     Usage: {@code java -cp FilteringRules.jar ee.helmes.RulesGenerator file.xml rule_count [--option=value]...}
+ */
+public class RulesGenerator {
+
+    /**
+     * Order of the generated rules.
+     */
+    public enum Order {
+
+        /**
+         * Rules are sorted by name, each name is repeated in a row.
+         */
+        SORTED,
+
+        /**
+         * Each rule takes the new name or repeats random name of the previous rules.
+         */
+        RANDOM,
+
+        /**
+         * Names are repeated in rounds, and each round outranks the previous one,
+         * so every rule replaces the winner till the highest type and weight are reached.
+         * All names stay in the working set till the end of the file.
+         */
+        ADVERSARIAL
+    }
+
+    /**
+     * Start of the file up to the first rule element.
+     */
+    private static final byte[] DOCUMENT_START = bytes("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rules>\n");
+
+    /**
+     * End of the file after the last rule element.
+     */
+    private static final byte[] DOCUMENT_END = bytes("</rules>\n");
+
+    /**
+     * Parts of the rule element.
+     */
+    private static final byte[] RULE_START = bytes("<rule"),
+                                NAME_ATTRIBUTE = bytes(" name=\"r"),
+                                EMPTY_NAME_ATTRIBUTE = bytes(" name=\"\""),
+                                TYPE_ATTRIBUTE = bytes(" type=\""),
+                                WEIGHT_ATTRIBUTE = bytes(" weight=\""),
+                                QUOTE = bytes("\""),
+                                RULE_END = bytes("/>\n");
+
+    /**
+     * {@code "type"} attribute values encoded to UTF-8, indexed by integer representation of {@link ee.helmes.NodeType}.
+     */
+    private static final byte[][] TYPE_NAMES = {bytes("leaf"),
+                                                bytes(NodeType.getTypeName(1)),
+                                                bytes(NodeType.getTypeName(2)),
+                                                bytes(NodeType.getTypeName(3))};
+
+    /**
+     * Invalid {@code "weight"} attribute values.
+     */
+    private static final byte[][] INVALID_WEIGHTS = {bytes("0"), bytes("-7"), bytes("heavy")};
+
+    /**
+     * Number of kinds of invalid rules (see {@link RulesGenerator#writeInvalidRule(long, int, int)}).
+     */
+    private static final int INVALID_KINDS = 7;
+
+    /**
+     * Size of the buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    /**
+     * Number of rules in the file.
+     */
+    private final long ruleCount;
+
+    /**
+     * Size of the pool of names.
+     */
+    private long nameCount;
+
+    /**
+     * Shares of root, sub and child types.
+     */
+    private int[] typeShares = {1, 1, 1};
+
+    /**
+     * Minimum {@code "weight"} attribute value.
+     */
+    private int minWeight = 1;
+
+    /**
+     * Maximum {@code "weight"} attribute value.
+     */
+    private int maxWeight = 1000;
+
+    /**
+     * Share of rules which repeat names of the previous rules.
+     */
+    private double duplicateRatio = 0.5;
+
+    /**
+     * Order of rules.
+     */
+    private Order order = Order.RANDOM;
+
+    /**
+     * Share of invalid rules.
+     */
+    private double invalidRatio = 0;
+
+    /**
+     * Seed of the random generator.
+     */
+    private long seed = 15L;
+
+    /**
+     * State of the random generator.
+     */
+    private long randomState;
+
+    /**
+     * Number of digits of the generated names.
+     */
+    private int nameDigits;
+
+    /**
+     * Multiplier coprime with {@link RulesGenerator#nameCount} which scrambles numbers of the names.
+     */
+    private long nameMultiplier;
+
+    /**
+     * Auxiliary array for digits of numbers.
+     */
+    private final byte[] digits = new byte[20];
+
+    /**
+     * Buffer which is flushed to the {@code channel}.
+     */
+    private ByteBuffer buffer;
+
+    /**
+     * Channel of the generated file.
+     */
+    private FileChannel channel;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.RulesGenerator} object.<br>
+     * By default the pool of names has the same size as the number of rules, types are distributed evenly,
+     * weights are in range {@code [1, 1000]}, half of rules repeat names in random order and all rules are valid.
+     *
+     * @param ruleCount number of rules in the file.
+     *
+     * @throws IllegalArgumentException if {@code ruleCount} is negative.
+     */
+    public RulesGenerator(long ruleCount){
+        if(ruleCount < 0){
+            throw new IllegalArgumentException("Invalid number of rules " + ruleCount);
+        }
+        this.ruleCount = ruleCount;
+        this.nameCount = Math.max(1, ruleCount);
+    }
+
+    /**
+     * The entry point of the tool.<br>
+     * Options: {@code --names=N}, {@code --types=ROOT:SUB:CHILD}, {@code --weights=MIN..MAX}, {@code --duplicates=RATIO},
+     * {@code --order=sorted|random|adversarial}, {@code --invalid=RATIO}, {@code --seed=SEED}.
+     *
+     * @param args {@link java.lang.String}[] object with pathname of the file, number of rules and options.
+     *
+     * @throws IllegalArgumentException if input arguments are not valid.
+     * @throws IOException if the file can not be written.
+     */
+    public static void main(String[] args) throws IOException {
+        if(args == null || args.length < 2){
+            throw new IllegalArgumentException("Usage: RulesGenerator file.xml rule_count [--names=N] [--types=ROOT:SUB:CHILD] "
+                                               + "[--weights=MIN..MAX] [--duplicates=RATIO] "
+                                               + "[--order=sorted|random|adversarial] [--invalid=RATIO] [--seed=SEED]");
+        }
+        RulesGenerator generator = new RulesGenerator(Long.parseLong(args[1]));
+        for(int i = 2; i < args.length; i++){
+            generator.setOption(args[i]);
+        }
+        long start = System.nanoTime();
+        long size = generator.generate(new File(args[0]));
+        long millis = Math.max(1, (System.nanoTime() - start) / 1000000);
+        System.out.println(args[0] + ": " + args[1] + " rules, " + size + " bytes in " + millis + " ms ("
+                           + (size / 1024 * 1000 / 1024 / millis) + " MB/s).");
+    }
+
+    /**
+     * Applies the command line option of the form {@code --name=value}.
+     *
+     * @param option the command line option.
+     *
+     * @throws IllegalArgumentException if the option is not valid.
+     */
+    void setOption(String option) {
+        int separator = option.indexOf('=');
+        if(!option.startsWith("--") || separator < 0){
+            throw new IllegalArgumentException("Invalid option " + option);
+        }
+        String name = option.substring(2, separator);
+        String value = option.substring(separator + 1);
+        switch (name){
+            case "names":
+                this.setNameCount(Long.parseLong(value));
+                break;
+            case "types":
+                String[] shares = value.split(":");
+                if(shares.length != 3){
+                    throw new IllegalArgumentException("Invalid option " + option);
+                }
+                this.setTypeShares(Integer.parseInt(shares[0]), Integer.parseInt(shares[1]), Integer.parseInt(shares[2]));
+                break;
+            case "weights":
+                int range = value.indexOf("..");
+                if(range < 0){
+                    throw new IllegalArgumentException("Invalid option " + option);
+                }
+                this.setWeightRange(Integer.parseInt(value.substring(0, range)), Integer.parseInt(value.substring(range + 2)));
+                break;
+            case "duplicates":
+                this.setDuplicateRatio(Double.parseDouble(value));
+                break;
+            case "order":
+                this.setOrder(Order.valueOf(value.toUpperCase(Locale.ROOT)));
+                break;
+            case "invalid":
+                this.setInvalidRatio(Double.parseDouble(value));
+                break;
+            case "seed":
+                this.setSeed(Long.parseLong(value));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option " + option);
+        }
+    }
+
+    /**
+     * Sets the size of the pool of names; the file contains not more distinct names.
+     *
+     * @param nameCount size of the pool of names.
+     *
+     * @throws IllegalArgumentException if {@code nameCount} is less than 1.
+     */
+    public void setNameCount(long nameCount) {
+        if(nameCount < 1){
+            throw new IllegalArgumentException("Invalid number of names " + nameCount);
+        }
+        this.nameCount = nameCount;
+    }
+
+    /**
+     * Sets shares of types of valid rules.
+     *
+     * @param root share of root rules.
+     * @param sub share of sub rules.
+     * @param child share of child rules.
+     *
+     * @throws IllegalArgumentException if any share is negative or all shares are zero.
+     */
+    public void setTypeShares(int root, int sub, int child) {
+        if(root < 0 || sub < 0 || child < 0 || (long) root + sub + child == 0 || (long) root + sub + child > Integer.MAX_VALUE){
+            throw new IllegalArgumentException("Invalid type shares " + root + ":" + sub + ":" + child);
+        }
+        this.typeShares = new int[]{root, sub, child};
+    }
+
+    /**
+     * Sets range of weights of valid rules.
+     *
+     * @param minWeight minimum {@code "weight"} attribute value.
+     * @param maxWeight maximum {@code "weight"} attribute value.
+     *
+     * @throws IllegalArgumentException if {@code minWeight} is less than 1 or greater than {@code maxWeight}.
+     */
+    public void setWeightRange(int minWeight, int maxWeight) {
+        if(minWeight < 1 || minWeight > maxWeight){
+            throw new IllegalArgumentException("Invalid weight range " + minWeight + ".." + maxWeight);
+        }
+        this.minWeight = minWeight;
+        this.maxWeight = maxWeight;
+    }
+
+    /**
+     * Sets share of rules which repeat names of the previous rules.
+     *
+     * @param duplicateRatio share of rules in range {@code [0, 1]}.
+     *
+     * @throws IllegalArgumentException if {@code duplicateRatio} is out of range.
+     */
+    public void setDuplicateRatio(double duplicateRatio) {
+        if(!(duplicateRatio >= 0 && duplicateRatio <= 1)){
+            throw new IllegalArgumentException("Invalid duplicate ratio " + duplicateRatio);
+        }
+        this.duplicateRatio = duplicateRatio;
+    }
+
+    /**
+     * Sets order of rules.
+     *
+     * @param order order of rules.
+     */
+    public void setOrder(Order order) {
+        if(order == null){
+            throw new NullPointerException();
+        }
+        this.order = order;
+    }
+
+    /**
+     * Sets share of rules with missing or invalid attributes.
+     *
+     * @param invalidRatio share of rules in range {@code [0, 1]}.
+     *
+     * @throws IllegalArgumentException if {@code invalidRatio} is out of range.
+     */
+    public void setInvalidRatio(double invalidRatio) {
+        if(!(invalidRatio >= 0 && invalidRatio <= 1)){
+            throw new IllegalArgumentException("Invalid ratio of invalid rules " + invalidRatio);
+        }
+        this.invalidRatio = invalidRatio;
+    }
+
+    /**
+     * Sets seed of the random generator.
+     *
+     * @param seed seed of the random generator.
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Returns the number of distinct names in the file with {@link Order#SORTED} or {@link Order#ADVERSARIAL} order.
+     *
+     * @return the number of distinct names.
+     */
+    long getDistinctNames() {
+        long distinctNames = Math.round(ruleCount * (1 - duplicateRatio));
+        return Math.max(1, Math.min(nameCount, distinctNames));
+    }
+
+    /**
+     * Writes the file and returns its size.
+     *
+     * @param file {@link java.io.File} object associated with the file to generate.
+     * @return size of the file in bytes.
+     * @throws IOException if the file can not be written.
+     */
+    public long generate(File file) throws IOException {
+        randomState = seed ^ 0x9E3779B97F4A7C15L;
+        nameDigits = Long.toString(nameCount - 1).length();
+        nameMultiplier = (0x9E3779B97F4A7C15L >>> 1) % nameCount;
+        while (gcd(nameMultiplier, nameCount) != 1){
+            nameMultiplier++;
+        }
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                                                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel = fileChannel;
+            this.write(DOCUMENT_START);
+            long distinctNames = this.getDistinctNames();
+            long usedNames = 0;
+            long weightSpan = (long) maxWeight - minWeight + 1;
+
+            for(long i = 0; i < ruleCount; i++){
+                long name;
+                int type;
+                int weight;
+                switch (order){
+                    case SORTED:
+                        name = (long) (i * (double) distinctNames / ruleCount);
+                        type = this.nextType();
+                        weight = this.nextWeight();
+                        break;
+                    case ADVERSARIAL:
+                        name = i % distinctNames;
+                        long round = i / distinctNames;
+                        type = (int) Math.min(3, 1 + round / weightSpan);
+                        weight = type < 3 || round < 3 * weightSpan ? (int) (minWeight + round % weightSpan) : maxWeight;
+                        break;
+                    default:
+                        if(usedNames == 0 || (usedNames < nameCount && this.nextDouble() >= duplicateRatio)){
+                            name = this.scramble(usedNames++);
+                        }
+                        else {
+                            name = this.scramble(this.nextLong(usedNames));
+                        }
+                        type = this.nextType();
+                        weight = this.nextWeight();
+                }
+
+                if(invalidRatio > 0 && this.nextDouble() < invalidRatio){
+                    this.writeInvalidRule(name, type, weight);
+                }
+                else {
+                    this.writeRule(name, TYPE_NAMES[type], weight);
+                }
+            }
+            this.write(DOCUMENT_END);
+            this.flush();
+            return fileChannel.size();
+        }
+        finally {
+            channel = null;
+            buffer = null;
+        }
+    }
+
+    /**
+     * Writes the valid rule element.
+     *
+     * @param name number of the name.
+     * @param type {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the file can not be written.
+     */
+    private void writeRule(long name, byte[] type, int weight) throws IOException {
+        this.write(RULE_START);
+        this.writeName(name);
+        this.writeType(type);
+        this.writeWeight(weight);
+        this.write(RULE_END);
+    }
+
+    /**
+     * Writes the rule element with one missing or invalid attribute:<br>
+     *     empty name, missing name, missing type, unknown type, missing weight,
+     *     not positive weight or not numeric weight.
+     *
+     * @param name number of the name.
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the file can not be written.
+     */
+    private void writeInvalidRule(long name, int type, int weight) throws IOException {
+        int kind = (int) this.nextLong(INVALID_KINDS);
+        this.write(RULE_START);
+        switch (kind){
+            case 0:
+                this.write(EMPTY_NAME_ATTRIBUTE);
+                break;
+            case 1:
+                break;
+            default:
+                this.writeName(name);
+        }
+        switch (kind){
+            case 2:
+                break;
+            case 3:
+                this.writeType(TYPE_NAMES[0]);
+                break;
+            default:
+                this.writeType(TYPE_NAMES[type]);
+        }
+        switch (kind){
+            case 4:
+                break;
+            case 5:
+                this.write(WEIGHT_ATTRIBUTE);
+                this.write(INVALID_WEIGHTS[(int) this.nextLong(2)]);
+                this.write(QUOTE);
+                break;
+            case 6:
+                this.write(WEIGHT_ATTRIBUTE);
+                this.write(INVALID_WEIGHTS[2]);
+                this.write(QUOTE);
+                break;
+            default:
+                this.writeWeight(weight);
+        }
+        this.write(RULE_END);
+    }
+
+    /**
+     * Writes {@code "name"} attribute.
+     *
+     * @param name number of the name.
+     * @throws IOException if the file can not be written.
+     */
+    private void writeName(long name) throws IOException {
+        this.write(NAME_ATTRIBUTE);
+        this.writeNumber(name, nameDigits);
+        this.write(QUOTE);
+    }
+
+    /**
+     * Writes {@code "type"} attribute.
+     *
+     * @param type {@code "type"} attribute value.
+     * @throws IOException if the file can not be written.
+     */
+    private void writeType(byte[] type) throws IOException {
+        this.write(TYPE_ATTRIBUTE);
+        this.write(type);
+        this.write(QUOTE);
+    }
+
+    /**
+     * Writes {@code "weight"} attribute.
+     *
+     * @param weight {@code "weight"} attribute value.
+     * @throws IOException if the file can not be written.
+     */
+    private void writeWeight(int weight) throws IOException {
+        this.write(WEIGHT_ATTRIBUTE);
+        this.writeNumber(weight, 1);
+        this.write(QUOTE);
+    }
+
+    /**
+     * Returns the random type of the valid rule according to {@link RulesGenerator#typeShares}.
+     *
+     * @return integer representation of {@link ee.helmes.NodeType}.
+     */
+    private int nextType() {
+        long point = this.nextLong((long) typeShares[0] + typeShares[1] + typeShares[2]);
+        if(point < typeShares[0]){
+            return 1;
+        }
+        return point < (long) typeShares[0] + typeShares[1] ? 2 : 3;
+    }
+
+    /**
+     * Returns the random weight of the valid rule.
+     *
+     * @return {@code "weight"} attribute value.
+     */
+    private int nextWeight() {
+        return (int) (minWeight + this.nextLong((long) maxWeight - minWeight + 1));
+    }
+
+    /**
+     * Returns the number of the name which is not correlated with the order of the first occurrence.
+     *
+     * @param index index of the name in order of the first occurrence.
+     * @return number of the name in range {@code [0, nameCount)}.
+     */
+    private long scramble(long index) {
+        return multiplyMod(index, nameMultiplier, nameCount);
+    }
+
+    /**
+     * Returns the next random {@code long} value of xorshift64* generator.
+     *
+     * @return the next random {@code long} value.
+     */
+    private long nextRandom() {
+        long x = randomState;
+        x ^= x >>> 12;
+        x ^= x << 25;
+        x ^= x >>> 27;
+        randomState = x;
+        return x * 0x2545F4914F6CDD1DL;
+    }
+
+    /**
+     * Returns the next random value in range {@code [0, bound)}.
+     *
+     * @param bound upper bound of the value.
+     * @return the next random value.
+     */
+    private long nextLong(long bound) {
+        return (this.nextRandom() >>> 1) % bound;
+    }
+
+    /**
+     * Returns the next random value in range {@code [0, 1)}.
+     *
+     * @return the next random value.
+     */
+    private double nextDouble() {
+        return (this.nextRandom() >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * Writes the bytes to the buffer.
+     *
+     * @param bytes bytes to write.
+     * @throws IOException if the file can not be written.
+     */
+    private void write(byte[] bytes) throws IOException {
+        if(buffer.remaining() < bytes.length){
+            this.flush();
+        }
+        buffer.put(bytes);
+    }
+
+    /**
+     * Writes the decimal digits of the non-negative number to the buffer.
+     *
+     * @param number number to write.
+     * @param minDigits minimum number of digits, the number is padded with zeros.
+     * @throws IOException if the file can not be written.
+     */
+    private void writeNumber(long number, int minDigits) throws IOException {
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + number % 10);
+            number /= 10;
+        } while (number > 0);
+        while (digits.length - position < minDigits){
+            digits[--position] = '0';
+        }
+        if(buffer.remaining() < digits.length){
+            this.flush();
+        }
+        buffer.put(digits, position, digits.length - position);
+    }
+
+    /**
+     * Writes the content of the buffer to the file.
+     *
+     * @throws IOException if the file can not be written.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns the greatest common divisor of two non-negative numbers.
+     *
+     * @param a the first number.
+     * @param b the second number.
+     * @return the greatest common divisor.
+     */
+    private static long gcd(long a, long b) {
+        while (b != 0){
+            long remainder = a % b;
+            a = b;
+            b = remainder;
+        }
+        return a;
+    }
+
+    /**
+     * Returns {@code (a * b) mod modulus} without overflow.
+     *
+     * @param a the first factor in range {@code [0, modulus)}.
+     * @param b the second factor in range {@code [0, modulus)}.
+     * @param modulus the modulus.
+     * @return {@code (a * b) mod modulus}.
+     */
+    private static long multiplyMod(long a, long b, long modulus) {
+        if(a < (1L << 31) && b < (1L << 31)){
+            return a * b % modulus;
+        }
+        long result = 0;
+        a %= modulus;
+        while (b > 0){
+            if((b & 1) != 0){
+                result = (result + a) % modulus;
+                if(result < 0){
+                    result += modulus;
+                }
+            }
+            a = (a << 1) % modulus;
+            b >>= 1;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the given string encoded to UTF-8.
+     *
+     * @param value string to encode.
+     * @return the given string encoded to UTF-8.
+     */
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,22 +1,21 @@
 package ee.helmes;
 
 import org.xml.sax.*;
-import org.xml.sax.helpers.AttributesImpl;
 import org.xml.sax.helpers.DefaultHandler;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 import java.io.*;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Parses input XML file and adds nodes attributes to the {@link java.util.concurrent.LinkedBlockingQueue} for further filtering.
+ * Parses input XML file and publishes valid rules to the {@link ee.helmes.RuleRingBuffer} for further filtering.<br>
+ *     The reader is the I/O bound stage of the pipeline run by {@link ee.helmes.PipelineRuntime}.
  */
 
-public class SAXReader implements Runnable {
+public class SAXReader implements Callable<Boolean> {
 
     /**
      * {@code Logger} object that logs the program execution process.
@@ -30,9 +29,9 @@ public class SAXReader implements Runnable {
     private final MyDefaultHandler defaultHandler = new MyDefaultHandler();
 
     /**
-     *Queue for storing nodes from input XML file
+     *Ring buffer for passing rules from input XML file to the filter
      */
-    private LinkedBlockingQueue<Attributes> attributesList;
+    private final RuleRingBuffer ruleBuffer;
 
     /**
      * Flag that reflects status of parsing input XML file.<br>
@@ -41,15 +40,21 @@ public class SAXReader implements Runnable {
     private volatile boolean xmlFileIsParsed = false;
 
     /**
-     * Flag that reflects whether the error occurred during parsing process.<br>
-     * {@code true} if any error occurred while parsing file, {@code false} otherwise.
+     * Input XML file for parsing.
      */
-    private volatile boolean errorWhileParse = false;
+    private final File xmlFile;
 
     /**
-     * Input XML file for parsing.
+     * Flag that reflects whether the input XML file is scanned by {@link ee.helmes.MappedRuleScanner} first.<br>
+     * {@code true} if the scanner is used, {@code false} if the file is parsed by {@link javax.xml.parsers.SAXParser} only.
      */
-    private final File xmlFile;
+    private final boolean mappedScannerEnabled;
+
+    /**
+     * Number of the first rule elements which are skipped by {@link javax.xml.parsers.SAXParser}
+     * because they were already published by {@link ee.helmes.MappedRuleScanner}.
+     */
+    private long skippedRules;
 
     /**
      * Auxiliary variable which stores the name of the current {@link java.lang.Thread}.<br>
@@ -60,27 +65,42 @@ public class SAXReader implements Runnable {
     /**
      * Initializes a newly created {@link ee.helmes.SAXReader} object.
      * @param xmlFile {@link java.io.File} object associated with the input source XML file
-     * @param attrList queue for storing XML nodes from  the input source XML file
+     * @param ruleBuffer ring buffer for passing rules from  the input source XML file to the filter
      */
-    public SAXReader (File xmlFile,LinkedBlockingQueue<Attributes> attrList){
-        if(xmlFile == null || attrList==null){
+    public SAXReader (File xmlFile,RuleRingBuffer ruleBuffer){
+        this(xmlFile, ruleBuffer, false);
+    }
+
+    /**
+     * Initializes a newly created {@link ee.helmes.SAXReader} object.
+     * @param xmlFile {@link java.io.File} object associated with the input source XML file
+     * @param ruleBuffer ring buffer for passing rules from  the input source XML file to the filter
+     * @param mappedScannerEnabled {@code true} if the input XML file should be scanned by
+     *                             {@link ee.helmes.MappedRuleScanner} before falling back to {@link javax.xml.parsers.SAXParser}
+     */
+    public SAXReader (File xmlFile,RuleRingBuffer ruleBuffer, boolean mappedScannerEnabled){
+        if(xmlFile == null || ruleBuffer==null){
             throw new NullPointerException();
         }
-        this.attributesList = attrList;
+        this.ruleBuffer = ruleBuffer;
         this.xmlFile = xmlFile;
+        this.mappedScannerEnabled = mappedScannerEnabled;
 
     }
 
 
     /**
-     * Entry point for {@link Thread} associated with {@link ee.helmes.SAXReader} object.<br>
+     * Entry point for the stage of the pipeline associated with {@link ee.helmes.SAXReader} object.<br>
      * The goal of this method just to invoke {@link SAXReader#startParsing()} method,
      * which takes care of further execution of parsing.
      *
+     * @return {@code true} if the input XML file was parsed completely, {@code false} otherwise.
+     * @throws InterruptedException if the stage was cancelled.
      */
-    public void run(){
+    @Override
+    public Boolean call() throws InterruptedException {
 
-        this.startParsing();
+        return this.startParsing();
 
     }
 
@@ -88,49 +108,132 @@ public class SAXReader implements Runnable {
      * Execute XML parsing process.<br>
      *     Creates {@link org.xml.sax.XMLReader} object from {@link javax.xml.parsers.SAXParser},
      *     sets {@link ee.helmes.SAXReader.MyDefaultHandler MyDefaultHandler} object as
-     *     for for SAX2 events.
+     *     for for SAX2 events.<br>
+     *     If {@link ee.helmes.SAXReader#mappedScannerEnabled} is {@code true}, the file is scanned by
+     *     {@link ee.helmes.MappedRuleScanner} first, and SAX parser is used only if the scanner meets
+     *     content it does not understand; SAX parser skips the rule elements published by the scanner.<br>
+     *     If any error occurred, signals it to the {@link ee.helmes.SAXReader#ruleBuffer}, so the filter
+     *     stops taking rules and saves the rules read before the error.<br>
+     *     Time of parsing is counted by {@link ee.helmes.PipelineStats} and parsing is recorded as
+     *     {@link ee.helmes.PipelineEvents.ParseEvent} event of JDK Flight Recorder.
+     *
+     * @return {@code true} if the input XML file was parsed completely, {@code false} if parsing was stopped by an error.
+     * @throws InterruptedException if the current thread was interrupted while waiting for a free slot of the ring buffer.
      */
-    public void startParsing() {
+    public boolean startParsing() throws InterruptedException {
+        threadName = Thread.currentThread().getName();
+        long startNanos = System.nanoTime();
+        PipelineEvents.ParseEvent event = new PipelineEvents.ParseEvent();
+        event.begin();
+        String parser = "mapped";
+        try {
+            if(mappedScannerEnabled && this.scanMappedFile()){
+                return true;
+            }
+            parser = "SAX";
+            return this.parseFile();
+        }
+        finally {
+            PipelineStats.get().addParseTime(startNanos);
+            event.finish(xmlFile, parser, 0, xmlFile.length());
+        }
+    }
+
+    /**
+     * Returns {@code true} if the input XML file was parsed by {@link javax.xml.parsers.SAXParser} completely,
+     * {@code false} otherwise.<br>
+     *     If any error occurred, signals it to the {@link ee.helmes.SAXReader#ruleBuffer}.
+     *
+     * @return {@code true} if the input XML file was parsed completely, {@code false} if parsing was stopped by an error.
+     * @throws InterruptedException if the current thread was interrupted while waiting for a free slot of the ring buffer.
+     */
+    private boolean parseFile() throws InterruptedException {
         try {
-            threadName = Thread.currentThread().getName();
             SAXParserFactory spf = SAXParserFactory.newInstance();
             spf.setNamespaceAware(true);
             SAXParser saxParser = spf.newSAXParser();
             XMLReader xmlReader = saxParser.getXMLReader();
             xmlReader.setContentHandler(defaultHandler);
-            xmlReader.parse(new InputSource(new FileInputStream(xmlFile)));
+            try (InputStream inputStream = CompressedFiles.newInputStream(xmlFile)) {
+                xmlReader.parse(new InputSource(inputStream));
+            }
+            return true;
+        }
+        catch (SAXException ex){
+            if(ex.getException() instanceof InterruptedException){
+                ruleBuffer.fail(ex.getException());
+                throw (InterruptedException) ex.getException();
+            }
+            logger.log(Level.SEVERE,threadName+": current thread was stopped because of "+ex.toString(), ex);
+            ruleBuffer.fail(ex);
+            return false;
         }
-        catch (ParserConfigurationException | SAXException | NullPointerException |IOException ex){
+        catch (ParserConfigurationException | NullPointerException |IOException ex){
             logger.log(Level.SEVERE,threadName+": current thread was stopped because of "+ex.toString(), ex);
-            errorWhileParse = true;
+            ruleBuffer.fail(ex);
+            return false;
         }
     }
 
     /**
-     * Returns {@code attributesList} which is used to store nodes from input XML file.
+     * Returns {@code true} if the input XML file was processed by {@link ee.helmes.MappedRuleScanner},
+     * {@code false} if it should be parsed by {@link javax.xml.parsers.SAXParser}.<br>
+     *     Rules published by the scanner before it met unsupported content are kept: the scanner and SAX parser
+     *     read the same rule elements till that content, so SAX parser skips the rule elements handled by
+     *     the scanner ({@link ee.helmes.SAXReader#skippedRules}) and they are neither filtered nor counted twice.
+     *     The bytes mapped by the scanner are not counted in this case, because SAX parser reads the whole file again.
      *
-     * @return {@link ee.helmes.SAXReader#attributesList} which is used to store nodes from input XML file
+     * @return {@code true} if the input XML file was processed by {@link ee.helmes.MappedRuleScanner}, {@code false} otherwise.
+     * @throws InterruptedException if the current thread was interrupted while waiting for a free slot of the ring buffer.
      */
-    public LinkedBlockingQueue<Attributes> getAttributesList() {
-        return attributesList;
+    private boolean scanMappedFile() throws InterruptedException {
+        logger.info(threadName + ": XML file is being scanned...");
+        MappedRuleScanner scanner = new MappedRuleScanner(xmlFile);
+        try {
+            boolean scanned = scanner.scan(new MappedRuleScanner.RuleHandler() {
+                @Override
+                public void handleRule(RuleRecord rule) throws InterruptedException {
+                    ruleBuffer.publish(rule);
+                }
+            });
+            if(scanned){
+                scanner.publishStats();
+                xmlFileIsParsed = true;
+                ruleBuffer.close();
+                logger.info(threadName + ": XML file was scanned.");
+                return true;
+            }
+        }
+        catch (IOException ex){
+            logger.log(Level.WARNING, threadName + ": scanning failed because of " + ex.toString(), ex);
+        }
+        catch (InterruptedException ex){
+            scanner.publishStats();
+            ruleBuffer.fail(ex);
+            throw ex;
+        }
+        skippedRules = scanner.getScannedRules();
+        PipelineStats.get().addParsedRules(skippedRules, scanner.getInvalidRules());
+        logger.info(threadName + ": XML file is parsed by SAX parser, " + skippedRules + " scanned rules are skipped.");
+        return false;
     }
 
     /**
-     * Returns handler for SAX2 events.
+     * Returns {@code ruleBuffer} which is used to pass rules from input XML file to the filter.
      *
-     * @return {@link ee.helmes.SAXReader#defaultHandler handler} for SAX2 events.
+     * @return {@link ee.helmes.SAXReader#ruleBuffer} which is used to pass rules from input XML file to the filter
      */
-    MyDefaultHandler getDefaultHandler() {
-        return defaultHandler;
+    public RuleRingBuffer getRuleBuffer() {
+        return ruleBuffer;
     }
 
     /**
-     * Returns error status of parsing process.
+     * Returns handler for SAX2 events.
      *
-     * @return {@code true} if errors occurred while processing input XML file, {@code false} otherwise
+     * @return {@link ee.helmes.SAXReader#defaultHandler handler} for SAX2 events.
      */
-    public boolean isErrorWhileParse() {
-        return errorWhileParse;
+    MyDefaultHandler getDefaultHandler() {
+        return defaultHandler;
     }
 
     /**
@@ -142,6 +245,92 @@ public class SAXReader implements Runnable {
         return xmlFileIsParsed;
     }
 
+    /**
+     * Returns the validation status of attribute values of the rule element.<br>
+     *     Validates values according to following rules:<br>
+     *          - {@code name} attribute value is {@code not null} and not empty;<br>
+     *          - {@code type} attribute value is {@code "child","sub"} or {@code "root"};<br>
+     *          - {@code weight} attribute value is a positive integer.<br>
+     *     This method is shared by all parsers of the input XML file, so it counts the parsed and the invalid
+     *     rules in {@link ee.helmes.PipelineStats}.
+     *     The reason of the invalid value is logged at {@link java.util.logging.Level#FINE} level.
+     *
+     * @param nodeNameValue {@code name} attribute value or {@code null} if element has no such attribute.
+     * @param nodeTypeValue {@code type} attribute value or {@code null} if element has no such attribute.
+     * @param nodeWeightValue {@code weight} attribute value or {@code null} if element has no such attribute.
+     * @param threadName name of the thread which parses the input XML file.
+     *
+     * @return {@code true} if attribute values are valid; returns {@code false} otherwise.
+     */
+    static boolean validateRuleAttributes(String nodeNameValue, String nodeTypeValue, String nodeWeightValue, String threadName){
+        boolean valid = SAXReader.checkRuleAttributes(nodeNameValue, nodeTypeValue, nodeWeightValue, threadName);
+        PipelineStats.get().countParsedRule();
+        if(!valid){
+            PipelineStats.get().countInvalidRule();
+        }
+        return valid;
+    }
+
+    /**
+     * Returns the validation status of attribute values of the rule element
+     * as {@link SAXReader#validateRuleAttributes(String, String, String, String)} does, but does not count the rule.<br>
+     *     Is used by {@link ee.helmes.MappedRuleScanner}, which counts the rules on its own.
+     *
+     * @param nodeNameValue {@code name} attribute value or {@code null} if element has no such attribute.
+     * @param nodeTypeValue {@code type} attribute value or {@code null} if element has no such attribute.
+     * @param nodeWeightValue {@code weight} attribute value or {@code null} if element has no such attribute.
+     * @param threadName name of the thread which parses the input XML file.
+     *
+     * @return {@code true} if attribute values are valid; returns {@code false} otherwise.
+     */
+    static boolean checkRuleAttributes(String nodeNameValue, String nodeTypeValue, String nodeWeightValue, String threadName){
+        boolean valid = false;
+
+        if(nodeNameValue!=null){
+
+            if(nodeNameValue.length()>0) {
+
+                if (nodeTypeValue!= null) {
+
+                    if(NodeType.getType(nodeTypeValue)!=0){
+
+                        if (nodeWeightValue!= null) {
+                            try {
+                                Integer weightValue = Integer.parseInt(nodeWeightValue);
+                                if(weightValue>0){
+                                    valid = true;
+                                }
+                                else {
+                                    logger.fine(threadName + ": - invalid \"weight\" attribute value - it must be a positive integer.");
+                                }
+                            }
+                            catch (NumberFormatException ex){
+                                logger.fine(threadName + ": - invalid \"weight\" attribute value - java.lang.NumberFormatException.");
+                            }
+
+                        }
+                        else {
+
+                            logger.fine(threadName + ": - there is no \"weight\" attribute in current node.");
+
+                        }
+                    }
+                    else {
+                        logger.fine(threadName + ": - invalid \"type\" attribute value.");
+                    }
+                }
+                else {
+                    logger.fine(threadName + ": - there is no \"type\" attribute in current node.");
+                }
+            }else {
+                logger.fine(threadName + ": - empty \"name\" attribute value.");
+            }
+        }else {
+            logger.fine(threadName + ": - there si no \"name\" attribute in current node.");
+        }
+        return valid;
+    }
+
     /**
      * Implementation of {@link org.xml.sax.helpers.DefaultHandler} class for SAX2 events handlers.<br>
      * This class overrides {@link DefaultHandler#startDocument()},<br>
@@ -157,9 +346,15 @@ public class SAXReader implements Runnable {
          */
         private String nodePath;
 
+        /**
+         * Number of the rule elements met so far, including the skipped and the invalid ones.<br>
+         * Is used as the id of the rule (see {@link ee.helmes.RuleRecord#getRuleId()}).
+         */
+        private long ruleNumber;
+
         /**
          * Fires when the notification of the start of the document is received.<br>
-         * This method initializes {@code nodePath} variable.
+         * This method initializes {@code nodePath} and {@code ruleNumber} variables.
          *
          * @throws SAXException Any SAX exception, possibly wrapping another exception.
          * @see ContentHandler#startDocument()
@@ -168,6 +363,7 @@ public class SAXReader implements Runnable {
         public void startDocument() throws SAXException {
             logger.info(threadName + ": XML file is being parsed...");
             nodePath = "/";
+            ruleNumber = 0;
 
         }
 
@@ -175,7 +371,9 @@ public class SAXReader implements Runnable {
          * Fires when the notification of the start of an element is received.<br>
          * This method builds the {@link ee.helmes.SAXReader.MyDefaultHandler#nodePath} of element and validates it.<br>
          * In case of valid nodePath, method validates attributes attached to element and
-         * adds {@code attributes} object to {@link ee.helmes.SAXReader#attributesList} for further processing if attributes are valid.
+         * publishes {@link ee.helmes.RuleRecord} object created from {@code attributes} to {@link ee.helmes.SAXReader#ruleBuffer}
+         * for further processing if attributes are valid. The id of the rule is the ordinal number of the element. The first {@link ee.helmes.SAXReader#skippedRules} elements
+         * with valid nodePath were already handled by {@link ee.helmes.MappedRuleScanner}, so they are skipped.
          *
          *@param  uri - The Namespace URI, or the empty string if the element has no Namespace URI or if Namespace processing is not being performed.
          *@param localName - The local name (without prefix), or the empty string if Namespace processing is not being performed.
@@ -189,21 +387,21 @@ public class SAXReader implements Runnable {
             nodePath = nodePath + localName + "/";
 
             if(this.validateNodePath(nodePath)){
-                logger.info(threadName + ": - node path is valid;");
-                if(this.validateNodeAttributes(attributes)) {
-                    logger.info(threadName + ": - node attributes are valid;");
+                ruleNumber++;
+                if(skippedRules > 0){
+                    skippedRules--;
+                }
+                else if(this.validateNodeAttributes(attributes)) {
                     try {
-                        Attributes attr = new AttributesImpl(attributes);
-                        while (!attributesList.offer(attr, 10, TimeUnit.MICROSECONDS));
-                        logger.info(threadName + ": - node was added to queue.");
+                        ruleBuffer.publish(RuleRecord.valueOf(attributes, ruleNumber));
                     } catch (InterruptedException ex) {
-                        logger.log(Level.SEVERE, threadName + ": The application execution is stopped because of the InterruptedException:", ex);
+                        throw new SAXException(ex);
                     }
-                }else {
-                    logger.info(threadName + ": - node attributes are not valid;");
+                }else if(logger.isLoggable(Level.FINE)) {
+                    logger.fine(threadName + ": - node attributes are not valid;");
                 }
-            }else {
-                logger.info(threadName + ": - node path is not valid;");
+            }else if(logger.isLoggable(Level.FINE)) {
+                logger.fine(threadName + ": - node path is not valid;");
             }
 
         }
@@ -238,7 +436,8 @@ public class SAXReader implements Runnable {
         /**
          * Fires when the notification of the end of the document is received.<br>
          *
-         * Sets the variable {@link ee.helmes.SAXReader.MyDefaultHandler#xmlFileIsParsed} value to {@code true}.
+         * Sets the variable {@link ee.helmes.SAXReader.MyDefaultHandler#xmlFileIsParsed} value to {@code true}
+         * and signals the end of the stream to the {@link ee.helmes.SAXReader#ruleBuffer}.
          *
          *@throws SAXException Any SAX exception, possibly wrapping another exception.
          *@see ContentHandler#endDocument()
@@ -247,6 +446,11 @@ public class SAXReader implements Runnable {
         public void endDocument() throws SAXException {
             logger.info(threadName + ": XML file was parsed.");
             xmlFileIsParsed = true;
+            try {
+                ruleBuffer.close();
+            } catch (InterruptedException ex) {
+                throw new SAXException(ex);
+            }
         }
 
 
@@ -258,7 +462,9 @@ public class SAXReader implements Runnable {
          */
         public boolean validateNodePath(String nodePath){
             if(nodePath!=null) {
-                logger.info(threadName + ": Parsing node \"" + nodePath + "\":");
+                if(logger.isLoggable(Level.FINE)){
+                    logger.fine(threadName + ": Parsing node \"" + nodePath + "\":");
+                }
                 String[] nodePathArray = nodePath.split("/");
                 int length = nodePathArray.length;
                 if ( length > 2) {
@@ -281,56 +487,10 @@ public class SAXReader implements Runnable {
          * @return {@code true} if element's attributes are valid; returns {@code false} otherwise.
          */
         protected boolean validateNodeAttributes(Attributes attributes){
-            boolean valid = false;
-            String nodeNameValue = attributes.getValue(RuleAttr.NAME.getValue());
-
-            if(nodeNameValue!=null){
-
-                if(nodeNameValue.length()>0) {
-
-                    String nodeTypeValue = attributes.getValue(RuleAttr.TYPE.getValue());
-
-                    if (nodeTypeValue!= null) {
-
-                        if(NodeType.getType(nodeTypeValue)!=0){
-
-                            String nodeWeightValue = attributes.getValue(RuleAttr.WEIGHT.getValue());
-
-                            if (nodeWeightValue!= null) {
-                                try {
-                                    Integer weightValue = Integer.parseInt(nodeWeightValue);
-                                    if(weightValue>0){
-                                        valid = true;
-                                    }
-                                    else {
-                                        logger.info(threadName + ": - invalid \"weight\" attribute value - it must be a positive integer.");
-                                    }
-                                }
-                                catch (NumberFormatException ex){
-                                    logger.info(threadName + ": - invalid \"weight\" attribute value - java.lang.NumberFormatException.");
-                                }
-
-                            }
-                            else {
-
-                                logger.info(threadName + ": - there is no \"weight\" attribute in current node.");
-
-                            }
-                        }
-                        else {
-                            logger.info(threadName + ": - invalid \"type\" attribute value.");
-                        }
-                    }
-                    else {
-                        logger.info(threadName + ": - there is no \"type\" attribute in current node.");
-                    }
-                }else {
-                    logger.info(threadName + ": - empty \"name\" attribute value.");
-                }
-            }else {
-                logger.info(threadName + ": - there si no \"name\" attribute in current node.");
-            }
-            return valid;
+            return SAXReader.validateRuleAttributes(attributes.getValue(RuleAttr.NAME.getValue()),
+                                                    attributes.getValue(RuleAttr.TYPE.getValue()),
+                                                    attributes.getValue(RuleAttr.WEIGHT.getValue()),
+                                                    threadName);
         }
     }
 
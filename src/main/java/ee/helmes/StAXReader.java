@@ -0,0 +1,192 @@
+package ee.helmes;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Parses input XML file with {@link javax.xml.stream.XMLStreamReader} and applies filter to valid rules
+ * in the same thread.<br>
+ *     This engine has no queue and no thread handoff, so it is cheaper than {@link ee.helmes.SAXReader}
+ *     with filtering thread for small and medium files.
+ */
+public class StAXReader {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * Local name of the root element of the input XML file.
+     */
+    private static final String RULES_ELEMENT = "rules";
+
+    /**
+     * Local name of the rule element of the input XML file.
+     */
+    private static final String RULE_ELEMENT = "rule";
+
+    /**
+     * Factories of {@link javax.xml.stream.XMLStreamReader} objects, one for each thread.<br>
+     * The lookup of the JAXP implementation is done once per thread, so threads which parse many files
+     * (for example, the workers of {@link ee.helmes.FilteringServer}) do not repeat it for each file.
+     */
+    private static final ThreadLocal<XMLInputFactory> INPUT_FACTORIES = new ThreadLocal<XMLInputFactory>() {
+        @Override
+        protected XMLInputFactory initialValue() {
+            XMLInputFactory factory = XMLInputFactory.newInstance();
+            factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.TRUE);
+            return factory;
+        }
+    };
+
+    /**
+     * Input XML file for parsing.
+     */
+    private final File xmlFile;
+
+    /**
+     * {@code XMLNodeFilter} object which filters valid rules.
+     */
+    private final XMLNodeFilter xmlNodeFilter;
+
+    /**
+     * Number of the first rule elements which are skipped because they were already filtered
+     * by {@link ee.helmes.MappedRuleScanner}.
+     */
+    private long skippedRules;
+
+    /**
+     * Id of the rule which precedes the first rule element of the file.
+     */
+    private long ruleIdBase;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.StAXReader} object.
+     *
+     * @param xmlFile {@link java.io.File} object associated with the input source XML file.
+     * @param xmlNodeFilter {@link ee.helmes.XMLNodeFilter} object which filters valid rules.
+     */
+    public StAXReader(File xmlFile, XMLNodeFilter xmlNodeFilter){
+        if(xmlFile == null || xmlNodeFilter == null){
+            throw new NullPointerException();
+        }
+        this.xmlFile = xmlFile;
+        this.xmlNodeFilter = xmlNodeFilter;
+    }
+
+    /**
+     * Sets the number of the first rule elements which are skipped without validation, filtering and counting.<br>
+     * Is used when {@link ee.helmes.MappedRuleScanner} met unsupported content after it filtered these rules:
+     * the scanner and this reader read the same rule elements till that content.
+     *
+     * @param skippedRules number of rule elements handled by {@link ee.helmes.MappedRuleScanner}.
+     */
+    void setSkippedRules(long skippedRules) {
+        this.skippedRules = skippedRules;
+    }
+
+    /**
+     * Sets the id of the rule which precedes the first rule element of the file.<br>
+     * The id of each rule is the ordinal number of its element added to this id (see {@link ee.helmes.DecisionJournal}).
+     * Is used when several files are filtered together, so the rules of different files have different ids.
+     *
+     * @param ruleIdBase the id of the rule which precedes the first rule element, {@code 0} by default.
+     */
+    void setRuleIdBase(long ruleIdBase) {
+        this.ruleIdBase = ruleIdBase;
+    }
+
+    /**
+     * Returns {@code true} if the input XML file was parsed without errors, {@code false} otherwise.<br>
+     *     Pulls elements from {@link javax.xml.stream.XMLStreamReader}, validates path and attributes
+     *     of each element as {@link ee.helmes.SAXReader} does and applies filter to valid rules
+     *     with {@link XMLNodeFilter#applyFilter(RuleRecord)}, so time of filtering is counted
+     *     by {@link ee.helmes.PipelineStats} as time of parsing. Parsing is recorded as
+     *     {@link ee.helmes.PipelineEvents.ParseEvent} event of JDK Flight Recorder.
+     *
+     * @return {@code true} if the input XML file was parsed without errors, {@code false} otherwise.
+     */
+    public boolean startParsing() {
+        String threadName = Thread.currentThread().getName();
+        long startNanos = System.nanoTime();
+        PipelineEvents.ParseEvent parseEvent = new PipelineEvents.ParseEvent();
+        parseEvent.begin();
+        XMLStreamReader reader = null;
+
+        try (InputStream inputStream = CompressedFiles.newInputStream(xmlFile)) {
+            reader = INPUT_FACTORIES.get().createXMLStreamReader(inputStream);
+
+            logger.info(threadName + ": XML file is being parsed...");
+            Deque<String> parentElements = new ArrayDeque<>();
+            long ruleId = ruleIdBase;
+
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if(event == XMLStreamConstants.START_ELEMENT){
+                    String localName = reader.getLocalName();
+                    if(RULE_ELEMENT.equals(localName) && RULES_ELEMENT.equals(parentElements.peek())){
+                        ruleId++;
+                        if(skippedRules > 0){
+                            skippedRules--;
+                        }
+                        else {
+                            this.parseRule(reader, threadName, ruleId);
+                        }
+                    }
+                    parentElements.push(localName);
+                }
+                else if(event == XMLStreamConstants.END_ELEMENT){
+                    parentElements.pop();
+                }
+            }
+            logger.info(threadName + ": XML file was parsed.");
+            return true;
+        }
+        catch (XMLStreamException | IOException | RuntimeException ex){
+            logger.log(Level.SEVERE, threadName + ": parsing was stopped because of " + ex.toString(), ex);
+            return false;
+        }
+        finally {
+            if(reader != null){
+                try {
+                    reader.close();
+                }
+                catch (XMLStreamException ex){
+                    logger.log(Level.WARNING, ex.getMessage(), ex);
+                }
+            }
+            PipelineStats.get().addParseTime(startNanos);
+            parseEvent.finish(xmlFile, "StAX", 0, xmlFile.length());
+        }
+    }
+
+    /**
+     * Validates attributes of the current rule element and applies filter to the rule if they are valid.
+     *
+     * @param reader {@link javax.xml.stream.XMLStreamReader} object positioned at the start of the rule element.
+     * @param threadName name of the current thread.
+     * @param ruleId id of the rule.
+     */
+    private void parseRule(XMLStreamReader reader, String threadName, long ruleId){
+        String name = reader.getAttributeValue(null, RuleAttr.NAME.getValue());
+        String type = reader.getAttributeValue(null, RuleAttr.TYPE.getValue());
+        String weight = reader.getAttributeValue(null, RuleAttr.WEIGHT.getValue());
+
+        if(SAXReader.validateRuleAttributes(name, type, weight, threadName)){
+            xmlNodeFilter.applyFilter(RuleRecord.valueOf(name, type, weight, ruleId));
+        }
+        else if(logger.isLoggable(Level.FINE)) {
+            logger.fine(threadName + ": - node attributes are not valid;");
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package ee.helmes;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base of the writers which encode text to UTF-8 straight into the direct buffer flushed to the
+ * {@link java.nio.channels.FileChannel}, without building {@link org.w3c.dom.Document} object.<br>
+ *     Files with the {@code ".gz"} suffix are compressed in their own thread (see {@link CompressedFiles#newOutputChannel(File)}).<br>
+ *     Provides writing of constant markup, decimal integers, {@code "type"} attribute values and escaped text.
+ *     Each writer gives its own table of escaped ASCII chars; {@link Utf8FileWriter#XML_ESCAPES}
+ *     is valid both in XML attribute values and in HTML text. The writer may be moved to another file
+ *     by {@link Utf8FileWriter#open(File)}, for example to write the next page of the report.
+ */
+abstract class Utf8FileWriter implements Closeable {
+
+    /**
+     * {@code "type"} attribute values encoded to UTF-8, indexed by integer representation of {@link ee.helmes.NodeType}.
+     */
+    private static final byte[][] TYPE_NAMES = {bytes(NodeType.getTypeName(0)),
+                                                bytes(NodeType.getTypeName(1)),
+                                                bytes(NodeType.getTypeName(2)),
+                                                bytes(NodeType.getTypeName(3))};
+
+    /**
+     * Escaped representations of ASCII chars which are not allowed in XML attribute values, indexed by char.
+     */
+    static final byte[][] XML_ESCAPES = escapes(new char[]{'&', '<', '>', '"', '\t', '\n', '\r'},
+                                                new String[]{"&amp;", "&lt;", "&gt;", "&quot;", "&#9;", "&#10;", "&#13;"});
+
+    /**
+     * Size of the buffer in bytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Maximum number of bytes written to the buffer for one char of the attribute value.
+     */
+    private static final int MAX_CHAR_BYTES = 6;
+
+    /**
+     * Escaped representations of ASCII chars indexed by char; {@code null} for chars which are written as they are.
+     */
+    private final byte[][] escapes;
+
+    /**
+     * Buffer which collects encoded markup before it is written to the {@code channel}.
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    /**
+     * Auxiliary array for converting integers to chars.
+     */
+    private final byte[] digits = new byte[10];
+
+    /**
+     * Channel of the current file or {@code null} if no file is open.
+     */
+    private WritableByteChannel channel;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.Utf8FileWriter} object.
+     *
+     * @param escapes escaped representations of ASCII chars indexed by char (see {@link Utf8FileWriter#escapes(char[], String[])}).
+     */
+    protected Utf8FileWriter(byte[][] escapes){
+        this.escapes = escapes;
+    }
+
+    /**
+     * Flushes and closes the current file, if any, and opens (truncates) the given file.
+     *
+     * @param file {@link java.io.File} object to write to.
+     * @throws IOException if the current file can not be written or the given file can not be opened.
+     */
+    protected void open(File file) throws IOException {
+        this.closeFile();
+        this.channel = CompressedFiles.newOutputChannel(file);
+    }
+
+    /**
+     * Flushes and closes the current file, if any.
+     *
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    protected void closeFile() throws IOException {
+        if(channel == null){
+            return;
+        }
+        try {
+            this.flush();
+        }
+        finally {
+            channel.close();
+            channel = null;
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Writes the given bytes to the buffer.
+     *
+     * @param bytes bytes to write.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    protected void put(byte[] bytes) throws IOException {
+        if(buffer.remaining() < bytes.length){
+            this.flush();
+        }
+        buffer.put(bytes);
+    }
+
+    /**
+     * Writes the UTF-8 encoded {@code "type"} attribute value to the buffer.
+     *
+     * @param type integer representation of {@code "type"} attribute value.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    protected void putType(int type) throws IOException {
+        this.put(TYPE_NAMES[type >= 0 && type < TYPE_NAMES.length ? type : 0]);
+    }
+
+    /**
+     * Writes the decimal representation of the integer to the buffer.
+     *
+     * @param value integer to write.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    protected void putInt(int value) throws IOException {
+        if(value < 0){
+            this.put(bytes(String.valueOf(value)));
+            return;
+        }
+        int position = digits.length;
+        do {
+            digits[--position] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        if(buffer.remaining() < digits.length){
+            this.flush();
+        }
+        buffer.put(digits, position, digits.length - position);
+    }
+
+    /**
+     * Writes the text to the buffer in UTF-8, escaping ASCII chars given by the table of the writer.
+     *
+     * @param value text to write.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    protected void putEscaped(String value) throws IOException {
+        int length = value.length();
+        for(int i = 0; i < length; i++){
+            if(buffer.remaining() < MAX_CHAR_BYTES){
+                this.flush();
+            }
+            char c = value.charAt(i);
+            if(c < 0x80){
+                byte[] escaped = escapes[c];
+                if(escaped == null){
+                    buffer.put((byte) c);
+                }
+                else {
+                    buffer.put(escaped);
+                }
+            }
+            else if(c < 0x800){
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if(Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))){
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            }
+            else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Writes the UTF-8 encoded text to the buffer, escaping ASCII chars given by the table of the writer.<br>
+     * All escaped chars are ASCII, and ASCII bytes never occur inside multi-byte UTF-8 sequences,
+     * so other bytes are copied as they are.
+     *
+     * @param value array which holds the UTF-8 bytes of the text.
+     * @param offset index of the first byte of the text.
+     * @param length number of bytes of the text.
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    protected void putEscaped(byte[] value, int offset, int length) throws IOException {
+        for(int i = offset, end = offset + length; i < end; i++){
+            if(buffer.remaining() < MAX_CHAR_BYTES){
+                this.flush();
+            }
+            byte b = value[i];
+            byte[] escaped = b >= 0 ? escapes[b] : null;
+            if(escaped == null){
+                buffer.put(b);
+            }
+            else {
+                buffer.put(escaped);
+            }
+        }
+    }
+
+    /**
+     * Writes the content of the buffer to the file.
+     *
+     * @throws IOException if the buffer can not be written to the file.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Returns the table of escaped representations of ASCII chars indexed by char.
+     *
+     * @param chars ASCII chars which should be escaped.
+     * @param escapedChars escaped representations of the chars, at most 6 chars each.
+     * @return the table of escaped representations with {@code null} for chars which are written as they are.
+     */
+    protected static byte[][] escapes(char[] chars, String[] escapedChars){
+        byte[][] escapes = new byte[0x80][];
+        for(int i = 0; i < chars.length; i++){
+            escapes[chars[i]] = bytes(escapedChars[i]);
+        }
+        return escapes;
+    }
+
+    /**
+     * Returns the given string encoded to UTF-8.
+     *
+     * @param value string to encode.
+     * @return the given string encoded to UTF-8.
+     */
+    protected static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,155 @@
+package ee.helmes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * Persistent on-disk index of the winners of filtering.<br>
+ *     The index keeps the rule which won for each name, so the next run applies filter only to the
+ *     rules of the new delta file on top of the stored winners instead of parsing the whole history again.
+ *     Applying the same rule twice does not change the winners, so a delta which was applied partially
+ *     because of an error may be applied again.<br>
+ *     The index starts with {@link WinnerIndex#MAGIC} and the {@code int} number of winners, followed by the winners:
+ *     {@code int} length and UTF-8 bytes of the name, {@code byte} type and {@code int} weight.<br>
+ *     The index is written to the temporary file next to it and then moved over the old index,
+ *     so the old index stays whole if the run is stopped while the index is being saved.
+ */
+public class WinnerIndex {
+
+    /**
+     * {@code Logger} object that logs the program execution process.
+     */
+    private static final Logger logger = Logger.getLogger(Main.class.getName());
+
+    /**
+     * The first {@code int} of the index file ({@code "FRI1"}).
+     */
+    static final int MAGIC = 0x46524931;
+
+    /**
+     * Size of the buffers of the index streams.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * File of the index.
+     */
+    private final File indexFile;
+
+    /**
+     * Initializes a newly created {@link ee.helmes.WinnerIndex} object.
+     *
+     * @param indexFile {@link java.io.File} object associated with the index file; the file may not exist yet.
+     */
+    public WinnerIndex(File indexFile){
+        if(indexFile == null){
+            throw new NullPointerException();
+        }
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Returns {@link java.io.File} object associated with the index file.
+     *
+     * @return {@link java.io.File} object associated with the index file.
+     */
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    /**
+     * Returns the number of winners loaded from the index into the map.<br>
+     * If the index file does not exist yet, the map is not changed and {@code 0} is returned.
+     *
+     * @param filteredNodeMap {@link java.util.Map} object which receives the winners.
+     * @return the number of winners loaded from the index.
+     * @throws IOException if the index file can not be read or has invalid format.
+     */
+    public int load(Map<String, RuleRecord> filteredNodeMap) throws IOException {
+        String threadName = Thread.currentThread().getName();
+        if(!indexFile.isFile()){
+            logger.info(threadName + ": Winner index " + indexFile.getAbsolutePath() + " does not exist yet - all rules are filtered.");
+            return 0;
+        }
+
+        int count;
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile), BUFFER_SIZE))) {
+            if(input.readInt() != MAGIC){
+                throw new IOException("File " + indexFile.getAbsolutePath() + " is not a winner index.");
+            }
+            count = input.readInt();
+            if(count < 0){
+                throw new IOException("Invalid number of winners " + count + " in index " + indexFile.getAbsolutePath() + ".");
+            }
+            byte[] nameBytes = new byte[64];
+            for(int i = 0; i < count; i++){
+                int nameLength = input.readInt();
+                if(nameLength <= 0){
+                    throw new IOException("Invalid length of name " + nameLength + " of winner #" + (i + 1) + ".");
+                }
+                if(nameBytes.length < nameLength){
+                    nameBytes = new byte[Math.max(nameLength, nameBytes.length * 2)];
+                }
+                input.readFully(nameBytes, 0, nameLength);
+                int type = input.readByte();
+                int weight = input.readInt();
+                if(NodeType.getTypeName(type).isEmpty() || weight <= 0){
+                    throw new IOException("Invalid type " + type + " or weight " + weight + " of winner #" + (i + 1) + ".");
+                }
+                String name = new String(nameBytes, 0, nameLength, StandardCharsets.UTF_8);
+                filteredNodeMap.put(name, new RuleRecord(name, type, weight));
+            }
+            if(input.read() >= 0){
+                throw new IOException("Winner index " + indexFile.getAbsolutePath() + " has data after the last winner.");
+            }
+        }
+        catch (EOFException ex){
+            throw new IOException("Winner index " + indexFile.getAbsolutePath() + " is truncated.", ex);
+        }
+        logger.info(threadName + ": " + count + " winners were loaded from " + indexFile.getAbsolutePath() + ".");
+        return count;
+    }
+
+    /**
+     * Saves the winners to the index replacing its previous content.
+     *
+     * @param filteredNodeMap {@link java.util.Map} object which stores the result of filtering.
+     * @throws IOException if the index file can not be written.
+     */
+    public void save(Map<String, RuleRecord> filteredNodeMap) throws IOException {
+        File partFile = new File(indexFile.getAbsoluteFile().getParentFile(), indexFile.getName() + ".part");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(partFile), BUFFER_SIZE))) {
+            output.writeInt(MAGIC);
+            output.writeInt(filteredNodeMap.size());
+            for(RuleRecord rule : filteredNodeMap.values()){
+                byte[] nameBytes = rule.getName().getBytes(StandardCharsets.UTF_8);
+                output.writeInt(nameBytes.length);
+                output.write(nameBytes);
+                output.writeByte(rule.getType());
+                output.writeInt(rule.getWeight());
+            }
+        }
+
+        try {
+            Files.move(partFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException ex){
+            Files.move(partFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        logger.info(Thread.currentThread().getName() + ": " + filteredNodeMap.size() + " winners were saved to "
+                    + indexFile.getAbsolutePath() + ".");
+    }
+}
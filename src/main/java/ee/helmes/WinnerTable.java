@@ -0,0 +1,115 @@
+package ee.helmes;
+
+import java.io.IOException;
+
+/**
+ * Store of the winners of filtering which replaces the map of {@link ee.helmes.RuleRecord} objects
+ * (see {@link XMLNodeFilter#setWinnerTable(WinnerTable)}).<br>
+ *     The table is keyed by UTF-8 bytes of the names and keeps only the type and the weight of each winner,
+ *     packed by {@link WinnerTable#pack(int, int)}, so millions of winners do not create millions of objects.
+ *     Implementations:<br>
+ *          - {@link ee.helmes.OffHeapWinnerTable} keeps names and winners in direct memory;<br>
+ *          - {@link ee.helmes.DictionaryWinnerTable} assigns each name an id in the {@link ee.helmes.NameDictionary},
+ *            which shares common prefixes of the names, and keeps winners in the array indexed by id.<br>
+ *     Tables are not thread-safe.
+ */
+public interface WinnerTable {
+
+    /**
+     * Value returned for the name which has no winner.
+     */
+    long NO_WINNER = -1L;
+
+    /**
+     * Returns the number of winners in the table.
+     *
+     * @return the number of winners.
+     */
+    long size();
+
+    /**
+     * Returns the number of bytes of memory used by the table.
+     *
+     * @return the number of bytes used by names and winners.
+     */
+    long getAllocatedBytes();
+
+    /**
+     * Returns the winner with the given name packed by {@link WinnerTable#pack(int, int)}.
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param nameLength number of bytes of the name.
+     * @return the packed winner or {@link WinnerTable#NO_WINNER} if there is no winner with this name.
+     */
+    long get(byte[] name, int nameLength);
+
+    /**
+     * Puts the rule to the table if there is no winner with its name or the rule outranks the winner
+     * (see {@link RuleRecord#outranks(RuleRecord)}), and returns the previous winner.
+     *
+     * @param name array which holds the UTF-8 bytes of the name.
+     * @param nameLength number of bytes of the name.
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @return the previous winner packed by {@link WinnerTable#pack(int, int)}
+     * or {@link WinnerTable#NO_WINNER} if the rule is the first rule with this name.
+     */
+    long putIfOutranks(byte[] name, int nameLength, int type, int weight);
+
+    /**
+     * Passes all winners to the visitor.<br>
+     * The same array is passed for all names, the visitor should copy it if it needs the name later.
+     *
+     * @param visitor visitor of the winners.
+     * @throws IOException if the visitor throws it.
+     */
+    void forEach(WinnerVisitor visitor) throws IOException;
+
+    /**
+     * Returns the type and the weight of the winner packed into one {@code long} value.
+     *
+     * @param type integer representation of {@code "type"} attribute value.
+     * @param weight {@code "weight"} attribute value.
+     * @return the packed winner.
+     */
+    static long pack(int type, int weight) {
+        return ((long) type << 32) | (weight & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the type of the packed winner.
+     *
+     * @param winner the packed winner.
+     * @return integer representation of {@code "type"} attribute value.
+     */
+    static int unpackType(long winner) {
+        return (int) (winner >>> 32);
+    }
+
+    /**
+     * Returns the weight of the packed winner.
+     *
+     * @param winner the packed winner.
+     * @return {@code "weight"} attribute value.
+     */
+    static int unpackWeight(long winner) {
+        return (int) winner;
+    }
+
+    /**
+     * Visitor of the winners of the {@link ee.helmes.WinnerTable}.
+     */
+    interface WinnerVisitor {
+
+        /**
+         * Receives the winner.
+         *
+         * @param name array which holds the UTF-8 bytes of the name.
+         * @param nameLength number of bytes of the name.
+         * @param type integer representation of {@code "type"} attribute value.
+         * @param weight {@code "weight"} attribute value.
+         * @throws IOException if the winner can not be processed.
+         */
+        void visit(byte[] name, int nameLength, int type, int weight) throws IOException;
+    }
+}
@@ -1,21 +1,20 @@
 package ee.helmes;
 
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.xml.sax.Attributes;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
- * Filters nodes attributes from the {@link java.util.concurrent.LinkedBlockingQueue}.
+ * Filters rules from the {@link ee.helmes.RuleRingBuffer}
+ * or rules applied directly by the parser running in the same thread (see {@link ee.helmes.StAXReader}).
  */
 
 
@@ -28,26 +27,24 @@ public class XMLNodeFilter implements Runnable {
     private static final Logger logger = Logger.getLogger(XMLNodeFilter.class.getName());
 
     /**
-     * {@link java.util.Map} implemented object for storing results of filtering.<br>
-     *     All results are stored in {@code <key, value>} pairs,
-     *     where {@code name} attribute value is a key and {@link org.xml.sax.Attributes} object is a value.
-     */
-    private final Map<String, Attributes> filteredNodeMap = new HashMap<>();
-
-    /**
-     * {@code SAXReader} object for checking error and progress statuses while parsing.
+     * Estimated size in bytes of one entry of the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}
+     * without characters of the name: {@link java.util.HashMap} node, {@link ee.helmes.RuleRecord},
+     * {@link java.lang.String} and their references.
      */
-    private final SAXReader saxReader;
+    static final int ESTIMATED_ENTRY_SIZE = 128;
 
     /**
-     * Queue object which stores valid nodes attributes from input XML file.
+     * {@link java.util.Map} implemented object for storing results of filtering.<br>
+     *     All results are stored in {@code <key, value>} pairs,
+     *     where {@code name} attribute value is a key and {@link ee.helmes.RuleRecord} object is a value.
      */
-    private final LinkedBlockingQueue<Attributes> attributesList;
+    private final Map<String, RuleRecord> filteredNodeMap = new HashMap<>();
 
     /**
-     *{@code Attributes} object for node attributes from {@code attributesList}.
+     * Ring buffer object which passes valid rules from input XML file
+     * or {@code null} if rules are applied directly by the parser.
      */
-    private Attributes attributes;
+    private final RuleRingBuffer ruleBuffer;
 
     /**
      * Auxiliary variable which stores the name of the current {@link java.lang.Thread}.<br>
@@ -60,26 +57,136 @@ public class XMLNodeFilter implements Runnable {
      */
     private final File resultXml;
 
+    /**
+     * Number of workers which filter rules.<br>
+     * If the value is greater than 1, rules are routed by hash of the {@code "name"} attribute value
+     * to the {@link ee.helmes.XMLNodeFilter.FilterShard shards}, each of them owns a private result map.
+     */
+    private final int filterWorkers;
 
     /**
-     * Initializes a newly created {@link ee.helmes.XMLNodeFilter} object.
+     * Journal of the filter decisions or {@code null} if decisions are not journaled.
+     */
+    private DecisionJournal decisionJournal;
+
+    /**
+     * Recorder of the decisions made by {@link XMLNodeFilter#applyFilter(RuleRecord)}
+     * or {@code null} if decisions are not journaled.
+     */
+    private DecisionJournal.Recorder journalRecorder;
+
+    /**
+     * Persistent index of the winners or {@code null} if winners are not kept between runs.
+     */
+    private WinnerIndex winnerIndex;
+
+    /**
+     * Estimated size in bytes of the {@link ee.helmes.XMLNodeFilter#filteredNodeMap} above which the map
+     * is spilled to the {@link ee.helmes.XMLNodeFilter#runMerger}, {@code 0} if the map is never spilled.
+     */
+    private long spillThreshold;
+
+    /**
+     * Estimated size in bytes of the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}.
+     */
+    private long estimatedMapSize;
+
+    /**
+     * Runs of the spilled partial results or {@code null} if nothing was spilled.
+     */
+    private RuleRunMerger runMerger;
+
+    /**
+     * {@code true} if the {@link ee.helmes.XMLNodeFilter#filteredNodeMap} was spilled at least once,
+     * so the map alone does not hold all winners.
+     */
+    private boolean spilled;
+
+    /**
+     * Store of the winners which replaces the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}
+     * ({@link ee.helmes.OffHeapWinnerTable} or {@link ee.helmes.DictionaryWinnerTable})
+     * or {@code null} if the winners are kept in the map.
+     */
+    private WinnerTable winnerTable;
+
+    /**
+     * Shards of the running sharded filtering or {@code null} if the shards are not running,
+     * read by monitoring (see {@link ee.helmes.PipelineStats}).
+     */
+    private volatile FilterShard[] shards;
+
+    /**
+     * Outputs of the result of filtering written by {@link XMLNodeFilter#saveResult()}.
+     */
+    private EnumSet<OutputFormat> outputs = EnumSet.of(OutputFormat.XML, OutputFormat.HTML);
+
+    /**
+     * Custom XSLT stylesheet of the HTML view or {@code null} if the view is written by {@link ee.helmes.HtmlReportWriter}.
+     */
+    private File stylesheet;
+
+    /**
+     * Maximum number of rows in one page of the HTML view written by {@link ee.helmes.HtmlReportWriter}.
+     */
+    private long htmlPageRows = HtmlReportWriter.DEFAULT_PAGE_ROWS;
+
+
+    /**
+     * Initializes a newly created {@link ee.helmes.XMLNodeFilter} object
+     * which filters rules applied directly by the parser in the current thread
+     * with {@link XMLNodeFilter#applyFilter(RuleRecord)}.<br>
+     * The result is saved by {@link XMLNodeFilter#saveResult()} when parsing is finished.
+     *
+     * @param resultXml {@link java.io.File} object for storing results of filtering.
+     */
+    public XMLNodeFilter(File resultXml){
+        if(resultXml ==null){
+            throw new NullPointerException();
+        }
+        this.ruleBuffer = null;
+        this.resultXml = resultXml;
+        this.filterWorkers = 1;
+        this.threadName = Thread.currentThread().getName();
+        PipelineStats.get().addFilter(this);
+    }
+
+    /**
+     * Initializes a newly created {@link ee.helmes.XMLNodeFilter} object
+     * which filters rules in the current thread.
      *
      * @param resultXml {@link java.io.File} object for storing results of filtering.
      * @param saxReader {@link ee.helmes.SAXReader} object which parses input sourse XML file.
      */
     public XMLNodeFilter(File resultXml,SAXReader saxReader){
+        this(resultXml, saxReader, 1);
+    }
+
+    /**
+     * Initializes a newly created {@link ee.helmes.XMLNodeFilter} object.
+     *
+     * @param resultXml {@link java.io.File} object for storing results of filtering.
+     * @param saxReader {@link ee.helmes.SAXReader} object which parses input sourse XML file.
+     * @param filterWorkers number of workers which filter rules.
+     *
+     * @throws IllegalArgumentException if {@code filterWorkers} is less than 1.
+     */
+    public XMLNodeFilter(File resultXml,SAXReader saxReader, int filterWorkers){
         if(resultXml ==null || saxReader == null){
             throw new NullPointerException();
         }
-        this.saxReader = saxReader;
-        this.attributesList = saxReader.getAttributesList();
+        if(filterWorkers < 1){
+            throw new IllegalArgumentException("Number of filter workers must be positive: " + filterWorkers);
+        }
+        this.ruleBuffer = saxReader.getRuleBuffer();
         this.resultXml = resultXml;
+        this.filterWorkers = filterWorkers;
+        PipelineStats.get().addFilter(this);
     }
 
     /**
      * Entry point for {@link Thread} associated with {@link ee.helmes.XMLNodeFilter} object.<br>
      * The goal of this method just to invoke {@link XMLNodeFilter#startFiltering()} method,
-     * which takes care of further filtering attributes from Queue.
+     * which takes care of further filtering rules from ring buffer.
      *
      */
     public void run() {
@@ -90,50 +197,221 @@ public class XMLNodeFilter implements Runnable {
 
     /**
      * Execute filtering process.<br>
-     *     Gets {@code attributes} from the Queue (till it stores elements in it
-     *     and input XML file is not fully parsed) and applies filter to them .<br>
-     *     If any error occurred during parsing source file, method stops getting
-     *     {attributes} from Queue.<br>
-     *     All {@code attributes} objects from Queue are filtered according to rules and
+     *     Takes batches of rules from the ring buffer (till the end of the stream is signalled)
+     *     and applies filter to them .<br>
+     *     If any error occurred during parsing source file, method stops taking
+     *     batches from ring buffer.<br>
+     *     Filtering of each batch is recorded as {@link ee.helmes.PipelineEvents.FilterBatchEvent} event
+     *     of JDK Flight Recorder.<br>
+     *     If more than one filter worker is configured, rules are routed
+     *     to the {@link ee.helmes.XMLNodeFilter.FilterShard shards} (see {@link XMLNodeFilter#startShardedFiltering()}).<br>
+     *     All rules from ring buffer are filtered according to rules and
      *     those of them, which passed filter, are added to the result Map object. <br>
-     *     When the Queue object is empty ant there woun't be and {@code attributes} in it
-     *     or error occurred while parsing file, method starts the process of transforming
+     *     When the end of the stream is reached
+     *     or error occurred while parsing file, method saves
      *     the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}
-     *     object to the result XML and HTML files.
+     *     object to the result XML file and transforms it to HTML file.
+     *
+     * @throws IllegalStateException if the filter was created without {@link ee.helmes.SAXReader}
+     * or if a filter worker was stopped by an error; the result is not saved then.
      */
     public void startFiltering() {
+        if(ruleBuffer == null){
+            throw new IllegalStateException("There is no ring buffer to take rules from.");
+        }
         threadName = Thread.currentThread().getName();
 
         logger.info(threadName + ": Node filtering is being started...");
-        while (!saxReader.isXmlFileIsParsed()||!attributesList.isEmpty()) {
+        long startNanos = System.nanoTime();
+        if(filterWorkers > 1){
+            this.startShardedFiltering();
+        }
+        else {
             try {
-                attributes = attributesList.poll(10, TimeUnit.MICROSECONDS);
+                RuleRecord[] batch;
+                while ((batch = ruleBuffer.takeBatch()) != null) {
+                    PipelineEvents.FilterBatchEvent event = new PipelineEvents.FilterBatchEvent();
+                    event.begin();
+                    for(RuleRecord rule : batch){
+                        this.applyFilter(rule);
+                    }
+                    event.finish(batch.length, this.getHeldNames());
+                }
+            }
+            catch (InterruptedException ex){
+                logger.log(Level.SEVERE, threadName + ": The filtering is stopped because of the InterruptedException:", ex);
+                ruleBuffer.fail(ex);
+                Thread.currentThread().interrupt();
             }
-            catch (InterruptedException ex){ex.printStackTrace();}
+        }
+        PipelineStats.get().addFilterTime(startNanos);
+        logger.info(threadName + ": Node filtering was successfully completed.");
 
+        this.saveResult();
+    }
 
-            if(attributes!=null){
+    /**
+     * Saves the {@link ee.helmes.XMLNodeFilter#filteredNodeMap} object to the {@link ee.helmes.XMLNodeFilter#outputs}
+     * and displays the HTML view.<br>
+     * Decisions recorded by {@link XMLNodeFilter#applyFilter(RuleRecord)} are passed to the
+     * {@link ee.helmes.XMLNodeFilter#decisionJournal} before.<br>
+     * If the {@link ee.helmes.XMLNodeFilter#winnerIndex} is set, the winners are saved to it as well.<br>
+     * All outputs are written from one pass over the winners (see {@link XMLNodeFilter#saveResultToFile()}).
+     * If the custom stylesheet is set by {@link XMLNodeFilter#setHtmlReport(File, long)}, the HTML view is
+     * transformed from the result XML file instead; the result merged from spilled runs does not fit in memory,
+     * and the compressed result can not be read by the stylesheet, so they are not transformed.<br>
+     * The filter is no longer counted by {@link ee.helmes.PipelineStats} after the result is saved.
+     *
+     * @return {@code true} if the result of filtering was saved to all outputs, {@code false} otherwise.
+     */
+    public boolean saveResult() {
+        this.flushDecisions();
+        long startNanos = System.nanoTime();
+        boolean saved = this.saveResultToFile();
+        PipelineStats.get().addSaveTime(startNanos);
+        PipelineStats.get().removeFilter(this);
+        this.flushDecisions();
+        if(saved && outputs.contains(OutputFormat.XML)){
+            logger.info(threadName + ": - the result document was successfully saved to "+resultXml.getAbsolutePath()+".");
+        }
+        if(winnerIndex != null){
+            try {
+                winnerIndex.save(filteredNodeMap);
+            }
+            catch (IOException ex){
+                logger.log(Level.WARNING, threadName + ": the winner index wasn't saved to file "
+                                          + winnerIndex.getIndexFile().getAbsolutePath() + " because of the IOException", ex);
+            }
+        }
+        if(saved && outputs.contains(OutputFormat.HTML)){
+            ResTransformer resTransformer = new ResTransformer(resultXml, stylesheet);
+            if(stylesheet == null){
+                resTransformer.displayResultFile(OutputFormat.HTML.getFile(resultXml));
+            }
+            else if(spilled){
+                logger.info(threadName + ": - the result document was merged from spilled runs and is not transformed to HTML.");
+            }
+            else if(CompressedFiles.hasGzipSuffix(resultXml.getName())){
+                logger.info(threadName + ": - the result document is compressed and is not transformed to HTML.");
+            }
+            else {
+                resTransformer.performHTMLTransformation();
+            }
+        }
+        return saved;
+    }
 
-                this.applyFilter(attributes);
+    /**
+     * Execute filtering process with several filter workers.<br>
+     *     Starts a thread for each {@link ee.helmes.XMLNodeFilter.FilterShard shard} and routes
+     *     rules from the ring buffer to the shards by hash of the {@code "name"} attribute value,
+     *     so all rules with the same name are filtered by the same shard.
+     *     Each shard has its own {@link ee.helmes.RuleRingBuffer} of the same size.<br>
+     *     When the end of the stream is reached, waits for the shards to complete and merges their maps into
+     *     the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}. Names never collide across shards, but they may collide
+     *     with the winners loaded from the {@link ee.helmes.XMLNodeFilter#winnerIndex}, so maps are merged
+     *     with the precedence rules (see {@link XMLNodeFilter#mergeFilteredNodes(Map, Map, DecisionJournal.Recorder)}).<br>
+     *     If routing stops because of an error or an interrupt, the shards are stopped as well, and the maps
+     *     are merged only after all shards are completed, so no shard writes its map while it is merged.
+     *
+     * @throws IllegalStateException if a shard or the routing was stopped by an error, so the result is not complete.
+     */
+    private void startShardedFiltering() {
+        FilterShard[] shards = new FilterShard[filterWorkers];
+        Thread[] workers = new Thread[filterWorkers];
+        this.shards = shards;
 
-            }
+        logger.info(threadName + ": Starting " + filterWorkers + " filter workers...");
+        for(int i = 0; i < filterWorkers; i++){
+            shards[i] = new FilterShard(new RuleRingBuffer(ruleBuffer.getCapacity(), ruleBuffer.getBatchSize()),
+                                        decisionJournal == null ? null : decisionJournal.newRecorder());
+            workers[i] = new Thread(shards[i], threadName + "-" + (i + 1));
+            workers[i].start();
+        }
 
-            if(saxReader.isErrorWhileParse()){
-                break;
+        Throwable routingFailure = null;
+        try {
+            RuleRecord[] batch;
+            while ((batch = ruleBuffer.takeBatch()) != null) {
+                for(RuleRecord rule : batch){
+                    shards[XMLNodeFilter.getShardIndex(rule.getName(), filterWorkers)].shardBuffer.publish(rule);
+                }
+            }
+            for(FilterShard shard : shards){
+                shard.shardBuffer.close();
             }
         }
-        logger.info(threadName + ": Node filtering was successfully completed.");
+        catch (Throwable ex){
+            logger.log(Level.SEVERE, threadName + ": The filtering is stopped because of the " + ex.getClass().getSimpleName() + ":", ex);
+            routingFailure = ex;
+            ruleBuffer.fail(ex);
+            for(FilterShard shard : shards){
+                shard.shardBuffer.fail(ex);
+            }
+        }
+        finally {
+            XMLNodeFilter.joinWorkers(workers);
+            this.shards = null;
+        }
 
-        Document resultDocument = this.createResultDocument();
+        Throwable failure = routingFailure instanceof InterruptedException ? null : routingFailure;
+        for(FilterShard shard : shards){
+            if(failure == null){
+                failure = shard.failure;
+            }
+        }
+        if(failure != null){
+            PipelineStats.get().removeFilter(this);
+            throw new IllegalStateException("The filtering was stopped by the filter worker error, the result was not saved", failure);
+        }
+        if(routingFailure != null){
+            Thread.currentThread().interrupt();
+        }
+        for(FilterShard shard : shards){
+            XMLNodeFilter.mergeFilteredNodes(filteredNodeMap, shard.shardMap, journalRecorder);
+        }
+    }
 
-        ResTransformer resTransformer = new ResTransformer(resultDocument);
-        resTransformer.performTransformation(resultXml);
+    /**
+     * Waits for the filter workers to complete.<br>
+     * The workers are stopped by their ring buffers, so the wait is not abandoned if the current thread
+     * is interrupted; the interrupt status is restored after all workers are completed.
+     *
+     * @param workers threads of the filter workers.
+     */
+    private static void joinWorkers(Thread[] workers){
+        boolean interrupted = false;
+        for(Thread worker : workers){
+            while (worker.isAlive()){
+                try {
+                    worker.join();
+                }
+                catch (InterruptedException ex){
+                    interrupted = true;
+                }
+            }
+        }
+        if(interrupted){
+            Thread.currentThread().interrupt();
+        }
+    }
 
-        logger.info(threadName + ": - the result document was successfully created.");
+    /**
+     * Returns the index of the shard which filters rules with the given {@code "name"} attribute value.<br>
+     * The index is taken from the high bits of the mixed hash code, so it does not correlate
+     * with the buckets of {@link java.util.HashMap} used by the shard.
+     *
+     * @param nodeName {@code "name"} attribute value of the rule.
+     * @param shardCount number of shards.
+     * @return index of the shard in range {@code [0, shardCount)}.
+     */
+    static int getShardIndex(String nodeName, int shardCount){
+        long mixedHash = (nodeName.hashCode() * 0x9E3779B9) & 0xFFFFFFFFL;
+        return (int) ((mixedHash * shardCount) >>> 32);
     }
 
     /**
-     * Returns the result of applying filter to the node attributes.<br>
+     * Returns the result of applying filter to the rule.<br>
      *     Checks whether the {@code filteredNodeMap} contains object with
      *     the given {@code "name"} attribute value.<br>
      *
@@ -151,158 +429,640 @@ public class XMLNodeFilter implements Runnable {
      *     Object with the higher integer value wins and is saved to the place map.
      *
      *
-     * @param attributes {@link Attributes} object to filter.
-     * @return {@code true} if node passed the filter and was added
+     *     If the {@link XMLNodeFilter#setSpillThreshold(long) spill threshold} is crossed by the new name,
+     *     the map is spilled (see {@link XMLNodeFilter#spill()}).
+     *
+     * @param rule {@link ee.helmes.RuleRecord} object to filter.
+     * @return {@code true} if rule passed the filter and was added
      * to the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}; {@code false} otherwise.
      */
-    public boolean applyFilter(Attributes attributes) {
-        String nodeName = attributes.getValue(RuleAttr.NAME.getValue());
-        String nodeType = attributes.getValue(RuleAttr.TYPE.getValue());
-        String nodeWeight = attributes.getValue(RuleAttr.WEIGHT.getValue());
-        String nodeToString = XMLNodeFilter.getNodeDescription(attributes);
-
-        boolean insertToMap = false;
-        if (filteredNodeMap.containsKey(nodeName)) {
-            Attributes attributesFromMap = filteredNodeMap.get(nodeName);
-            String nodeTypeFromMap = attributesFromMap.getValue(RuleAttr.TYPE.getValue());
-            String nodeFromMapToString = XMLNodeFilter.getNodeDescription(attributesFromMap);
-
-            if (ruleTypeIsHigher(nodeType, nodeTypeFromMap)) {
-                insertToMap = true;
-                logger.info(threadName + ": - node " + nodeFromMapToString + " will be replaced with the higher rule.");
-            } else {
-                if (ruleTypeIsEqual(nodeType, nodeTypeFromMap)) {
-                    String nodeWeightFromMap = attributesFromMap.getValue(RuleAttr.WEIGHT.getValue());
-                    if (ruleWeightIsBigger(nodeWeight, nodeWeightFromMap)) {
-                        insertToMap = true;
-                        logger.info(threadName + ": - node " + nodeFromMapToString + " will be replaced with  the higher rule.");
-                    }
-                }
+    public boolean applyFilter(RuleRecord rule) {
+        if(winnerTable != null){
+            return XMLNodeFilter.applyFilter(winnerTable, rule, threadName, journalRecorder);
+        }
+        if(spillThreshold == 0){
+            return XMLNodeFilter.applyFilter(filteredNodeMap, rule, threadName, journalRecorder);
+        }
+        int mapSize = filteredNodeMap.size();
+        boolean insertToMap = XMLNodeFilter.applyFilter(filteredNodeMap, rule, threadName, journalRecorder);
+        if(filteredNodeMap.size() > mapSize){
+            estimatedMapSize += ESTIMATED_ENTRY_SIZE + 2L * rule.getName().length();
+            if(estimatedMapSize > spillThreshold){
+                this.spill();
             }
-        } else {
-            insertToMap = true;
         }
+        return insertToMap;
+    }
+
+    /**
+     * Writes the {@link ee.helmes.XMLNodeFilter#filteredNodeMap} to the new sorted run
+     * of the {@link ee.helmes.XMLNodeFilter#runMerger} and clears the map.<br>
+     * If the run can not be written, spilling is turned off and the map keeps growing in memory.
+     */
+    private void spill() {
+        if(runMerger == null){
+            runMerger = new RuleRunMerger(null);
+        }
+        try {
+            runMerger.spill(filteredNodeMap);
+            estimatedMapSize = 0;
+            spilled = true;
+        }
+        catch (IOException ex){
+            logger.log(Level.WARNING, threadName + ": spilling is turned off because of the IOException", ex);
+            spillThreshold = 0;
+        }
+    }
+
+    /**
+     * Returns the result of applying filter to the rule and the given map.<br>
+     *     Implements the filter described in {@link XMLNodeFilter#applyFilter(RuleRecord)}
+     *     for any map, so it is shared by {@link ee.helmes.XMLNodeFilter.FilterShard shards}
+     *     and {@link ee.helmes.ChunkedRuleParser chunks}.<br>
+     *     Each decision is passed to the {@code journalRecorder}; it is logged only at {@link java.util.logging.Level#FINE} level.
+     *
+     * @param filteredNodeMap {@link java.util.Map} object which stores the result of filtering.
+     * @param rule {@link ee.helmes.RuleRecord} object to filter.
+     * @param threadName name of the thread which applies filter.
+     * @param journalRecorder recorder of the decisions or {@code null} if decisions are not journaled.
+     * @return {@code true} if rule passed the filter and was added
+     * to the {@code filteredNodeMap}; {@code false} otherwise.
+     */
+    static boolean applyFilter(Map<String, RuleRecord> filteredNodeMap, RuleRecord rule, String threadName,
+                               DecisionJournal.Recorder journalRecorder) {
+        RuleRecord ruleFromMap = filteredNodeMap.get(rule.getName());
+        boolean insertToMap = ruleFromMap == null || rule.outranks(ruleFromMap);
 
         if(insertToMap){
-            filteredNodeMap.put(nodeName, attributes);
-            logger.info(threadName + ": - node " + nodeToString + " was added to the result list.");
+            filteredNodeMap.put(rule.getName(), rule);
         }
-        else {
-            logger.info(threadName + ": - node " + nodeToString + " was rejected.");
+        PipelineStats.get().countDecision(ruleFromMap == null, insertToMap);
+        if(journalRecorder != null){
+            journalRecorder.record(rule, XMLNodeFilter.getOutcome(ruleFromMap, insertToMap), ruleFromMap);
+        }
+        if(logger.isLoggable(Level.FINE)){
+            if(ruleFromMap != null && insertToMap){
+                logger.fine(threadName + ": - node " + ruleFromMap + " will be replaced with the higher rule.");
+            }
+            logger.fine(threadName + ": - node " + rule + (insertToMap ? " was added to the result list." : " was rejected."));
         }
         return insertToMap;
     }
 
     /**
-     * Returns the {@link java.lang.String string} representation of {@code attributes}.
+     * Returns the result of applying filter to the rule and the given winner table.<br>
+     *     Implements the filter described in {@link XMLNodeFilter#applyFilter(RuleRecord)}:
+     *     the name is encoded to UTF-8 and the table keeps the winner with the highest type and weight.
+     *
+     * @param winnerTable {@link ee.helmes.WinnerTable} object which stores the result of filtering.
+     * @param rule {@link ee.helmes.RuleRecord} object to filter.
+     * @param threadName name of the thread which applies filter.
+     * @param journalRecorder recorder of the decisions or {@code null} if decisions are not journaled.
+     * @return {@code true} if rule passed the filter and was put to the {@code winnerTable}; {@code false} otherwise.
+     */
+    static boolean applyFilter(WinnerTable winnerTable, RuleRecord rule, String threadName,
+                               DecisionJournal.Recorder journalRecorder) {
+        byte[] name = rule.getName().getBytes(StandardCharsets.UTF_8);
+        long winner = winnerTable.putIfOutranks(name, name.length, rule.getType(), rule.getWeight());
+        RuleRecord ruleFromTable = null;
+        if(winner != WinnerTable.NO_WINNER && (journalRecorder != null || logger.isLoggable(Level.FINE))){
+            ruleFromTable = new RuleRecord(rule.getName(), WinnerTable.unpackType(winner), WinnerTable.unpackWeight(winner));
+        }
+        boolean insertToTable = winner == WinnerTable.NO_WINNER
+                                || rule.getType() > WinnerTable.unpackType(winner)
+                                || (rule.getType() == WinnerTable.unpackType(winner)
+                                    && rule.getWeight() > WinnerTable.unpackWeight(winner));
+
+        PipelineStats.get().countDecision(winner == WinnerTable.NO_WINNER, insertToTable);
+        if(journalRecorder != null){
+            journalRecorder.record(rule, XMLNodeFilter.getOutcome(ruleFromTable, insertToTable), ruleFromTable);
+        }
+        if(logger.isLoggable(Level.FINE)){
+            if(ruleFromTable != null && insertToTable){
+                logger.fine(threadName + ": - node " + ruleFromTable + " will be replaced with the higher rule.");
+            }
+            logger.fine(threadName + ": - node " + rule + (insertToTable ? " was added to the result list." : " was rejected."));
+        }
+        return insertToTable;
+    }
+
+    /**
+     * Returns the outcome of applying filter to the rule.
+     *
+     * @param ruleFromMap {@link ee.helmes.RuleRecord} object with the same name which was in the map before
+     *                    or {@code null} if there was no such rule.
+     * @param insertToMap {@code true} if the rule was put to the map.
+     * @return the outcome of applying filter to the rule.
+     */
+    private static DecisionJournal.Outcome getOutcome(RuleRecord ruleFromMap, boolean insertToMap) {
+        if(!insertToMap){
+            return DecisionJournal.Outcome.REJECTED;
+        }
+        return ruleFromMap == null ? DecisionJournal.Outcome.ADDED : DecisionJournal.Outcome.REPLACED;
+    }
+
+    /**
+     * Merges the result of filtering made elsewhere into the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}
+     * or the {@link ee.helmes.XMLNodeFilter#winnerTable}.<br>
+     * See {@link XMLNodeFilter#mergeFilteredNodes(Map, Map, DecisionJournal.Recorder)}: the rules of the given map
+     * were already filtered and journaled, so only decisions about names which are already kept by this filter
+     * are journaled. If the map may be spilled, it is spilled when the threshold is crossed by the merged names.
      *
-     * This method is used by {@code logger} object during logging messages.
+     * @param nodeMap {@link java.util.Map} object which stores the result of filtering.
+     */
+    public void mergeFilteredNodes(Map<String, RuleRecord> nodeMap) {
+        if(winnerTable != null){
+            for(RuleRecord rule : nodeMap.values()){
+                XMLNodeFilter.mergeRule(winnerTable, rule, journalRecorder);
+            }
+            return;
+        }
+        if(spillThreshold == 0){
+            XMLNodeFilter.mergeFilteredNodes(filteredNodeMap, nodeMap, journalRecorder);
+            return;
+        }
+        for(RuleRecord rule : nodeMap.values()){
+            int mapSize = filteredNodeMap.size();
+            XMLNodeFilter.mergeRule(filteredNodeMap, rule, journalRecorder);
+            if(filteredNodeMap.size() > mapSize){
+                estimatedMapSize += ESTIMATED_ENTRY_SIZE + 2L * rule.getName().length();
+                if(estimatedMapSize > spillThreshold){
+                    this.spill();
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges one result of filtering into another one with the precedence rules
+     * of {@link XMLNodeFilter#applyFilter(RuleRecord)}.<br>
+     *     Rules of {@code sourceMap} are put to {@code targetMap} in its iteration order if they outrank
+     *     the rules with the same name. So if both maps keep names in order of their first occurrence
+     *     and {@code sourceMap} holds rules which follow rules of {@code targetMap} in the input,
+     *     {@code targetMap} receives names in the same order as if all rules were filtered one by one.<br>
+     *     Decisions about names present in both maps are passed to the {@code journalRecorder}
+     *     and counted by {@link PipelineStats#countMergedDecision(boolean)}.
      *
-     * @param attributes object from the {@link ee.helmes.XMLNodeFilter#attributesList}
+     * @param targetMap {@link java.util.Map} object which receives the result of filtering.
+     * @param sourceMap {@link java.util.Map} object which stores the result of filtering to merge.
+     * @param journalRecorder recorder of the decisions or {@code null} if decisions are not journaled.
+     */
+    static void mergeFilteredNodes(Map<String, RuleRecord> targetMap, Map<String, RuleRecord> sourceMap,
+                                   DecisionJournal.Recorder journalRecorder) {
+        for(RuleRecord rule : sourceMap.values()){
+            XMLNodeFilter.mergeRule(targetMap, rule, journalRecorder);
+        }
+    }
+
+    /**
+     * Returns the outcome of merging the winner of the result of filtering made elsewhere into the given map.<br>
+     *     The rule is put to the map if it outranks the rule with the same name.
+     *     Unlike {@link XMLNodeFilter#applyFilter(Map, RuleRecord, String, DecisionJournal.Recorder)}, the rule
+     *     was already counted and journaled when it was filtered, so only the decision about the name which
+     *     the map already contains is passed to the {@code journalRecorder} and counted
+     *     by {@link PipelineStats#countMergedDecision(boolean)}.
      *
-     * @return the {@link java.lang.String string} representation of {@code attributes}
+     * @param targetMap {@link java.util.Map} object which receives the result of filtering.
+     * @param rule {@link ee.helmes.RuleRecord} object which won in the other result.
+     * @param journalRecorder recorder of the decisions or {@code null} if decisions are not journaled.
+     * @return the outcome of merging, {@link DecisionJournal.Outcome#ADDED} if the map did not contain the name.
      */
-    private static String getNodeDescription(Attributes attributes){
-        String nodeName = attributes.getValue(RuleAttr.NAME.getValue());
-        String nodeType = attributes.getValue(RuleAttr.TYPE.getValue());
-        String nodeWeight = attributes.getValue(RuleAttr.WEIGHT.getValue());
+    static DecisionJournal.Outcome mergeRule(Map<String, RuleRecord> targetMap, RuleRecord rule,
+                                             DecisionJournal.Recorder journalRecorder) {
+        RuleRecord ruleFromMap = targetMap.get(rule.getName());
+        boolean insertToMap = ruleFromMap == null || rule.outranks(ruleFromMap);
+        if(insertToMap){
+            targetMap.put(rule.getName(), rule);
+        }
+        DecisionJournal.Outcome outcome = XMLNodeFilter.getOutcome(ruleFromMap, insertToMap);
+        if(ruleFromMap != null){
+            PipelineStats.get().countMergedDecision(insertToMap);
+            if(journalRecorder != null){
+                journalRecorder.record(rule, outcome, ruleFromMap);
+            }
+        }
+        return outcome;
+    }
 
-        return String.format("<rule name=\"%s\" type=\"%s\" weigh=\"%s\"/>",nodeName, nodeType, nodeWeight);
+    /**
+     * Merges the winner of the result of filtering made elsewhere into the given winner table.<br>
+     *     See {@link XMLNodeFilter#mergeRule(Map, RuleRecord, DecisionJournal.Recorder)}.
+     *
+     * @param winnerTable {@link ee.helmes.WinnerTable} object which receives the result of filtering.
+     * @param rule {@link ee.helmes.RuleRecord} object which won in the other result.
+     * @param journalRecorder recorder of the decisions or {@code null} if decisions are not journaled.
+     */
+    private static void mergeRule(WinnerTable winnerTable, RuleRecord rule, DecisionJournal.Recorder journalRecorder) {
+        byte[] name = rule.getName().getBytes(StandardCharsets.UTF_8);
+        long winner = winnerTable.putIfOutranks(name, name.length, rule.getType(), rule.getWeight());
+        if(winner == WinnerTable.NO_WINNER){
+            return;
+        }
+        RuleRecord ruleFromTable = new RuleRecord(rule.getName(), WinnerTable.unpackType(winner), WinnerTable.unpackWeight(winner));
+        boolean insertToTable = rule.outranks(ruleFromTable);
+        PipelineStats.get().countMergedDecision(insertToTable);
+        if(journalRecorder != null){
+            journalRecorder.record(rule, XMLNodeFilter.getOutcome(ruleFromTable, insertToTable), ruleFromTable);
+        }
     }
 
+    /**
+     * Passes decisions recorded by {@link XMLNodeFilter#applyFilter(RuleRecord)} to the
+     * {@link ee.helmes.XMLNodeFilter#decisionJournal}.<br>
+     * Should be called by the owner of the filter which result is not saved but merged into another filter.
+     */
+    void flushDecisions() {
+        if(journalRecorder != null){
+            journalRecorder.flush();
+        }
+    }
 
     /**
-     * Creates {@link org.w3c.dom.Document} object from {@link ee.helmes.XMLNodeFilter#filteredNodeMap}
+     * Sets the journal of the filter decisions.<br>
+     * Should be called before filtering is started; the journal is closed by the caller
+     * when {@link XMLNodeFilter#saveResult()} is finished.
      *
-     * @return {@link org.w3c.dom.Document} object or {@code null} if any exception occurred;
+     * @param decisionJournal journal of the filter decisions or {@code null} if decisions should not be journaled.
      */
-    private Document createResultDocument(){
-        Document resultDocument = null;
-        logger.info(threadName + ": Creating result document:");
-        DocumentBuilderFactory documentBuilderFactory = DocumentBuilderFactory.newInstance();
-        DocumentBuilder documentBuilder;
+    public void setDecisionJournal(DecisionJournal decisionJournal) {
+        this.decisionJournal = decisionJournal;
+        this.journalRecorder = decisionJournal == null ? null : decisionJournal.newRecorder();
+    }
 
+    /**
+     * Sets the persistent index of the winners and loads the stored winners into
+     * the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}.<br>
+     * Should be called before filtering is started, so the rules of the input file are filtered
+     * against the stored winners; the winners are saved back to the index by {@link XMLNodeFilter#saveResult()}.
+     *
+     * @param winnerIndex persistent index of the winners or {@code null} if winners should not be kept between runs.
+     * @return the number of winners loaded from the index.
+     * @throws IOException if the index exists but can not be read.
+     * @throws IllegalStateException if the filter spills the result to the temporary files.
+     */
+    public int setWinnerIndex(WinnerIndex winnerIndex) throws IOException {
+        if(winnerIndex != null && spillThreshold > 0){
+            throw new IllegalStateException("Spilled winners can not be kept in the winner index.");
+        }
+        if(winnerIndex != null && winnerTable != null){
+            throw new IllegalStateException("Winners of the winner table can not be kept in the winner index.");
+        }
+        this.winnerIndex = winnerIndex;
+        return winnerIndex == null ? 0 : winnerIndex.load(filteredNodeMap);
+    }
 
-        try {
-            documentBuilder = documentBuilderFactory.newDocumentBuilder();
-        }
-        catch (ParserConfigurationException ex){
-            logger.log(Level.SEVERE, threadName + ": - the result document wasn't created:");
-            logger.log(Level.SEVERE, threadName + ": the application execution is stopped because of the ParserConfigurationException", ex);
-            return null;
-        }
-        if(documentBuilder!=null){
-            resultDocument = documentBuilder.newDocument();
-            Element rootElement = resultDocument.createElement("rules");
-            resultDocument.appendChild(rootElement);
-
-            for(Map.Entry<String, Attributes> entry : filteredNodeMap.entrySet()){
-                attributes = entry.getValue();
-
-                String name = attributes.getValue(RuleAttr.NAME.getValue());
-                String type = attributes.getValue(RuleAttr.TYPE.getValue());
-                String weight = attributes.getValue(RuleAttr.WEIGHT.getValue());
-
-                Element rule = resultDocument.createElement("rule");
-                rule.setAttribute(RuleAttr.NAME.getValue(),name);
-                rule.setAttribute(RuleAttr.TYPE.getValue(),type);
-                rule.setAttribute(RuleAttr.WEIGHT.getValue(),weight);
-                rootElement.appendChild(rule);
-            }
+    /**
+     * Sets the estimated size in bytes of the {@link ee.helmes.XMLNodeFilter#filteredNodeMap} above which
+     * the partial result is spilled to the sorted run in the temporary file.<br>
+     * When the result is saved, the runs and the map are merged by {@link ee.helmes.RuleRunMerger}
+     * and the rules are written in order of names. Spilling works with one filter worker only.
+     *
+     * @param spillThreshold estimated size of the map in bytes or {@code 0} if the map should not be spilled.
+     *
+     * @throws IllegalArgumentException if {@code spillThreshold} is negative.
+     * @throws IllegalStateException if the filter shares rules between several workers or keeps the winner index.
+     */
+    public void setSpillThreshold(long spillThreshold) {
+        if(spillThreshold < 0){
+            throw new IllegalArgumentException("Invalid spill threshold " + spillThreshold);
+        }
+        if(spillThreshold > 0 && filterWorkers > 1){
+            throw new IllegalStateException("Spilling needs one filter worker, but there are " + filterWorkers + ".");
+        }
+        if(spillThreshold > 0 && winnerIndex != null){
+            throw new IllegalStateException("Spilled winners can not be kept in the winner index.");
+        }
+        if(spillThreshold > 0 && winnerTable != null){
+            throw new IllegalStateException("The winner table is not spilled.");
+        }
+        this.spillThreshold = spillThreshold;
+    }
 
+    /**
+     * Sets the store of the winners which replaces the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}:
+     * the {@link ee.helmes.OffHeapWinnerTable} keeps the winners outside of the heap, the {@link ee.helmes.DictionaryWinnerTable}
+     * keeps them in primitive arrays indexed by the ids of the names.<br>
+     * Should be called before filtering is started. The winners are written to the result XML file straight
+     * from the table, names are not decoded to {@link java.lang.String}. The table works with one filter worker,
+     * without the winner index and spilling.
+     *
+     * @param winnerTable store of the winners or {@code null} if the winners should be kept in the map.
+     *
+     * @throws IllegalStateException if the filter shares rules between several workers, keeps the winner index
+     * or spills the result.
+     */
+    public void setWinnerTable(WinnerTable winnerTable) {
+        if(winnerTable != null && (filterWorkers > 1 || winnerIndex != null || spillThreshold > 0)){
+            throw new IllegalStateException("The winner table needs one filter worker, "
+                                            + "no winner index and no spilling.");
         }
-        return resultDocument;
+        this.winnerTable = winnerTable;
     }
 
     /**
-     * Returns {@code true} if the {@code "type"} attribute value from the {@link ee.helmes.XMLNodeFilter#attributesList}
-     * is higher then the other one from the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}, {@code false} otherwise.
+     * Returns the store of the winners.
      *
-     * @param nodeType string representation of the {@code "type"} attribute value from the {@link ee.helmes.XMLNodeFilter#attributesList}.
+     * @return store of the winners or {@code null} if the winners are kept in the map.
+     */
+    public WinnerTable getWinnerTable() {
+        return winnerTable;
+    }
 
-     * @param nodeTypeFromMap string representation of the {@code "type"} attribute value from the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}.
-     * @return {@code true} if {@code "type"} attribute value from {@link ee.helmes.XMLNodeFilter#attributesList}
-     * is higher then the other one from {@link ee.helmes.XMLNodeFilter#filteredNodeMap}, {@code false} otherwise.
+    /**
+     * Sets the outputs of the result of filtering written by {@link XMLNodeFilter#saveResult()}.<br>
+     * Both {@link OutputFormat#XML} and {@link OutputFormat#HTML} are written by default; the HTML view should be
+     * turned off when nobody looks at the screen, for example in {@link ee.helmes.FilteringServer} jobs.
+     * The empty set turns off saving of the result, so only the decision journal and the winner index are written.
+     *
+     * @param outputs outputs of the result of filtering.
      */
-    private boolean ruleTypeIsHigher(String nodeType,String nodeTypeFromMap){
-        return NodeType.getType(nodeType) > NodeType.getType(nodeTypeFromMap);
+    public void setOutputs(Set<OutputFormat> outputs) {
+        this.outputs = outputs.isEmpty() ? EnumSet.noneOf(OutputFormat.class) : EnumSet.copyOf(outputs);
     }
 
     /**
-     * Returns {@code true} if {@code "type"} attribute values from {@link ee.helmes.XMLNodeFilter#attributesList}
-     * and {@link ee.helmes.XMLNodeFilter#filteredNodeMap} are equal, {@code false} otherwise.
+     * Returns the outputs of the result of filtering written by {@link XMLNodeFilter#saveResult()}.
      *
-     * @param nodeType string representation of the {@code "type"} attribute value from the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}.
-     * @param nodeTypeFromMap string representation of the {@code "type"} attribute value from the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}.
-     * @return {@code true} if {@code "type"} attribute values from {@link ee.helmes.XMLNodeFilter#attributesList}
-     * and {@link ee.helmes.XMLNodeFilter#filteredNodeMap} are equal, {@code false} otherwise.
+     * @return outputs of the result of filtering.
      */
-    private boolean ruleTypeIsEqual(String nodeType,String nodeTypeFromMap){
-        return NodeType.getType(nodeType) == NodeType.getType(nodeTypeFromMap);
+    public Set<OutputFormat> getOutputs() {
+        return EnumSet.copyOf(outputs);
     }
 
     /**
-     * Returns {@code true} if the {@code "weight"} attribute value from {@link ee.helmes.XMLNodeFilter#attributesList}
-     * is bigger then the other one from the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}, {@code false} otherwise.
+     * Sets how the HTML view is produced.<br>
+     * Without the custom stylesheet the view is written straight from the winners by {@link ee.helmes.HtmlReportWriter}
+     * in pages of at most {@code pageRows} rows; with it the result XML file is transformed by the stylesheet.
      *
-     * @param nodeWeight string representation of the {@code "weight"} attribute value from the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}.
-     * @param nodeWeightFromMap string representation of the {@code "weight"} attribute value from the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}.
-     * @return {@code true} if the {@code "weight"} attribute value from {@link ee.helmes.XMLNodeFilter#attributesList}
-     * is bigger then the other one from the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}, {@code false} otherwise.
+     * @param stylesheet custom XSLT stylesheet or {@code null} if the view is written by {@link ee.helmes.HtmlReportWriter}.
+     * @param pageRows maximum number of rows in one page written by {@link ee.helmes.HtmlReportWriter}.
+     *
+     * @throws IllegalArgumentException if {@code pageRows} is less than 1.
      */
-    private boolean ruleWeightIsBigger(String nodeWeight, String nodeWeightFromMap){
-        Integer weight = Integer.parseInt(nodeWeight);
-        Integer weightFromMap = Integer.parseInt(nodeWeightFromMap);
+    public void setHtmlReport(File stylesheet, long pageRows) {
+        if(pageRows < 1){
+            throw new IllegalArgumentException("Invalid number of rows in one page " + pageRows);
+        }
+        this.stylesheet = stylesheet;
+        this.htmlPageRows = pageRows;
+    }
 
-        return weight>weightFromMap;
+    /**
+     * Returns the journal of the filter decisions.
+     *
+     * @return journal of the filter decisions or {@code null} if decisions are not journaled.
+     */
+    public DecisionJournal getDecisionJournal() {
+        return decisionJournal;
     }
 
+    /**
+     * Returns {@code true} if the {@link ee.helmes.XMLNodeFilter#filteredNodeMap} was saved to
+     * all {@link ee.helmes.XMLNodeFilter#outputs}, {@code false} otherwise.<br>
+     * Rules are read from the map once and passed to the sinks of all outputs through the {@link ee.helmes.ResultSinkFanout},
+     * which writes the outputs concurrently. If the custom stylesheet is set, the native HTML view is replaced by
+     * the result XML file which the stylesheet is applied to.
+     * If the map was spilled, the runs and the map are merged into the sinks and the runs are deleted.
+     * If the {@link ee.helmes.XMLNodeFilter#winnerTable} is set, the winners are written from it.
+     * Saving is recorded as {@link ee.helmes.PipelineEvents.SaveResultEvent} event of JDK Flight Recorder.
+     *
+     * @return {@code true} if the result of filtering was saved to all outputs, {@code false} otherwise.
+     */
+    private boolean saveResultToFile(){
+        logger.info(threadName + ": Saving result document to " + (outputs.isEmpty() ? "no" : outputs.toString()) + " outputs:");
+        PipelineEvents.SaveResultEvent event = new PipelineEvents.SaveResultEvent();
+        event.begin();
+        EnumSet<OutputFormat> formats = EnumSet.copyOf(outputs);
+        if(stylesheet != null && formats.remove(OutputFormat.HTML)){
+            formats.add(OutputFormat.XML);
+        }
+        List<ResultSink> sinks = new ArrayList<>(formats.size());
+        try {
+            for(OutputFormat format : formats){
+                sinks.add(format.openSink(resultXml, htmlPageRows));
+            }
+        }
+        catch (IOException ex){
+            logger.log(Level.WARNING, threadName + ": the result document wasn't saved because of the IOException", ex);
+            for(ResultSink sink : sinks){
+                try {
+                    sink.close();
+                }
+                catch (IOException closeEx){
+                    ex.addSuppressed(closeEx);
+                }
+            }
+            this.closeRunMerger();
+            event.finish(resultXml, formats.toString(), 0, false);
+            return false;
+        }
+        final ResultSinkFanout resultSink = new ResultSinkFanout(sinks);
+        try (resultSink) {
+            if(winnerTable != null){
+                winnerTable.forEach(new WinnerTable.WinnerVisitor() {
+                    @Override
+                    public void visit(byte[] name, int nameLength, int type, int weight) throws IOException {
+                        resultSink.writeRule(name, 0, nameLength, type, weight);
+                    }
+                });
+            }
+            else if(runMerger != null){
+                logger.info(threadName + ": Merging " + runMerger.getRunCount() + " spilled runs...");
+                runMerger.merge(filteredNodeMap, resultSink, journalRecorder);
+            }
+            else {
+                for(RuleRecord resultRule : filteredNodeMap.values()){
+                    resultSink.writeRule(resultRule);
+                }
+            }
+        }
+        catch (IOException ex){
+            logger.log(Level.WARNING, threadName + ": the result document wasn't saved to file "+resultXml.getAbsolutePath()+" because of the IOException", ex);
+            event.finish(resultXml, formats.toString(), resultSink.getRuleCount(), false);
+            return false;
+        }
+        finally {
+            this.closeRunMerger();
+        }
+        event.finish(resultXml, formats.toString(), resultSink.getRuleCount(), true);
+        return true;
+    }
 
     /**
-     * Returns {@link java.util.Map} implemented object which stores the result of filtering {@code attributes} from {@link ee.helmes.XMLNodeFilter#filteredNodeMap}.
-     * @return {@link java.util.Map} implemented object which stores the result of filtering {@code attributes} from {@link ee.helmes.XMLNodeFilter#filteredNodeMap}.
+     * Deletes the runs of the spilled partial results, if any.
      */
-    public Map<String, Attributes> getFilteredNodeMap() {
+    private void closeRunMerger(){
+        if(runMerger != null){
+            runMerger.close();
+            runMerger = null;
+        }
+    }
+
+
+    /**
+     * Returns {@code File} object for storing results of filtering in XML form.
+     *
+     * @return {@link java.io.File} object for storing results of filtering.
+     */
+    public File getResultXml() {
+        return resultXml;
+    }
+
+    /**
+     * Returns {@link java.util.Map} implemented object which stores the result of filtering rules from {@link ee.helmes.XMLNodeFilter#ruleBuffer}.<br>
+     * If the map was spilled, it holds only the rules filtered after the last spill;
+     * if the {@link XMLNodeFilter#setWinnerTable(WinnerTable) winner table} is set, the map is empty.
+     * @return {@link java.util.Map} implemented object which stores the result of filtering rules from {@link ee.helmes.XMLNodeFilter#ruleBuffer}.
+     */
+    public Map<String, RuleRecord> getFilteredNodeMap() {
         return filteredNodeMap;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns the queryable index of the winners of the finished filtering (see {@link ee.helmes.ResultIndex}).<br>
+     * The winners are taken from the {@link XMLNodeFilter#setWinnerTable(WinnerTable) winner table}, if it is set,
+     * otherwise from the {@link ee.helmes.XMLNodeFilter#filteredNodeMap}. The index does not depend on the filter,
+     * so it may be created before or after the result is saved.
+     *
+     * @return new {@link ee.helmes.ResultIndex} object of the winners.
+     * @throws IllegalStateException if the map was spilled, so the winners are not held in memory.
+     */
+    public ResultIndex createResultIndex() {
+        if(spilled){
+            throw new IllegalStateException("The winners were spilled to disk, load the index from the result file");
+        }
+        if(winnerTable == null){
+            return new ResultIndex(filteredNodeMap.values());
+        }
+        final List<RuleRecord> winners = new ArrayList<>((int) Math.min(winnerTable.size(), Integer.MAX_VALUE));
+        try {
+            winnerTable.forEach(new WinnerTable.WinnerVisitor() {
+                @Override
+                public void visit(byte[] name, int nameLength, int type, int weight) {
+                    winners.add(new RuleRecord(new String(name, 0, nameLength, StandardCharsets.UTF_8), type, weight));
+                }
+            });
+        }
+        catch (IOException ex){
+            throw new IllegalStateException("The winners can not be read from the winner table", ex);
+        }
+        return new ResultIndex(winners);
+    }
+
+    /**
+     * Returns number of batches of rules waiting in the ring buffer of the filter and in the ring buffers of its shards.<br>
+     * This method is called by monitoring from any thread.
+     *
+     * @return number of batches waiting to be filtered.
+     */
+    long getQueueDepth() {
+        if(ruleBuffer == null){
+            return 0;
+        }
+        long queueDepth = ruleBuffer.size();
+        FilterShard[] activeShards = shards;
+        if(activeShards != null){
+            for(FilterShard shard : activeShards){
+                queueDepth += shard.shardBuffer.size();
+            }
+        }
+        return queueDepth;
+    }
+
+    /**
+     * Returns number of distinct names held by the filter and its shards.<br>
+     * This method is called by monitoring from any thread, so the number is approximate while rules are filtered;
+     * names of the spilled runs are not counted.
+     *
+     * @return number of distinct names held in memory or in the winner table.
+     */
+    long getHeldNames() {
+        if(winnerTable != null){
+            return winnerTable.size();
+        }
+        long heldNames = filteredNodeMap.size();
+        FilterShard[] activeShards = shards;
+        if(activeShards != null){
+            for(FilterShard shard : activeShards){
+                heldNames += shard.shardMap.size();
+            }
+        }
+        return heldNames;
+    }
+
+    /**
+     * Filter worker which owns a private part of the filtering result.<br>
+     * Receives rules routed by {@link XMLNodeFilter#startShardedFiltering()}
+     * and applies filter to them till the end of its stream.
+     */
+    class FilterShard implements Runnable {
+
+        /**
+         * {@link java.util.Map} object for storing results of filtering of this shard.
+         */
+        private final Map<String, RuleRecord> shardMap = new HashMap<>();
+
+        /**
+         * Ring buffer object which passes rules routed to this shard.
+         */
+        private final RuleRingBuffer shardBuffer;
+
+        /**
+         * Recorder of the decisions made by this shard or {@code null} if decisions are not journaled.
+         */
+        private final DecisionJournal.Recorder shardRecorder;
+
+        /**
+         * Error which stopped this shard or {@code null} if the shard completed its stream.
+         * Read by the routing thread after the shard thread is joined.
+         */
+        private Throwable failure;
+
+        /**
+         * Initializes a newly created {@link ee.helmes.XMLNodeFilter.FilterShard} object.
+         *
+         * @param shardBuffer ring buffer object which passes rules routed to this shard.
+         * @param shardRecorder recorder of the decisions made by this shard or {@code null} if decisions are not journaled.
+         */
+        FilterShard(RuleRingBuffer shardBuffer, DecisionJournal.Recorder shardRecorder){
+            this.shardBuffer = shardBuffer;
+            this.shardRecorder = shardRecorder;
+        }
+
+        /**
+         * Entry point for {@link Thread} associated with {@link ee.helmes.XMLNodeFilter.FilterShard} object.<br>
+         * Applies filter to the rules from {@code shardBuffer}.<br>
+         * Any error stops both the shard buffer and the source ring buffer, so the routing thread
+         * never waits for the stopped shard, and it is reported by {@link XMLNodeFilter#startShardedFiltering()}.
+         */
+        public void run() {
+            String workerName = Thread.currentThread().getName();
+
+            try {
+                RuleRecord[] batch;
+                while ((batch = shardBuffer.takeBatch()) != null) {
+                    PipelineEvents.FilterBatchEvent event = new PipelineEvents.FilterBatchEvent();
+                    event.begin();
+                    for(RuleRecord shardRule : batch){
+                        XMLNodeFilter.applyFilter(shardMap, shardRule, workerName, shardRecorder);
+                    }
+                    event.finish(batch.length, shardMap.size());
+                }
+            }
+            catch (Throwable ex){
+                logger.log(Level.SEVERE, workerName + ": The filtering is stopped because of the " + ex.getClass().getSimpleName() + ":", ex);
+                failure = ex;
+                shardBuffer.fail(ex);
+                ruleBuffer.fail(ex);
+                if(ex instanceof InterruptedException){
+                    Thread.currentThread().interrupt();
+                }
+            }
+            finally {
+                if(shardRecorder != null){
+                    shardRecorder.flush();
+                }
+            }
+        }
+    }
+}
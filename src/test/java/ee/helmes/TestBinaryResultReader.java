@@ -0,0 +1,166 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+public class TestBinaryResultReader {
+
+    private File resultBin;
+
+    @Before
+    public void setUp(){
+        try {
+            resultBin = File.createTempFile("result",".bin");
+            resultBin.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<RuleRecord> expected = new ArrayList<>();
+        expected.add(new RuleRecord("a", 1, 0));
+        expected.add(new RuleRecord("", 3, -1));
+        expected.add(new RuleRecord("näme \"<&>\"", 2, Integer.MAX_VALUE));
+        expected.add(new RuleRecord(new String(new char[300]).replace('\0', 'x'), 3, Integer.MIN_VALUE));
+        try (BinaryResultWriter binaryWriter = new BinaryResultWriter(resultBin)) {
+            for(int i = 0; i < expected.size() - 1; i++){
+                binaryWriter.writeRule(expected.get(i));
+            }
+            byte[] name = ("--" + expected.get(3).getName()).getBytes(StandardCharsets.UTF_8);
+            binaryWriter.writeRule(name, 2, name.length - 2, 3, Integer.MIN_VALUE);
+            assertEquals(4, binaryWriter.getRuleCount());
+        }
+
+        List<RuleRecord> rules = BinaryResultReader.readAll(resultBin);
+        assertEquals(expected.size(), rules.size());
+        for(int i = 0; i < expected.size(); i++){
+            assertEquals(expected.get(i).getName(), rules.get(i).getName());
+            assertEquals(expected.get(i).getType(), rules.get(i).getType());
+            assertEquals(expected.get(i).getWeight(), rules.get(i).getWeight());
+        }
+        assertEquals(0, resultBin.getParentFile().listFiles(new java.io.FilenameFilter() {
+            @Override
+            public boolean accept(File dir, String name) {
+                return name.startsWith("result-records-");
+            }
+        }).length);
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        try (BinaryResultWriter binaryWriter = new BinaryResultWriter(resultBin)) {
+            for(int i = 0; i < 100000; i++){
+                binaryWriter.writeRule(new RuleRecord("rule" + i, 1 + i % 3, i * 7));
+            }
+        }
+        try (BinaryResultReader reader = new BinaryResultReader(resultBin)) {
+            assertEquals(100000, reader.getRuleCount());
+            int count = 0;
+            for(RuleRecord rule = reader.readRule(); rule != null; rule = reader.readRule()){
+                assertEquals("rule" + count, rule.getName());
+                assertEquals(count * 7, rule.getWeight());
+                count++;
+            }
+            assertEquals(100000, count);
+            assertNull(reader.readRule());
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testDamagedFile() throws Exception {
+        try (BinaryResultWriter binaryWriter = new BinaryResultWriter(resultBin)) {
+            binaryWriter.writeRule(new RuleRecord("abc", 1, 5));
+            binaryWriter.writeRule(new RuleRecord("def", 2, 6));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(resultBin, "rw")) {
+            file.seek(BinaryResultWriter.HEADER_SIZE + 1);
+            file.write('x');
+        }
+        BinaryResultReader.readAll(resultBin);
+    }
+
+    @Test
+    public void testRuleCountLargerThanFile() throws Exception {
+        try (BinaryResultWriter binaryWriter = new BinaryResultWriter(resultBin)) {
+            binaryWriter.writeRule(new RuleRecord("abc", 1, 5));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(resultBin, "rw")) {
+            file.seek(4);
+            file.writeLong(Integer.MAX_VALUE);
+        }
+        try {
+            BinaryResultReader.readAll(resultBin);
+            fail();
+        }
+        catch (IOException ex){
+            assertTrue(ex.getMessage().contains("has invalid header"));
+        }
+    }
+
+    @Test
+    public void testNameLengthLargerThanStringTable() throws Exception {
+        try (BinaryResultWriter binaryWriter = new BinaryResultWriter(resultBin)) {
+            binaryWriter.writeRule(new RuleRecord("abc", 1, 5));
+        }
+        try (RandomAccessFile file = new RandomAccessFile(resultBin, "rw")) {
+            file.seek(BinaryResultWriter.HEADER_SIZE);
+            file.write(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07});
+        }
+        try {
+            BinaryResultReader.readAll(resultBin);
+            fail();
+        }
+        catch (IOException ex){
+            assertTrue(ex.getMessage().contains("has invalid name length 16777215"));
+        }
+    }
+
+    @Test
+    public void testNotClosedFile() throws Exception {
+        try (BinaryResultWriter binaryWriter = new BinaryResultWriter(resultBin)) {
+            binaryWriter.writeRule(new RuleRecord("abc", 1, 5));
+            new BinaryResultReader(resultBin);
+            fail();
+        }
+        catch (IOException ex){
+            assertTrue(ex.getMessage().contains("is not a binary result file"));
+        }
+    }
+
+    @Test
+    public void testFilterWritesBinaryOutput() throws Exception {
+        File resultXml = File.createTempFile("result",".xml");
+        resultXml.deleteOnExit();
+        File binaryFile = OutputFormat.BINARY.getFile(resultXml);
+        binaryFile.deleteOnExit();
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultXml);
+        xmlNodeFilter.setOutputs(EnumSet.of(OutputFormat.BINARY));
+        File sourceXml = new File(this.getClass().getResource("/rulesResult.xml").getFile());
+        assertTrue(new StAXReader(sourceXml, xmlNodeFilter).startParsing());
+        Map<String, RuleRecord> expected = new HashMap<>(xmlNodeFilter.getFilteredNodeMap());
+        assertTrue(xmlNodeFilter.saveResult());
+
+        List<RuleRecord> rules = BinaryResultReader.readAll(binaryFile);
+        assertEquals(expected.size(), rules.size());
+        for(RuleRecord rule : rules){
+            assertEquals(expected.get(rule.getName()).getType(), rule.getType());
+            assertEquals(expected.get(rule.getName()).getWeight(), rule.getWeight());
+        }
+    }
+}
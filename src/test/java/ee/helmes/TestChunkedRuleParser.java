@@ -0,0 +1,129 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+public class TestChunkedRuleParser {
+
+    private static final String[] TYPES = {"root", "sub", "child"};
+
+    private File resultFile;
+
+    @Before
+    public void setUp(){
+        try {
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testStartParsing() throws Exception {
+        File sourceFile = createRandomFile(20000);
+        XMLNodeFilter expectFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(sourceFile, expectFilter).startParsing());
+
+        for (int parserThreads = 1; parserThreads <= 4; parserThreads++){
+            XMLNodeFilter resultFilter = new XMLNodeFilter(resultFile);
+            assertTrue(new ChunkedRuleParser(sourceFile, resultFilter, parserThreads, 4096).startParsing());
+
+            assertEquals(expectFilter.getFilteredNodeMap(), resultFilter.getFilteredNodeMap());
+            assertEquals(new ArrayList<>(expectFilter.getFilteredNodeMap().values()),
+                         new ArrayList<>(resultFilter.getFilteredNodeMap().values()));
+        }
+    }
+
+    @Test
+    public void testFindChunkBoundaries() throws Exception {
+        File sourceFile = createRandomFile(2000);
+        long[] boundaries = new ChunkedRuleParser(sourceFile, new XMLNodeFilter(resultFile), 2, 1000).findChunkBoundaries();
+
+        assertTrue(boundaries.length > 2);
+        assertEquals(0, boundaries[0]);
+        assertEquals(Long.MAX_VALUE, boundaries[boundaries.length - 1]);
+        try (RandomAccessFile file = new RandomAccessFile(sourceFile, "r")) {
+            byte[] prefix = new byte[6];
+            for (int i = 1; i < boundaries.length - 1; i++){
+                assertTrue(boundaries[i] > boundaries[i - 1]);
+                file.seek(boundaries[i]);
+                file.readFully(prefix);
+                assertEquals("<rule ", new String(prefix, "UTF-8"));
+            }
+        }
+    }
+
+    @Test
+    public void testBoundaryInsideComment() throws Exception {
+        File sourceFile = File.createTempFile("source", ".xml");
+        sourceFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(sourceFile, "UTF-8")) {
+            writer.println("<rules>");
+            writer.println("<rule name=\"a\" type=\"sub\" weight=\"1\"/>");
+            writer.println("<!--");
+            for (int i = 0; i < 100; i++){
+                writer.println("<rule name=\"a\" type=\"child\" weight=\"" + (i + 1) + "\"/>");
+            }
+            writer.println("-->");
+            writer.println("</rules>");
+        }
+        XMLNodeFilter resultFilter = new XMLNodeFilter(resultFile);
+
+        assertFalse(new ChunkedRuleParser(sourceFile, resultFilter, 2, 512).startParsing());
+        assertTrue(resultFilter.getFilteredNodeMap().isEmpty());
+    }
+
+    @Test
+    public void testInterruptedParsing() throws Exception {
+        File sourceFile = createRandomFile(2000);
+        File journalFile = File.createTempFile("journal", ".bin");
+        journalFile.deleteOnExit();
+        XMLNodeFilter resultFilter = new XMLNodeFilter(resultFile);
+        try (DecisionJournal decisionJournal = new DecisionJournal(journalFile)) {
+            resultFilter.setDecisionJournal(decisionJournal);
+            Thread.currentThread().interrupt();
+            try {
+                new ChunkedRuleParser(sourceFile, resultFilter, 2, 1000).startParsing();
+                fail();
+            }
+            catch (InterruptedException ex){
+                assertFalse(Thread.currentThread().isInterrupted());
+            }
+            finally {
+                Thread.interrupted();
+            }
+        }
+        assertTrue(resultFilter.getFilteredNodeMap().isEmpty());
+    }
+
+    private static File createRandomFile(int ruleCount) throws IOException {
+        File sourceFile = File.createTempFile("source", ".xml");
+        sourceFile.deleteOnExit();
+        Random random = new Random(15);
+        try (PrintWriter writer = new PrintWriter(sourceFile, "UTF-8")) {
+            writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            writer.println("<rules>");
+            for (int i = 0; i < ruleCount; i++){
+                if(i % 500 == 0){
+                    writer.println("<!-- part " + i + " -->");
+                }
+                writer.println("<rule name=\"n" + random.nextInt(ruleCount / 4) + "\" type=\"" + TYPES[random.nextInt(3)]
+                               + "\" weight=\"" + random.nextInt(10) + "\"/>");
+            }
+            writer.println("</rules>");
+        }
+        return sourceFile;
+    }
+}
@@ -0,0 +1,155 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+
+public class TestCompressedFiles {
+
+    private File sourceFile;
+
+    private File compressedFile;
+
+    @Before
+    public void setUp(){
+        try {
+            sourceFile = new File(this.getClass().getResource("/rules.xml").getFile());
+            compressedFile = File.createTempFile("rules",".xml.gz");
+            compressedFile.deleteOnExit();
+            try (OutputStream output = new GZIPOutputStream(new FileOutputStream(compressedFile))) {
+                output.write(Files.readAllBytes(sourceFile.toPath()));
+            }
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testCompressedInputIsDetected() throws Exception {
+        assertTrue(CompressedFiles.isCompressed(compressedFile));
+        assertFalse(CompressedFiles.isCompressed(sourceFile));
+        assertTrue(Main.isXMLFile(compressedFile.getName()));
+    }
+
+    @Test
+    public void testStAXReaderParsesCompressedFile() throws Exception {
+        File resultFile = File.createTempFile("result",".xml");
+        resultFile.deleteOnExit();
+        XMLNodeFilter expected = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(sourceFile, expected).startParsing());
+        XMLNodeFilter actual = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(compressedFile, actual).startParsing());
+
+        assertFalse(expected.getFilteredNodeMap().isEmpty());
+        assertEquals(expected.getFilteredNodeMap().keySet(), actual.getFilteredNodeMap().keySet());
+        for(Map.Entry<String, RuleRecord> entry : expected.getFilteredNodeMap().entrySet()){
+            assertEquals(entry.getValue().getWeight(), actual.getFilteredNodeMap().get(entry.getKey()).getWeight());
+        }
+    }
+
+    @Test
+    public void testPipedStreamsRoundTrip() throws Exception {
+        byte[] content = new byte[PipedGzipInputStream.BLOCK_SIZE * 5 + 123];
+        new Random(7).nextBytes(content);
+        File gzipFile = File.createTempFile("content", ".bin.gz");
+        gzipFile.deleteOnExit();
+        try (OutputStream output = new PipedGzipOutputStream(gzipFile)) {
+            output.write(content, 0, 1000);
+            output.write(content[1000]);
+            output.write(content, 1001, content.length - 1001);
+        }
+        try (InputStream input = new GZIPInputStream(new FileInputStream(gzipFile))) {
+            assertArrayEquals(content, readAll(input));
+        }
+        try (InputStream input = CompressedFiles.newInputStream(gzipFile)) {
+            assertTrue(input instanceof PipedGzipInputStream);
+            assertEquals(content[0] & 0xFF, input.read());
+            byte[] rest = readAll(input);
+            assertArrayEquals(Arrays.copyOfRange(content, 1, content.length), rest);
+            assertEquals(-1, input.read());
+        }
+    }
+
+    @Test
+    public void testCompressingThreadIsDaemon() throws Exception {
+        File gzipFile = File.createTempFile("content", ".bin.gz");
+        gzipFile.deleteOnExit();
+        try (OutputStream output = new PipedGzipOutputStream(gzipFile)) {
+            boolean found = false;
+            for(Thread thread : Thread.getAllStackTraces().keySet()){
+                if(thread.getName().startsWith("COMPRESSING_THREAD-")){
+                    found = true;
+                    assertTrue(thread.isDaemon());
+                }
+            }
+            assertTrue(found);
+            output.write(1);
+        }
+    }
+
+    @Test
+    public void testTruncatedFile() throws Exception {
+        byte[] compressed = Files.readAllBytes(compressedFile.toPath());
+        File truncatedFile = File.createTempFile("truncated",".xml.gz");
+        truncatedFile.deleteOnExit();
+        Files.write(truncatedFile.toPath(), Arrays.copyOf(compressed, compressed.length - 10));
+        try (InputStream input = CompressedFiles.newInputStream(truncatedFile)) {
+            readAll(input);
+            fail();
+        }
+        catch (IOException ex){
+            assertTrue(ex.getMessage(), ex.getMessage().contains("Unexpected end"));
+        }
+        assertFalse(new StAXReader(truncatedFile, new XMLNodeFilter(truncatedFile)).startParsing());
+    }
+
+    @Test
+    public void testCompressedOutputs() throws Exception {
+        File resultXml = File.createTempFile("result",".xml.gz");
+        resultXml.deleteOnExit();
+        File resultCsv = OutputFormat.CSV.getFile(resultXml);
+        resultCsv.deleteOnExit();
+        assertTrue(resultCsv.getName().endsWith(".csv.gz"));
+        assertTrue(OutputFormat.HTML.getFile(resultXml).getName().endsWith(".html"));
+
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultXml);
+        xmlNodeFilter.setOutputs(OutputFormat.parse("xml,csv"));
+        xmlNodeFilter.applyFilter(new RuleRecord("a", 1, 5));
+        assertTrue(xmlNodeFilter.saveResult());
+
+        try (InputStream input = new GZIPInputStream(new FileInputStream(resultXml))) {
+            assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?><rules><rule name=\"a\" type=\"root\" weight=\"5\"/></rules>",
+                         new String(readAll(input), StandardCharsets.UTF_8));
+        }
+        try (InputStream input = new GZIPInputStream(new FileInputStream(resultCsv))) {
+            assertEquals("name,type,weight\n\"a\",root,5\n", new String(readAll(input), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static byte[] readAll(InputStream input) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[7000];
+        for(int read = input.read(buffer); read >= 0; read = input.read(buffer)){
+            output.write(buffer, 0, read);
+        }
+        return output.toByteArray();
+    }
+}
@@ -0,0 +1,233 @@
+package ee.helmes;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+
+public class TestDecisionJournal {
+
+    private File resultFile;
+    private File journalFile;
+
+    @Before
+    public void setUp(){
+        try {
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+            journalFile = File.createTempFile("journal",".bin");
+            journalFile.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testExplain() throws Exception {
+        File sourceFile = new File(this.getClass().getResource("/rules.xml").getFile());
+        try (DecisionJournal decisionJournal = new DecisionJournal(journalFile)) {
+            XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+            xmlNodeFilter.setDecisionJournal(decisionJournal);
+            assertTrue(new StAXReader(sourceFile, xmlNodeFilter).startParsing());
+            xmlNodeFilter.saveResult();
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(4, JournalExplainer.explain(journalFile, "a", new PrintStream(output, true, "UTF-8")));
+
+        String[] lines = output.toString("UTF-8").split("\\r?\\n");
+        assertEquals(5, lines.length);
+        assertEquals("#1 <rule name=\"a\" type=\"child\" weight=\"17\"/> added - the first rule with this name.", lines[0]);
+        assertEquals("#2 <rule name=\"a\" type=\"root\" weight=\"29\"/> rejected in favour of "
+                     + "<rule name=\"a\" type=\"child\" weight=\"17\"/> - lower type.", lines[1]);
+        assertEquals("#8 <rule name=\"a\" type=\"child\" weight=\"34\"/> replaced "
+                     + "<rule name=\"a\" type=\"child\" weight=\"17\"/> - same type and greater weight.", lines[3]);
+        assertEquals("Winner: <rule name=\"a\" type=\"child\" weight=\"34\"/>", lines[4]);
+    }
+
+    @Test
+    public void testShardedJournal() throws Exception {
+        File sourceFile = new File(this.getClass().getResource("/rules.xml").getFile());
+        try (DecisionJournal decisionJournal = new DecisionJournal(journalFile)) {
+            SAXReader saxReader = new SAXReader(sourceFile, new RuleRingBuffer(16, 2));
+            XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile, saxReader, 3);
+            xmlNodeFilter.setDecisionJournal(decisionJournal);
+            saxReader.startParsing();
+            xmlNodeFilter.startFiltering();
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(3, JournalExplainer.explain(journalFile, "c", new PrintStream(output, true, "UTF-8")));
+        assertTrue(output.toString("UTF-8").startsWith("#4 <rule name=\"c\" type=\"child\" weight=\"99\"/>"));
+        assertTrue(output.toString("UTF-8").endsWith("Winner: <rule name=\"c\" type=\"child\" weight=\"99\"/>" + System.lineSeparator()));
+
+        output.reset();
+        assertEquals(0, JournalExplainer.explain(journalFile, "x", new PrintStream(output, true, "UTF-8")));
+        assertEquals("There are no valid rules with name \"x\"." + System.lineSeparator(), output.toString("UTF-8"));
+    }
+
+    @Test
+    public void testLongName() throws Exception {
+        char[] chars = new char[70000];
+        Arrays.fill(chars, '\u00e4');
+        String name = new String(chars);
+        try (DecisionJournal decisionJournal = new DecisionJournal(journalFile)) {
+            XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+            xmlNodeFilter.setDecisionJournal(decisionJournal);
+            xmlNodeFilter.applyFilter(new RuleRecord(name, NodeType.getType("sub"), 3));
+            xmlNodeFilter.applyFilter(new RuleRecord("b", NodeType.getType("sub"), 3));
+            xmlNodeFilter.applyFilter(new RuleRecord(name, NodeType.getType("child"), 1));
+            xmlNodeFilter.flushDecisions();
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(2, JournalExplainer.explain(journalFile, name, new PrintStream(output, true, "UTF-8")));
+        assertEquals(1, JournalExplainer.explain(journalFile, "b", new PrintStream(output, true, "UTF-8")));
+    }
+
+    @Test
+    public void testChunkFallbackIsNotJournaled() throws Exception {
+        File sourceFile = File.createTempFile("source", ".xml");
+        sourceFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(sourceFile, "UTF-8")) {
+            writer.println("<rules>");
+            for (int i = 0; i < 10000; i++){
+                writer.println("<rule name=\"n" + (i % 3) + "\" type=\"sub\" weight=\"" + (i + 1) + "\"/>");
+            }
+            writer.println("<rule name=\"n0&amp;n1\" type=\"sub\" weight=\"1\"/>");
+            writer.println("</rules>");
+        }
+        try (DecisionJournal decisionJournal = new DecisionJournal(journalFile)) {
+            XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+            xmlNodeFilter.setDecisionJournal(decisionJournal);
+            assertFalse(new ChunkedRuleParser(sourceFile, xmlNodeFilter, 2, 16 * 1024).startParsing());
+            assertTrue(new StAXReader(sourceFile, xmlNodeFilter).startParsing());
+            xmlNodeFilter.flushDecisions();
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(3334, JournalExplainer.explain(journalFile, "n0", new PrintStream(output, true, "UTF-8")));
+        assertEquals(1, JournalExplainer.explain(journalFile, "n0&n1", new PrintStream(output, true, "UTF-8")));
+        assertTrue(output.toString("UTF-8").startsWith("#1 "));
+    }
+
+    @Test
+    public void testChunkedWinnerInEarlierChunk() throws Exception {
+        File sourceFile = File.createTempFile("source", ".xml");
+        sourceFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(sourceFile, "UTF-8")) {
+            writer.println("<rules>");
+            writer.println("<rule name=\"w\" type=\"child\" weight=\"99\"/>");
+            for (int i = 0; i < 5000; i++){
+                writer.println("<rule name=\"" + (i % 50 == 0 ? "w" : "n" + i) + "\" type=\"sub\" weight=\"" + (i + 1) + "\"/>");
+            }
+            writer.println("</rules>");
+        }
+        try (DecisionJournal decisionJournal = new DecisionJournal(journalFile)) {
+            XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+            xmlNodeFilter.setDecisionJournal(decisionJournal);
+            assertTrue(new ChunkedRuleParser(sourceFile, xmlNodeFilter, 4, 8 * 1024).startParsing());
+            xmlNodeFilter.flushDecisions();
+            assertEquals(new RuleRecord("w", NodeType.getType("child"), 99), xmlNodeFilter.getFilteredNodeMap().get("w"));
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertTrue(JournalExplainer.explain(journalFile, "w", new PrintStream(output, true, "UTF-8")) > 100);
+
+        String[] lines = output.toString("UTF-8").split("\\r?\\n");
+        assertTrue(lines[0].startsWith("#1 <rule name=\"w\" type=\"child\" weight=\"99\"/> added"));
+        long previousId = 0;
+        for (int i = 0; i < lines.length - 1; i++){
+            long ruleId = Long.parseLong(lines[i].substring(1, lines[i].indexOf(' ')));
+            assertTrue(ruleId >= previousId);
+            previousId = ruleId;
+        }
+        assertEquals("Winner: <rule name=\"w\" type=\"child\" weight=\"99\"/>", lines[lines.length - 1]);
+    }
+
+    @Test
+    public void testMultiFileRuleIds() throws Exception {
+        File sourceFile = new File(this.getClass().getResource("/rules.xml").getFile());
+        try (DecisionJournal decisionJournal = new DecisionJournal(journalFile)) {
+            XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+            xmlNodeFilter.setDecisionJournal(decisionJournal);
+            assertTrue(new MultiFileParser(Arrays.asList(sourceFile, sourceFile), xmlNodeFilter, 2, true).startParsing());
+            xmlNodeFilter.flushDecisions();
+        }
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        JournalExplainer.explain(journalFile, "a", new PrintStream(output, true, "UTF-8"));
+
+        String[] lines = output.toString("UTF-8").split("\\r?\\n");
+        assertTrue(lines[0].startsWith("#1:1 "));
+        assertTrue(lines[lines.length - 2].startsWith("#2:8 "));
+        assertEquals("Winner: <rule name=\"a\" type=\"child\" weight=\"34\"/>", lines[lines.length - 1]);
+    }
+
+    @Test(timeout = 10000)
+    public void testFailedJournalThread() throws Exception {
+        File fullDevice = new File("/dev/full");
+        Assume.assumeTrue(fullDevice.canWrite());
+        DecisionJournal decisionJournal = new DecisionJournal(fullDevice);
+        DecisionJournal.Recorder recorder = decisionJournal.newRecorder();
+        RuleRecord rule = new RuleRecord("a", NodeType.getType("sub"), 1);
+        decisionJournal.mark();
+        try {
+            while (true){
+                recorder.record(rule, DecisionJournal.Outcome.ADDED, null);
+            }
+        }
+        catch (IllegalStateException ex){
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+        try {
+            decisionJournal.close();
+            fail();
+        }
+        catch (IOException ex){
+            assertNotNull(ex.getMessage());
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testInterruptedJournalThread() throws Exception {
+        DecisionJournal decisionJournal = new DecisionJournal(journalFile);
+        for (Thread thread : Thread.getAllStackTraces().keySet()){
+            if("JOURNAL_THREAD".equals(thread.getName())){
+                thread.interrupt();
+            }
+        }
+        DecisionJournal.Recorder recorder = decisionJournal.newRecorder();
+        RuleRecord rule = new RuleRecord("a", NodeType.getType("sub"), 1);
+        try {
+            while (true){
+                recorder.record(rule, DecisionJournal.Outcome.ADDED, null);
+            }
+        }
+        catch (IllegalStateException ex){
+            assertTrue(ex.getCause().getCause() instanceof InterruptedException);
+        }
+        try {
+            decisionJournal.close();
+            fail();
+        }
+        catch (IOException ex){
+            assertTrue(ex.getCause() instanceof InterruptedException);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testExplainInvalidFile() throws Exception {
+        JournalExplainer.explain(resultFile, "a", new PrintStream(new ByteArrayOutputStream()));
+    }
+}
@@ -0,0 +1,177 @@
+package ee.helmes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+
+public class TestDirectoryWatcher {
+
+    private File landingDirectory;
+
+    private File sourceFile;
+
+    private DirectoryWatcher watcher;
+
+    private Thread watchingThread;
+
+    @Before
+    public void setUp(){
+        try {
+            landingDirectory = Files.createTempDirectory("landing").toFile();
+            landingDirectory.deleteOnExit();
+            sourceFile = File.createTempFile("source",".xml");
+            sourceFile.deleteOnExit();
+            RulesGenerator generator = new RulesGenerator(20000);
+            generator.setNameCount(3000);
+            generator.generate(sourceFile);
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if(watcher != null){
+            watcher.close();
+            watchingThread.join(5000);
+        }
+        for(File file : landingDirectory.listFiles()){
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testFilterNewFile() throws Exception {
+        startWatcher(null, 200);
+        File landedFile = new File(landingDirectory, "rules.xml");
+        landedFile.deleteOnExit();
+        Files.copy(sourceFile.toPath(), landedFile.toPath());
+
+        waitForFiltered(1);
+        File resultFile = new File(landingDirectory, "rules" + DirectoryWatcher.RESULT_SUFFIX);
+        resultFile.deleteOnExit();
+        assertEquals(expectedResult(), new String(Files.readAllBytes(resultFile.toPath()), StandardCharsets.UTF_8));
+
+        Thread.sleep(600);
+        assertEquals(1, watcher.getFilteredCount());
+    }
+
+    @Test
+    public void testFilterCompressedFile() throws Exception {
+        startWatcher(null, 200);
+        File landedFile = new File(landingDirectory, "rules.xml.gz");
+        landedFile.deleteOnExit();
+        try (OutputStream output = new GZIPOutputStream(new FileOutputStream(landedFile))) {
+            output.write(Files.readAllBytes(sourceFile.toPath()));
+        }
+
+        waitForFiltered(1);
+        File resultFile = new File(landingDirectory, "rules" + DirectoryWatcher.RESULT_SUFFIX);
+        resultFile.deleteOnExit();
+        assertEquals(expectedResult(), new String(Files.readAllBytes(resultFile.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFileBeingWritten() throws Exception {
+        File outputDirectory = Files.createTempDirectory("output").toFile();
+        outputDirectory.deleteOnExit();
+        startWatcher(outputDirectory, 500);
+        File landedFile = new File(landingDirectory, "slow.xml");
+        landedFile.deleteOnExit();
+        byte[] content = Files.readAllBytes(sourceFile.toPath());
+        try (FileOutputStream output = new FileOutputStream(landedFile)) {
+            int part = content.length / 4;
+            for(int i = 0; i < 4; i++){
+                output.write(content, i * part, i == 3 ? content.length - i * part : part);
+                output.flush();
+                Thread.sleep(150);
+            }
+        }
+
+        waitForFiltered(1);
+        File resultFile = new File(outputDirectory, "slow.xml");
+        resultFile.deleteOnExit();
+        assertEquals(expectedResult(), new String(Files.readAllBytes(resultFile.toPath()), StandardCharsets.UTF_8));
+        Thread.sleep(800);
+        assertEquals(1, watcher.getFilteredCount());
+    }
+
+    @Test
+    public void testModifiedFile() throws Exception {
+        startWatcher(null, 200);
+        File landedFile = new File(landingDirectory, "rules.xml");
+        landedFile.deleteOnExit();
+        Files.write(landedFile.toPath(), "<rules><rule name=\"a\" type=\"root\" weight=\"1\"/></rules>".getBytes(StandardCharsets.UTF_8));
+        waitForFiltered(1);
+
+        Thread.sleep(1100);
+        Files.copy(sourceFile.toPath(), landedFile.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+        waitForFiltered(2);
+        File resultFile = new File(landingDirectory, "rules" + DirectoryWatcher.RESULT_SUFFIX);
+        resultFile.deleteOnExit();
+        assertEquals(expectedResult(), new String(Files.readAllBytes(resultFile.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testIgnoredFiles() throws Exception {
+        startWatcher(null, 100);
+        Files.write(new File(landingDirectory, "notes.txt").toPath(), "text".getBytes(StandardCharsets.UTF_8));
+        Files.copy(sourceFile.toPath(), new File(landingDirectory, "old" + DirectoryWatcher.RESULT_SUFFIX).toPath());
+        Thread.sleep(600);
+        assertEquals(0, watcher.getFilteredCount());
+    }
+
+    @Test
+    public void testDeletedFileIsForgotten() throws Exception {
+        startWatcher(null, 100);
+        File landedFile = new File(landingDirectory, "rules.xml");
+        landedFile.deleteOnExit();
+        Files.copy(sourceFile.toPath(), landedFile.toPath());
+        waitForFiltered(1);
+        assertEquals(1, watcher.getRememberedCount());
+
+        assertTrue(landedFile.delete());
+        for(int i = 0; i < 500 && watcher.getRememberedCount() > 0; i++){
+            Thread.sleep(10);
+        }
+        assertEquals(0, watcher.getRememberedCount());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOutputToLandingDirectory() throws Exception {
+        new DirectoryWatcher(landingDirectory, new File(landingDirectory, "."), 1, 100).close();
+    }
+
+    private void startWatcher(File outputDirectory, long quietPeriod) throws IOException {
+        watcher = new DirectoryWatcher(landingDirectory, outputDirectory, 2, quietPeriod);
+        watchingThread = new Thread(watcher, "WATCHING_THREAD");
+        watchingThread.start();
+    }
+
+    private void waitForFiltered(long count) throws InterruptedException {
+        for(int i = 0; i < 1000 && watcher.getFilteredCount() < count; i++){
+            Thread.sleep(10);
+        }
+        assertEquals(count, watcher.getFilteredCount());
+    }
+
+    private String expectedResult() throws IOException {
+        File expectedFile = File.createTempFile("expected",".xml");
+        expectedFile.deleteOnExit();
+        assertTrue(Main.filterJob(Arrays.asList(sourceFile), expectedFile));
+        return new String(Files.readAllBytes(expectedFile.toPath()), StandardCharsets.UTF_8);
+    }
+}
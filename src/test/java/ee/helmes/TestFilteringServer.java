@@ -0,0 +1,186 @@
+package ee.helmes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+
+public class TestFilteringServer {
+
+    private File sourceFile;
+
+    private File resultFile;
+
+    private FilteringServer server;
+
+    @Before
+    public void setUp(){
+        try {
+            sourceFile = File.createTempFile("source",".xml");
+            sourceFile.deleteOnExit();
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+            RulesGenerator generator = new RulesGenerator(20000);
+            generator.setNameCount(3000);
+            generator.setInvalidRatio(0.01);
+            generator.generate(sourceFile);
+            server = new FilteringServer(0, 2, 4, resultFile.getParentFile(), 1 << 20);
+            server.start();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @After
+    public void tearDown(){
+        server.stop(0);
+    }
+
+    @Test
+    public void testFilterBody() throws Exception {
+        HttpURLConnection connection = open(FilteringServer.FILTER_PATH, "POST");
+        connection.setDoOutput(true);
+        try (OutputStream body = connection.getOutputStream()) {
+            Files.copy(sourceFile.toPath(), body);
+        }
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(expectedRules(), rules(read(connection.getInputStream())));
+        assertEquals(1, server.getCompletedJobs());
+    }
+
+    @Test
+    public void testFilterSourceFile() throws Exception {
+        assertTrue(resultFile.delete());
+        for(int i = 0; i < 3; i++){
+            HttpURLConnection connection = open(FilteringServer.FILTER_PATH + "?source=" + encode(sourceFile)
+                                                + "&result=" + encode(resultFile), "POST");
+            assertEquals(200, connection.getResponseCode());
+            String response = read(connection.getInputStream());
+            assertEquals(expectedRules(), rules(response));
+            assertEquals(response, new String(Files.readAllBytes(resultFile.toPath()), StandardCharsets.UTF_8));
+        }
+        assertEquals(3, server.getCompletedJobs());
+        for(int i = 0; i < 100 && server.getRunningJobs() > 0; i++){
+            Thread.sleep(10);
+        }
+        assertEquals(0, server.getRunningJobs());
+    }
+
+    @Test
+    public void testInvalidJobs() throws Exception {
+        HttpURLConnection connection = open(FilteringServer.FILTER_PATH + "?source=missing.xml", "POST");
+        assertEquals(400, connection.getResponseCode());
+
+        connection = open(FilteringServer.FILTER_PATH, "GET");
+        assertEquals(405, connection.getResponseCode());
+
+        connection = open(FilteringServer.FILTER_PATH, "POST");
+        connection.setDoOutput(true);
+        try (OutputStream body = connection.getOutputStream()) {
+            body.write("<rules><rule name=\"a\" type=\"child\" weight=\"1\"/>".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(FilteringServer.UNPROCESSABLE_ENTITY, connection.getResponseCode());
+        assertEquals(3, server.getFailedJobs());
+
+        connection = open(FilteringServer.STATUS_PATH, "GET");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(read(connection.getInputStream()).trim().endsWith(" completed=0 failed=3 rejected=0"));
+    }
+
+    @Test
+    public void testResultOutsideOfOutputRoot() throws Exception {
+        File outsideFile = new File(resultFile.getParentFile().getParentFile(), "escaped-result.xml");
+        HttpURLConnection connection = open(FilteringServer.FILTER_PATH + "?source=" + encode(sourceFile)
+                                            + "&result=" + encode(outsideFile), "POST");
+        assertEquals(400, connection.getResponseCode());
+
+        connection = open(FilteringServer.FILTER_PATH + "?source=" + encode(sourceFile)
+                          + "&result=" + URLEncoder.encode("../escaped-result.xml", "UTF-8"), "POST");
+        assertEquals(400, connection.getResponseCode());
+        assertFalse(outsideFile.exists());
+
+        assertTrue(resultFile.delete());
+        connection = open(FilteringServer.FILTER_PATH + "?source=" + encode(sourceFile)
+                          + "&result=" + URLEncoder.encode(resultFile.getName(), "UTF-8"), "POST");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(resultFile.length() > 0);
+        assertEquals(2, server.getFailedJobs());
+    }
+
+    @Test
+    public void testBodyTooLarge() throws Exception {
+        server.stop(0);
+        server = new FilteringServer(0, 1, 1, resultFile.getParentFile(), 1000);
+        server.start();
+
+        HttpURLConnection connection = open(FilteringServer.FILTER_PATH, "POST");
+        connection.setDoOutput(true);
+        connection.setChunkedStreamingMode(256);
+        try (OutputStream body = connection.getOutputStream()) {
+            body.write(Files.readAllBytes(sourceFile.toPath()), 0, 1500);
+        }
+        catch (IOException ex){
+            // the server may close the connection before the whole body is sent
+        }
+        assertEquals(FilteringServer.PAYLOAD_TOO_LARGE, connection.getResponseCode());
+        assertEquals(1, server.getFailedJobs());
+    }
+
+    private HttpURLConnection open(String path, String method) throws IOException {
+        URL url = new URL("http", server.getAddress().getHostString(), server.getAddress().getPort(), path);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private Set<String> expectedRules() throws IOException {
+        File expectedFile = File.createTempFile("expected",".xml");
+        expectedFile.deleteOnExit();
+        assertTrue(Main.filterJob(Arrays.asList(sourceFile), expectedFile));
+        return rules(new String(Files.readAllBytes(expectedFile.toPath()), StandardCharsets.UTF_8));
+    }
+
+    private static Set<String> rules(String resultXml){
+        Set<String> rules = new HashSet<>();
+        for(String rule : resultXml.split("<rule ")){
+            if(rule.startsWith("name=")){
+                rules.add(rule.substring(0, rule.indexOf("/>")));
+            }
+        }
+        assertFalse(rules.isEmpty());
+        return rules;
+    }
+
+    private static String encode(File file) throws IOException {
+        return URLEncoder.encode(file.getAbsolutePath(), "UTF-8");
+    }
+
+    private static String read(InputStream input) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (InputStream in = input) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0){
+                bytes.write(buffer, 0, read);
+            }
+        }
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,141 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+
+public class TestHtmlReportWriter {
+
+    private static final Pattern ROW = Pattern.compile("<tr>\\s*<td align=\"center\">(.*?)</td>\\s*<td align=\"center\">(.*?)</td>\\s*<td align=\"center\">(.*?)</td>\\s*</tr>");
+
+    private File resultHtml;
+
+    @Before
+    public void setUp(){
+        try {
+            resultHtml = File.createTempFile("result",".html");
+            resultHtml.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testSamePageAsStylesheet() throws Exception {
+        File resultXml = new File(this.getClass().getResource("/rulesResult.xml").getFile());
+        File xsltHtml = new ResTransformer(resultXml).produceHTML(new StreamSource(resultXml), TransformerFactory.newInstance());
+        xsltHtml.deleteOnExit();
+
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(File.createTempFile("result",".xml"));
+        assertTrue(new StAXReader(resultXml, xmlNodeFilter).startParsing());
+        List<String> expectedRows = rows(xsltHtml);
+        try (HtmlReportWriter reportWriter = new HtmlReportWriter(resultHtml, 1000)) {
+            for(String row : expectedRows){
+                String name = row.substring(0, row.indexOf('|'));
+                reportWriter.writeRule(xmlNodeFilter.getFilteredNodeMap().get(name));
+            }
+            assertEquals(1, reportWriter.getPages().size());
+        }
+
+        assertFalse(expectedRows.isEmpty());
+        assertEquals(expectedRows, rows(resultHtml));
+        String html = new String(Files.readAllBytes(resultHtml.toPath()), StandardCharsets.UTF_8);
+        assertTrue(html.contains("<h2 align=\"center\">The result of filtering rules:</h2>"));
+        assertFalse(html.contains("next</a>"));
+    }
+
+    @Test
+    public void testPages() throws Exception {
+        List<File> pages;
+        try (HtmlReportWriter reportWriter = new HtmlReportWriter(resultHtml, 5)) {
+            for(int i = 0; i < 12; i++){
+                reportWriter.writeRule(new RuleRecord("r" + i, 1 + i % 3, i + 1));
+            }
+            byte[] name = "a<b&c".getBytes(StandardCharsets.UTF_8);
+            reportWriter.writeRule(name, 0, name.length, 3, 99);
+            assertEquals(13, reportWriter.getRowCount());
+            pages = reportWriter.getPages();
+        }
+
+        assertEquals(3, pages.size());
+        assertEquals(resultHtml, pages.get(0));
+        String prefix = resultHtml.getName().substring(0, resultHtml.getName().length() - 5);
+        assertEquals(prefix + "-2.html", pages.get(1).getName());
+        assertEquals(prefix + "-3.html", pages.get(2).getName());
+
+        List<String> rows = new ArrayList<>();
+        for(File page : pages){
+            page.deleteOnExit();
+            List<String> pageRows = rows(page);
+            assertTrue(pageRows.size() <= 5);
+            rows.addAll(pageRows);
+        }
+        assertEquals(13, rows.size());
+        assertEquals("r0|root|1", rows.get(0));
+        assertEquals("r5|child|6", rows.get(5));
+        assertEquals("a&lt;b&amp;c|child|99", rows.get(12));
+
+        String secondPage = new String(Files.readAllBytes(pages.get(1).toPath()), StandardCharsets.UTF_8);
+        assertTrue(secondPage.contains("<a href=\"" + resultHtml.getName() + "\">previous</a>"));
+        assertTrue(secondPage.contains("<a href=\"" + pages.get(2).getName() + "\">next</a>"));
+        String lastPage = new String(Files.readAllBytes(pages.get(2).toPath()), StandardCharsets.UTF_8);
+        assertFalse(lastPage.contains("next</a>"));
+    }
+
+    @Test
+    public void testStalePagesAreDeleted() throws Exception {
+        List<File> pages;
+        try (HtmlReportWriter reportWriter = new HtmlReportWriter(resultHtml, 2)) {
+            for(int i = 0; i < 7; i++){
+                reportWriter.writeRule(new RuleRecord("r" + i, 1, i));
+            }
+            pages = reportWriter.getPages();
+        }
+        assertEquals(4, pages.size());
+        for(File page : pages){
+            page.deleteOnExit();
+        }
+
+        try (HtmlReportWriter reportWriter = new HtmlReportWriter(resultHtml, 2)) {
+            for(int i = 0; i < 3; i++){
+                reportWriter.writeRule(new RuleRecord("r" + i, 1, i));
+            }
+            assertEquals(pages.subList(0, 2), reportWriter.getPages());
+        }
+        assertTrue(pages.get(1).exists());
+        assertFalse(pages.get(2).exists());
+        assertFalse(pages.get(3).exists());
+    }
+
+    @Test
+    public void testEmptyReport() throws Exception {
+        try (HtmlReportWriter reportWriter = new HtmlReportWriter(resultHtml, 5)) {
+            assertEquals(0, reportWriter.getRowCount());
+        }
+        String html = new String(Files.readAllBytes(resultHtml.toPath()), StandardCharsets.UTF_8);
+        assertTrue(html.endsWith("</table></body></html>"));
+    }
+
+    private static List<String> rows(File html) throws IOException {
+        List<String> rows = new ArrayList<>();
+        Matcher matcher = ROW.matcher(new String(Files.readAllBytes(html.toPath()), StandardCharsets.UTF_8));
+        while (matcher.find()){
+            rows.add(matcher.group(1) + "|" + matcher.group(2) + "|" + matcher.group(3));
+        }
+        return rows;
+    }
+}
@@ -3,12 +3,9 @@ package ee.helmes;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
-import org.xml.sax.Attributes;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.LogManager;
 
 import static org.junit.Assert.*;
@@ -35,7 +32,7 @@ public class TestMain1 {
 
 
 
-        LinkedBlockingQueue<Attributes> attributes = new LinkedBlockingQueue<>();
+        RuleRingBuffer attributes = new RuleRingBuffer(16, 64);
         saxReader = new SAXReader(resourceXMLFile, attributes);
         xmlNodeFilter = new XMLNodeFilter(resultXMLFile,saxReader);
     }
@@ -73,26 +70,41 @@ public class TestMain1 {
     }
 
     @Test
-    public void testCreateFilteringThread() throws Exception {
-        Thread filteringThread = Main.createFilteringThread(xmlNodeFilter);
-        Field target = Thread.class.getDeclaredField("target");
+    public void testGetIntProperty() throws Exception{
+        String propertyName = "filteringRules.test.intProperty";
 
-        target.setAccessible(true);
-        Object runnable = target.get(filteringThread);
+        System.clearProperty(propertyName);
+        assertEquals(3, Main.getIntProperty(propertyName, 3));
 
-        assertEquals(xmlNodeFilter,runnable);
+        System.setProperty(propertyName, " 8 ");
+        assertEquals(8, Main.getIntProperty(propertyName, 3));
+
+        System.setProperty(propertyName, "0");
+        assertEquals(3, Main.getIntProperty(propertyName, 3));
+
+        System.setProperty(propertyName, "eight");
+        assertEquals(3, Main.getIntProperty(propertyName, 3));
+
+        System.clearProperty(propertyName);
     }
 
     @Test
-    public void testCreateParsingThread() throws Exception{
-        Thread parsingThread = Main.createParsingThread(saxReader);
-        Field target = Thread.class.getDeclaredField("target");
+    public void testGetLongProperty() throws Exception{
+        String propertyName = "filteringRules.test.longProperty";
+
+        System.clearProperty(propertyName);
+        assertEquals(3L, Main.getLongProperty(propertyName, 3L));
+
+        System.setProperty(propertyName, "8589934592");
+        assertEquals(8589934592L, Main.getLongProperty(propertyName, 3L));
 
-        target.setAccessible(true);
-        Object runnable = target.get(parsingThread);
+        System.setProperty(propertyName, "0");
+        assertEquals(0L, Main.getLongProperty(propertyName, 3L));
 
-        assertEquals(saxReader,runnable);
+        System.setProperty(propertyName, "-1");
+        assertEquals(3L, Main.getLongProperty(propertyName, 3L));
 
+        System.clearProperty(propertyName);
     }
 
 
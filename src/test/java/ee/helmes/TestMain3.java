@@ -42,6 +42,10 @@ public class TestMain3 {
                 {"0.xmL", true},
                 {"0. xmL", false},
                 {"test.xmls", false},
+                {"0.xml.gz", true},
+                {"0.XML.GZ", true},
+                {"0.gz", false},
+                {".xml.gz", false},
                 {". xml", false}
         });
     }
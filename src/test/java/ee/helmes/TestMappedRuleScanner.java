@@ -0,0 +1,162 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.FileOutputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+public class TestMappedRuleScanner {
+
+    private File resultFile;
+
+    @Before
+    public void setUp(){
+        try {
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testScan() throws Exception {
+        File sourceFile = new File(this.getClass().getResource("/rules.xml").getFile());
+        XMLNodeFilter expectFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(sourceFile, expectFilter).startParsing());
+
+        for (int windowSize : new int[]{1, 3, 7, 64, MappedRuleScanner.DEFAULT_WINDOW_SIZE}){
+            Map<String,RuleRecord> resultMap = scanToMap(sourceFile, windowSize);
+            assertNotNull(resultMap);
+            assertEquals(expectFilter.getFilteredNodeMap(), resultMap);
+        }
+    }
+
+    @Test
+    public void testScanSupportedSyntax() throws Exception {
+        File sourceFile = createFile("UTF-8", "﻿<?xml version='1.0' encoding='utf-8' standalone=\"no\"?>\r\n"
+                                              + "<!-- rules -->\n<rules xmlns=\"urn:rules\">\n"
+                                              + "<rule weight = '5' type='SUB' name='a\tb\r\nc'/>\n"
+                                              + "<!-- a - comment -->"
+                                              + "<rule name=\"ä€😀\" type=\"child\" weight=\"+007\" extra=\"x\"></rule>\n"
+                                              + "<rule name=\"b\" type=\"sub\" weight=\"0\"/>\n"
+                                              + "<rule name=\"c\" type=\"sub\" weight=\"2147483648\"/>\n"
+                                              + "<rule name=\"\" type=\"sub\" weight=\"1\"/>\n"
+                                              + "<rule name=\"d\" weight=\"1\"/>\n"
+                                              + "</rules >\n<!-- end -->\n");
+        List<RuleRecord> rules = scanToList(sourceFile, 5);
+
+        assertNotNull(rules);
+        assertEquals(2, rules.size());
+        assertEquals(new RuleRecord("a b c", NodeType.getType("sub"), 5), rules.get(0));
+        assertEquals(new RuleRecord("ä€😀", NodeType.getType("child"), 7), rules.get(1));
+    }
+
+    @Test
+    public void testScanUnsupportedContent() throws Exception {
+        String[] sources = {"<?xml version=\"1.0\" encoding=\"ISO-8859-1\"?><rules/>",
+                            "<!DOCTYPE rules><rules></rules>",
+                            "<rules><rule name=\"a&amp;b\" type=\"sub\" weight=\"1\"/></rules>",
+                            "<rules><![CDATA[x]]></rules>",
+                            "<rules>text</rules>",
+                            "<rules><group/></rules>",
+                            "<r:rules xmlns:r=\"urn:rules\"></r:rules>",
+                            "<rules><rule name=\"a\" name=\"b\" type=\"sub\" weight=\"1\"/></rules>",
+                            "<rules><rule name=\"a\" type=\"sub\" weight=\"1\"/>",
+                            "<rules><!-- a -- b --></rules>",
+                            "<rules></rules><rules></rules>"};
+        for (String source : sources){
+            assertNull(source, scanToList(createFile("UTF-8", source), MappedRuleScanner.DEFAULT_WINDOW_SIZE));
+        }
+    }
+
+    @Test
+    public void testParseWeight() throws Exception {
+        String[] values = {"1", "+1", "-1", "0", "00012", "2147483647", "2147483648", "99999999999", "", "+", "-", "1a", " 1", "١"};
+        for (String value : values){
+            int expected;
+            try {
+                expected = Math.max(Integer.parseInt(value), 0);
+            }
+            catch (NumberFormatException ex){
+                expected = 0;
+            }
+            MappedRuleScanner.ByteArray bytes = new MappedRuleScanner.ByteArray();
+            for (byte b : value.getBytes("UTF-8")){
+                bytes.add(b & 0xFF);
+            }
+            assertEquals(value, expected, MappedRuleScanner.parseWeight(bytes));
+        }
+    }
+
+    @Test
+    public void testParseType() throws Exception {
+        String[] values = {"root", "SUB", "Child", "test", "", "ſub"};
+        for (String value : values){
+            MappedRuleScanner.ByteArray bytes = new MappedRuleScanner.ByteArray();
+            for (byte b : value.getBytes("UTF-8")){
+                bytes.add(b & 0xFF);
+            }
+            assertEquals(value, NodeType.getType(value), MappedRuleScanner.parseType(bytes));
+        }
+    }
+
+    @Test
+    public void testSAXReaderFallback() throws Exception {
+        File sourceFile = createFile("UTF-8", "<rules><rule name=\"a\" type=\"sub\" weight=\"1\"/>"
+                                              + "<rule name=\"a&amp;b\" type=\"sub\" weight=\"2\"/>"
+                                              + "<rule name=\"a\" type=\"sub\" weight=\"3\"/></rules>");
+        SAXReader saxReader = new SAXReader(sourceFile, new RuleRingBuffer(16, 64), true);
+        XMLNodeFilter filter = new XMLNodeFilter(resultFile, saxReader);
+        saxReader.startParsing();
+        filter.startFiltering();
+
+        Map<String,RuleRecord> resultMap = filter.getFilteredNodeMap();
+        assertEquals(2, resultMap.size());
+        assertEquals(new RuleRecord("a", NodeType.getType("sub"), 3), resultMap.get("a"));
+        assertEquals(new RuleRecord("a&b", NodeType.getType("sub"), 2), resultMap.get("a&b"));
+    }
+
+    private Map<String,RuleRecord> scanToMap(File sourceFile, int windowSize) throws Exception {
+        final XMLNodeFilter filter = new XMLNodeFilter(resultFile);
+        boolean scanned = new MappedRuleScanner(sourceFile, windowSize).scan(new MappedRuleScanner.RuleHandler() {
+            @Override
+            public void handleRule(RuleRecord rule) {
+                filter.applyFilter(rule);
+            }
+        });
+        return scanned ? filter.getFilteredNodeMap() : null;
+    }
+
+    private static List<RuleRecord> scanToList(File sourceFile, int windowSize) throws Exception {
+        final List<RuleRecord> rules = new ArrayList<>();
+        boolean scanned = new MappedRuleScanner(sourceFile, windowSize).scan(new MappedRuleScanner.RuleHandler() {
+            @Override
+            public void handleRule(RuleRecord rule) {
+                rules.add(rule);
+            }
+        });
+        return scanned ? rules : null;
+    }
+
+    private static File createFile(String encoding, String content) throws IOException {
+        File file = File.createTempFile("source", ".xml");
+        file.deleteOnExit();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), Charset.forName(encoding))) {
+            writer.write(content);
+        }
+        return file;
+    }
+}
@@ -0,0 +1,106 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class TestMultiFileParser {
+
+    private File sourceDirectory;
+
+    private File resultFile;
+
+    @Before
+    public void setUp(){
+        try {
+            sourceDirectory = Files.createTempDirectory("sources").toFile();
+            sourceDirectory.deleteOnExit();
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testStartParsing() throws Exception {
+        List<File> sourceFiles = Arrays.asList(generate("rules-1.xml", 1), generate("rules-2.xml", 2),
+                                               generate("rules-3.xml", 3));
+
+        XMLNodeFilter sequentialFilter = new XMLNodeFilter(resultFile);
+        for(File sourceFile : sourceFiles){
+            assertTrue(new StAXReader(sourceFile, sequentialFilter).startParsing());
+        }
+
+        XMLNodeFilter staxFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new MultiFileParser(sourceFiles, staxFilter, 2, false).startParsing());
+        assertFalse(staxFilter.getFilteredNodeMap().isEmpty());
+        assertEquals(sequentialFilter.getFilteredNodeMap(), staxFilter.getFilteredNodeMap());
+
+        XMLNodeFilter scannerFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new MultiFileParser(sourceFiles, scannerFilter, 3, true).startParsing());
+        assertEquals(sequentialFilter.getFilteredNodeMap(), scannerFilter.getFilteredNodeMap());
+    }
+
+    @Test
+    public void testInvalidFile() throws Exception {
+        File sourceFile = generate("rules-1.xml", 1);
+        File brokenFile = new File(sourceDirectory, "rules-2.xml");
+        brokenFile.deleteOnExit();
+        Files.write(brokenFile.toPath(), "<rules><rule name=\"r1\" type=\"child\" weight=\"7\"/><rule".getBytes("UTF-8"));
+
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        assertFalse(new MultiFileParser(Arrays.asList(sourceFile, brokenFile), xmlNodeFilter, 2, true).startParsing());
+
+        XMLNodeFilter expectedFilter = new XMLNodeFilter(resultFile);
+        new StAXReader(sourceFile, expectedFilter).startParsing();
+        expectedFilter.applyFilter(new RuleRecord("r1", NodeType.getType("child"), 7));
+        assertEquals(expectedFilter.getFilteredNodeMap(), xmlNodeFilter.getFilteredNodeMap());
+    }
+
+    @Test
+    public void testGetSourceFiles() throws Exception {
+        File first = generate("rules-1.xml", 1);
+        File second = generate("rules-2.xml", 2);
+        File other = generate("other.xml", 3);
+        File text = new File(sourceDirectory, "notes.txt");
+        text.deleteOnExit();
+        assertTrue(text.createNewFile());
+        String result = resultFile.getAbsolutePath();
+
+        assertEquals(Arrays.asList(other.getCanonicalFile(), first.getCanonicalFile(), second.getCanonicalFile()),
+                     Main.getSourceFiles(new String[]{sourceDirectory.getAbsolutePath(), result}));
+        assertEquals(Arrays.asList(first.getCanonicalFile(), second.getCanonicalFile()),
+                     Main.getSourceFiles(new String[]{new File(sourceDirectory, "rules-*.xml").getAbsolutePath(), result}));
+        assertEquals(Arrays.asList(second.getCanonicalFile(), other.getCanonicalFile(), first.getCanonicalFile()),
+                     Main.getSourceFiles(new String[]{second.getAbsolutePath(), sourceDirectory.getAbsolutePath(), result}));
+    }
+
+    @Test (expected = FileNotFoundException.class)
+    public void testGetSourceFilesNoMatch() throws Exception {
+        generate("rules-1.xml", 1);
+        Main.getSourceFiles(new String[]{new File(sourceDirectory, "missing-*.xml").getAbsolutePath(),
+                                         resultFile.getAbsolutePath()});
+    }
+
+    private File generate(String fileName, long seed) throws IOException {
+        File sourceFile = new File(sourceDirectory, fileName);
+        sourceFile.deleteOnExit();
+        RulesGenerator generator = new RulesGenerator(20000);
+        generator.setNameCount(5000);
+        generator.setSeed(seed);
+        generator.setOrder(RulesGenerator.Order.RANDOM);
+        generator.generate(sourceFile);
+        return sourceFile;
+    }
+}
@@ -4,13 +4,11 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.Parameterized;
-import org.xml.sax.Attributes;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.LogManager;
 
 import static org.junit.Assert.*;
@@ -43,7 +41,7 @@ public class TestMyDefaultHandler1 {
             fail();
         }
 
-        saxReader = new SAXReader(sourceFile,new LinkedBlockingQueue<Attributes>());
+        saxReader = new SAXReader(sourceFile,new RuleRingBuffer(16, 64));
 
     }
 
@@ -12,7 +12,6 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.LogManager;
 
 
@@ -40,7 +39,7 @@ public class TestMyDefaultHandler2 {
             fail();
         }
 
-        saxReader = new SAXReader(sourceFile,new LinkedBlockingQueue<Attributes>());
+        saxReader = new SAXReader(sourceFile,new RuleRingBuffer(16, 64));
     }
 
 
@@ -0,0 +1,187 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+public class TestNameDictionary {
+
+    private static final String[] TYPES = {"root", "sub", "child"};
+
+    private File resultFile;
+
+    @Before
+    public void setUp(){
+        try {
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testAdd(){
+        NameDictionary dictionary = new NameDictionary();
+        byte[] name = bytes("billing.eu.de.tariff");
+        assertEquals(NameDictionary.NO_ID, dictionary.get(name, name.length));
+
+        int id = dictionary.add(name, name.length);
+        assertEquals(4, dictionary.size());
+        assertEquals(id, dictionary.add(name, name.length));
+        assertEquals(id, dictionary.get(name, name.length));
+
+        byte[] otherName = bytes("billing.eu.fr.tariff");
+        int otherId = dictionary.add(otherName, otherName.length);
+        assertNotEquals(id, otherId);
+        assertEquals(6, dictionary.size());
+        assertEquals(5, dictionary.getSegmentCount());
+
+        byte[] prefix = bytes("billing.eu");
+        assertEquals(1, dictionary.get(prefix, prefix.length));
+        assertEquals(NameDictionary.NO_ID, dictionary.get(name, name.length - 1));
+        assertEquals(NameDictionary.NO_ID, dictionary.get(bytes("eu"), 2));
+    }
+
+    @Test
+    public void testGetName(){
+        NameDictionary dictionary = new NameDictionary();
+        String[] names = {"billing.eu.de.tariff", "billing", "", ".", "a..b.", ".billing", "&<>\"'ü.€.😀"};
+        int[] ids = new int[names.length];
+        for(int i = 0; i < names.length; i++){
+            byte[] name = bytes(names[i]);
+            ids[i] = dictionary.add(name, name.length);
+        }
+        byte[] target = new byte[64];
+        for(int i = 0; i < names.length; i++){
+            byte[] name = bytes(names[i]);
+            assertEquals(ids[i], dictionary.get(name, name.length));
+            assertEquals(name.length, dictionary.getNameLength(ids[i]));
+            assertEquals(names[i], new String(target, 0, dictionary.getName(ids[i], target), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetNameInvalidId(){
+        new NameDictionary().getName(0, new byte[16]);
+    }
+
+    @Test
+    public void testManyNames(){
+        NameDictionary dictionary = new NameDictionary();
+        Map<String, Integer> ids = new HashMap<>();
+        Random random = new Random(24);
+        for(int i = 0; i < 20000; i++){
+            String name = "billing." + random.nextInt(5) + ".tariff" + random.nextInt(40) + ".r" + random.nextInt(100);
+            byte[] nameBytes = bytes(name);
+            int id = dictionary.add(nameBytes, nameBytes.length);
+            Integer knownId = ids.put(name, id);
+            assertTrue(knownId == null || knownId == id);
+        }
+        byte[] target = new byte[64];
+        for(Map.Entry<String, Integer> entry : ids.entrySet()){
+            assertEquals(entry.getKey(), new String(target, 0, dictionary.getName(entry.getValue(), target), StandardCharsets.UTF_8));
+        }
+        assertEquals(1 + 5 + 5 * 40 + ids.size(), dictionary.size());
+        assertEquals(1 + 5 + 40 + 100, dictionary.getSegmentCount());
+    }
+
+    @Test
+    public void testPutIfOutranks(){
+        DictionaryWinnerTable winnerTable = new DictionaryWinnerTable();
+        byte[] name = bytes("billing.eu.de");
+        byte[] prefix = bytes("billing.eu");
+
+        assertEquals(WinnerTable.NO_WINNER, winnerTable.putIfOutranks(name, name.length, 2, 10));
+        assertEquals(WinnerTable.NO_WINNER, winnerTable.get(prefix, prefix.length));
+        assertEquals(WinnerTable.pack(2, 10), winnerTable.putIfOutranks(name, name.length, 1, 99));
+        assertEquals(WinnerTable.pack(2, 10), winnerTable.putIfOutranks(name, name.length, 2, 10));
+        assertEquals(WinnerTable.pack(2, 10), winnerTable.putIfOutranks(name, name.length, 2, 11));
+        assertEquals(WinnerTable.pack(2, 11), winnerTable.get(name, name.length));
+        assertEquals(1, winnerTable.size());
+
+        assertEquals(WinnerTable.NO_WINNER, winnerTable.putIfOutranks(prefix, prefix.length, 1, 0));
+        assertEquals(WinnerTable.pack(1, 0), winnerTable.get(prefix, prefix.length));
+        assertEquals(2, winnerTable.size());
+        assertEquals(3, winnerTable.getDictionary().size());
+    }
+
+    @Test
+    public void testForEach() throws Exception {
+        DictionaryWinnerTable winnerTable = new DictionaryWinnerTable();
+        Map<String, Long> expectWinners = new HashMap<>();
+        Random random = new Random(7);
+        for(int i = 0; i < 10000; i++){
+            String name = "n" + random.nextInt(3) + "." + random.nextInt(1000);
+            int type = 1 + random.nextInt(3);
+            int weight = random.nextInt(100);
+            byte[] nameBytes = bytes(name);
+            winnerTable.putIfOutranks(nameBytes, nameBytes.length, type, weight);
+            Long winner = expectWinners.get(name);
+            if(winner == null || type > WinnerTable.unpackType(winner)
+               || (type == WinnerTable.unpackType(winner) && weight > WinnerTable.unpackWeight(winner))){
+                expectWinners.put(name, WinnerTable.pack(type, weight));
+            }
+        }
+        assertEquals(expectWinners.size(), winnerTable.size());
+
+        final Map<String, Long> winners = new HashMap<>();
+        winnerTable.forEach(new WinnerTable.WinnerVisitor() {
+            @Override
+            public void visit(byte[] name, int nameLength, int type, int weight) {
+                assertNull(winners.put(new String(name, 0, nameLength, StandardCharsets.UTF_8), WinnerTable.pack(type, weight)));
+            }
+        });
+        assertEquals(expectWinners, winners);
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        File sourceFile = File.createTempFile("source", ".xml");
+        sourceFile.deleteOnExit();
+        Random random = new Random(15);
+        try (PrintWriter writer = new PrintWriter(sourceFile, "UTF-8")) {
+            writer.println("<rules>");
+            writer.println("<rule name=\"&amp;&lt;.&gt;&quot;'ü&#10;\" type=\"sub\" weight=\"3\"/>");
+            for (int i = 0; i < 5000; i++){
+                writer.println("<rule name=\"billing.eu" + random.nextInt(20) + ".tariff" + random.nextInt(100) + "\" type=\""
+                               + TYPES[random.nextInt(3)] + "\" weight=\"" + (1 + random.nextInt(50)) + "\"/>");
+            }
+            writer.println("</rules>");
+        }
+        XMLNodeFilter expectFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(sourceFile, expectFilter).startParsing());
+
+        XMLNodeFilter tableFilter = new XMLNodeFilter(resultFile);
+        tableFilter.setWinnerTable(new DictionaryWinnerTable());
+        assertTrue(new StAXReader(sourceFile, tableFilter).startParsing());
+        assertTrue(tableFilter.getFilteredNodeMap().isEmpty());
+        assertEquals(expectFilter.getFilteredNodeMap().size(), tableFilter.getWinnerTable().size());
+        tableFilter.saveResult();
+
+        XMLNodeFilter resultFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(resultFile, resultFilter).startParsing());
+        assertEquals(expectFilter.getFilteredNodeMap(), resultFilter.getFilteredNodeMap());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTableWithShards(){
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile, new SAXReader(resultFile, new RuleRingBuffer(1, 1)), 2);
+        xmlNodeFilter.setWinnerTable(new DictionaryWinnerTable());
+    }
+
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
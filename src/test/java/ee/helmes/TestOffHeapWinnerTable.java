@@ -0,0 +1,123 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+public class TestOffHeapWinnerTable {
+
+    private static final String[] TYPES = {"root", "sub", "child"};
+
+    private File resultFile;
+
+    @Before
+    public void setUp(){
+        try {
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testPutIfOutranks(){
+        OffHeapWinnerTable winnerTable = new OffHeapWinnerTable(0);
+        byte[] name = bytes("ä€a");
+        assertEquals(OffHeapWinnerTable.NO_WINNER, winnerTable.get(name, name.length));
+
+        assertEquals(OffHeapWinnerTable.NO_WINNER, winnerTable.putIfOutranks(name, name.length, 2, 10));
+        assertEquals(WinnerTable.pack(2, 10), winnerTable.putIfOutranks(name, name.length, 1, 99));
+        assertEquals(WinnerTable.pack(2, 10), winnerTable.putIfOutranks(name, name.length, 2, 10));
+        assertEquals(WinnerTable.pack(2, 10), winnerTable.putIfOutranks(name, name.length, 2, 11));
+        assertEquals(WinnerTable.pack(2, 11), winnerTable.putIfOutranks(name, name.length, 3, Integer.MAX_VALUE));
+
+        long winner = winnerTable.get(name, name.length);
+        assertEquals(3, WinnerTable.unpackType(winner));
+        assertEquals(Integer.MAX_VALUE, WinnerTable.unpackWeight(winner));
+        assertEquals(1, winnerTable.size());
+        assertEquals(OffHeapWinnerTable.NO_WINNER, winnerTable.get(name, name.length - 1));
+    }
+
+    @Test
+    public void testResize() throws Exception {
+        OffHeapWinnerTable winnerTable = new OffHeapWinnerTable(0);
+        final Map<String, Long> expectWinners = new HashMap<>();
+        Random random = new Random(15);
+        for (int i = 0; i < 300000; i++){
+            String name = "name-" + random.nextInt(200000);
+            int type = 1 + random.nextInt(3);
+            int weight = 1 + random.nextInt(1000);
+            byte[] nameBytes = bytes(name);
+            winnerTable.putIfOutranks(nameBytes, nameBytes.length, type, weight);
+
+            Long winner = expectWinners.get(name);
+            if(winner == null || new RuleRecord(name, type, weight).outranks(new RuleRecord(name,
+                    WinnerTable.unpackType(winner), WinnerTable.unpackWeight(winner)))){
+                expectWinners.put(name, WinnerTable.pack(type, weight));
+            }
+        }
+        assertEquals(expectWinners.size(), winnerTable.size());
+        assertTrue(winnerTable.getAllocatedBytes() > winnerTable.size() * 24);
+
+        final Map<String, Long> winners = new HashMap<>();
+        winnerTable.forEach(new OffHeapWinnerTable.WinnerVisitor() {
+            @Override
+            public void visit(byte[] name, int nameLength, int type, int weight) {
+                assertNull(winners.put(new String(name, 0, nameLength, StandardCharsets.UTF_8), WinnerTable.pack(type, weight)));
+            }
+        });
+        assertEquals(expectWinners, winners);
+    }
+
+    @Test
+    public void testFilter() throws Exception {
+        File sourceFile = File.createTempFile("source", ".xml");
+        sourceFile.deleteOnExit();
+        Random random = new Random(15);
+        try (PrintWriter writer = new PrintWriter(sourceFile, "UTF-8")) {
+            writer.println("<rules>");
+            writer.println("<rule name=\"&amp;&lt;&gt;&quot;'ü&#10;\" type=\"sub\" weight=\"3\"/>");
+            for (int i = 0; i < 5000; i++){
+                writer.println("<rule name=\"n" + random.nextInt(2000) + "\" type=\"" + TYPES[random.nextInt(3)]
+                               + "\" weight=\"" + (1 + random.nextInt(50)) + "\"/>");
+            }
+            writer.println("</rules>");
+        }
+        XMLNodeFilter expectFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(sourceFile, expectFilter).startParsing());
+
+        XMLNodeFilter tableFilter = new XMLNodeFilter(resultFile);
+        tableFilter.setWinnerTable(new OffHeapWinnerTable(16));
+        assertTrue(new StAXReader(sourceFile, tableFilter).startParsing());
+        assertTrue(tableFilter.getFilteredNodeMap().isEmpty());
+        assertEquals(expectFilter.getFilteredNodeMap().size(), tableFilter.getWinnerTable().size());
+        tableFilter.saveResult();
+
+        XMLNodeFilter resultFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(resultFile, resultFilter).startParsing());
+        assertEquals(expectFilter.getFilteredNodeMap(), resultFilter.getFilteredNodeMap());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testTableWithSpilling(){
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        xmlNodeFilter.setSpillThreshold(1024);
+        xmlNodeFilter.setWinnerTable(new OffHeapWinnerTable(0));
+    }
+
+    private static byte[] bytes(String value){
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
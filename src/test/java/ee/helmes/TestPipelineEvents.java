@@ -0,0 +1,110 @@
+package ee.helmes;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamSource;
+import java.io.File;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.Assert.*;
+
+
+public class TestPipelineEvents {
+
+    private File sourceFile;
+
+    private File resultFile;
+
+    private File recordingFile;
+
+    @Before
+    public void setUp(){
+        try {
+            sourceFile = new File(this.getClass().getResource("/rules.xml").getFile());
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+            recordingFile = File.createTempFile("pipeline",".jfr");
+            recordingFile.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testPhasesAreRecorded() throws Exception {
+        try (Recording recording = new Recording()) {
+            recording.enable("ee.helmes.Parse");
+            recording.enable("ee.helmes.FilterBatch");
+            recording.enable("ee.helmes.QueueStall").withThreshold(Duration.ZERO);
+            recording.enable("ee.helmes.SaveResult");
+            recording.enable("ee.helmes.HtmlRender");
+            recording.start();
+
+            SAXReader saxReader = new SAXReader(sourceFile, new RuleRingBuffer(1, 1));
+            XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile, saxReader);
+            xmlNodeFilter.setOutputs(EnumSet.of(OutputFormat.XML));
+            FutureTask<Boolean> parser = new FutureTask<>(saxReader);
+            new Thread(parser).start();
+            xmlNodeFilter.startFiltering();
+            assertTrue(parser.get());
+            assertNotNull(new ResTransformer(resultFile).produceHTML(new StreamSource(resultFile), TransformerFactory.newInstance()));
+
+            recording.stop();
+            recording.dump(recordingFile.toPath());
+        }
+
+        List<RecordedEvent> parseEvents = readEvents("ee.helmes.Parse");
+        assertEquals(1, parseEvents.size());
+        assertEquals(sourceFile.getPath(), parseEvents.get(0).getString("file"));
+        assertEquals("SAX", parseEvents.get(0).getString("parser"));
+        assertEquals(sourceFile.length(), parseEvents.get(0).getLong("endOffset"));
+
+        int filteredRules = 0;
+        for(RecordedEvent event : readEvents("ee.helmes.FilterBatch")){
+            filteredRules += event.getInt("rules");
+        }
+        assertEquals(10, filteredRules);
+
+        List<RecordedEvent> saveEvents = readEvents("ee.helmes.SaveResult");
+        assertEquals(1, saveEvents.size());
+        assertTrue(saveEvents.get(0).getBoolean("saved"));
+        assertEquals(4, saveEvents.get(0).getLong("rules"));
+
+        List<RecordedEvent> htmlEvents = readEvents("ee.helmes.HtmlRender");
+        assertEquals(1, htmlEvents.size());
+        assertTrue(htmlEvents.get(0).getLong("htmlSize") > 0);
+
+        for(RecordedEvent event : readEvents("ee.helmes.QueueStall")){
+            assertEquals(1, event.getInt("capacity"));
+        }
+    }
+
+    @Test
+    public void testEventsAreNotRecordedWithoutRecording() throws Exception {
+        PipelineEvents.FilterBatchEvent event = new PipelineEvents.FilterBatchEvent();
+        event.begin();
+        event.finish(1, 1);
+        assertFalse(event.shouldCommit());
+    }
+
+    private List<RecordedEvent> readEvents(String eventName) throws IOException {
+        List<RecordedEvent> events = new ArrayList<>();
+        for(RecordedEvent event : RecordingFile.readAllEvents(recordingFile.toPath())){
+            if(event.getEventType().getName().equals(eventName)){
+                events.add(event);
+            }
+        }
+        return events;
+    }
+}
@@ -0,0 +1,189 @@
+package ee.helmes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+
+public class TestPipelineRuntime {
+
+    private ExecutorService ioExecutor;
+
+    private ExecutorService computeExecutor;
+
+    private PipelineRuntime pipelineRuntime;
+
+    @Before
+    public void setUp(){
+        ioExecutor = Executors.newSingleThreadExecutor();
+        computeExecutor = Executors.newCachedThreadPool();
+        pipelineRuntime = new PipelineRuntime(ioExecutor, computeExecutor);
+    }
+
+    @After
+    public void tearDown(){
+        ioExecutor.shutdownNow();
+        computeExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testJoin() throws Exception {
+        final RuleRingBuffer ruleBuffer = new RuleRingBuffer(1, 1);
+        Future<Integer> published;
+        Future<Integer> taken;
+        try (PipelineRuntime.Job job = pipelineRuntime.newJob()) {
+            published = job.forkIo("PRODUCER", new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    for(int i = 0; i < 100; i++){
+                        ruleBuffer.publish(new RuleRecord("rule" + i, 1, i));
+                    }
+                    ruleBuffer.close();
+                    return 100;
+                }
+            });
+            taken = job.fork("CONSUMER", new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    int ruleCount = 0;
+                    RuleRecord[] batch;
+                    while ((batch = ruleBuffer.takeBatch()) != null){
+                        ruleCount += batch.length;
+                    }
+                    return ruleCount;
+                }
+            });
+            job.join();
+        }
+        assertEquals(Integer.valueOf(100), published.get());
+        assertEquals(Integer.valueOf(100), taken.get());
+    }
+
+    @Test
+    public void testFailureCancelsOtherStages() throws Exception {
+        final RuleRingBuffer ruleBuffer = new RuleRingBuffer(1, 1);
+        final IllegalStateException failure = new IllegalStateException("stage failed");
+        Future<Integer> blocked;
+        try (PipelineRuntime.Job job = pipelineRuntime.newJob()) {
+            blocked = job.fork("CONSUMER", new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    ruleBuffer.takeBatch();
+                    return 1;
+                }
+            });
+            job.forkIo("PRODUCER", new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    throw failure;
+                }
+            });
+            try {
+                job.join();
+                fail();
+            }
+            catch (ExecutionException ex){
+                assertSame(failure, ex.getCause());
+            }
+        }
+        assertTrue(blocked.isCancelled());
+    }
+
+    @Test
+    public void testStageThreadName() throws Exception {
+        final String[] poolThreadName = new String[1];
+        ioExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                poolThreadName[0] = Thread.currentThread().getName();
+            }
+        }).get();
+
+        Future<String> stageThreadName;
+        try (PipelineRuntime.Job job = pipelineRuntime.newJob()) {
+            stageThreadName = job.forkIo("PARSING_THREAD", new Callable<String>() {
+                @Override
+                public String call() {
+                    return Thread.currentThread().getName();
+                }
+            });
+            job.join();
+        }
+        assertEquals("PARSING_THREAD", stageThreadName.get());
+
+        final String[] restoredThreadName = new String[1];
+        ioExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                restoredThreadName[0] = Thread.currentThread().getName();
+            }
+        }).get();
+        assertEquals(poolThreadName[0], restoredThreadName[0]);
+    }
+
+    @Test
+    public void testCloseCancelsStages() throws Exception {
+        Future<Integer> sleeping;
+        try (PipelineRuntime.Job job = pipelineRuntime.newJob()) {
+            sleeping = job.fork("SLEEPING", new Callable<Integer>() {
+                @Override
+                public Integer call() throws Exception {
+                    Thread.sleep(60000);
+                    return 1;
+                }
+            });
+        }
+        assertTrue(sleeping.isCancelled());
+    }
+
+    @Test
+    public void testGetDefault() throws Exception {
+        PipelineRuntime defaultRuntime = PipelineRuntime.getDefault();
+        assertSame(defaultRuntime, PipelineRuntime.getDefault());
+
+        Future<Boolean> daemon;
+        try (PipelineRuntime.Job job = defaultRuntime.newJob()) {
+            daemon = job.fork("DAEMON", new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return Thread.currentThread().isDaemon();
+                }
+            });
+            job.join();
+        }
+        assertTrue(daemon.get());
+    }
+
+    @Test
+    public void testNewVirtualThreadExecutor() throws Exception {
+        ExecutorService virtualThreadExecutor = PipelineRuntime.newVirtualThreadExecutor();
+        if(virtualThreadExecutor == null){
+            assertTrue(Runtime.version().feature() < 21);
+            return;
+        }
+        try {
+            assertEquals(Integer.valueOf(1), virtualThreadExecutor.submit(new Callable<Integer>() {
+                @Override
+                public Integer call() {
+                    return 1;
+                }
+            }).get());
+        }
+        finally {
+            virtualThreadExecutor.shutdown();
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullExecutor(){
+        new PipelineRuntime(null, computeExecutor);
+    }
+}
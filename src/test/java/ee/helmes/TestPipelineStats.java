@@ -0,0 +1,176 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.EnumSet;
+
+import static org.junit.Assert.*;
+
+
+public class TestPipelineStats {
+
+    private static final String RULES = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rules>\n"
+                                        + "<rule name=\"a\" type=\"root\" weight=\"29\"/>\n"
+                                        + "<rule name=\"a\" type=\"child\" weight=\"17\"/>\n"
+                                        + "<rule name=\"b\" type=\"sub\" weight=\"-5\"/>\n"
+                                        + "<rule name=\"a\" type=\"sub\" weight=\"12\"/>\n"
+                                        + "</rules>\n";
+
+    private static final String RULES_WITH_ENTITY = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<rules>\n"
+                                                    + "<rule name=\"a\" type=\"root\" weight=\"29\"/>\n"
+                                                    + "<rule name=\"b\" type=\"sub\" weight=\"-5\"/>\n"
+                                                    + "<rule name=\"a\" type=\"child\" weight=\"17\"/>\n"
+                                                    + "<rule name=\"b&amp;c\" type=\"sub\" weight=\"5\"/>\n"
+                                                    + "<rule name=\"a\" type=\"sub\" weight=\"12\"/>\n"
+                                                    + "</rules>\n";
+
+    private final PipelineStats stats = PipelineStats.get();
+
+    private File sourceFile;
+
+    private File resultFile;
+
+    @Before
+    public void setUp(){
+        try {
+            sourceFile = File.createTempFile("rules",".xml");
+            sourceFile.deleteOnExit();
+            try (OutputStream output = new FileOutputStream(sourceFile)) {
+                output.write(RULES.getBytes(StandardCharsets.UTF_8));
+            }
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testChunkedDecisionsAreCountedOnce() throws Exception {
+        File chunkedFile = File.createTempFile("rules",".xml");
+        chunkedFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(chunkedFile, "UTF-8")) {
+            writer.println("<rules>");
+            for (int i = 0; i < 3000; i++){
+                writer.println("<rule name=\"n" + (i % 40) + "\" type=\"sub\" weight=\"" + (i % 7 + 1) + "\"/>");
+            }
+            writer.println("</rules>");
+        }
+        long parsed = stats.getRulesParsed(), invalid = stats.getRulesInvalid();
+        long accepted = stats.getRulesAccepted(), replaced = stats.getRulesReplaced(), rejected = stats.getRulesRejected();
+
+        XMLNodeFilter chunkFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new ChunkedRuleParser(chunkedFile, chunkFilter, 4, 2048).startParsing());
+
+        assertEquals(3000, stats.getRulesParsed() - parsed);
+        assertEquals(0, stats.getRulesInvalid() - invalid);
+        assertEquals(40, stats.getRulesAccepted() - accepted);
+        assertEquals(3000, stats.getRulesAccepted() - accepted + stats.getRulesReplaced() - replaced
+                           + stats.getRulesRejected() - rejected);
+    }
+
+    @Test
+    public void testParsedRulesAreCounted() throws Exception {
+        long parsed = stats.getRulesParsed(), invalid = stats.getRulesInvalid(), bytesRead = stats.getBytesRead();
+        long accepted = stats.getRulesAccepted(), replaced = stats.getRulesReplaced(), rejected = stats.getRulesRejected();
+
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(sourceFile, xmlNodeFilter).startParsing());
+
+        assertEquals(4, stats.getRulesParsed() - parsed);
+        assertEquals(1, stats.getRulesInvalid() - invalid);
+        assertEquals(sourceFile.length(), stats.getBytesRead() - bytesRead);
+        assertEquals(1, stats.getRulesAccepted() - accepted);
+        assertEquals(1, stats.getRulesReplaced() - replaced);
+        assertEquals(1, stats.getRulesRejected() - rejected);
+    }
+
+    @Test
+    public void testScannedRulesAreCountedOnceOnFallback() throws Exception {
+        File entityFile = File.createTempFile("rules",".xml");
+        entityFile.deleteOnExit();
+        try (OutputStream output = new FileOutputStream(entityFile)) {
+            output.write(RULES_WITH_ENTITY.getBytes(StandardCharsets.UTF_8));
+        }
+        long parsed = stats.getRulesParsed(), invalid = stats.getRulesInvalid(), bytesRead = stats.getBytesRead();
+        long accepted = stats.getRulesAccepted(), replaced = stats.getRulesReplaced(), rejected = stats.getRulesRejected();
+
+        SAXReader saxReader = new SAXReader(entityFile, new RuleRingBuffer(16, 64), true);
+        XMLNodeFilter saxFilter = new XMLNodeFilter(resultFile, saxReader);
+        assertTrue(saxReader.startParsing());
+        saxFilter.startFiltering();
+        assertEquals(2, saxFilter.getFilteredNodeMap().size());
+        assertEquals(new RuleRecord("a", NodeType.getType("child"), 17), saxFilter.getFilteredNodeMap().get("a"));
+
+        XMLNodeFilter multiFileFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new MultiFileParser(Collections.singletonList(entityFile), multiFileFilter, 1, true).startParsing());
+        assertEquals(saxFilter.getFilteredNodeMap(), multiFileFilter.getFilteredNodeMap());
+
+        XMLNodeFilter chunkFilter = new XMLNodeFilter(resultFile);
+        assertFalse(new ChunkedRuleParser(entityFile, chunkFilter, 2, 16).startParsing());
+
+        assertEquals(2 * 5, stats.getRulesParsed() - parsed);
+        assertEquals(2, stats.getRulesInvalid() - invalid);
+        assertEquals(2 * entityFile.length(), stats.getBytesRead() - bytesRead);
+        assertEquals(2 * 2, stats.getRulesAccepted() - accepted);
+        assertEquals(2, stats.getRulesReplaced() - replaced);
+        assertEquals(2, stats.getRulesRejected() - rejected);
+    }
+
+    @Test
+    public void testDecisionsOfWinnerTableAreCounted() throws Exception {
+        long accepted = stats.getRulesAccepted(), replaced = stats.getRulesReplaced(), rejected = stats.getRulesRejected();
+
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        xmlNodeFilter.setWinnerTable(new OffHeapWinnerTable(16));
+        xmlNodeFilter.applyFilter(new RuleRecord("a", NodeType.getType("root"), 29));
+        xmlNodeFilter.applyFilter(new RuleRecord("a", NodeType.getType("child"), 17));
+        xmlNodeFilter.applyFilter(new RuleRecord("a", NodeType.getType("sub"), 12));
+        xmlNodeFilter.applyFilter(new RuleRecord("b", NodeType.getType("sub"), 5));
+
+        assertEquals(2, stats.getRulesAccepted() - accepted);
+        assertEquals(1, stats.getRulesReplaced() - replaced);
+        assertEquals(1, stats.getRulesRejected() - rejected);
+        assertEquals(2, xmlNodeFilter.getHeldNames());
+    }
+
+    @Test
+    public void testRunningFilterIsCounted() throws Exception {
+        long distinctNames = stats.getDistinctNames();
+
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        xmlNodeFilter.setOutputs(EnumSet.noneOf(OutputFormat.class));
+        xmlNodeFilter.applyFilter(new RuleRecord("a", NodeType.getType("child"), 17));
+        xmlNodeFilter.applyFilter(new RuleRecord("b", NodeType.getType("child"), 17));
+        assertEquals(2, stats.getDistinctNames() - distinctNames);
+
+        long saveTime = stats.getSaveTimeMillis();
+        assertTrue(xmlNodeFilter.saveResult());
+        assertEquals(distinctNames, stats.getDistinctNames());
+        assertTrue(stats.getSaveTimeMillis() >= saveTime);
+    }
+
+    @Test
+    public void testMBeanIsRegistered() throws Exception {
+        PipelineStats.register();
+        PipelineStats.register();
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(PipelineStats.OBJECT_NAME);
+        assertTrue(server.isRegistered(name));
+        assertEquals(stats.getRulesParsed(), ((Long) server.getAttribute(name, "RulesParsed")).longValue());
+        assertEquals(0L, ((Long) server.getAttribute(name, "QueueDepth")).longValue());
+    }
+}
@@ -0,0 +1,221 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+public class TestResultIndex {
+
+    private static final String[] TYPES = {"root", "sub", "child"};
+
+    private File resultFile;
+
+    @Before
+    public void setUp(){
+        try {
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testFindByWeight(){
+        ResultIndex resultIndex = new ResultIndex(Arrays.asList(new RuleRecord("a", 3, 5), new RuleRecord("b", 3, 9),
+                                                                new RuleRecord("c", 3, 5), new RuleRecord("d", 3, 1),
+                                                                new RuleRecord("e", 1, 7)));
+        assertEquals(5, resultIndex.size());
+        assertEquals(4, resultIndex.count(3));
+        assertEquals(0, resultIndex.count(2));
+
+        assertEquals(names("b", "a", "c", "d"), names(resultIndex.findByWeight(3, Integer.MIN_VALUE, Integer.MAX_VALUE)));
+        assertEquals(names("a", "c"), names(resultIndex.findByWeight(3, 5, 5)));
+        assertEquals(names("b", "a", "c"), names(resultIndex.findByWeight(3, 2, 9)));
+        assertEquals(names("a", "c", "d"), names(resultIndex.findByWeight(3, 0, 8)));
+        assertTrue(resultIndex.findByWeight(3, 6, 8).isEmpty());
+        assertTrue(resultIndex.findByWeight(3, 9, 1).isEmpty());
+        assertTrue(resultIndex.findByWeight(2, 0, 10).isEmpty());
+        assertEquals(names("e"), names(resultIndex.findByWeight(1, 7, 7)));
+    }
+
+    @Test
+    public void testTop(){
+        ResultIndex resultIndex = new ResultIndex(Arrays.asList(new RuleRecord("a", 2, 5), new RuleRecord("b", 2, 9),
+                                                                new RuleRecord("c", 2, 7)));
+        assertEquals(names("b", "c"), names(resultIndex.top(2, 2)));
+        assertEquals(names("b", "c", "a"), names(resultIndex.top(2, 10)));
+        assertTrue(resultIndex.top(2, 0).isEmpty());
+        assertTrue(resultIndex.top(1, 3).isEmpty());
+    }
+
+    @Test
+    public void testGet(){
+        ResultIndex resultIndex = new ResultIndex(Arrays.asList(new RuleRecord("b", 2, 5), new RuleRecord("a", 1, 9)));
+        assertEquals(new RuleRecord("a", 1, 9), resultIndex.get("a"));
+        assertEquals(5, resultIndex.get("b").getWeight());
+        assertNull(resultIndex.get("c"));
+        assertNull(new ResultIndex(new ArrayList<RuleRecord>()).get("a"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateName(){
+        new ResultIndex(Arrays.asList(new RuleRecord("a", 2, 5), new RuleRecord("a", 1, 9)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidType(){
+        new ResultIndex(new ArrayList<RuleRecord>()).count(4);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testUnmodifiableResult(){
+        new ResultIndex(Arrays.asList(new RuleRecord("a", 2, 5))).top(2, 1).clear();
+    }
+
+    @Test
+    public void testRandomRanges(){
+        Random random = new Random(25);
+        List<RuleRecord> winners = new ArrayList<>();
+        for(int i = 0; i < 2000; i++){
+            winners.add(new RuleRecord("n" + i, 1 + random.nextInt(3), random.nextInt(100)));
+        }
+        ResultIndex resultIndex = new ResultIndex(winners);
+        for(int i = 0; i < 200; i++){
+            int type = 1 + random.nextInt(3);
+            int minWeight = random.nextInt(110) - 5;
+            int maxWeight = minWeight + random.nextInt(30);
+            int expectCount = 0;
+            for(RuleRecord rule : winners){
+                if(rule.getType() == type && rule.getWeight() >= minWeight && rule.getWeight() <= maxWeight){
+                    expectCount++;
+                }
+            }
+            List<RuleRecord> rules = resultIndex.findByWeight(type, minWeight, maxWeight);
+            assertEquals(expectCount, rules.size());
+            for(int j = 0; j < rules.size(); j++){
+                assertEquals(type, rules.get(j).getType());
+                assertTrue(j == 0 || rules.get(j - 1).getWeight() >= rules.get(j).getWeight());
+            }
+        }
+    }
+
+    @Test
+    public void testCreateResultIndex() throws Exception {
+        File sourceFile = createRandomFile(3000);
+        XMLNodeFilter expectFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(sourceFile, expectFilter).startParsing());
+        ResultIndex expectIndex = expectFilter.createResultIndex();
+        assertEquals(expectFilter.getFilteredNodeMap().size(), expectIndex.size());
+
+        XMLNodeFilter tableFilter = new XMLNodeFilter(resultFile);
+        tableFilter.setWinnerTable(new DictionaryWinnerTable());
+        assertTrue(new StAXReader(sourceFile, tableFilter).startParsing());
+        ResultIndex tableIndex = tableFilter.createResultIndex();
+        assertEquals(expectIndex.size(), tableIndex.size());
+        for(RuleRecord rule : expectFilter.getFilteredNodeMap().values()){
+            assertEquals(rule, tableIndex.get(rule.getName()));
+        }
+        for(int type = 1; type <= 3; type++){
+            assertEquals(expectIndex.top(type, 50), tableIndex.top(type, 50));
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testCreateResultIndexAfterSpill() throws Exception {
+        XMLNodeFilter spillingFilter = new XMLNodeFilter(resultFile);
+        spillingFilter.setSpillThreshold(100 * XMLNodeFilter.ESTIMATED_ENTRY_SIZE);
+        assertTrue(new StAXReader(createRandomFile(3000), spillingFilter).startParsing());
+        spillingFilter.createResultIndex();
+    }
+
+    @Test
+    public void testLoad() throws Exception {
+        File binaryFile = OutputFormat.BINARY.getFile(resultFile);
+        binaryFile.deleteOnExit();
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        xmlNodeFilter.setOutputs(EnumSet.of(OutputFormat.XML, OutputFormat.BINARY));
+        assertTrue(new StAXReader(createRandomFile(3000), xmlNodeFilter).startParsing());
+        ResultIndex expectIndex = xmlNodeFilter.createResultIndex();
+        assertTrue(xmlNodeFilter.saveResult());
+
+        for(File file : new File[]{resultFile, binaryFile}){
+            ResultIndex resultIndex = ResultIndex.load(file);
+            assertEquals(expectIndex.size(), resultIndex.size());
+            for(int type = 1; type <= 3; type++){
+                assertEquals(expectIndex.findByWeight(type, 10, 30), resultIndex.findByWeight(type, 10, 30));
+            }
+        }
+    }
+
+    @Test
+    public void testQuery(){
+        ResultIndex resultIndex = new ResultIndex(Arrays.asList(new RuleRecord("a", 3, 5), new RuleRecord("b", 3, 9),
+                                                                new RuleRecord("c", 1, 7)));
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(output, true);
+        assertEquals(2, resultIndex.query(new String[]{"top", "child", "5"}, out));
+        assertEquals(1, resultIndex.query(new String[]{"range", "root", "7"}, out));
+        assertEquals(0, resultIndex.query(new String[]{"range", "child", "6", "8"}, out));
+        assertEquals(1, resultIndex.query(new String[]{"name", "a"}, out));
+        assertEquals(0, resultIndex.query(new String[]{"name", "d"}, out));
+        String separator = System.lineSeparator();
+        assertEquals("<rule name=\"b\" type=\"child\" weight=\"9\"/>" + separator
+                     + "<rule name=\"a\" type=\"child\" weight=\"5\"/>" + separator
+                     + "<rule name=\"c\" type=\"root\" weight=\"7\"/>" + separator
+                     + "<rule name=\"a\" type=\"child\" weight=\"5\"/>" + separator,
+                     new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidQuery(){
+        new ResultIndex(new ArrayList<RuleRecord>()).query(new String[]{"top", "leaf", "5"}, System.out);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMainWithoutQuery() throws Exception {
+        ResultIndex.main(new String[]{resultFile.getAbsolutePath()});
+    }
+
+    private static List<String> names(String... names){
+        return Arrays.asList(names);
+    }
+
+    private static List<String> names(List<RuleRecord> rules){
+        List<String> names = new ArrayList<>();
+        for(RuleRecord rule : rules){
+            names.add(rule.getName());
+        }
+        return names;
+    }
+
+    private static File createRandomFile(int ruleCount) throws IOException {
+        File sourceFile = File.createTempFile("source", ".xml");
+        sourceFile.deleteOnExit();
+        Random random = new Random(ruleCount);
+        try (PrintWriter writer = new PrintWriter(sourceFile, "UTF-8")) {
+            writer.println("<rules>");
+            for (int i = 0; i < ruleCount; i++){
+                writer.println("<rule name=\"rule." + random.nextInt(ruleCount / 3) + "\" type=\""
+                               + TYPES[random.nextInt(3)] + "\" weight=\"" + random.nextInt(50) + "\"/>");
+            }
+            writer.println("</rules>");
+        }
+        return sourceFile;
+    }
+}
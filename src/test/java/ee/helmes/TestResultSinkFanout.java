@@ -0,0 +1,189 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+
+public class TestResultSinkFanout {
+
+    private File resultXml;
+
+    @Before
+    public void setUp(){
+        try {
+            resultXml = File.createTempFile("result",".xml");
+            resultXml.deleteOnExit();
+            for(OutputFormat format : OutputFormat.values()){
+                format.getFile(resultXml).deleteOnExit();
+            }
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testCsvEscaping() throws Exception {
+        File resultCsv = OutputFormat.CSV.getFile(resultXml);
+        try (CsvResultWriter csvWriter = new CsvResultWriter(resultCsv)) {
+            csvWriter.writeRule(new RuleRecord("a,\"b\"\nc", 1, 10));
+            byte[] name = "xé\"y".getBytes(StandardCharsets.UTF_8);
+            csvWriter.writeRule(name, 0, name.length, 2, 20);
+        }
+        assertEquals("name,type,weight\n\"a,\"\"b\"\"\nc\",root,10\n\"xé\"\"y\",sub,20\n", read(resultCsv));
+    }
+
+    @Test
+    public void testJsonEscaping() throws Exception {
+        File resultJson = OutputFormat.JSON.getFile(resultXml);
+        try (JsonLinesResultWriter jsonWriter = new JsonLinesResultWriter(resultJson)) {
+            jsonWriter.writeRule(new RuleRecord("a\"b\\c\td\u0001", 3, 10));
+            byte[] name = "--é--".getBytes(StandardCharsets.UTF_8);
+            jsonWriter.writeRule(name, 2, name.length - 4, 1, 20);
+        }
+        assertEquals("{\"name\":\"a\\\"b\\\\c\\u0009d\\u0001\",\"type\":\"child\",\"weight\":10}\n"
+                     + "{\"name\":\"é\",\"type\":\"root\",\"weight\":20}\n", read(resultJson));
+    }
+
+    @Test
+    public void testSinksReceiveSameRules() throws Exception {
+        File resultCsv = OutputFormat.CSV.getFile(resultXml);
+        File otherCsv = File.createTempFile("other",".csv");
+        otherCsv.deleteOnExit();
+        int rules = ResultSinkFanout.BATCH_SIZE * 3 + 7;
+        try (ResultSinkFanout fanout = new ResultSinkFanout(Arrays.asList(new CsvResultWriter(resultCsv),
+                                                                          new CsvResultWriter(otherCsv)))) {
+            byte[] buffer = new byte[16];
+            for(int i = 0; i < rules; i++){
+                if(i % 2 == 0){
+                    fanout.writeRule(new RuleRecord("rule" + i, 1 + i % 3, i));
+                }
+                else {
+                    byte[] name = ("rule" + i).getBytes(StandardCharsets.UTF_8);
+                    System.arraycopy(name, 0, buffer, 0, name.length);
+                    fanout.writeRule(buffer, 0, name.length, 1 + i % 3, i);
+                    Arrays.fill(buffer, (byte) '?');
+                }
+            }
+        }
+        List<String> lines = Files.readAllLines(resultCsv.toPath(), StandardCharsets.UTF_8);
+        assertEquals(rules + 1, lines.size());
+        assertEquals("\"rule1\",sub,1", lines.get(2));
+        assertEquals("\"rule" + (rules - 1) + "\"," + NodeType.getTypeName(1 + (rules - 1) % 3) + "," + (rules - 1), lines.get(rules));
+        assertEquals(lines, Files.readAllLines(otherCsv.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFailedSinkDoesNotStopOthers() throws Exception {
+        File resultCsv = OutputFormat.CSV.getFile(resultXml);
+        ResultSink failingSink = new ResultSink() {
+            @Override
+            public void writeRule(RuleRecord rule) throws IOException {
+                throw new IOException("disk is full");
+            }
+
+            @Override
+            public void writeRule(byte[] name, int nameOffset, int nameLength, int type, int weight) throws IOException {
+                throw new IOException("disk is full");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ResultSinkFanout fanout = new ResultSinkFanout(Arrays.asList(failingSink, new CsvResultWriter(resultCsv)));
+        for(int i = 0; i < ResultSinkFanout.BATCH_SIZE * 40; i++){
+            fanout.writeRule(new RuleRecord("rule" + i, 1, i));
+        }
+        try {
+            fanout.close();
+            fail();
+        }
+        catch (IOException ex){
+            assertEquals("disk is full", ex.getMessage());
+        }
+        assertEquals(ResultSinkFanout.BATCH_SIZE * 40 + 1, Files.readAllLines(resultCsv.toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void testUncheckedSinkErrorDoesNotBlockProducer() throws Exception {
+        File resultCsv = OutputFormat.CSV.getFile(resultXml);
+        ResultSink failingSink = new ResultSink() {
+            @Override
+            public void writeRule(RuleRecord rule) {
+                throw new IllegalStateException("broken sink");
+            }
+
+            @Override
+            public void writeRule(byte[] name, int nameOffset, int nameLength, int type, int weight) {
+                throw new IllegalStateException("broken sink");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        ResultSinkFanout fanout = new ResultSinkFanout(Arrays.asList(failingSink, new CsvResultWriter(resultCsv)));
+        for(int i = 0; i < ResultSinkFanout.BATCH_SIZE * 40; i++){
+            fanout.writeRule(new RuleRecord("rule" + i, 1, i));
+        }
+        try {
+            fanout.close();
+            fail();
+        }
+        catch (IOException ex){
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+        assertEquals(ResultSinkFanout.BATCH_SIZE * 40 + 1, Files.readAllLines(resultCsv.toPath(), StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void testFilterWritesSelectedOutputs() throws Exception {
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultXml);
+        xmlNodeFilter.setOutputs(OutputFormat.parse("xml, CSV,json"));
+        assertEquals(EnumSet.of(OutputFormat.XML, OutputFormat.CSV, OutputFormat.JSON), xmlNodeFilter.getOutputs());
+        xmlNodeFilter.applyFilter(new RuleRecord("a", 1, 5));
+        xmlNodeFilter.applyFilter(new RuleRecord("b", 2, 7));
+        xmlNodeFilter.applyFilter(new RuleRecord("a", 3, 1));
+        assertTrue(xmlNodeFilter.saveResult());
+
+        List<String> csvLines = new ArrayList<>(Files.readAllLines(OutputFormat.CSV.getFile(resultXml).toPath(), StandardCharsets.UTF_8));
+        assertEquals("name,type,weight", csvLines.remove(0));
+        assertEquals(2, csvLines.size());
+        assertTrue(csvLines.contains("\"a\",child,1"));
+        assertTrue(csvLines.contains("\"b\",sub,7"));
+        assertEquals(2, Files.readAllLines(OutputFormat.JSON.getFile(resultXml).toPath(), StandardCharsets.UTF_8).size());
+        assertTrue(read(resultXml).contains("<rule name=\"b\" type=\"sub\" weight=\"7\"/>"));
+        assertFalse(OutputFormat.HTML.getFile(resultXml).exists());
+    }
+
+    @Test
+    public void testNoOutputs() throws Exception {
+        assertTrue(resultXml.delete());
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultXml);
+        xmlNodeFilter.setOutputs(OutputFormat.parse("none"));
+        xmlNodeFilter.applyFilter(new RuleRecord("a", 1, 5));
+        assertTrue(xmlNodeFilter.saveResult());
+        assertFalse(resultXml.exists());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownOutput() {
+        OutputFormat.parse("xml,pdf");
+    }
+
+    private static String read(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
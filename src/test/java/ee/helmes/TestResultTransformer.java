@@ -9,11 +9,14 @@ import org.xml.sax.SAXException;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.Templates;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Scanner;
 
 import static org.junit.Assert.*;
@@ -69,6 +72,45 @@ public class TestResultTransformer {
     }
 
 
+    @Test
+    public void testGetTemplates() throws Exception {
+
+        TransformerFactory factory = TransformerFactory.newInstance();
+        Templates templates = resTransformer.getTemplates(factory);
+
+        assertNotNull(templates);
+        assertSame(templates, new ResTransformer(expected).getTemplates(factory));
+        File stylesheet = new File(this.getClass().getResource(ResTransformer.DEFAULT_STYLESHEET).getFile());
+        Templates custom = new ResTransformer(expected, stylesheet).getTemplates(factory);
+        assertNotSame(templates, custom);
+        assertSame(custom, new ResTransformer(expected, stylesheet).getTemplates(factory));
+
+
+    }
+
+
+    @Test
+    public void testModifiedStylesheet() throws Exception {
+
+        TransformerFactory factory = TransformerFactory.newInstance();
+        File stylesheet = File.createTempFile("stylesheet", ".xsl");
+        stylesheet.deleteOnExit();
+        Files.copy(this.getClass().getResourceAsStream(ResTransformer.DEFAULT_STYLESHEET), stylesheet.toPath(),
+                   StandardCopyOption.REPLACE_EXISTING);
+        assertTrue(stylesheet.setLastModified(1000000L));
+        Templates templates = new ResTransformer(expected, stylesheet).getTemplates(factory);
+        int cachedStylesheets = ResTransformer.getCachedStylesheets();
+
+        assertTrue(stylesheet.setLastModified(2000000L));
+        Templates modified = new ResTransformer(expected, stylesheet).getTemplates(factory);
+        assertNotSame(templates, modified);
+        assertSame(modified, new ResTransformer(expected, stylesheet).getTemplates(factory));
+        assertEquals(cachedStylesheets, ResTransformer.getCachedStylesheets());
+
+
+    }
+
+
     private Document getResultDocument(){
         File sourceFile = new File(this.getClass().getResource("/rulesResult.xml").getFile());
         Document resultDocument = null;
@@ -0,0 +1,54 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+
+public class TestResultXmlWriter {
+
+    private File result;
+
+    @Before
+    public void setUp(){
+        try {
+            result = File.createTempFile("result",".xml");
+            result.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testWriteRule() throws Exception {
+        File expected = new File(this.getClass().getResource("/rulesResult.xml").getFile());
+
+        try (ResultXmlWriter writer = new ResultXmlWriter(result)) {
+            writer.writeRule(new RuleRecord("d", NodeType.getType("root"), 45));
+            writer.writeRule(new RuleRecord("b", NodeType.getType("sub"), 56));
+            writer.writeRule(new RuleRecord("c", NodeType.getType("child"), 99));
+            writer.writeRule(new RuleRecord("a", NodeType.getType("child"), 34));
+            assertEquals(4, writer.getRuleCount());
+        }
+
+        assertTrue(Arrays.equals(Files.readAllBytes(expected.toPath()), Files.readAllBytes(result.toPath())));
+    }
+
+    @Test
+    public void testWriteEscapedRule() throws Exception {
+        try (ResultXmlWriter writer = new ResultXmlWriter(result)) {
+            writer.writeRule(new RuleRecord("a&b<c>\"d\"é€😀", NodeType.getType("sub"), 7));
+        }
+
+        String content = new String(Files.readAllBytes(result.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content.endsWith("<rules><rule name=\"a&amp;b&lt;c&gt;&quot;d&quot;é€😀\" type=\"sub\" weight=\"7\"/></rules>"));
+    }
+}
@@ -0,0 +1,41 @@
+package ee.helmes;
+
+import org.junit.Test;
+import org.xml.sax.helpers.AttributesImpl;
+
+import static org.junit.Assert.*;
+
+
+public class TestRuleRecord {
+
+    @Test
+    public void testValueOf() throws Exception {
+        AttributesImpl attributes = new AttributesImpl();
+        attributes.addAttribute(null,null,"name",null,"a");
+        attributes.addAttribute(null,null,"type",null,"Child");
+        attributes.addAttribute(null,null,"weight",null,"17");
+
+        RuleRecord rule = RuleRecord.valueOf(attributes);
+
+        assertEquals("a", rule.getName());
+        assertEquals(NodeType.getType("child"), rule.getType());
+        assertEquals("child", rule.getTypeName());
+        assertEquals(17, rule.getWeight());
+        assertEquals("<rule name=\"a\" type=\"child\" weight=\"17\"/>", rule.toString());
+    }
+
+    @Test
+    public void testOutranks() throws Exception {
+        RuleRecord root = new RuleRecord("a", NodeType.getType("root"), 29);
+        RuleRecord sub = new RuleRecord("a", NodeType.getType("sub"), 12);
+        RuleRecord child = new RuleRecord("a", NodeType.getType("child"), 17);
+        RuleRecord heavyChild = new RuleRecord("a", NodeType.getType("child"), 34);
+
+        assertTrue(sub.outranks(root));
+        assertTrue(child.outranks(sub));
+        assertTrue(heavyChild.outranks(child));
+        assertFalse(root.outranks(sub));
+        assertFalse(child.outranks(heavyChild));
+        assertFalse(child.outranks(new RuleRecord("a", NodeType.getType("child"), 17)));
+    }
+}
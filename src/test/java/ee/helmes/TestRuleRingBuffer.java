@@ -0,0 +1,79 @@
+package ee.helmes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+
+public class TestRuleRingBuffer {
+
+    @Test
+    public void testTakeBatchInOrder() throws Exception {
+        final int ruleCount = 100000;
+        final RuleRingBuffer ruleBuffer = new RuleRingBuffer(4, 100);
+
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < ruleCount; i++){
+                        ruleBuffer.publish(new RuleRecord("r" + i, 1, i));
+                    }
+                    ruleBuffer.close();
+                }
+                catch (InterruptedException ex){
+                    ruleBuffer.fail(ex);
+                }
+            }
+        });
+        producer.start();
+
+        int expectedWeight = 0;
+        RuleRecord[] batch;
+        while ((batch = ruleBuffer.takeBatch()) != null){
+            assertTrue(batch.length <= ruleBuffer.getBatchSize());
+            for (RuleRecord rule : batch){
+                assertEquals(expectedWeight++, rule.getWeight());
+            }
+        }
+        producer.join();
+
+        assertEquals(ruleCount, expectedWeight);
+        assertNull(ruleBuffer.getFailure());
+    }
+
+    @Test
+    public void testPartialBatchOnClose() throws Exception {
+        RuleRingBuffer ruleBuffer = new RuleRingBuffer(4, 10);
+        ruleBuffer.publish(new RuleRecord("a", 1, 1));
+        ruleBuffer.publish(new RuleRecord("b", 2, 2));
+        ruleBuffer.close();
+
+        RuleRecord[] batch = ruleBuffer.takeBatch();
+        assertEquals(2, batch.length);
+        assertNull(ruleBuffer.takeBatch());
+    }
+
+    @Test
+    public void testFail() throws Exception {
+        RuleRingBuffer ruleBuffer = new RuleRingBuffer(1, 1);
+        ruleBuffer.publish(new RuleRecord("a", 1, 1));
+        Exception cause = new Exception("test");
+        ruleBuffer.fail(cause);
+
+        ruleBuffer.publish(new RuleRecord("b", 1, 1));
+        assertNull(ruleBuffer.takeBatch());
+        assertSame(cause, ruleBuffer.getFailure());
+    }
+
+    @Test
+    public void testCapacity() throws Exception {
+        assertEquals(8, new RuleRingBuffer(5, 1).getCapacity());
+        assertEquals(1, new RuleRingBuffer(1, 1).getCapacity());
+    }
+
+    @Test (expected = IllegalArgumentException.class)
+    public void testInvalidBatchSize() throws Exception {
+        new RuleRingBuffer(1, 0);
+    }
+}
@@ -0,0 +1,115 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+
+public class TestRuleRunMerger {
+
+    private static final String[] TYPES = {"root", "sub", "child"};
+
+    private File resultFile;
+    private File spillDirectory;
+
+    @Before
+    public void setUp(){
+        try {
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+            spillDirectory = Files.createTempDirectory("spill").toFile();
+            spillDirectory.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        RuleRunMerger runMerger = new RuleRunMerger(spillDirectory);
+        Map<String, RuleRecord> nodeMap = new HashMap<>();
+        nodeMap.put("b", new RuleRecord("b", 2, 5));
+        nodeMap.put("c", new RuleRecord("c", 1, 1));
+        runMerger.spill(nodeMap);
+        assertTrue(nodeMap.isEmpty());
+
+        nodeMap.put("a", new RuleRecord("a", 1, 3));
+        nodeMap.put("b", new RuleRecord("b", 2, 4));
+        runMerger.spill(nodeMap);
+
+        nodeMap.put("b", new RuleRecord("b", 3, 1));
+        nodeMap.put("c", new RuleRecord("c", 1, 1));
+        assertEquals(2, runMerger.getRunCount());
+        assertEquals(2, spillDirectory.list().length);
+
+        try (ResultXmlWriter resultWriter = new ResultXmlWriter(resultFile)) {
+            assertEquals(3, runMerger.merge(nodeMap, resultWriter, null));
+        }
+        runMerger.close();
+        assertEquals(0, spillDirectory.list().length);
+
+        assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?><rules>"
+                     + "<rule name=\"a\" type=\"root\" weight=\"3\"/>"
+                     + "<rule name=\"b\" type=\"child\" weight=\"1\"/>"
+                     + "<rule name=\"c\" type=\"root\" weight=\"1\"/>"
+                     + "</rules>", new String(Files.readAllBytes(resultFile.toPath()), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testSpillingFilter() throws Exception {
+        File sourceFile = createRandomFile(5000);
+        XMLNodeFilter expectFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(sourceFile, expectFilter).startParsing());
+
+        XMLNodeFilter spillingFilter = new XMLNodeFilter(resultFile);
+        spillingFilter.setSpillThreshold(100 * XMLNodeFilter.ESTIMATED_ENTRY_SIZE);
+        assertTrue(new StAXReader(sourceFile, spillingFilter).startParsing());
+        assertTrue(spillingFilter.getFilteredNodeMap().size() < 100);
+        spillingFilter.saveResult();
+
+        XMLNodeFilter resultFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(resultFile, resultFilter).startParsing());
+        assertEquals(expectFilter.getFilteredNodeMap(), resultFilter.getFilteredNodeMap());
+
+        String previousName = "";
+        String result = new String(Files.readAllBytes(resultFile.toPath()), StandardCharsets.UTF_8);
+        for (int start = result.indexOf("name=\""); start >= 0; start = result.indexOf("name=\"", start + 1)){
+            String name = result.substring(start + 6, result.indexOf('"', start + 6));
+            assertTrue(name.compareTo(previousName) > 0);
+            previousName = name;
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testSpillingWithSeveralWorkers() throws Exception {
+        File sourceFile = createRandomFile(10);
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile, new SAXReader(sourceFile, new RuleRingBuffer(16, 4)), 2);
+        xmlNodeFilter.setSpillThreshold(1024);
+    }
+
+    private File createRandomFile(int ruleCount) throws IOException {
+        File sourceFile = File.createTempFile("source", ".xml");
+        sourceFile.deleteOnExit();
+        Random random = new Random(15);
+        try (PrintWriter writer = new PrintWriter(sourceFile, "UTF-8")) {
+            writer.println("<rules>");
+            for (int i = 0; i < ruleCount; i++){
+                writer.println("<rule name=\"n" + random.nextInt(2000) + "\" type=\"" + TYPES[random.nextInt(3)]
+                               + "\" weight=\"" + (1 + random.nextInt(50)) + "\"/>");
+            }
+            writer.println("</rules>");
+        }
+        return sourceFile;
+    }
+}
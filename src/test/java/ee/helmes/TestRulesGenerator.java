@@ -0,0 +1,165 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+public class TestRulesGenerator {
+
+    private File sourceFile;
+
+    private File resultFile;
+
+    @Before
+    public void setUp(){
+        try {
+            sourceFile = File.createTempFile("source",".xml");
+            sourceFile.deleteOnExit();
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testGenerate() throws Exception {
+        RulesGenerator generator = new RulesGenerator(5000);
+        generator.setInvalidRatio(0.1);
+        long size = generator.generate(sourceFile);
+        assertEquals(sourceFile.length(), size);
+
+        final XMLNodeFilter scannerFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new MappedRuleScanner(sourceFile).scan(new MappedRuleScanner.RuleHandler() {
+            @Override
+            public void handleRule(RuleRecord rule) {
+                scannerFilter.applyFilter(rule);
+            }
+        }));
+
+        Map<String, RuleRecord> filteredNodeMap = parse(sourceFile);
+        assertFalse(filteredNodeMap.isEmpty());
+        assertEquals(scannerFilter.getFilteredNodeMap(), filteredNodeMap);
+    }
+
+    @Test
+    public void testSortedOrder() throws Exception {
+        RulesGenerator generator = new RulesGenerator(10000);
+        generator.setOrder(RulesGenerator.Order.SORTED);
+        generator.setDuplicateRatio(0.9);
+        generator.generate(sourceFile);
+
+        Map<String, RuleRecord> filteredNodeMap = parse(sourceFile);
+        assertEquals(1000, generator.getDistinctNames());
+        assertEquals(1000, filteredNodeMap.size());
+        String previousName = "";
+        for (String line : Files.readAllLines(sourceFile.toPath(), StandardCharsets.UTF_8)){
+            if(line.startsWith("<rule ")){
+                String name = line.substring(line.indexOf('"') + 1, line.indexOf('"', line.indexOf('"') + 1));
+                assertTrue(name.compareTo(previousName) >= 0);
+                previousName = name;
+            }
+        }
+        assertEquals("r0999", previousName);
+    }
+
+    @Test
+    public void testAdversarialOrder() throws Exception {
+        RulesGenerator generator = new RulesGenerator(6000);
+        generator.setOrder(RulesGenerator.Order.ADVERSARIAL);
+        generator.setDuplicateRatio(0.99);
+        generator.setWeightRange(1, 10);
+        generator.generate(sourceFile);
+
+        Map<String, RuleRecord> filteredNodeMap = parse(sourceFile);
+        assertEquals(60, filteredNodeMap.size());
+        for (RuleRecord rule : filteredNodeMap.values()){
+            assertEquals(3, rule.getType());
+            assertEquals(10, rule.getWeight());
+        }
+    }
+
+    @Test
+    public void testRandomOrder() throws Exception {
+        RulesGenerator generator = new RulesGenerator(10000);
+        generator.setNameCount(100);
+        generator.setTypeShares(0, 1, 0);
+        generator.setWeightRange(5, 7);
+        generator.generate(sourceFile);
+
+        Map<String, RuleRecord> filteredNodeMap = parse(sourceFile);
+        assertEquals(100, filteredNodeMap.size());
+        for (RuleRecord rule : filteredNodeMap.values()){
+            assertEquals(2, rule.getType());
+            assertTrue(rule.getWeight() >= 5 && rule.getWeight() <= 7);
+        }
+    }
+
+    @Test
+    public void testInvalidRules() throws Exception {
+        RulesGenerator generator = new RulesGenerator(1000);
+        generator.setInvalidRatio(1);
+        generator.generate(sourceFile);
+
+        assertTrue(parse(sourceFile).isEmpty());
+    }
+
+    @Test
+    public void testSeed() throws Exception {
+        File otherFile = File.createTempFile("source",".xml");
+        otherFile.deleteOnExit();
+
+        RulesGenerator generator = new RulesGenerator(1000);
+        generator.setInvalidRatio(0.2);
+        generator.generate(sourceFile);
+        generator.generate(otherFile);
+        assertArrayEquals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(otherFile.toPath()));
+
+        generator.setSeed(16);
+        generator.generate(otherFile);
+        assertFalse(Arrays.equals(Files.readAllBytes(sourceFile.toPath()), Files.readAllBytes(otherFile.toPath())));
+    }
+
+    @Test
+    public void testSetOption() throws Exception {
+        RulesGenerator generator = new RulesGenerator(100);
+        generator.setOption("--names=10");
+        generator.setOption("--types=1:0:0");
+        generator.setOption("--weights=3..3");
+        generator.setOption("--duplicates=0.9");
+        generator.setOption("--order=sorted");
+        generator.setOption("--invalid=0");
+        generator.setOption("--seed=1");
+        generator.generate(sourceFile);
+
+        Map<String, RuleRecord> filteredNodeMap = parse(sourceFile);
+        assertEquals(10, filteredNodeMap.size());
+        assertEquals(new RuleRecord("r0", 1, 3), filteredNodeMap.get("r0"));
+
+        for (String option : new String[]{"names=10", "--names", "--types=1:2", "--weights=3", "--order=up", "--size=1"}){
+            try {
+                generator.setOption(option);
+                fail(option);
+            }
+            catch (IllegalArgumentException ex){
+                // expected
+            }
+        }
+    }
+
+    private Map<String, RuleRecord> parse(File file){
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(file, xmlNodeFilter).startParsing());
+        return xmlNodeFilter.getFilteredNodeMap();
+    }
+}
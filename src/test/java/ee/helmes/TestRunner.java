@@ -8,13 +8,34 @@ import org.junit.runner.notification.Failure;
 
 public class TestRunner {
     public static void main(String[] args) {
-        Result result = JUnitCore.runClasses(TestMain1.class,
+        Result result = JUnitCore.runClasses(TestBinaryResultReader.class,
+                                             TestCompressedFiles.class,
+                                             TestDirectoryWatcher.class,
+                                             TestFilteringServer.class,
+                                             TestHtmlReportWriter.class,
+                                             TestMain1.class,
                                              TestMain2.class,
                                              TestMain3.class,
+                                             TestMappedRuleScanner.class,
+                                             TestMultiFileParser.class,
                                              TestMyDefaultHandler1.class,
                                              TestMyDefaultHandler2.class,
+                                             TestNameDictionary.class,
+                                             TestOffHeapWinnerTable.class,
+                                             TestPipelineEvents.class,
+                                             TestPipelineRuntime.class,
+                                             TestPipelineStats.class,
+                                             TestResultIndex.class,
+                                             TestResultSinkFanout.class,
                                              TestResultTransformer.class,
+                                             TestResultXmlWriter.class,
+                                             TestRuleRecord.class,
+                                             TestRuleRingBuffer.class,
+                                             TestRuleRunMerger.class,
+                                             TestRulesGenerator.class,
                                              TestSAXReader.class,
+                                             TestStAXReader.class,
+                                             TestWinnerIndex.class,
                                              TestXMLNodeFilter.class);
         for (Failure failure : result.getFailures()) {
             System.out.println(failure.toString());
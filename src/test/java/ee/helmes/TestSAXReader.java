@@ -2,12 +2,9 @@ package ee.helmes;
 
 import org.junit.Before;
 import org.junit.Test;
-import org.xml.sax.Attributes;
 
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.LogManager;
 
 import static org.junit.Assert.*;
@@ -16,54 +13,40 @@ import static org.junit.Assert.*;
 public class TestSAXReader {
 
     private SAXReader saxReader;
-    private LinkedBlockingQueue<Attributes> attributes;
+    private RuleRingBuffer attributes;
 
 
     @Before
     public void setUp() throws IOException {
         String XMLFileName = "/rules.xml";
         File resourceXMLFile = new File(SAXReader.class.getResource(XMLFileName).getFile());
-        attributes = new LinkedBlockingQueue<>();
+        attributes = new RuleRingBuffer(16, 64);
         saxReader = new SAXReader(resourceXMLFile,attributes);
 
 
     }
 
     @Test
-    public void testGetAttributesList() throws Exception {
+    public void testGetRuleBuffer() throws Exception {
 
-        assertEquals(attributes,saxReader.getAttributesList());
+        assertEquals(attributes,saxReader.getRuleBuffer());
     }
 
     @Test
-    public void testIsXmlFileIsParsed() throws Exception {
-        assertFalse(saxReader.isErrorWhileParse());
-        Field errorWhileParse = SAXReader.class.getDeclaredField("errorWhileParse");
-        errorWhileParse.setAccessible(true);
-        errorWhileParse.set(saxReader,true);
-        assertTrue(saxReader.isErrorWhileParse());
+    public void testStartParsingPublishesAllRules() throws Exception {
+        assertTrue(saxReader.startParsing());
+        assertEquals(10, attributes.takeBatch().length);
 
     }
 
     @Test
-    public void testRun() throws Exception {
-
-        Field resXMLFile = SAXReader.class.getDeclaredField("xmlFile");
-        resXMLFile.setAccessible(true);
-        resXMLFile.set(saxReader, null);
-        Thread parsingThread = new Thread(saxReader);
-        parsingThread.start();
-        try {
-            Thread.sleep(100);
-        }
-        catch (InterruptedException ex){
-            fail();
-        }
-        assertFalse(parsingThread.isAlive());
-        assertTrue(saxReader.isErrorWhileParse());
-
+    public void testCallFailsOnMissingFile() throws Exception {
+        File missingFile = File.createTempFile("missing", ".xml");
+        assertTrue(missingFile.delete());
+        SAXReader missingFileReader = new SAXReader(missingFile, attributes);
 
+        assertFalse(missingFileReader.call());
     }
 
 
-}
\ No newline at end of file
+}
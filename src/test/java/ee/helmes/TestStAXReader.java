@@ -0,0 +1,80 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+
+public class TestStAXReader {
+
+    private File resultFile;
+
+    @Before
+    public void setUp(){
+        try {
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testStartParsing() throws Exception {
+        File sourceFile = new File(this.getClass().getResource("/rules.xml").getFile());
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+
+        assertTrue(new StAXReader(sourceFile, xmlNodeFilter).startParsing());
+
+        Map<String,RuleRecord> expectMap = new HashMap<>();
+        expectMap.put("a", new RuleRecord("a", NodeType.getType("child"), 34));
+        expectMap.put("b", new RuleRecord("b", NodeType.getType("sub"), 56));
+        expectMap.put("c", new RuleRecord("c", NodeType.getType("child"), 99));
+        expectMap.put("d", new RuleRecord("d", NodeType.getType("root"), 45));
+
+        assertEquals(expectMap, xmlNodeFilter.getFilteredNodeMap());
+    }
+
+    @Test
+    public void testSkipInvalidNodes() throws Exception {
+        File sourceFile = File.createTempFile("source", ".xml");
+        sourceFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(sourceFile, "UTF-8")) {
+            writer.println("<rules>");
+            writer.println("<rule name=\"a\" type=\"test\" weight=\"1\"/>");
+            writer.println("<rule name=\"b\" type=\"sub\" weight=\"-1\"/>");
+            writer.println("<rule type=\"sub\" weight=\"1\"/>");
+            writer.println("<group><rule name=\"c\" type=\"sub\" weight=\"1\"/></group>");
+            writer.println("<rule name=\"d\" type=\"ROOT\" weight=\"2\"><rule name=\"e\" type=\"sub\" weight=\"1\"/></rule>");
+            writer.println("</rules>");
+        }
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+
+        assertTrue(new StAXReader(sourceFile, xmlNodeFilter).startParsing());
+
+        Map<String,RuleRecord> resultMap = xmlNodeFilter.getFilteredNodeMap();
+        assertEquals(1, resultMap.size());
+        assertEquals(new RuleRecord("d", NodeType.getType("root"), 2), resultMap.get("d"));
+    }
+
+    @Test
+    public void testStartParsingError() throws Exception {
+        File sourceFile = File.createTempFile("source", ".xml");
+        sourceFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(sourceFile, "UTF-8")) {
+            writer.println("<rules><rule name=\"a\" type=\"sub\" weight=\"1\"/>");
+        }
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+
+        assertFalse(new StAXReader(sourceFile, xmlNodeFilter).startParsing());
+        assertEquals(1, xmlNodeFilter.getFilteredNodeMap().size());
+    }
+}
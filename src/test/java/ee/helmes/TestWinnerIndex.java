@@ -0,0 +1,136 @@
+package ee.helmes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.Assert.*;
+
+
+public class TestWinnerIndex {
+
+    private static final String[] TYPES = {"root", "sub", "child"};
+
+    private File resultFile;
+    private File indexFile;
+
+    @Before
+    public void setUp(){
+        try {
+            resultFile = File.createTempFile("result",".xml");
+            resultFile.deleteOnExit();
+            indexFile = File.createTempFile("index",".bin");
+            indexFile.deleteOnExit();
+            assertTrue(indexFile.delete());
+        }
+        catch (IOException ex){
+            fail();
+        }
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        Map<String, RuleRecord> winners = new HashMap<>();
+        winners.put("a", new RuleRecord("a", 1, 5));
+        winners.put("ä€", new RuleRecord("ä€", 3, Integer.MAX_VALUE));
+        WinnerIndex winnerIndex = new WinnerIndex(indexFile);
+        assertEquals(0, winnerIndex.load(new HashMap<String, RuleRecord>()));
+
+        winnerIndex.save(winners);
+        Map<String, RuleRecord> loadedWinners = new HashMap<>();
+        assertEquals(2, winnerIndex.load(loadedWinners));
+        assertEquals(winners, loadedWinners);
+        assertFalse(new File(indexFile.getPath() + ".part").exists());
+    }
+
+    @Test
+    public void testIncrementalFiltering() throws Exception {
+        Random random = new Random(15);
+        File baselineFile = createRandomFile(random, 3000);
+        File firstDeltaFile = createRandomFile(random, 200);
+        File secondDeltaFile = createRandomFile(random, 200);
+
+        XMLNodeFilter expectFilter = new XMLNodeFilter(resultFile);
+        for (File sourceFile : new File[]{baselineFile, firstDeltaFile, secondDeltaFile}){
+            assertTrue(new StAXReader(sourceFile, expectFilter).startParsing());
+        }
+
+        for (File sourceFile : new File[]{baselineFile, firstDeltaFile}){
+            XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile);
+            xmlNodeFilter.setWinnerIndex(new WinnerIndex(indexFile));
+            assertTrue(new StAXReader(sourceFile, xmlNodeFilter).startParsing());
+            xmlNodeFilter.saveResult();
+        }
+
+        SAXReader saxReader = new SAXReader(secondDeltaFile, new RuleRingBuffer(16, 4));
+        XMLNodeFilter xmlNodeFilter = new XMLNodeFilter(resultFile, saxReader, 3);
+        assertEquals(expectFilter.getFilteredNodeMap().size() - countNewNames(secondDeltaFile, baselineFile, firstDeltaFile),
+                     xmlNodeFilter.setWinnerIndex(new WinnerIndex(indexFile)));
+        FutureTask<Boolean> parsingTask = new FutureTask<>(saxReader);
+        new Thread(parsingTask).start();
+        xmlNodeFilter.startFiltering();
+        assertTrue(parsingTask.get());
+        assertEquals(expectFilter.getFilteredNodeMap(), xmlNodeFilter.getFilteredNodeMap());
+
+        Map<String, RuleRecord> loadedWinners = new HashMap<>();
+        new WinnerIndex(indexFile).load(loadedWinners);
+        assertEquals(expectFilter.getFilteredNodeMap(), loadedWinners);
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadInvalidFile() throws Exception {
+        new WinnerIndex(resultFile).load(new HashMap<String, RuleRecord>());
+    }
+
+    @Test(expected = IOException.class)
+    public void testLoadTruncatedFile() throws Exception {
+        try (DataOutputStream output = new DataOutputStream(new FileOutputStream(indexFile))) {
+            output.writeInt(WinnerIndex.MAGIC);
+            output.writeInt(2);
+            output.writeInt(1);
+            output.writeByte('a');
+            output.writeByte(1);
+            output.writeInt(1);
+        }
+        new WinnerIndex(indexFile).load(new HashMap<String, RuleRecord>());
+    }
+
+    private int countNewNames(File deltaFile, File... previousFiles){
+        XMLNodeFilter deltaFilter = new XMLNodeFilter(resultFile);
+        assertTrue(new StAXReader(deltaFile, deltaFilter).startParsing());
+        XMLNodeFilter previousFilter = new XMLNodeFilter(resultFile);
+        for (File previousFile : previousFiles){
+            assertTrue(new StAXReader(previousFile, previousFilter).startParsing());
+        }
+        int newNames = 0;
+        for (String name : deltaFilter.getFilteredNodeMap().keySet()){
+            if(!previousFilter.getFilteredNodeMap().containsKey(name)){
+                newNames++;
+            }
+        }
+        return newNames;
+    }
+
+    private File createRandomFile(Random random, int ruleCount) throws IOException {
+        File sourceFile = File.createTempFile("source", ".xml");
+        sourceFile.deleteOnExit();
+        try (PrintWriter writer = new PrintWriter(sourceFile, "UTF-8")) {
+            writer.println("<rules>");
+            for (int i = 0; i < ruleCount; i++){
+                writer.println("<rule name=\"n" + random.nextInt(1000) + "\" type=\"" + TYPES[random.nextInt(3)]
+                               + "\" weight=\"" + (1 + random.nextInt(50)) + "\"/>");
+            }
+            writer.println("</rules>");
+        }
+        return sourceFile;
+    }
+}
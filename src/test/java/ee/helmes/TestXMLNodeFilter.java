@@ -2,14 +2,16 @@ package ee.helmes;
 
 import org.junit.Before;
 import org.junit.Test;
-import org.xml.sax.Attributes;
-import org.xml.sax.helpers.AttributesImpl;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
 import java.util.*;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.logging.LogManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 
 import static org.junit.Assert.*;
 
@@ -21,7 +23,7 @@ public class TestXMLNodeFilter {
 
     @Before
     public void setUp() throws Exception {
-        LinkedBlockingQueue<Attributes> attrList = new LinkedBlockingQueue<>();
+        RuleRingBuffer ruleBuffer = new RuleRingBuffer(16, 64);
         try {
             tempFile = File.createTempFile("temp",".xml");
             tempFile.deleteOnExit();
@@ -29,154 +31,167 @@ public class TestXMLNodeFilter {
         catch (IOException ex){
             fail();
         }
-        SAXReader saxReader = new SAXReader(tempFile, attrList);
+        SAXReader saxReader = new SAXReader(tempFile, ruleBuffer);
         xmlNodeFilter = new XMLNodeFilter(tempFile, saxReader);
     }
 
 
     @Test
     public void testApplyFilter() throws Exception{
-        List<Attributes> list = createTestAttributesList();
-        Map<String,Attributes> expectMap = createExpectedMap();
-        for (Attributes attr : list){
-            xmlNodeFilter.applyFilter(attr);
+        List<RuleRecord> list = createTestRuleList();
+        Map<String,RuleRecord> expectMap = createExpectedMap();
+        for (RuleRecord rule : list){
+            xmlNodeFilter.applyFilter(rule);
         }
-        Map<String,Attributes> resultMap = xmlNodeFilter.getFilteredNodeMap();
+        Map<String,RuleRecord> resultMap = xmlNodeFilter.getFilteredNodeMap();
         assertTrue(expectMap.equals(resultMap));
 
     }
 
-    private static Map<String,Attributes> createExpectedMap(){
-        Map<String,Attributes> attrMap = new HashMap<>();
-
-        AttributesImplTest attr1 = new AttributesImplTest();
-        attr1.addAttribute(null, null, "name", null, "a");
-        attr1.addAttribute(null, null, "type", null, "child");
-        attr1.addAttribute(null, null, "weight", null, "10");
-        attrMap.put("a", attr1);
-
-        AttributesImplTest attr2 = new AttributesImplTest();
-        attr2.addAttribute(null, null, "name", null, "b");
-        attr2.addAttribute(null, null, "type", null, "sub");
-        attr2.addAttribute(null, null, "weight", null, "11");
-        attrMap.put("b",attr2);
-
-        AttributesImplTest attr3 = new AttributesImplTest();
-        attr3.addAttribute(null, null, "name", null, "c");
-        attr3.addAttribute(null, null, "type", null, "child");
-        attr3.addAttribute(null, null, "weight", null, "9");
-        attrMap.put("c", attr3);
-
-        AttributesImplTest attr4 = new AttributesImplTest();
-        attr4.addAttribute(null, null, "name", null, "f");
-        attr4.addAttribute(null, null, "type", null, "");
-        attr4.addAttribute(null, null, "weight", null, "10");
-        attrMap.put("f", attr4);
-
+    @Test
+    public void testShardedFiltering() throws Exception{
+        File sourceFile = new File(this.getClass().getResource("/rules.xml").getFile());
+        Map<String,RuleRecord> expectMap = filterFile(sourceFile, 1);
+        Map<String,RuleRecord> resultMap = filterFile(sourceFile, 4);
 
-        return attrMap;
+        assertEquals(expectMap, resultMap);
     }
-    private static List<Attributes> createTestAttributesList(){
-        List<Attributes> attributesList = new ArrayList<>();
-
-        AttributesImplTest attr1 = new AttributesImplTest();
-        attr1.addAttribute(null,null,"name",null,"a");
-        attr1.addAttribute(null,null,"type",null,"root");
-        attr1.addAttribute(null,null,"weight",null,"10");
-        attributesList.add(attr1);
-
-        AttributesImplTest attr2 = new AttributesImplTest();
-        attr2.addAttribute(null,null,"name",null,"a");
-        attr2.addAttribute(null,null,"type",null,"child");
-        attr2.addAttribute(null,null,"weight",null,"10");
-        attributesList.add(attr2);
-
-        AttributesImplTest attr3 = new AttributesImplTest();
-        attr3.addAttribute(null,null,"name",null,"b");
-        attr3.addAttribute(null,null,"type",null,"sub");
-        attr3.addAttribute(null,null,"weight",null,"10");
-        attributesList.add(attr3);
-
-        AttributesImplTest attr4 = new AttributesImplTest();
-        attr4.addAttribute(null,null,"name",null,"b");
-        attr4.addAttribute(null,null,"type",null,"root");
-        attr4.addAttribute(null,null,"weight",null,"10");
-        attributesList.add(attr4);
-
-        AttributesImplTest attr5 = new AttributesImplTest();
-        attr5.addAttribute(null,null,"name",null,"b");
-        attr5.addAttribute(null,null,"type",null,"sub");
-        attr5.addAttribute(null,null,"weight",null,"11");
-        attributesList.add(attr5);
-
-        AttributesImplTest attr6 = new AttributesImplTest();
-        attr6.addAttribute(null,null,"name",null,"c");
-        attr6.addAttribute(null,null,"type",null,"child");
-        attr6.addAttribute(null,null,"weight",null,"0");
-        attributesList.add(attr6);
-
-        AttributesImplTest attr7 = new AttributesImplTest();
-        attr7.addAttribute(null,null,"name",null,"c");
-        attr7.addAttribute(null,null,"type",null,"child");
-        attr7.addAttribute(null,null,"weight",null,"9");
-        attributesList.add(attr7);
-
-        AttributesImplTest attr8 = new AttributesImplTest();
-        attr8.addAttribute(null,null,"name",null,"f");
-        attr8.addAttribute(null,null,"type",null,"");
-        attr8.addAttribute(null,null,"weight",null,"10");
-        attributesList.add(attr8);
-
-        return attributesList;
-    }
-
-    private static class AttributesImplTest extends AttributesImpl{
 
-        /**
-         *  {@inheritDoc}
-         * @param obj
-         * @return
-         */
-        @Override
-        public boolean equals(Object obj) {
+    @Test
+    public void testShardFailure() throws Exception{
+        RuleRingBuffer ruleBuffer = new RuleRingBuffer(16, 4);
+        for (int i = 0; i < 20; i++){
+            ruleBuffer.publish(new RuleRecord(i == 10 ? "poison" : "rule" + i, NodeType.getType("sub"), i));
+        }
+        ruleBuffer.close();
+        XMLNodeFilter filter = new XMLNodeFilter(tempFile, new SAXReader(tempFile, ruleBuffer), 2);
+
+        Logger logger = Logger.getLogger(XMLNodeFilter.class.getName());
+        Level level = logger.getLevel();
+        Handler poisonHandler = new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                if(record.getLevel() == Level.FINE && record.getMessage().contains("poison")){
+                    throw new IllegalArgumentException("poison");
+                }
+            }
 
-            if(obj == null){
-                return false;
+            @Override
+            public void flush() {
             }
 
-            if(!(obj instanceof AttributesImplTest)){
-                return false;
+            @Override
+            public void close() {
             }
+        };
+        logger.setLevel(Level.FINE);
+        logger.addHandler(poisonHandler);
+        try {
+            filter.startFiltering();
+            fail();
+        }
+        catch (IllegalStateException ex){
+            assertTrue(ex.getCause() instanceof IllegalArgumentException);
+        }
+        finally {
+            logger.removeHandler(poisonHandler);
+            logger.setLevel(level);
+        }
+        assertTrue(filter.getFilteredNodeMap().isEmpty());
+    }
 
-            if(obj == this){
-                return true;
+    @Test
+    public void testInterruptedShardedFiltering() throws Exception{
+        RuleRingBuffer ruleBuffer = new RuleRingBuffer(16, 1);
+        for (int i = 0; i < 8; i++){
+            ruleBuffer.publish(new RuleRecord("rule" + i, NodeType.getType("sub"), i));
+        }
+        ruleBuffer.flush();
+        final XMLNodeFilter filter = new XMLNodeFilter(tempFile, new SAXReader(tempFile, ruleBuffer), 4);
+        Thread filterThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                filter.startFiltering();
             }
+        });
+        filterThread.start();
+        Thread.sleep(500);
+        filterThread.interrupt();
+        filterThread.join(10000);
+
+        assertFalse(filterThread.isAlive());
+        assertEquals(8, filter.getFilteredNodeMap().size());
+    }
 
-            AttributesImplTest attrTest = (AttributesImplTest)obj;
+    @Test
+    public void testMergeIntoWinnerTable() throws Exception{
+        File journalFile = File.createTempFile("journal",".bin");
+        journalFile.deleteOnExit();
+        PipelineStats stats = PipelineStats.get();
+        XMLNodeFilter filter = new XMLNodeFilter(tempFile);
+        filter.setWinnerTable(new OffHeapWinnerTable(0));
+        try (DecisionJournal decisionJournal = new DecisionJournal(journalFile)) {
+            filter.setDecisionJournal(decisionJournal);
+            filter.applyFilter(new RuleRecord("a", NodeType.getType("child"), 10, 1));
+            long decisions = stats.getRulesAccepted() + stats.getRulesReplaced() + stats.getRulesRejected();
+
+            Map<String,RuleRecord> nodeMap = new LinkedHashMap<>();
+            nodeMap.put("a", new RuleRecord("a", NodeType.getType("sub"), 5, 2));
+            nodeMap.put("b", new RuleRecord("b", NodeType.getType("sub"), 3, 3));
+            filter.mergeFilteredNodes(nodeMap);
+            filter.flushDecisions();
+            assertEquals(decisions, stats.getRulesAccepted() + stats.getRulesReplaced() + stats.getRulesRejected());
+        }
 
-            return this.getValue("name").equals(attrTest.getValue("name")) &&
-                    this.getValue("type").equals(attrTest.getValue("type")) &&
-                    this.getValue("weight").equals(attrTest.getValue("weight"));
+        ResultIndex resultIndex = filter.createResultIndex();
+        assertEquals(new RuleRecord("a", NodeType.getType("child"), 10), resultIndex.get("a"));
+        assertEquals(new RuleRecord("b", NodeType.getType("sub"), 3), resultIndex.get("b"));
+        PrintStream output = new PrintStream(new ByteArrayOutputStream());
+        assertEquals(2, JournalExplainer.explain(journalFile, "a", output));
+        assertEquals(0, JournalExplainer.explain(journalFile, "b", output));
+    }
 
+    @Test
+    public void testGetShardIndex() throws Exception{
+        String[] names = {"a", "b", "c", "billing.eu.de.tariff", ""};
+        for (String name : names){
+            for (int shardCount = 1; shardCount <= 8; shardCount++){
+                int index = XMLNodeFilter.getShardIndex(name, shardCount);
+                assertTrue(index >= 0 && index < shardCount);
+            }
         }
+    }
 
-        /**
-         * {@inheritDoc}
-         */
-        @Override
-        public int hashCode() {
-            String nameValue = this.getValue("name");
-            String typeValue = this.getValue("type");
-            String weightValue = this.getValue("weight");
+    private Map<String,RuleRecord> filterFile(File sourceFile, int filterWorkers) throws Exception{
+        SAXReader saxReader = new SAXReader(sourceFile, new RuleRingBuffer(16, 64));
+        XMLNodeFilter filter = new XMLNodeFilter(tempFile, saxReader, filterWorkers);
+        saxReader.startParsing();
+        filter.startFiltering();
+        return filter.getFilteredNodeMap();
+    }
 
-            final int prime = 31;
-            int result = 1;
+    private static Map<String,RuleRecord> createExpectedMap(){
+        Map<String,RuleRecord> ruleMap = new HashMap<>();
 
-            result = prime*result+(nameValue == null ? 0 : nameValue.hashCode());
-            result = prime*result+(typeValue == null ? 0 : typeValue.hashCode());
-            result = prime*result+(weightValue == null ? 0 : weightValue.hashCode());
+        ruleMap.put("a", new RuleRecord("a", NodeType.getType("child"), 10));
+        ruleMap.put("b", new RuleRecord("b", NodeType.getType("sub"), 11));
+        ruleMap.put("c", new RuleRecord("c", NodeType.getType("child"), 9));
+        ruleMap.put("f", new RuleRecord("f", NodeType.getType(""), 10));
 
-            return result;
-        }
+        return ruleMap;
+    }
+    private static List<RuleRecord> createTestRuleList(){
+        List<RuleRecord> ruleList = new ArrayList<>();
+
+        ruleList.add(new RuleRecord("a", NodeType.getType("root"), 10));
+        ruleList.add(new RuleRecord("a", NodeType.getType("child"), 10));
+        ruleList.add(new RuleRecord("b", NodeType.getType("sub"), 10));
+        ruleList.add(new RuleRecord("b", NodeType.getType("root"), 10));
+        ruleList.add(new RuleRecord("b", NodeType.getType("sub"), 11));
+        ruleList.add(new RuleRecord("c", NodeType.getType("child"), 0));
+        ruleList.add(new RuleRecord("c", NodeType.getType("child"), 9));
+        ruleList.add(new RuleRecord("f", NodeType.getType(""), 10));
+
+        return ruleList;
     }
-}
\ No newline at end of file
+}